@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.Provider;
+
+/**
+ * Identity map of the adapters handed out within one {@link KeycloakSession}, keyed by {@code (type,
+ * realm, id)}. A token request resolves the same clients and roles many times; with this map every
+ * lookup returns the same adapter instead of building a new one.
+ *
+ * <p>An adapter is only reused while it wraps the entity that is currently stored and belongs to the
+ * same realm instance, so a deleted and recreated entity gets a new adapter. The map is cleared when
+ * an entity is removed through a provider and when the session is closed.
+ */
+public final class AdapterIdentityMap implements Provider {
+
+    private static final String SESSION_ATTRIBUTE = AdapterIdentityMap.class.getName();
+
+    private record Key(Class<?> type, String realmId, String id) {}
+
+    private record Entry(RealmModel realm, AbstractEntity entity, Object adapter) {}
+
+    // a session is used by one thread at a time
+    private final Map<Key, Entry> adapters = new HashMap<>();
+
+    private AdapterIdentityMap() {}
+
+    /** Returns the identity map of the session, creating it on first use. */
+    public static AdapterIdentityMap of(KeycloakSession session) {
+        AdapterIdentityMap map = session.getAttribute(SESSION_ATTRIBUTE, AdapterIdentityMap.class);
+        if (map == null) {
+            map = new AdapterIdentityMap();
+            session.setAttribute(SESSION_ATTRIBUTE, map);
+            session.enlistForClose(map);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the adapter of the entity, creating it if the session has none yet or if the one it has
+     * wraps another entity instance or realm instance.
+     *
+     * @param realm the realm of the entity, {@code null} for realms themselves
+     */
+    public <A> A get(Class<A> type, RealmModel realm, AbstractEntity entity, String id, Supplier<A> create) {
+        Key key = new Key(type, realm == null ? null : realm.getId(), id);
+        Entry entry = adapters.get(key);
+        if (entry != null && entry.entity() == entity && entry.realm() == realm) {
+            return type.cast(entry.adapter());
+        }
+        A adapter = create.get();
+        adapters.put(key, new Entry(realm, entity, adapter));
+        return adapter;
+    }
+
+    public void clear() {
+        adapters.clear();
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+}
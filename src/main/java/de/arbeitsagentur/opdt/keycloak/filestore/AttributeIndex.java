@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Compare;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Criterion;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Or;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Inverted index from {@code (realmId, attribute name, attribute value)} to the entities of one type,
+ * for the {@code ATTRIBUTE} searchable field of an {@link EntityQueryEngine}.
+ *
+ * <p>For a conjunction of {@code ATTRIBUTE EQ (name, value)} comparisons the smallest posting list
+ * is the candidate set, for a disjunction the union of the postings of all alternatives. Like the
+ * other indexes it follows the {@link EntityStore}, so every persisted {@code setAttribute} and
+ * {@code removeAttribute} updates it.
+ */
+public final class AttributeIndex<E extends AbstractEntity> {
+
+    private final KeyedEntityIndex<E> index;
+
+    private record Key(String realmId, String name, String value) {}
+
+    private AttributeIndex(KeyedEntityIndex<E> index) {
+        this.index = index;
+    }
+
+    /**
+     * Creates an index and registers it with the {@link EntityStore}.
+     *
+     * @param attributesFunc the attributes of an entity, values are compared by their string form
+     */
+    public static <E extends AbstractEntity> AttributeIndex<E> create(
+            Class<E> type, Function<E, String> realmFunc, Function<E, Map<String, ?>> attributesFunc) {
+        return new AttributeIndex<>(KeyedEntityIndex.create(type, entity -> {
+            Map<String, ?> attributes = attributesFunc.apply(entity);
+            if (attributes == null) {
+                return List.of();
+            }
+            String realmId = realmFunc.apply(entity);
+            return attributes.entrySet().stream()
+                    .filter(entry -> entry.getValue() != null)
+                    .map(entry ->
+                            new Key(realmId, entry.getKey(), entry.getValue().toString()))
+                    .toList();
+        }));
+    }
+
+    /**
+     * Returns the candidates for the attribute comparisons of the criteria within a realm, or an empty
+     * {@link Optional} if the criteria contain no equality comparison on the attribute field.
+     */
+    public <M> Optional<Collection<E>> candidates(
+            String realmId, ModelCriteria<M> criteria, SearchableModelField<? super M> field) {
+        Collection<E> best = null;
+        for (Criterion<M> criterion : criteria.getCriteria()) {
+            Optional<Collection<E>> candidates = candidates(realmId, criterion, field);
+            if (candidates.isPresent() && (best == null || candidates.get().size() < best.size())) {
+                best = candidates.get();
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private <M> Optional<Collection<E>> candidates(
+            String realmId, Criterion<M> criterion, SearchableModelField<? super M> field) {
+        if (criterion instanceof Compare<M> compare) {
+            if (compare.operator() != ModelCriteria.Operator.EQ
+                    || !compare.field().equals(field)
+                    || compare.operands().size() != 2) {
+                return Optional.empty();
+            }
+            return Optional.of(index.get(new Key(
+                    realmId,
+                    String.valueOf(compare.operands().get(0)),
+                    String.valueOf(compare.operands().get(1)))));
+        }
+        Set<E> union = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ModelCriteria<M> alternative : ((Or<M>) criterion).alternatives()) {
+            Optional<Collection<E>> candidates = candidates(realmId, alternative, field);
+            if (candidates.isEmpty()) {
+                return Optional.empty();
+            }
+            union.addAll(candidates.get());
+        }
+        return Optional.of(union);
+    }
+}
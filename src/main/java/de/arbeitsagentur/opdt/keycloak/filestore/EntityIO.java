@@ -22,6 +22,7 @@ import static java.util.Map.entry;
 import de.arbeitsagentur.opdt.keycloak.filestore.client.FileClientEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.SectionedEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.group.FileGroupEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmEntity;
@@ -30,11 +31,18 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -46,7 +54,10 @@ import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.TypeDescription;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
 import org.yaml.snakeyaml.introspector.BeanAccess;
+import org.yaml.snakeyaml.introspector.Property;
+import org.yaml.snakeyaml.introspector.PropertyUtils;
 import org.yaml.snakeyaml.nodes.Tag;
 import org.yaml.snakeyaml.representer.Representer;
 
@@ -59,6 +70,7 @@ public class EntityIO {
     private static final String STORAGE_TYPE = "file";
     private static final String ESCAPING_CHARACTER = "=";
     public static final String FILE_SUFFIX = ".yaml";
+    private static final String SECTIONS_DIRECTORY = "sections";
     private static final Logger LOG = Logger.getLogger(EntityIO.class);
 
     static final Map<Class<? extends AbstractEntity>, Function<? extends AbstractEntity, String[]>>
@@ -106,6 +118,41 @@ public class EntityIO {
     }
 
     static <E extends AbstractEntity & UpdatableEntity> void writeToFile(E entity, Path path) throws IOException {
+        if (entity instanceof SectionedEntity sectioned) {
+            writeSectionsToFiles(entity, sectioned, path);
+        } else {
+            dumpToFile(entity, path, property -> true);
+        }
+    }
+
+    private static <E extends AbstractEntity & UpdatableEntity> void writeSectionsToFiles(
+            E entity, SectionedEntity sectioned, Path path) throws IOException {
+        Set<String> changed = sectioned.takeChangedSections();
+        Collection<String> sections = sectioned.sectionNames();
+        Collection<String> written = sectioned.writtenSectionNames();
+        try {
+            for (String section : sections) {
+                if (!changed.contains(section)) {
+                    continue;
+                }
+                if (written.contains(section)) {
+                    dumpToFile(entity, getSectionPath(path, section), section::equals);
+                } else {
+                    Files.deleteIfExists(getSectionPath(path, section));
+                }
+            }
+            if (changed.contains(SectionedEntity.MAIN)) {
+                dumpToFile(entity, path, property -> !sections.contains(property));
+            }
+        } catch (IOException | RuntimeException e) {
+            // written again with the next change
+            sectioned.markChanged(changed);
+            throw e;
+        }
+    }
+
+    private static <E extends AbstractEntity & UpdatableEntity> void dumpToFile(
+            E entity, Path path, Predicate<String> includeProperty) throws IOException {
         var loaderoptions = new LoaderOptions();
         loaderoptions.setTagInspector(tag -> false);
         Constructor constructor = new Constructor(entity.getClass(), loaderoptions);
@@ -116,6 +163,16 @@ public class EntityIO {
         options.setIndentWithIndicator(false);
 
         Representer representer = new Representer(options);
+        representer.setPropertyUtils(new PropertyUtils() {
+            @Override
+            protected Set<Property> createPropertySet(Class<?> type, BeanAccess bAccess) {
+                Set<Property> properties = super.createPropertySet(type, bAccess);
+                if (type == entity.getClass()) {
+                    properties.removeIf(property -> !includeProperty.test(property.getName()));
+                }
+                return properties;
+            }
+        });
         representer.getPropertyUtils().setSkipMissingProperties(true);
         representer.addClassTag(Set.class, Tag.SEQ);
 
@@ -129,6 +186,41 @@ public class EntityIO {
         Files.write(path, output.getBytes());
     }
 
+    /** Parses a file holding a flat map of texts, e.g. the localization texts of one locale. */
+    public static Map<String, String> parseTextsFile(Path fileName) {
+        var loaderoptions = new LoaderOptions();
+        loaderoptions.setTagInspector(tag -> false);
+        Yaml yaml = new Yaml(new SafeConstructor(loaderoptions));
+
+        try {
+            Map<?, ?> raw = yaml.load(Files.readString(fileName, StandardCharsets.UTF_8));
+            Map<String, String> texts = new HashMap<>();
+            if (raw != null) {
+                raw.forEach((key, value) -> texts.put(String.valueOf(key), value == null ? null : value.toString()));
+            }
+            return texts;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to parse file: " + fileName, e);
+        }
+    }
+
+    /** Writes a flat map of texts, sorted by key so that changes produce small diffs. */
+    public static void writeTextsToFile(Map<String, String> texts, Path path) throws IOException {
+        DumperOptions options = new DumperOptions();
+        options.setIndent(4);
+        options.setIndicatorIndent(2);
+        options.setIndentWithIndicator(false);
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        String output = new Yaml(options).dumpAs(new TreeMap<>(texts), Tag.MAP, DumperOptions.FlowStyle.BLOCK);
+
+        if (!Files.exists(path.getParent())) {
+            Files.createDirectories(path.getParent());
+        }
+
+        Files.write(path, output.getBytes(StandardCharsets.UTF_8));
+    }
+
     static <E extends AbstractEntity & UpdatableEntity> E parseFile(Path fileName, Class<E> interfaceOfEntity) {
         final E parsedObject = yamlParseFile(fileName, interfaceOfEntity);
         if (parsedObject == null) {
@@ -152,10 +244,98 @@ public class EntityIO {
             parsedObject.setId(escapedId);
         }
 
+        if (parsedObject instanceof SectionedEntity sectioned) {
+            readSectionsFromFiles(parsedObject, sectioned, fileName, interfaceOfEntity);
+        }
+
         parsedObject.clearUpdatedFlag();
         return parsedObject;
     }
 
+    /**
+     * Parses the files in parallel, skipping empty ones. The parsing runs in this class, so the {@link
+     * EntityStore} may call it while it is still being initialised: worker threads that ran code of the
+     * store itself would wait for that initialisation and never finish.
+     */
+    static <E extends AbstractEntity & UpdatableEntity> Map<Path, E> parseFiles(
+            List<Path> paths, Class<E> interfaceOfEntity) {
+        Map<Path, E> parsed = new ConcurrentHashMap<>();
+        paths.parallelStream().forEach(path -> {
+            E entity = parseFile(path, interfaceOfEntity);
+            if (entity != null) {
+                parsed.put(path, entity);
+            }
+        });
+        return parsed;
+    }
+
+    /**
+     * Reads the section files of the entity in parallel. Sections without a file keep the value read from
+     * the entity file, as older versions stored all sections there; they get their own files with the
+     * next write.
+     */
+    private static <E extends AbstractEntity & UpdatableEntity> void readSectionsFromFiles(
+            E entity, SectionedEntity sectioned, Path path, Class<E> interfaceOfEntity) {
+        Map<String, E> parsedSections = new ConcurrentHashMap<>();
+        sectioned.sectionNames().parallelStream().forEach(section -> {
+            Path sectionPath = getSectionPath(path, section);
+            if (canParseFile(sectionPath)) {
+                E parsedSection = yamlParseFile(sectionPath, interfaceOfEntity);
+                if (parsedSection != null) {
+                    parsedSections.put(section, parsedSection);
+                }
+            }
+        });
+
+        PropertyUtils fields = new PropertyUtils();
+        fields.setBeanAccess(BeanAccess.FIELD);
+        List<String> missing = new ArrayList<>();
+        for (String section : sectioned.sectionNames()) {
+            E parsedSection = parsedSections.get(section);
+            if (parsedSection == null) {
+                missing.add(section);
+                continue;
+            }
+            Property property = fields.getProperty(interfaceOfEntity, section);
+            try {
+                property.set(entity, property.get(parsedSection));
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to read section " + section + " of file: " + path, e);
+            }
+        }
+
+        // what was just read is what is stored; sections that are no longer written are not missing, and
+        // their files go with the next write
+        sectioned.takeChangedSections();
+        Collection<String> written = sectioned.writtenSectionNames();
+        missing.retainAll(written);
+        List<String> retired = parsedSections.keySet().stream()
+                .filter(section -> !written.contains(section))
+                .toList();
+        sectioned.markChanged(retired);
+        if (!missing.isEmpty()) {
+            missing.add(SectionedEntity.MAIN);
+            sectioned.markChanged(missing);
+        }
+    }
+
+    /** Deletes the section files of an entity whose entity file was deleted. */
+    static void deleteSectionFiles(SectionedEntity sectioned, Path path) throws IOException {
+        for (String section : sectioned.sectionNames()) {
+            Path sectionPath = getSectionPath(path, section);
+            if (Files.deleteIfExists(sectionPath)) {
+                deleteParentDirectoryIfEmpty(sectionPath);
+            }
+        }
+    }
+
+    /** Sections of the entity stored in {@code <id>.yaml} are stored in {@code <id>/sections/<section>.yaml}. */
+    static Path getSectionPath(Path path, String section) {
+        String fileName = path.getFileName().toString();
+        String id = fileName.substring(0, fileName.length() - FILE_SUFFIX.length());
+        return path.resolveSibling(id).resolve(SECTIONS_DIRECTORY).resolve(section + FILE_SUFFIX);
+    }
+
     private static <E extends AbstractEntity & UpdatableEntity> String determineKeyFromValue(
             E value, Class<E> interfaceOfEntity, String lastIdComponentIfUnset) {
         String[] proposedId = getSuggestedPath(value, interfaceOfEntity);
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Compare;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Criterion;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Or;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.jboss.logging.Logger;
+
+/**
+ * Evaluates {@link ModelCriteria} against the entities of one type in the {@link EntityStore}.
+ *
+ * <p>The planner asks the registered {@link Index indexes} for candidates in the order they were
+ * registered, most selective first, and continues with the smallest candidate set. It stops early on a
+ * set of at most one entity. Only if none of them applies, it falls back to the {@link
+ * Builder#fallbackIndex fallback index}, typically all entities of a realm, and without that it scans
+ * all entities of the type. Indexes only have to return a superset of the matching entities, since all
+ * criteria are checked on the candidates afterwards.
+ */
+public final class EntityQueryEngine<E extends AbstractEntity & UpdatableEntity, M> {
+
+    private static final Logger LOG = Logger.getLogger(EntityQueryEngine.class);
+
+    /** Returns the candidates for the criteria, or an empty {@link Optional} if the index does not apply. */
+    @FunctionalInterface
+    public interface Index<E, M> {
+        Optional<? extends Collection<E>> candidates(ModelCriteria<M> criteria);
+    }
+
+    private final Class<E> type;
+    private final Map<SearchableModelField<? super M>, BiFunction<E, String, Collection<?>>> fields;
+    private final List<Index<E, M>> indexes;
+    private final Index<E, M> fallbackIndex;
+
+    private EntityQueryEngine(
+            Class<E> type,
+            Map<SearchableModelField<? super M>, BiFunction<E, String, Collection<?>>> fields,
+            List<Index<E, M>> indexes,
+            Index<E, M> fallbackIndex) {
+        this.type = type;
+        this.fields = fields;
+        this.indexes = indexes;
+        this.fallbackIndex = fallbackIndex;
+    }
+
+    public static <E extends AbstractEntity & UpdatableEntity, M> Builder<E, M> builder(Class<E> type) {
+        return new Builder<>(type);
+    }
+
+    /** Returns the matching entities, in no particular order. */
+    public Stream<E> read(ModelCriteria<M> criteria) {
+        Predicate<E> predicate = compile(criteria);
+        return plan(criteria).stream().filter(predicate);
+    }
+
+    private Collection<E> plan(ModelCriteria<M> criteria) {
+        Collection<E> best = null;
+        for (Index<E, M> index : indexes) {
+            Optional<? extends Collection<E>> candidates = index.candidates(criteria);
+            if (candidates.isPresent() && (best == null || candidates.get().size() < best.size())) {
+                best = candidates.get();
+                if (best.size() <= 1) {
+                    return best;
+                }
+            }
+        }
+        if (best == null && fallbackIndex != null) {
+            best = fallbackIndex.candidates(criteria).orElse(null);
+        }
+        if (best == null) {
+            LOG.tracef("No index for %s %s, scanning", type.getSimpleName(), criteria);
+            return EntityStore.getAll(type);
+        }
+        return best;
+    }
+
+    private Predicate<E> compile(ModelCriteria<M> criteria) {
+        Predicate<E> result = entity -> true;
+        for (Criterion<M> criterion : criteria.getCriteria()) {
+            result = result.and(compile(criterion));
+        }
+        return result;
+    }
+
+    private Predicate<E> compile(Criterion<M> criterion) {
+        if (criterion instanceof Or<M> or) {
+            Predicate<E> result = entity -> false;
+            for (ModelCriteria<M> alternative : or.alternatives()) {
+                result = result.or(compile(alternative));
+            }
+            return result;
+        }
+        Compare<M> compare = (Compare<M>) criterion;
+        BiFunction<E, String, Collection<?>> accessor = fields.get(compare.field());
+        if (accessor == null) {
+            throw new IllegalArgumentException(
+                    "Field " + compare.field().getName() + " is not searchable for " + type.getSimpleName());
+        }
+
+        List<Object> operands = compare.operands();
+        String attributeName = null;
+        if (compare.field().getFieldType() == String[].class) {
+            if (operands.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "Missing attribute name for " + compare.field().getName());
+            }
+            attributeName = (String) operands.get(0);
+            operands = operands.subList(1, operands.size());
+        }
+
+        Predicate<Object> valuePredicate = valuePredicate(compare, operands);
+        String name = attributeName;
+        return switch (compare.operator()) {
+            case EXISTS -> entity -> valuesOf(accessor, entity, name).stream().anyMatch(Objects::nonNull);
+            case NOT_EXISTS -> entity ->
+                    valuesOf(accessor, entity, name).stream().noneMatch(Objects::nonNull);
+            case NE -> entity -> valuesOf(accessor, entity, name).stream().noneMatch(valuePredicate);
+            default -> entity -> valuesOf(accessor, entity, name).stream().anyMatch(valuePredicate);
+        };
+    }
+
+    private static Predicate<Object> valuePredicate(Compare<?> compare, List<Object> operands) {
+        return switch (compare.operator()) {
+            case EQ, NE -> {
+                Object operand = singleOperand(compare, operands);
+                yield value -> Objects.equals(operand, value);
+            }
+            case IN -> {
+                Set<Object> set = new HashSet<>(operands);
+                yield set::contains;
+            }
+            case LIKE, ILIKE -> {
+                LikePattern pattern = LikePattern.compile(
+                        String.valueOf(singleOperand(compare, operands)),
+                        compare.operator() == ModelCriteria.Operator.ILIKE);
+                yield value -> value != null && pattern.matches(value.toString());
+            }
+            case EXISTS, NOT_EXISTS -> Objects::nonNull;
+        };
+    }
+
+    private static Object singleOperand(Compare<?> compare, List<Object> operands) {
+        if (operands.size() != 1) {
+            throw new IllegalArgumentException(
+                    compare.operator() + " on " + compare.field().getName() + " requires exactly one operand");
+        }
+        return operands.get(0);
+    }
+
+    private static <E> Collection<?> valuesOf(BiFunction<E, String, Collection<?>> accessor, E entity, String name) {
+        Collection<?> values = accessor.apply(entity, name);
+        return values == null ? List.of() : values;
+    }
+
+    public static final class Builder<E extends AbstractEntity & UpdatableEntity, M> {
+        private final Class<E> type;
+        private final Map<SearchableModelField<? super M>, BiFunction<E, String, Collection<?>>> fields =
+                new HashMap<>();
+        private final List<Index<E, M>> indexes = new ArrayList<>();
+        private Index<E, M> fallbackIndex;
+
+        private Builder(Class<E> type) {
+            this.type = type;
+        }
+
+        public Builder<E, M> field(SearchableModelField<? super M> field, Function<E, ?> getter) {
+            fields.put(field, (entity, name) -> Collections.singletonList(getter.apply(entity)));
+            return this;
+        }
+
+        public Builder<E, M> multiValuedField(
+                SearchableModelField<? super M> field, Function<E, ? extends Collection<?>> getter) {
+            fields.put(field, (entity, name) -> getter.apply(entity));
+            return this;
+        }
+
+        /** Registers a field whose first operand is the name of the attribute to compare. */
+        public Builder<E, M> attributeField(
+                SearchableModelField<? super M> field, BiFunction<E, String, ? extends Collection<?>> getter) {
+            fields.put(field, getter::apply);
+            return this;
+        }
+
+        public Builder<E, M> index(Index<E, M> index) {
+            indexes.add(index);
+            return this;
+        }
+
+        /**
+         * Registers the index that is only asked if none of the others applies, for broad candidate sets
+         * such as all entities of a realm, which are too expensive to build just to compare sizes.
+         */
+        public Builder<E, M> fallbackIndex(Index<E, M> index) {
+            fallbackIndex = index;
+            return this;
+        }
+
+        public EntityQueryEngine<E, M> build() {
+            return new EntityQueryEngine<>(type, Map.copyOf(fields), List.copyOf(indexes), fallbackIndex);
+        }
+    }
+}
@@ -20,8 +20,12 @@ package de.arbeitsagentur.opdt.keycloak.filestore;
 import de.arbeitsagentur.opdt.keycloak.filestore.client.FileClientEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.SectionedEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.group.FileGroupEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileIdentityProviderEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileIdentityProviderMapperEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileIdentityProviderStore;
 import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.role.FileRoleEntity;
 import java.io.IOException;
@@ -31,6 +35,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -42,13 +47,21 @@ public final class EntityStore {
 
     private static final Map<Path, AbstractEntity> STORE = new ConcurrentHashMap<>();
     private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /** Gets notified about every change of the store. Callbacks run while the write lock is held. */
+    public interface Listener {
+        void onWrite(Path path, AbstractEntity entity);
+
+        void onDelete(Path path, AbstractEntity entity);
+    }
 
     static {
         Path dataDirectory = EntityIO.getRootDirectory();
         try (Stream<Path> realmsStream = Files.walk(dataDirectory, 1)) {
-            realmsStream
-                    .filter(EntityIO::canParseFile)
-                    .forEach(path -> STORE.put(path, EntityIO.parseFile(path, FileRealmEntity.class)));
+            // realms and their sections are read in parallel
+            STORE.putAll(EntityIO.parseFiles(
+                    realmsStream.filter(EntityIO::canParseFile).toList(), FileRealmEntity.class));
 
             for (AbstractEntity abstractEntity : STORE.values()) {
                 if (abstractEntity instanceof FileRealmEntity realm) {
@@ -84,6 +97,33 @@ public final class EntityStore {
                         }
                     }
 
+                    Path identityProviders =
+                            dataDirectory.resolve(realm.getId()).resolve(FileIdentityProviderStore.OBJECT_DIRECTORY);
+                    if (identityProviders.toFile().exists()) {
+                        try (Stream<Path> identityProvidersStream = Files.walk(identityProviders, 1)) {
+                            identityProvidersStream
+                                    .filter(EntityIO::canParseFile)
+                                    .forEach(path -> {
+                                        FileIdentityProviderEntity entity =
+                                                EntityIO.parseFile(path, FileIdentityProviderEntity.class);
+                                        entity.setRealmId(realm.getId());
+                                        STORE.put(path, entity);
+                                    });
+                        }
+                    }
+
+                    Path mappers = identityProviders.resolve(FileIdentityProviderStore.MAPPERS_DIRECTORY);
+                    if (mappers.toFile().exists()) {
+                        try (Stream<Path> mappersStream = Files.walk(mappers, 1)) {
+                            mappersStream.filter(EntityIO::canParseFile).forEach(path -> {
+                                FileIdentityProviderMapperEntity entity =
+                                        EntityIO.parseFile(path, FileIdentityProviderMapperEntity.class);
+                                entity.setRealmId(realm.getId());
+                                STORE.put(path, entity);
+                            });
+                        }
+                    }
+
                     Path roles = dataDirectory.resolve(realm.getId()).resolve("roles");
                     if (roles.toFile().exists()) {
                         try (Stream<Path> rolesStream =
@@ -107,8 +147,14 @@ public final class EntityStore {
         LOCK.writeLock().lock();
 
         try {
-            STORE.remove(path);
+            AbstractEntity removed = STORE.remove(path);
+            if (removed != null) {
+                LISTENERS.forEach(listener -> listener.onDelete(path, removed));
+            }
             Files.delete(path);
+            if (removed instanceof SectionedEntity sectioned) {
+                EntityIO.deleteSectionFiles(sectioned, path);
+            }
             EntityIO.deleteParentDirectoryIfEmpty(path);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -122,6 +168,7 @@ public final class EntityStore {
         try {
             EntityIO.writeToFile(entity, path);
             STORE.put(path, entity);
+            LISTENERS.forEach(listener -> listener.onWrite(path, entity));
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -129,6 +176,17 @@ public final class EntityStore {
         }
     }
 
+    /** Registers a listener and replays all entities that are already in the store to it. */
+    public static void addListener(Listener listener) {
+        LOCK.writeLock().lock();
+        try {
+            STORE.forEach(listener::onWrite);
+            LISTENERS.add(listener);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
     public static <E extends AbstractEntity & UpdatableEntity> List<E> getAll(Class<E> interfaceOfEntity) {
         LOCK.readLock().lock();
 
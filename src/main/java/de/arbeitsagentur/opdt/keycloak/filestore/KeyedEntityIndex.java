@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hash index from keys to the entities of one type, e.g. from {@code (realmId, name)} or from a
+ * referenced role id. An entity may have any number of keys. Like {@link SortedEntityIndex} the index
+ * follows the {@link EntityStore} and is updated incrementally on every write and delete.
+ */
+public final class KeyedEntityIndex<E extends AbstractEntity> implements EntityStore.Listener {
+
+    private final Class<E> type;
+    private final Function<E, Collection<?>> keysFunc;
+
+    // only touched by the store's writer, see EntityStore.Listener
+    private final Map<Path, Set<Object>> keysByPath = new HashMap<>();
+    private final Map<Object, Map<Path, E>> entitiesByKey = new ConcurrentHashMap<>();
+
+    private KeyedEntityIndex(Class<E> type, Function<E, Collection<?>> keysFunc) {
+        this.type = type;
+        this.keysFunc = keysFunc;
+    }
+
+    /**
+     * Creates an index and registers it with the {@link EntityStore}.
+     *
+     * @param keysFunc the keys of an entity, {@code null} keys are ignored
+     */
+    public static <E extends AbstractEntity> KeyedEntityIndex<E> create(
+            Class<E> type, Function<E, Collection<?>> keysFunc) {
+        KeyedEntityIndex<E> index = new KeyedEntityIndex<>(type, keysFunc);
+        EntityStore.addListener(index);
+        return index;
+    }
+
+    public List<E> get(Object key) {
+        Map<Path, E> entities = entitiesByKey.get(key);
+        return entities == null ? List.of() : List.copyOf(entities.values());
+    }
+
+    @Override
+    public void onWrite(Path path, AbstractEntity entity) {
+        remove(path);
+        if (!type.isInstance(entity)) {
+            return;
+        }
+        E typed = type.cast(entity);
+        Collection<?> keys = keysFunc.apply(typed);
+        if (keys == null) {
+            return;
+        }
+        Set<Object> distinct = new HashSet<>();
+        keys.stream().filter(Objects::nonNull).forEach(distinct::add);
+        for (Object key : distinct) {
+            entitiesByKey.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(path, typed);
+        }
+        keysByPath.put(path, distinct);
+    }
+
+    @Override
+    public void onDelete(Path path, AbstractEntity entity) {
+        remove(path);
+    }
+
+    private void remove(Path path) {
+        Set<Object> keys = keysByPath.remove(path);
+        if (keys == null) {
+            return;
+        }
+        for (Object key : keys) {
+            Map<Path, E> entities = entitiesByKey.get(key);
+            if (entities != null) {
+                entities.remove(path);
+                if (entities.isEmpty()) {
+                    entitiesByKey.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A compiled SQL LIKE expression in which {@code %} matches any sequence of characters. Compile the
+ * expression once per query and reuse the instance for every candidate. Depending on the shape of
+ * the expression it matches by equality, prefix, suffix, substring or, for more than one literal
+ * segment, by a left-to-right segment search. Case-insensitive matching compares characters in
+ * place via {@link String#regionMatches(boolean, int, String, int, int)} and does not allocate.
+ */
+public final class LikePattern implements Predicate<String> {
+
+    private enum Kind {
+        ANY,
+        EXACT,
+        PREFIX,
+        SUFFIX,
+        CONTAINS,
+        GLOB
+    }
+
+    private final Kind kind;
+    private final String[] segments;
+    private final boolean anchoredStart;
+    private final boolean anchoredEnd;
+    private final boolean ignoreCase;
+
+    private LikePattern(Kind kind, String[] segments, boolean anchoredStart, boolean anchoredEnd, boolean ignoreCase) {
+        this.kind = kind;
+        this.segments = segments;
+        this.anchoredStart = anchoredStart;
+        this.anchoredEnd = anchoredEnd;
+        this.ignoreCase = ignoreCase;
+    }
+
+    public static LikePattern compile(String expression) {
+        return compile(expression, false);
+    }
+
+    public static LikePattern compileInsensitive(String expression) {
+        return compile(expression, true);
+    }
+
+    public static LikePattern compile(String expression, boolean ignoreCase) {
+        Objects.requireNonNull(expression, "expression");
+        String[] segments =
+                Arrays.stream(expression.split("%+")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+        boolean anchoredStart = !expression.startsWith("%");
+        boolean anchoredEnd = !expression.endsWith("%");
+
+        Kind kind;
+        if (segments.length == 0) {
+            kind = expression.isEmpty() ? Kind.EXACT : Kind.ANY;
+            segments = new String[] {""};
+        } else if (segments.length == 1 && anchoredStart && anchoredEnd) {
+            kind = Kind.EXACT;
+        } else if (segments.length == 1 && anchoredStart) {
+            kind = Kind.PREFIX;
+        } else if (segments.length == 1 && anchoredEnd) {
+            kind = Kind.SUFFIX;
+        } else if (segments.length == 1) {
+            kind = Kind.CONTAINS;
+        } else {
+            kind = Kind.GLOB;
+        }
+        return new LikePattern(kind, segments, anchoredStart, anchoredEnd, ignoreCase);
+    }
+
+    /**
+     * The longest literal part of the expression, e.g. to look up candidates in an index before
+     * matching them. Empty if the expression matches everything.
+     */
+    public String getLongestLiteral() {
+        String longest = "";
+        for (String segment : segments) {
+            if (segment.length() > longest.length()) {
+                longest = segment;
+            }
+        }
+        return longest;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    @Override
+    public boolean test(String value) {
+        return matches(value);
+    }
+
+    public boolean matches(String value) {
+        if (value == null) {
+            return false;
+        }
+        String first = segments[0];
+        return switch (kind) {
+            case ANY -> true;
+            case EXACT -> ignoreCase ? value.equalsIgnoreCase(first) : value.equals(first);
+            case PREFIX -> value.regionMatches(ignoreCase, 0, first, 0, first.length());
+            case SUFFIX -> value.length() >= first.length()
+                    && value.regionMatches(ignoreCase, value.length() - first.length(), first, 0, first.length());
+            case CONTAINS -> indexOf(value, first, 0, value.length()) >= 0;
+            case GLOB -> matchesSegments(value);
+        };
+    }
+
+    private boolean matchesSegments(String value) {
+        int from = 0;
+        int to = value.length();
+        int firstSegment = 0;
+        int lastSegment = segments.length - 1;
+
+        if (anchoredStart) {
+            String head = segments[0];
+            if (!value.regionMatches(ignoreCase, 0, head, 0, head.length())) {
+                return false;
+            }
+            from = head.length();
+            firstSegment = 1;
+        }
+        if (anchoredEnd) {
+            String tail = segments[lastSegment];
+            to = value.length() - tail.length();
+            if (to < from || !value.regionMatches(ignoreCase, to, tail, 0, tail.length())) {
+                return false;
+            }
+            lastSegment--;
+        }
+        for (int i = firstSegment; i <= lastSegment; i++) {
+            int found = indexOf(value, segments[i], from, to);
+            if (found < 0) {
+                return false;
+            }
+            from = found + segments[i].length();
+        }
+        return true;
+    }
+
+    /** Leftmost occurrence of {@code segment} that lies completely within {@code [from, to)}. */
+    private int indexOf(String value, String segment, int from, int to) {
+        int last = to - segment.length();
+        if (!ignoreCase) {
+            int found = value.indexOf(segment, from);
+            return found >= 0 && found <= last ? found : -1;
+        }
+        for (int i = from; i <= last; i++) {
+            if (value.regionMatches(true, i, segment, 0, segment.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
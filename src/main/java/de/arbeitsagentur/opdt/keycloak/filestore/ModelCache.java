@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cross-session cache of immutable models derived from stored entities, e.g. a parsed password
+ * policy or the attribute map of a client. Entities are shared by all sessions, adapters are not, so
+ * without this cache every session derives these models again.
+ *
+ * <p>The cached values of an entity are dropped whenever the entity is written to or deleted from the
+ * {@link EntityStore}. Adapters write through to their entity on every mutation, so the next read
+ * after a mutation, in any session, derives the model from the updated entity. Only values derived
+ * from fields whose setters persist the entity may be cached. Entities that have not been written
+ * yet are not cached at all.
+ */
+public final class ModelCache implements EntityStore.Listener {
+
+    /** A typed key of a value cached per entity. */
+    public static final class Slot<V> {
+        private final String name;
+
+        private Slot(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final ModelCache INSTANCE = new ModelCache();
+
+    static {
+        EntityStore.addListener(INSTANCE);
+    }
+
+    // only touched by the store's writer, see EntityStore.Listener
+    private final Map<Path, AbstractEntity> entitiesByPath = new HashMap<>();
+    // keyed by identity, the stored entities do not override equals
+    private final Map<AbstractEntity, Map<Slot<?>, Object>> valuesByEntity = new ConcurrentHashMap<>();
+
+    private ModelCache() {}
+
+    public static <V> Slot<V> slot(String name) {
+        return new Slot<>(name);
+    }
+
+    /**
+     * Returns the cached value of the entity, deriving it with the loader on a miss. {@code null}
+     * results are not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V get(AbstractEntity entity, Slot<V> slot, Supplier<V> loader) {
+        Map<Slot<?>, Object> values = INSTANCE.valuesByEntity.get(entity);
+        if (values == null) {
+            return loader.get();
+        }
+        Object value = values.get(slot);
+        if (value == null) {
+            value = loader.get();
+            if (value != null) {
+                values.put(slot, value);
+            }
+        }
+        return (V) value;
+    }
+
+    @Override
+    public void onWrite(Path path, AbstractEntity entity) {
+        AbstractEntity previous = entitiesByPath.put(path, entity);
+        if (previous != null && previous != entity) {
+            valuesByEntity.remove(previous);
+        }
+        // a fresh map, so a loader that read the entity before this write cannot populate it
+        valuesByEntity.put(entity, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void onDelete(Path path, AbstractEntity entity) {
+        entitiesByPath.remove(path);
+        valuesByEntity.remove(entity);
+    }
+}
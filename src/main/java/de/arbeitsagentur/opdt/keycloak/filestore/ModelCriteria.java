@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Immutable conjunction of criteria on the {@link SearchableModelField}s of a model, e.g.
+ *
+ * <pre>
+ * ModelCriteria.&lt;ClientModel&gt;criteria()
+ *         .compare(SearchableFields.REALM_ID, Operator.EQ, realmId)
+ *         .compare(SearchableFields.CLIENT_ID, Operator.ILIKE, "%" + search + "%");
+ * </pre>
+ *
+ * The criteria are evaluated by an {@link EntityQueryEngine}, which uses them to pick an index.
+ */
+public final class ModelCriteria<M> {
+
+    public enum Operator {
+        /** Equals the single operand. */
+        EQ,
+        /** Does not equal the single operand. */
+        NE,
+        /** Equals one of the operands, which may also be given as a single collection. */
+        IN,
+        /** Matches the SQL LIKE expression given as single operand, see {@link LikePattern}. */
+        LIKE,
+        /** Like {@link #LIKE}, but ignoring case. */
+        ILIKE,
+        /** Has a value. */
+        EXISTS,
+        /** Has no value. */
+        NOT_EXISTS
+    }
+
+    public sealed interface Criterion<M> permits Compare, Or {}
+
+    /**
+     * Compares a field with the operands. For multi-valued fields the comparison holds if it holds
+     * for any of the values. The first operand of an attribute field is the attribute name.
+     */
+    public record Compare<M>(SearchableModelField<? super M> field, Operator operator, List<Object> operands)
+            implements Criterion<M> {}
+
+    /** Holds if any of the alternatives holds. */
+    public record Or<M>(List<ModelCriteria<M>> alternatives) implements Criterion<M> {}
+
+    private static final ModelCriteria<?> EMPTY = new ModelCriteria<>(List.of());
+
+    private final List<Criterion<M>> criteria;
+
+    private ModelCriteria(List<Criterion<M>> criteria) {
+        this.criteria = criteria;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <M> ModelCriteria<M> criteria() {
+        return (ModelCriteria<M>) EMPTY;
+    }
+
+    public ModelCriteria<M> compare(SearchableModelField<? super M> field, Operator operator, Object... operands) {
+        List<Object> values = operator == Operator.IN && operands.length == 1 && operands[0] instanceof Collection<?> c
+                ? List.copyOf(c)
+                : Collections.unmodifiableList(Arrays.asList(operands.clone()));
+        return and(new Compare<>(field, operator, values));
+    }
+
+    @SafeVarargs
+    public final ModelCriteria<M> or(ModelCriteria<M>... alternatives) {
+        return or(List.of(alternatives));
+    }
+
+    public ModelCriteria<M> or(List<ModelCriteria<M>> alternatives) {
+        return and(new Or<>(List.copyOf(alternatives)));
+    }
+
+    public List<Criterion<M>> getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Returns the single operand a field has to be compared with by the operator, if the criteria
+     * require it: either directly, or in every alternative of a disjunction with the same operand.
+     * Several fields may be given, e.g. for an index that covers more than one field.
+     */
+    @SafeVarargs
+    public final Optional<Object> getOperand(Operator operator, SearchableModelField<? super M>... fields) {
+        List<SearchableModelField<? super M>> fieldList = Arrays.asList(fields);
+        for (Criterion<M> criterion : criteria) {
+            if (criterion instanceof Compare<M> compare
+                    && compare.operator() == operator
+                    && fieldList.contains(compare.field())
+                    && compare.operands().size() == 1) {
+                return Optional.ofNullable(compare.operands().get(0));
+            }
+            if (criterion instanceof Or<M> or && !or.alternatives().isEmpty()) {
+                List<Optional<Object>> operands = or.alternatives().stream()
+                        .map(alternative -> alternative.getOperand(operator, fields))
+                        .toList();
+                if (operands.stream().allMatch(Optional::isPresent)
+                        && operands.stream().distinct().count() == 1) {
+                    return operands.get(0);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** Returns whether the criteria require the field to have no value. */
+    public boolean requiresNoValue(SearchableModelField<? super M> field) {
+        return criteria.stream()
+                .anyMatch(criterion -> criterion instanceof Compare<M> compare
+                        && compare.operator() == Operator.NOT_EXISTS
+                        && compare.field().equals(field));
+    }
+
+    private ModelCriteria<M> and(Criterion<M> criterion) {
+        List<Criterion<M>> result = new ArrayList<>(criteria);
+        result.add(Objects.requireNonNull(criterion));
+        return new ModelCriteria<>(List.copyOf(result));
+    }
+
+    @Override
+    public String toString() {
+        return criteria.toString();
+    }
+}
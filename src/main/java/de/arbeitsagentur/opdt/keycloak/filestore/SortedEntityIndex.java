@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the entities of one type sorted by a key, split into buckets (e.g. one bucket per realm).
+ * The index follows the {@link EntityStore}, so it also sees entities that were mutated in place
+ * before they were written.
+ *
+ * <p>Every bucket is an immutable sorted array that is replaced on change. Readers never lock and
+ * get a page by array offset; writes cost O(n) per bucket, which is fine since writes are rare.
+ */
+public final class SortedEntityIndex<E extends AbstractEntity> implements EntityStore.Listener {
+
+    private static final Entry<?>[] EMPTY = new Entry<?>[0];
+
+    private static final Comparator<Entry<?>> ORDER = Comparator.<Entry<?>, String>comparing(
+                    Entry::key, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Entry::path);
+
+    private final Class<E> type;
+    private final Function<E, Object> bucketFunc;
+    private final Function<E, String> keyFunc;
+
+    // only touched by the store's writer, see EntityStore.Listener
+    private final Map<Path, Entry<E>> entriesByPath = new HashMap<>();
+    private final Map<Object, Entry<?>[]> buckets = new ConcurrentHashMap<>();
+
+    private record Entry<E>(Object bucket, String key, Path path, E entity) {}
+
+    private SortedEntityIndex(Class<E> type, Function<E, Object> bucketFunc, Function<E, String> keyFunc) {
+        this.type = type;
+        this.bucketFunc = bucketFunc;
+        this.keyFunc = keyFunc;
+    }
+
+    /**
+     * Creates an index and registers it with the {@link EntityStore}.
+     *
+     * @param bucketFunc the bucket of an entity; entities without a bucket ({@code null}) are not indexed
+     * @param keyFunc the sort key within a bucket
+     */
+    public static <E extends AbstractEntity> SortedEntityIndex<E> create(
+            Class<E> type, Function<E, Object> bucketFunc, Function<E, String> keyFunc) {
+        SortedEntityIndex<E> index = new SortedEntityIndex<>(type, bucketFunc, keyFunc);
+        EntityStore.addListener(index);
+        return index;
+    }
+
+    /** Returns a page of a bucket, with the same semantics as {@code StreamsUtil.paginatedStream}. */
+    public List<E> page(Object bucket, Integer first, Integer max) {
+        Entry<?>[] entries = buckets.getOrDefault(bucket, EMPTY);
+        int from = first == null || first < 0 ? 0 : Math.min(first, entries.length);
+        int to = max == null || max < 0 ? entries.length : (int) Math.min((long) from + max, entries.length);
+        return Arrays.stream(entries, from, to).map(e -> type.cast(e.entity())).toList();
+    }
+
+    public List<E> getAll(Object bucket) {
+        return page(bucket, null, null);
+    }
+
+    public int size(Object bucket) {
+        return buckets.getOrDefault(bucket, EMPTY).length;
+    }
+
+    @Override
+    public void onWrite(Path path, AbstractEntity entity) {
+        remove(path);
+        if (!type.isInstance(entity)) {
+            return;
+        }
+        E typed = type.cast(entity);
+        Object bucket = bucketFunc.apply(typed);
+        if (bucket == null) {
+            return;
+        }
+        Entry<E> entry = new Entry<>(bucket, keyFunc.apply(typed), path, typed);
+        entriesByPath.put(path, entry);
+        Entry<?>[] current = buckets.getOrDefault(bucket, EMPTY);
+        int insertAt = -Arrays.binarySearch(current, entry, ORDER) - 1;
+        Entry<?>[] updated = new Entry<?>[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = entry;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        buckets.put(bucket, updated);
+    }
+
+    @Override
+    public void onDelete(Path path, AbstractEntity entity) {
+        remove(path);
+    }
+
+    private void remove(Path path) {
+        Entry<E> old = entriesByPath.remove(path);
+        if (old == null) {
+            return;
+        }
+        Entry<?>[] current = buckets.getOrDefault(old.bucket(), EMPTY);
+        int at = Arrays.binarySearch(current, old, ORDER);
+        if (at < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            buckets.remove(old.bucket());
+            return;
+        }
+        Entry<?>[] updated = new Entry<?>[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        System.arraycopy(current, at + 1, updated, at, current.length - at - 1);
+        buckets.put(old.bucket(), updated);
+    }
+}
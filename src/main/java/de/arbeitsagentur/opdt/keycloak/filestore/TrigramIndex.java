@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+/**
+ * Case-insensitive trigram index over one or more text fields of an entity type, split into buckets
+ * (e.g. one bucket per realm). It only narrows down the candidates of a substring search: every
+ * entity that contains a literal contains all trigrams of it, but not the other way round, so
+ * callers still have to match the candidates against their pattern.
+ *
+ * <p>Like {@link SortedEntityIndex} the index follows the {@link EntityStore} and is updated
+ * incrementally on every write and delete.
+ */
+public final class TrigramIndex<E extends AbstractEntity> implements EntityStore.Listener {
+
+    private final Class<E> type;
+    private final Function<E, String> bucketFunc;
+    private final Function<E, List<String>> textsFunc;
+
+    // only touched by the store's writer, see EntityStore.Listener
+    private final Map<Path, Entry> entriesByPath = new HashMap<>();
+    private final Map<Path, E> entities = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, Set<Path>>> postings = new ConcurrentHashMap<>();
+
+    private record Entry(String bucket, long[] trigrams) {}
+
+    private TrigramIndex(Class<E> type, Function<E, String> bucketFunc, Function<E, List<String>> textsFunc) {
+        this.type = type;
+        this.bucketFunc = bucketFunc;
+        this.textsFunc = textsFunc;
+    }
+
+    /**
+     * Creates an index and registers it with the {@link EntityStore}.
+     *
+     * @param bucketFunc the bucket of an entity; entities without a bucket ({@code null}) are not indexed
+     * @param textsFunc the texts to index, {@code null} elements are ignored
+     */
+    public static <E extends AbstractEntity> TrigramIndex<E> create(
+            Class<E> type, Function<E, String> bucketFunc, Function<E, List<String>> textsFunc) {
+        TrigramIndex<E> index = new TrigramIndex<>(type, bucketFunc, textsFunc);
+        EntityStore.addListener(index);
+        return index;
+    }
+
+    /**
+     * Returns the entities of a bucket whose texts contain all trigrams of {@code literal}, ignoring
+     * case. Returns an empty {@link Optional} if the literal is too short to narrow anything down.
+     */
+    public Optional<List<E>> candidates(String bucket, String literal) {
+        if (literal == null || literal.length() < 3) {
+            return Optional.empty();
+        }
+        Map<Long, Set<Path>> bucketPostings = postings.get(bucket);
+        if (bucketPostings == null) {
+            return Optional.of(List.of());
+        }
+        List<Set<Path>> sets = new ArrayList<>();
+        for (long trigram : trigrams(List.of(literal))) {
+            Set<Path> paths = bucketPostings.get(trigram);
+            if (paths == null) {
+                return Optional.of(List.of());
+            }
+            sets.add(paths);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        List<E> result = new ArrayList<>();
+        for (Path path : sets.get(0)) {
+            if (sets.stream().skip(1).allMatch(paths -> paths.contains(path))) {
+                E entity = entities.get(path);
+                if (entity != null) {
+                    result.add(entity);
+                }
+            }
+        }
+        return Optional.of(result);
+    }
+
+    @Override
+    public void onWrite(Path path, AbstractEntity entity) {
+        remove(path);
+        if (!type.isInstance(entity)) {
+            return;
+        }
+        E typed = type.cast(entity);
+        String bucket = bucketFunc.apply(typed);
+        if (bucket == null) {
+            return;
+        }
+        long[] trigrams = trigrams(textsFunc.apply(typed));
+        Map<Long, Set<Path>> bucketPostings = postings.computeIfAbsent(bucket, b -> new ConcurrentHashMap<>());
+        for (long trigram : trigrams) {
+            bucketPostings
+                    .computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet())
+                    .add(path);
+        }
+        entities.put(path, typed);
+        entriesByPath.put(path, new Entry(bucket, trigrams));
+    }
+
+    @Override
+    public void onDelete(Path path, AbstractEntity entity) {
+        remove(path);
+    }
+
+    private void remove(Path path) {
+        Entry old = entriesByPath.remove(path);
+        if (old == null) {
+            return;
+        }
+        entities.remove(path);
+        Map<Long, Set<Path>> bucketPostings = postings.get(old.bucket());
+        if (bucketPostings == null) {
+            return;
+        }
+        for (long trigram : old.trigrams()) {
+            Set<Path> paths = bucketPostings.get(trigram);
+            if (paths != null) {
+                paths.remove(path);
+                if (paths.isEmpty()) {
+                    bucketPostings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    private static long[] trigrams(List<String> texts) {
+        LongStream.Builder builder = LongStream.builder();
+        texts.stream().filter(Objects::nonNull).forEach(text -> {
+            for (int i = 0; i + 2 < text.length(); i++) {
+                builder.add(((long) fold(text.charAt(i)) << 32)
+                        | ((long) fold(text.charAt(i + 1)) << 16)
+                        | fold(text.charAt(i + 2)));
+            }
+        });
+        return builder.build().distinct().toArray();
+    }
+
+    /** Folds case the same way {@link String#regionMatches(boolean, int, String, int, int)} compares. */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
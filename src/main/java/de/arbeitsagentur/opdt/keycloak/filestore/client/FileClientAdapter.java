@@ -17,6 +17,7 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.client;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.TimeAdapter;
 import java.security.MessageDigest;
 import java.util.*;
@@ -29,11 +30,12 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 public abstract class FileClientAdapter extends AbstractClientModel<FileClientEntity> implements ClientModel {
 
     private static final Logger LOG = Logger.getLogger(FileClientAdapter.class);
-    private final FileProtocolMapperUtils pmUtils;
+    private static final ModelCache.Slot<Set<String>> WEB_ORIGINS = ModelCache.slot("webOrigins");
+    private static final ModelCache.Slot<Set<String>> REDIRECT_URIS = ModelCache.slot("redirectUris");
+    private static final ModelCache.Slot<Map<String, String>> ATTRIBUTES = ModelCache.slot("attributes");
 
     public FileClientAdapter(KeycloakSession session, RealmModel realm, FileClientEntity entity) {
         super(session, realm, entity);
-        pmUtils = FileProtocolMapperUtils.instanceFor(safeGetProtocol());
     }
 
     @Override
@@ -106,8 +108,8 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
 
     @Override
     public Set<String> getWebOrigins() {
-        final Set<String> webOrigins = new HashSet<>(entity.getWebOrigins());
-        return webOrigins == null ? Collections.emptySet() : webOrigins;
+        return ModelCache.get(
+                entity, WEB_ORIGINS, () -> Collections.unmodifiableSet(new HashSet<>(entity.getWebOrigins())));
     }
 
     @Override
@@ -127,8 +129,8 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
 
     @Override
     public Set<String> getRedirectUris() {
-        final Set<String> redirectUris = new HashSet<>(entity.getRedirectUris());
-        return redirectUris == null ? Collections.emptySet() : redirectUris;
+        return ModelCache.get(
+                entity, REDIRECT_URIS, () -> Collections.unmodifiableSet(new HashSet<>(entity.getRedirectUris())));
     }
 
     @Override
@@ -270,6 +272,10 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
 
     @Override
     public Map<String, String> getAttributes() {
+        return ModelCache.get(entity, ATTRIBUTES, () -> Collections.unmodifiableMap(convertAttributes()));
+    }
+
+    private Map<String, String> convertAttributes() {
         final Map<String, List<String>> attributes = entity.getMultiValueAttributes();
         final Map<String, List<String>> a = attributes == null ? Collections.emptyMap() : attributes;
         return a.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> {
@@ -473,10 +479,7 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
 
     @Override
     public Stream<ProtocolMapperModel> getProtocolMappersStream() {
-        final Set<FileProtocolMapperEntity> protocolMappers = new HashSet<>(entity.getProtocolMappers());
-        return protocolMappers == null
-                ? Stream.empty()
-                : protocolMappers.stream().distinct().map(pmUtils::toModel);
+        return entity.getProtocolMapperIndex(safeGetProtocol()).stream();
     }
 
     @Override
@@ -493,7 +496,7 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
             pm.setConfig(new HashMap<>());
         }
         entity.addProtocolMapper(pm);
-        return pmUtils.toModel(pm);
+        return FileProtocolMapperUtils.instanceFor(safeGetProtocol()).toModel(pm);
     }
 
     @Override
@@ -517,22 +520,15 @@ public abstract class FileClientAdapter extends AbstractClientModel<FileClientEn
 
     @Override
     public ProtocolMapperModel getProtocolMapperById(String id) {
-        return entity.getProtocolMapper(id).map(pmUtils::toModel).orElse(null);
+        return entity.getProtocolMapperIndex(safeGetProtocol()).getById(id);
     }
 
     @Override
     public ProtocolMapperModel getProtocolMapperByName(String protocol, String name) {
-        final Set<FileProtocolMapperEntity> protocolMappers = new HashSet<>(entity.getProtocolMappers());
         if (!Objects.equals(protocol, safeGetProtocol())) {
             return null;
         }
-        return protocolMappers == null
-                ? null
-                : protocolMappers.stream()
-                        .filter(pm -> Objects.equals(pm.getName(), name))
-                        .map(pmUtils::toModel)
-                        .findAny()
-                        .orElse(null);
+        return entity.getProtocolMapperIndex(protocol).getByName(name);
     }
 
     @Override
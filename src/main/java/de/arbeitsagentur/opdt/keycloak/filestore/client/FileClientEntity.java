@@ -17,6 +17,7 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.client;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeResolutionCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import java.util.*;
@@ -59,6 +60,7 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
     private String id;
     private Map<String, Object> attributes = new HashMap<>();
     private boolean updated;
+    private transient volatile FileProtocolMapperIndex protocolMapperIndex;
 
     public Map<String, Boolean> getClientScopes() {
         return this.clientScopes;
@@ -77,6 +79,7 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
         Boolean currentValue = this.clientScopes.get(id);
         if (currentValue != defaultScope) {
             this.clientScopes.put(id, defaultScope);
+            FileClientScopeResolutionCache.invalidateClient(realmId, this.id);
             FileClientStore.update(this);
         }
     }
@@ -84,23 +87,37 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
     public void removeClientScope(String id) {
         if (this.clientScopes.containsKey(id)) {
             this.clientScopes.remove(id);
+            FileClientScopeResolutionCache.invalidateClient(realmId, this.id);
             FileClientStore.update(this);
         }
     }
 
     public Optional<FileProtocolMapperEntity> getProtocolMapper(String id) {
-        return this.protocolMappers.stream()
-                .filter(mapper -> mapper.getId().equals(id))
-                .findFirst();
+        // the mapper entities do not depend on the protocol, so the current index serves whatever it is for
+        FileProtocolMapperIndex index = this.protocolMapperIndex;
+        if (index == null) {
+            index = getProtocolMapperIndex(this.protocol == null ? "openid-connect" : this.protocol);
+        }
+        return Optional.ofNullable(index.getEntityById(id));
     }
 
     public List<FileProtocolMapperEntity> getProtocolMappers() {
         return this.protocolMappers == null ? Collections.emptyList() : this.protocolMappers;
     }
 
+    public FileProtocolMapperIndex getProtocolMapperIndex(String protocol) {
+        FileProtocolMapperIndex index = this.protocolMapperIndex;
+        if (index == null || !index.isFor(protocol)) {
+            index = FileProtocolMapperIndex.of(protocol, getProtocolMappers());
+            this.protocolMapperIndex = index;
+        }
+        return index;
+    }
+
     public void addProtocolMapper(FileProtocolMapperEntity mapping) {
         if (!this.protocolMappers.contains(mapping)) {
             this.protocolMappers.add(mapping);
+            this.protocolMapperIndex = null;
             FileClientStore.update(this);
         }
     }
@@ -109,6 +126,7 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
         boolean removed = this.protocolMappers.removeIf(mapper -> mapper.getId().equals(id));
 
         if (removed) {
+            this.protocolMapperIndex = null;
             FileClientStore.update(this);
         }
     }
@@ -424,6 +442,7 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
     public void setProtocol(String protocol) {
         if (!Objects.equals(this.protocol, protocol)) {
             this.protocol = protocol;
+            FileClientScopeResolutionCache.invalidateClient(realmId, id);
             FileClientStore.update(this);
         }
     }
@@ -539,7 +558,9 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
     }
 
     public void removeAttribute(String name) {
-        this.attributes.remove(name);
+        if (this.attributes.remove(name) != null) {
+            FileClientStore.update(this);
+        }
     }
 
     @Override
@@ -560,12 +581,14 @@ public class FileClientEntity implements AbstractEntity, UpdatableEntity {
     public void setClientScopes(Map<String, Boolean> clientScopes) {
         if (!Objects.equals(this.clientScopes, clientScopes)) {
             this.clientScopes = clientScopes;
+            FileClientScopeResolutionCache.invalidateClient(realmId, id);
         }
     }
 
     public void setProtocolMappers(List<FileProtocolMapperEntity> protocolMappers) {
         if (!Objects.equals(this.protocolMappers, protocolMappers)) {
             this.protocolMappers = protocolMappers;
+            this.protocolMapperIndex = null;
         }
     }
 
@@ -17,10 +17,15 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.client;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 import static org.keycloak.utils.StreamsUtil.paginatedStream;
 
-import de.arbeitsagentur.opdt.keycloak.filestore.SearchPatterns;
+import de.arbeitsagentur.opdt.keycloak.filestore.AdapterIdentityMap;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeProvider;
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeResolutionCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.TimeAdapter;
 import java.util.*;
@@ -37,11 +42,13 @@ public class FileClientProvider implements ClientProvider {
 
     private static final Logger LOG = Logger.getLogger(FileClientProvider.class);
     private final KeycloakSession session;
+    private final AdapterIdentityMap adapters;
     private final ConcurrentMap<String, ConcurrentMap<String, Long>> clientRegisteredNodesStore;
 
     public FileClientProvider(
             KeycloakSession session, ConcurrentMap<String, ConcurrentMap<String, Long>> clientRegisteredNodesStore) {
         this.session = session;
+        this.adapters = AdapterIdentityMap.of(session);
         this.clientRegisteredNodesStore = clientRegisteredNodesStore;
     }
 
@@ -62,39 +69,47 @@ public class FileClientProvider implements ClientProvider {
     private <T extends FileClientEntity> Function<T, ClientModel> entityToAdapterFunc(RealmModel realm) {
         // Clone entity before returning back, to avoid giving away a reference to the live object to
         // the caller
-        return origEntity -> new FileClientAdapter(session, realm, origEntity) {
-            @Override
-            public void updateClient() {
-                LOG.tracef("updateClient(%s)%s", realm, origEntity.getId(), getShortStackTrace());
-                session.getKeycloakSessionFactory().publish(clientUpdatedEvent(this));
-            }
-
-            /** This is runtime information and should have never been part of the adapter */
-            @Override
-            public Map<String, Integer> getRegisteredNodes() {
-                return Collections.unmodifiableMap(getMapForEntity().entrySet().stream()
-                        .collect(Collectors.toMap(
-                                Map.Entry::getKey,
-                                e -> TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(e.getValue()))));
-            }
-
-            @Override
-            public void registerNode(String nodeHost, int registrationTime) {
-                getMapForEntity()
-                        .put(
-                                nodeHost,
-                                TimeAdapter.fromIntegerWithTimeInSecondsToLongWithTimeAsInSeconds(registrationTime));
-            }
-
-            @Override
-            public void unregisterNode(String nodeHost) {
-                getMapForEntity().remove(nodeHost);
-            }
-
-            private ConcurrentMap<String, Long> getMapForEntity() {
-                return clientRegisteredNodesStore.computeIfAbsent(entity.getId(), k -> new ConcurrentHashMap<>());
-            }
-        };
+        return origEntity -> adapters.get(
+                ClientModel.class,
+                realm,
+                origEntity,
+                origEntity.getId(),
+                () -> new FileClientAdapter(session, realm, origEntity) {
+                    @Override
+                    public void updateClient() {
+                        LOG.tracef("updateClient(%s)%s", realm, origEntity.getId(), getShortStackTrace());
+                        session.getKeycloakSessionFactory().publish(clientUpdatedEvent(this));
+                    }
+
+                    /** This is runtime information and should have never been part of the adapter */
+                    @Override
+                    public Map<String, Integer> getRegisteredNodes() {
+                        return Collections.unmodifiableMap(getMapForEntity().entrySet().stream()
+                                .collect(Collectors.toMap(
+                                        Map.Entry::getKey,
+                                        e -> TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
+                                                e.getValue()))));
+                    }
+
+                    @Override
+                    public void registerNode(String nodeHost, int registrationTime) {
+                        getMapForEntity()
+                                .put(
+                                        nodeHost,
+                                        TimeAdapter.fromIntegerWithTimeInSecondsToLongWithTimeAsInSeconds(
+                                                registrationTime));
+                    }
+
+                    @Override
+                    public void unregisterNode(String nodeHost) {
+                        getMapForEntity().remove(nodeHost);
+                    }
+
+                    private ConcurrentMap<String, Long> getMapForEntity() {
+                        return clientRegisteredNodesStore.computeIfAbsent(
+                                entity.getId(), k -> new ConcurrentHashMap<>());
+                    }
+                });
     }
 
     private boolean isEntityPartOfRealm(RealmModel realm, FileClientEntity entity) {
@@ -103,16 +118,13 @@ public class FileClientProvider implements ClientProvider {
 
     @Override
     public Stream<ClientModel> getClientsStream(RealmModel realm, Integer firstResult, Integer maxResults) {
-        Stream<ClientModel> clients = getClientsStream(realm);
-        return paginatedStream(clients, firstResult, maxResults);
+        return FileClientStore.readSorted(realm.getId(), firstResult, maxResults).stream()
+                .map(entityToAdapterFunc(realm));
     }
 
     @Override
     public Stream<ClientModel> getClientsStream(RealmModel realm) {
-        return FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(ClientModel::getClientId));
+        return getClientsStream(realm, null, null);
     }
 
     @Override
@@ -149,9 +161,7 @@ public class FileClientProvider implements ClientProvider {
 
     @Override
     public Stream<ClientModel> getAlwaysDisplayInConsoleClientsStream(RealmModel realm) {
-        return FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .filter(client -> Boolean.TRUE.equals(client.isAlwaysDisplayInConsole()))
+        return FileClientStore.read(criteria(realm).compare(SearchableFields.ALWAYS_DISPLAY_IN_CONSOLE, EQ, true))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(ClientModel::getClientId));
     }
@@ -177,15 +187,14 @@ public class FileClientProvider implements ClientProvider {
 
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.CLIENT_BEFORE_REMOVE, realm, client);
         FileClientStore.deleteById(id, realm.getId());
+        adapters.clear();
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.CLIENT_AFTER_REMOVE, client);
         return true;
     }
 
     @Override
     public long getClientsCount(RealmModel realm) {
-        return FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .count();
+        return FileClientStore.count(realm.getId());
     }
 
     @Override
@@ -210,9 +219,7 @@ public class FileClientProvider implements ClientProvider {
             return null;
         }
 
-        return FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .filter(client -> clientId.equals(client.getClientId()))
+        return FileClientStore.read(criteria(realm).compare(SearchableFields.CLIENT_ID, EQ, clientId))
                 .map(entityToAdapterFunc(realm))
                 .findFirst()
                 .orElse(null);
@@ -225,9 +232,8 @@ public class FileClientProvider implements ClientProvider {
             return Stream.empty();
         }
 
-        Stream<ClientModel> clients = FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .filter(client -> SearchPatterns.insensitiveLike(client.getClientId(), "%" + clientId + "%"))
+        Stream<ClientModel> clients = FileClientStore.read(
+                        criteria(realm).compare(SearchableFields.CLIENT_ID, ILIKE, "%" + clientId + "%"))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(ClientModel::getClientId));
 
@@ -237,17 +243,13 @@ public class FileClientProvider implements ClientProvider {
     @Override
     public Stream<ClientModel> searchClientsByAttributes(
             RealmModel realm, Map<String, String> attributes, Integer firstResult, Integer maxResults) {
-        Stream<ClientModel> clients = FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(ClientModel::getClientId));
-
+        ModelCriteria<ClientModel> criteria = criteria(realm);
         for (Map.Entry<String, String> entry : attributes.entrySet()) {
-            clients = clients.filter(client -> {
-                var attr = client.getAttribute(entry.getKey());
-                return attr != null && attr.contains(entry.getValue());
-            });
+            criteria = criteria.compare(SearchableFields.ATTRIBUTE, EQ, entry.getKey(), entry.getValue());
         }
+        Stream<ClientModel> clients = FileClientStore.read(criteria)
+                .map(entityToAdapterFunc(realm))
+                .sorted(Comparator.comparing(ClientModel::getClientId));
 
         return paginatedStream(clients, firstResult, maxResults);
     }
@@ -285,8 +287,8 @@ public class FileClientProvider implements ClientProvider {
 
     @Override
     public void addClientScopeToAllClients(RealmModel realm, ClientScopeModel clientScope, boolean defaultClientScope) {
-        FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
+        FileClientStore.read(criteria(realm))
+                .toList()
                 .forEach(client -> client.setClientScope(clientScope.getId(), defaultClientScope));
     }
 
@@ -299,11 +301,16 @@ public class FileClientProvider implements ClientProvider {
         // Defaults to openid-connect
         String clientProtocol = client.getProtocol() == null ? "openid-connect" : client.getProtocol();
         LOG.tracef("getClientScopes(%s, %s, %b)%s", realm, client, defaultScopes, getShortStackTrace());
-        return entity.getClientScopes(defaultScopes)
-                .map(clientScopeId -> session.clientScopes().getClientScopeById(realm, clientScopeId))
-                .filter(Objects::nonNull)
-                .filter(clientScope -> Objects.equals(clientScope.getProtocol(), clientProtocol))
-                .collect(Collectors.toMap(ClientScopeModel::getName, Function.identity()));
+        Map<String, ClientScopeModel> result = new HashMap<>();
+        FileClientScopeResolutionCache.getClientScopes(
+                        realm.getId(),
+                        entity.getId(),
+                        clientProtocol,
+                        defaultScopes,
+                        () -> entity.getClientScopes(defaultScopes))
+                .forEach((name, clientScope) ->
+                        result.put(name, FileClientScopeProvider.toAdapter(session, realm, clientScope)));
+        return result;
     }
 
     /**
@@ -313,9 +320,8 @@ public class FileClientProvider implements ClientProvider {
     @Deprecated(forRemoval = true)
     @Override
     public Map<ClientModel, Set<String>> getAllRedirectUrisOfEnabledClients(RealmModel realm) {
-        try (Stream<FileClientEntity> st = FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .filter(client -> Boolean.TRUE.equals(client.isEnabled()))
+        try (Stream<FileClientEntity> st = FileClientStore.read(
+                        criteria(realm).compare(SearchableFields.ENABLED, EQ, true))
                 .sorted(Comparator.comparing(FileClientEntity::getClientId))) {
             return st.filter(mce -> mce.getRedirectUris() != null
                             && !mce.getRedirectUris().isEmpty())
@@ -325,9 +331,8 @@ public class FileClientProvider implements ClientProvider {
     }
 
     public void preRemove(RealmModel realm, RoleModel role) {
-        try (Stream<FileClientEntity> toRemove = FileClientStore.readAll().stream()
-                .filter(client -> realm.getId().equals(client.getRealmId()))
-                .filter(client -> client.getScopeMappings().contains(role.getId()))
+        try (Stream<FileClientEntity> toRemove = FileClientStore.read(
+                        criteria(realm).compare(SearchableFields.SCOPE_MAPPING_ROLE, EQ, role.getId()))
                 .sorted(Comparator.comparing(FileClientEntity::getClientId))) {
             toRemove.forEach(clientEntity -> clientEntity.removeScopeMapping(role.getId()));
         }
@@ -338,6 +343,10 @@ public class FileClientProvider implements ClientProvider {
         FileClientStore.deleteByRealmId(realm.getId());
     }
 
+    private static ModelCriteria<ClientModel> criteria(RealmModel realm) {
+        return ModelCriteria.<ClientModel>criteria().compare(SearchableFields.REALM_ID, EQ, realm.getId());
+    }
+
     @Override
     public void close() {}
 }
@@ -17,16 +17,76 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.client;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.LIKE;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.AttributeIndex;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityQueryEngine;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.TrigramIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeResolutionCache;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.keycloak.models.ClientModel;
 
 /** Note: The clientId is the filename, not the id. */
 public class FileClientStore {
 
     private static final String OBJECT_DIRECTORY = "clients";
+    private static final SortedEntityIndex<FileClientEntity> BY_CLIENT_ID = SortedEntityIndex.create(
+            FileClientEntity.class, FileClientEntity::getRealmId, FileClientEntity::getClientId);
+    private static final TrigramIndex<FileClientEntity> CLIENT_ID_TRIGRAMS = TrigramIndex.create(
+            FileClientEntity.class,
+            FileClientEntity::getRealmId,
+            client -> Collections.singletonList(client.getClientId()));
+    private static final KeyedEntityIndex<FileClientEntity> BY_EXACT_CLIENT_ID = KeyedEntityIndex.create(
+            FileClientEntity.class, client -> List.of(new Key(client.getRealmId(), client.getClientId())));
+    private static final KeyedEntityIndex<FileClientEntity> BY_SCOPE_MAPPING =
+            KeyedEntityIndex.create(FileClientEntity.class, client -> client.getScopeMappings().stream()
+                    .map(roleId -> new Key(client.getRealmId(), roleId))
+                    .toList());
+
+    private static final AttributeIndex<FileClientEntity> BY_ATTRIBUTE = AttributeIndex.create(
+            FileClientEntity.class, FileClientEntity::getRealmId, FileClientEntity::getAttributes);
+
+    private static final EntityQueryEngine<FileClientEntity, ClientModel> QUERY =
+            EntityQueryEngine.<FileClientEntity, ClientModel>builder(FileClientEntity.class)
+                    .field(SearchableFields.ID, FileClientEntity::getId)
+                    .field(SearchableFields.REALM_ID, FileClientEntity::getRealmId)
+                    .field(SearchableFields.CLIENT_ID, FileClientEntity::getClientId)
+                    .field(SearchableFields.ENABLED, FileClientEntity::isEnabled)
+                    .field(SearchableFields.ALWAYS_DISPLAY_IN_CONSOLE, FileClientEntity::isAlwaysDisplayInConsole)
+                    .multiValuedField(SearchableFields.SCOPE_MAPPING_ROLE, FileClientEntity::getScopeMappings)
+                    .attributeField(SearchableFields.ATTRIBUTE, FileClientEntity::getAttribute)
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.CLIENT_ID)
+                                    .map(clientId -> BY_EXACT_CLIENT_ID.get(new Key(realmId, clientId)))))
+                    .index(criteria -> realmId(criteria).flatMap(realmId -> criteria.getOperand(
+                                    ILIKE, SearchableFields.CLIENT_ID)
+                            .or(() -> criteria.getOperand(LIKE, SearchableFields.CLIENT_ID))
+                            .flatMap(pattern -> CLIENT_ID_TRIGRAMS.candidates(
+                                    realmId,
+                                    LikePattern.compile(pattern.toString()).getLongestLiteral()))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.SCOPE_MAPPING_ROLE)
+                                    .map(roleId -> BY_SCOPE_MAPPING.get(new Key(realmId, roleId)))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> BY_ATTRIBUTE.candidates(realmId, criteria, SearchableFields.ATTRIBUTE)))
+                    .fallbackIndex(criteria -> realmId(criteria).map(BY_CLIENT_ID::getAll))
+                    .build();
+
+    /** Key of the hash indexes, which are scoped to a realm. */
+    private record Key(String realmId, Object value) {}
 
     public static FileClientEntity read(String clientId, String realmId) {
         Path expectedPath = createFilePath(clientId, realmId);
@@ -44,6 +104,20 @@ public class FileClientStore {
         return EntityStore.getAll(FileClientEntity.class);
     }
 
+    /** Returns a page of the clients of a realm, sorted by clientId. */
+    public static List<FileClientEntity> readSorted(String realmId, Integer first, Integer max) {
+        return BY_CLIENT_ID.page(realmId, first, max);
+    }
+
+    /** Returns the clients matching the criteria, in no particular order. */
+    public static Stream<FileClientEntity> read(ModelCriteria<ClientModel> criteria) {
+        return QUERY.read(criteria);
+    }
+
+    public static int count(String realmId) {
+        return BY_CLIENT_ID.size(realmId);
+    }
+
     public static FileClientEntity update(FileClientEntity entity) {
         if (entity.getId() == null || entity.getRealmId() == null) {
             return null;
@@ -57,6 +131,7 @@ public class FileClientStore {
         if (clientId != null && realmId != null) {
             Path expectedPath = createFilePath(clientId, realmId);
             EntityStore.delete(expectedPath);
+            FileClientScopeResolutionCache.invalidateClient(realmId, clientId);
         }
     }
 
@@ -71,4 +146,8 @@ public class FileClientStore {
         return EntityIO.getPathForIdAndParentPath(
                 groupId, EntityIO.getRootDirectory().resolve(realmId).resolve(OBJECT_DIRECTORY));
     }
+
+    private static Optional<String> realmId(ModelCriteria<ClientModel> criteria) {
+        return criteria.getOperand(EQ, SearchableFields.REALM_ID).map(String.class::cast);
+    }
 }
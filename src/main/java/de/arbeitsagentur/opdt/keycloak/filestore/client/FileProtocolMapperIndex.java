@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.keycloak.models.ProtocolMapperModel;
+
+/**
+ * Precomputed view of the protocol mappers of a client or client scope. The models are converted and
+ * looked up once and shared between sessions, but every read hands out a copy with a mutable config, as
+ * callers such as Keycloak's migrations edit the mappers they get. Entities keep an instance of this
+ * class and drop it whenever their mappers or their protocol change.
+ */
+public final class FileProtocolMapperIndex {
+
+    private final String protocol;
+    private final List<ProtocolMapperModel> mappers;
+    private final Map<String, ProtocolMapperModel> byId;
+    private final Map<String, ProtocolMapperModel> byName;
+    private final Map<String, FileProtocolMapperEntity> entitiesById;
+
+    private FileProtocolMapperIndex(
+            String protocol, List<ProtocolMapperModel> mappers, Map<String, FileProtocolMapperEntity> entitiesById) {
+        this.protocol = protocol;
+        this.entitiesById = entitiesById;
+        this.mappers = Collections.unmodifiableList(mappers);
+        Map<String, ProtocolMapperModel> ids = new HashMap<>();
+        Map<String, ProtocolMapperModel> names = new HashMap<>();
+        for (ProtocolMapperModel mapper : mappers) {
+            if (mapper.getId() != null) {
+                ids.putIfAbsent(mapper.getId(), mapper);
+            }
+            if (mapper.getName() != null) {
+                names.putIfAbsent(mapper.getName(), mapper);
+            }
+        }
+        this.byId = ids;
+        this.byName = names;
+    }
+
+    public static FileProtocolMapperIndex of(String protocol, List<FileProtocolMapperEntity> entities) {
+        FileProtocolMapperUtils pmUtils = FileProtocolMapperUtils.instanceFor(protocol);
+        // same semantics as Stream.distinct(): mapper entities are equal by id
+        Set<FileProtocolMapperEntity> distinct = entities == null ? Set.of() : new LinkedHashSet<>(entities);
+        List<ProtocolMapperModel> models = new ArrayList<>(distinct.size());
+        Map<String, FileProtocolMapperEntity> entitiesById = new HashMap<>();
+        for (FileProtocolMapperEntity entity : distinct) {
+            ProtocolMapperModel model = pmUtils.toModel(entity);
+            model.setConfig(Collections.unmodifiableMap(model.getConfig()));
+            models.add(model);
+            if (entity.getId() != null) {
+                entitiesById.putIfAbsent(entity.getId(), entity);
+            }
+        }
+        return new FileProtocolMapperIndex(protocol, models, entitiesById);
+    }
+
+    public boolean isFor(String protocol) {
+        return Objects.equals(this.protocol, protocol);
+    }
+
+    public Stream<ProtocolMapperModel> stream() {
+        return mappers.stream().map(FileProtocolMapperIndex::copy);
+    }
+
+    public ProtocolMapperModel getById(String id) {
+        return id == null ? null : copy(byId.get(id));
+    }
+
+    /** Returns the stored mapper entity, which unlike the models is the same for every protocol. */
+    public FileProtocolMapperEntity getEntityById(String id) {
+        return id == null ? null : entitiesById.get(id);
+    }
+
+    public ProtocolMapperModel getByName(String name) {
+        return name == null ? null : copy(byName.get(name));
+    }
+
+    private static ProtocolMapperModel copy(ProtocolMapperModel mapper) {
+        if (mapper == null) {
+            return null;
+        }
+        ProtocolMapperModel copy = new ProtocolMapperModel();
+        copy.setId(mapper.getId());
+        copy.setName(mapper.getName());
+        copy.setProtocol(mapper.getProtocol());
+        copy.setProtocolMapper(mapper.getProtocolMapper());
+        copy.setConfig(new HashMap<>(mapper.getConfig()));
+        return copy;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package de.arbeitsagentur.opdt.keycloak.filestore.clientscope;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.client.FileProtocolMapperEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.client.FileProtocolMapperUtils;
 import java.util.*;
@@ -30,12 +31,10 @@ public class FileClientScopeAdapter extends AbstractClientScopeModel<FileClientS
         implements ClientScopeModel {
 
     private static final Logger LOG = Logger.getLogger(FileClientScopeAdapter.class);
-
-    private final FileProtocolMapperUtils pmUtils;
+    private static final ModelCache.Slot<Map<String, String>> ATTRIBUTES = ModelCache.slot("attributes");
 
     public FileClientScopeAdapter(KeycloakSession session, RealmModel realm, FileClientScopeEntity entity) {
         super(session, realm, entity);
-        pmUtils = FileProtocolMapperUtils.instanceFor(safeGetProtocol());
     }
 
     @Override
@@ -97,6 +96,10 @@ public class FileClientScopeAdapter extends AbstractClientScopeModel<FileClientS
 
     @Override
     public Map<String, String> getAttributes() {
+        return ModelCache.get(entity, ATTRIBUTES, () -> Collections.unmodifiableMap(convertAttributes()));
+    }
+
+    private Map<String, String> convertAttributes() {
         final Map<String, List<String>> attributes = entity.getMultivaluedAttributes();
         final Map<String, List<String>> a = attributes == null ? Collections.emptyMap() : attributes;
         return a.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> {
@@ -126,10 +129,7 @@ public class FileClientScopeAdapter extends AbstractClientScopeModel<FileClientS
 
     @Override
     public Stream<ProtocolMapperModel> getProtocolMappersStream() {
-        final List<FileProtocolMapperEntity> protocolMappers = entity.getProtocolMappers();
-        return protocolMappers == null
-                ? Stream.empty()
-                : protocolMappers.stream().distinct().map(pmUtils::toModel);
+        return entity.getProtocolMapperIndex(safeGetProtocol()).stream();
     }
 
     @Override
@@ -146,7 +146,7 @@ public class FileClientScopeAdapter extends AbstractClientScopeModel<FileClientS
             pm.setConfig(new HashMap<>());
         }
         entity.addProtocolMapper(pm);
-        return pmUtils.toModel(pm);
+        return FileProtocolMapperUtils.instanceFor(safeGetProtocol()).toModel(pm);
     }
 
     @Override
@@ -170,22 +170,15 @@ public class FileClientScopeAdapter extends AbstractClientScopeModel<FileClientS
 
     @Override
     public ProtocolMapperModel getProtocolMapperById(String id) {
-        return entity.getProtocolMapper(id).map(pmUtils::toModel).orElse(null);
+        return entity.getProtocolMapperIndex(safeGetProtocol()).getById(id);
     }
 
     @Override
     public ProtocolMapperModel getProtocolMapperByName(String protocol, String name) {
-        final List<FileProtocolMapperEntity> protocolMappers = entity.getProtocolMappers();
         if (!Objects.equals(protocol, safeGetProtocol())) {
             return null;
         }
-        return protocolMappers == null
-                ? null
-                : protocolMappers.stream()
-                        .filter(pm -> Objects.equals(pm.getName(), name))
-                        .map(pmUtils::toModel)
-                        .findAny()
-                        .orElse(null);
+        return entity.getProtocolMapperIndex(protocol).getByName(name);
     }
 
     /*************** Scopes mappings ****************/
@@ -18,6 +18,7 @@
 package de.arbeitsagentur.opdt.keycloak.filestore.clientscope;
 
 import de.arbeitsagentur.opdt.keycloak.filestore.client.FileProtocolMapperEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.client.FileProtocolMapperIndex;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import java.util.*;
@@ -33,6 +34,7 @@ public class FileClientScopeEntity implements AbstractEntity, UpdatableEntity {
     private String id;
     private Map<String, Object> attributes = new HashMap<>();
     private boolean isUpdated = false;
+    private transient volatile FileProtocolMapperIndex protocolMapperIndex;
 
     public String getName() {
         return this.name;
@@ -52,6 +54,7 @@ public class FileClientScopeEntity implements AbstractEntity, UpdatableEntity {
 
     public void setName(String name) {
         this.name = name;
+        FileClientScopeStore.update(this);
     }
 
     public void setDescription(String description) {
@@ -69,22 +72,36 @@ public class FileClientScopeEntity implements AbstractEntity, UpdatableEntity {
     }
 
     public Optional<FileProtocolMapperEntity> getProtocolMapper(String id) {
-        return this.protocolMappers.stream()
-                .filter(mapper -> mapper.getId().equals(id))
-                .findFirst();
+        // the mapper entities do not depend on the protocol, so the current index serves whatever it is for
+        FileProtocolMapperIndex index = this.protocolMapperIndex;
+        if (index == null) {
+            index = getProtocolMapperIndex(this.protocol == null ? "openid-connect" : this.protocol);
+        }
+        return Optional.ofNullable(index.getEntityById(id));
     }
 
     public List<FileProtocolMapperEntity> getProtocolMappers() {
         return this.protocolMappers;
     }
 
+    public FileProtocolMapperIndex getProtocolMapperIndex(String protocol) {
+        FileProtocolMapperIndex index = this.protocolMapperIndex;
+        if (index == null || !index.isFor(protocol)) {
+            index = FileProtocolMapperIndex.of(protocol, protocolMappers);
+            this.protocolMapperIndex = index;
+        }
+        return index;
+    }
+
     public void setProtocolMappers(List<FileProtocolMapperEntity> protocolMappers) {
         this.protocolMappers = protocolMappers;
+        this.protocolMapperIndex = null;
         FileClientScopeStore.update(this);
     }
 
     public void addProtocolMapper(FileProtocolMapperEntity mapping) {
         this.protocolMappers.add(mapping);
+        this.protocolMapperIndex = null;
         FileClientScopeStore.update(this);
     }
 
@@ -93,6 +110,7 @@ public class FileClientScopeEntity implements AbstractEntity, UpdatableEntity {
                 .filter(mapper -> mapper.getId().equals(id))
                 .findFirst()
                 .ifPresent(this.protocolMappers::remove);
+        this.protocolMapperIndex = null;
         FileClientScopeStore.update(this);
     }
 
@@ -17,10 +17,13 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.clientscope;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
 import static de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory.MapProviderObjectType.CLIENT_SCOPE_AFTER_REMOVE;
 import static de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory.MapProviderObjectType.CLIENT_SCOPE_BEFORE_REMOVE;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.AdapterIdentityMap;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -33,13 +36,29 @@ public class FileClientScopeProvider implements ClientScopeProvider {
 
     private static final Logger LOG = Logger.getLogger(FileClientScopeProvider.class);
     private final KeycloakSession session;
+    private final AdapterIdentityMap adapters;
 
     public FileClientScopeProvider(KeycloakSession session) {
         this.session = session;
+        this.adapters = AdapterIdentityMap.of(session);
     }
 
     private Function<FileClientScopeEntity, ClientScopeModel> entityToAdapterFunc(RealmModel realm) {
-        return origEntity -> new FileClientScopeAdapter(session, realm, origEntity);
+        return origEntity -> toAdapter(session, realm, origEntity);
+    }
+
+    /**
+     * Returns the adapter of the client scope from the identity map of the session. For callers that
+     * resolve client scope entities themselves, e.g. from the client scope resolution cache.
+     */
+    public static ClientScopeModel toAdapter(KeycloakSession session, RealmModel realm, FileClientScopeEntity entity) {
+        return AdapterIdentityMap.of(session)
+                .get(
+                        ClientScopeModel.class,
+                        realm,
+                        entity,
+                        entity.getId(),
+                        () -> new FileClientScopeAdapter(session, realm, entity));
     }
 
     private boolean isEntityPartOfRealm(RealmModel realm, FileClientScopeEntity entity) {
@@ -48,10 +67,7 @@ public class FileClientScopeProvider implements ClientScopeProvider {
 
     @Override
     public Stream<ClientScopeModel> getClientScopesStream(RealmModel realm) {
-        return FileClientScopeStore.readAll().stream()
-                .filter(clientScope -> realm.getId().equals(clientScope.getRealmId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(ClientScopeModel::getName));
+        return FileClientScopeStore.readSorted(realm.getId()).stream().map(entityToAdapterFunc(realm));
     }
 
     @Override
@@ -64,10 +80,8 @@ public class FileClientScopeProvider implements ClientScopeProvider {
             throw new ModelDuplicateException("Client scope exists: " + id);
         }
 
-        boolean doesNameAlreadyExists = FileClientScopeStore.readAll().stream()
-                .filter(clientScope -> realm.getId().equals(clientScope.getRealmId()))
-                .filter(clientScope -> name.equals(clientScope.getName()))
-                .map(entityToAdapterFunc(realm))
+        boolean doesNameAlreadyExists = FileClientScopeStore.read(
+                        criteria(realm).compare(SearchableFields.NAME, EQ, name))
                 .findAny()
                 .isPresent();
 
@@ -95,6 +109,7 @@ public class FileClientScopeProvider implements ClientScopeProvider {
 
         session.invalidate(CLIENT_SCOPE_BEFORE_REMOVE, realm, clientScope);
         FileClientScopeStore.deleteById(id, realm.getId());
+        adapters.clear();
         session.invalidate(CLIENT_SCOPE_AFTER_REMOVE, clientScope);
         return true;
     }
@@ -127,6 +142,7 @@ public class FileClientScopeProvider implements ClientScopeProvider {
     public void preRemove(RealmModel realm) {
         LOG.tracef("preRemove(%s)%s", realm, getShortStackTrace());
         FileClientScopeStore.deleteByRealmId(realm.getId());
+        FileClientScopeResolutionCache.invalidateRealm(realm.getId());
     }
 
     @Override
@@ -139,9 +155,7 @@ public class FileClientScopeProvider implements ClientScopeProvider {
         }
 
         LOG.tracef("getClientScopesByProtocol(%s, %s)%s", realm, protocol, getShortStackTrace());
-        return FileClientScopeStore.readAll().stream()
-                .filter(clientScope -> Objects.equals(clientScope.getRealmId(), realm.getId()))
-                .filter(clientScope -> Objects.equals(clientScope.getProtocol(), protocol))
+        return FileClientScopeStore.read(criteria(realm).compare(SearchableFields.PROTOCOL, EQ, protocol))
                 .map(clientScope -> entityToAdapterFunc(realm).apply(clientScope));
     }
 
@@ -153,33 +167,22 @@ public class FileClientScopeProvider implements ClientScopeProvider {
         }
 
         LOG.tracef("getClientScopesByAttributes(%s, %s, %s)%s", realm, searchMap, useOr, getShortStackTrace());
-        List<ClientScopeModel> result = new ArrayList<>();
-        List<FileClientScopeEntity> clientScopes = FileClientScopeStore.readAll().stream()
-                .filter(clientScope -> Objects.equals(clientScope.getRealmId(), realm.getId()))
-                .toList();
-
-        for (FileClientScopeEntity clientScope : clientScopes) {
-            Map<String, List<String>> attrs = clientScope.getMultivaluedAttributes();
-            if (attrs == null || attrs.isEmpty()) {
-                continue;
-            }
-
-            boolean matches;
-            if (useOr) {
-                matches = searchMap.entrySet().stream()
-                        .anyMatch(e -> attrs.containsKey(e.getKey())
-                                && attrs.get(e.getKey()).contains(e.getValue()));
-            } else {
-                matches = searchMap.entrySet().stream()
-                        .allMatch(e -> attrs.containsKey(e.getKey())
-                                && attrs.get(e.getKey()).contains(e.getValue()));
-            }
-
-            if (matches) {
-                result.add(entityToAdapterFunc(realm).apply(clientScope));
+        ModelCriteria<ClientScopeModel> criteria = criteria(realm);
+        if (useOr) {
+            criteria = criteria.or(searchMap.entrySet().stream()
+                    .map(entry -> ModelCriteria.<ClientScopeModel>criteria()
+                            .compare(SearchableFields.ATTRIBUTE, EQ, entry.getKey(), entry.getValue()))
+                    .toList());
+        } else {
+            for (Map.Entry<String, String> entry : searchMap.entrySet()) {
+                criteria = criteria.compare(SearchableFields.ATTRIBUTE, EQ, entry.getKey(), entry.getValue());
             }
         }
 
-        return result.stream();
+        return FileClientScopeStore.read(criteria).map(entityToAdapterFunc(realm));
+    }
+
+    private static ModelCriteria<ClientScopeModel> criteria(RealmModel realm) {
+        return ModelCriteria.<ClientScopeModel>criteria().compare(SearchableFields.REALM_ID, EQ, realm.getId());
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.clientscope;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Caches the resolved client scopes of clients (per protocol) and the default client scopes of
+ * realms. Entries hold the live {@link FileClientScopeEntity} instances, so callers only need to
+ * wrap them into adapters for their session.
+ *
+ * <p>The cache is nested by realm and owner, so an invalidation replaces the whole owner map. A
+ * resolution that runs concurrently with an invalidation ends up in the detached map and is never
+ * served.
+ */
+public final class FileClientScopeResolutionCache {
+
+    private static final Map<String, Map<String, Map<Variant, Map<String, FileClientScopeEntity>>>> CLIENT_SCOPES =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Map<Boolean, List<FileClientScopeEntity>>> REALM_DEFAULT_SCOPES =
+            new ConcurrentHashMap<>();
+
+    private record Variant(String protocol, boolean defaultScope) {}
+
+    private FileClientScopeResolutionCache() {}
+
+    /**
+     * Returns the client scopes assigned to a client, keyed by scope name and restricted to the given
+     * protocol. The returned map is read-only.
+     */
+    public static Map<String, FileClientScopeEntity> getClientScopes(
+            String realmId, String clientId, String protocol, boolean defaultScope, Supplier<Stream<String>> scopeIds) {
+        return CLIENT_SCOPES
+                .computeIfAbsent(realmId, r -> new ConcurrentHashMap<>())
+                .computeIfAbsent(clientId, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(new Variant(protocol, defaultScope), v -> resolve(realmId, protocol, scopeIds));
+    }
+
+    /** Returns the default or optional client scopes of a realm. The returned list is read-only. */
+    public static List<FileClientScopeEntity> getRealmDefaultClientScopes(
+            String realmId, boolean defaultScope, Supplier<Stream<String>> scopeIds) {
+        return REALM_DEFAULT_SCOPES
+                .computeIfAbsent(realmId, r -> new ConcurrentHashMap<>())
+                .computeIfAbsent(
+                        defaultScope,
+                        d -> List.copyOf(resolve(realmId, null, scopeIds).values()));
+    }
+
+    /** Drops the cached scopes of a single client, e.g. after its scope assignments or protocol changed. */
+    public static void invalidateClient(String realmId, String clientId) {
+        if (realmId == null || clientId == null) {
+            return;
+        }
+        Map<String, Map<Variant, Map<String, FileClientScopeEntity>>> clients = CLIENT_SCOPES.get(realmId);
+        if (clients != null) {
+            clients.remove(clientId);
+        }
+    }
+
+    /** Drops the cached default client scopes of a realm. */
+    public static void invalidateRealmDefaults(String realmId) {
+        if (realmId != null) {
+            REALM_DEFAULT_SCOPES.remove(realmId);
+        }
+    }
+
+    /** Drops everything cached for a realm, e.g. after a client scope was renamed or removed. */
+    public static void invalidateRealm(String realmId) {
+        if (realmId != null) {
+            CLIENT_SCOPES.remove(realmId);
+            REALM_DEFAULT_SCOPES.remove(realmId);
+        }
+    }
+
+    private static Map<String, FileClientScopeEntity> resolve(
+            String realmId, String protocol, Supplier<Stream<String>> scopeIds) {
+        Map<String, FileClientScopeEntity> result = new LinkedHashMap<>();
+        scopeIds.get()
+                .filter(scopeId -> scopeId != null && !scopeId.isBlank())
+                .map(scopeId -> FileClientScopeStore.read(scopeId, realmId))
+                .filter(Objects::nonNull)
+                .filter(scope -> realmId.equals(scope.getRealmId()))
+                .filter(scope -> protocol == null || protocol.equals(scope.getProtocol()))
+                .forEach(scope -> result.putIfAbsent(scope.getName(), scope));
+        return Collections.unmodifiableMap(result);
+    }
+}
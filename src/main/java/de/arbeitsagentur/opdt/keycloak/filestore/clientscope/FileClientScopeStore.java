@@ -17,15 +17,51 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.clientscope;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.AttributeIndex;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityQueryEngine;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.keycloak.models.ClientScopeModel;
 
 public class FileClientScopeStore {
 
     private static final String OBJECT_DIRECTORY = "client-scopes";
+    private static final SortedEntityIndex<FileClientScopeEntity> BY_NAME = SortedEntityIndex.create(
+            FileClientScopeEntity.class, FileClientScopeEntity::getRealmId, FileClientScopeEntity::getName);
+    private static final KeyedEntityIndex<FileClientScopeEntity> BY_EXACT_NAME = KeyedEntityIndex.create(
+            FileClientScopeEntity.class,
+            clientScope -> List.of(new Key(clientScope.getRealmId(), clientScope.getName())));
+
+    private static final AttributeIndex<FileClientScopeEntity> BY_ATTRIBUTE = AttributeIndex.create(
+            FileClientScopeEntity.class, FileClientScopeEntity::getRealmId, FileClientScopeEntity::getAttributes);
+
+    private static final EntityQueryEngine<FileClientScopeEntity, ClientScopeModel> QUERY =
+            EntityQueryEngine.<FileClientScopeEntity, ClientScopeModel>builder(FileClientScopeEntity.class)
+                    .field(SearchableFields.ID, FileClientScopeEntity::getId)
+                    .field(SearchableFields.REALM_ID, FileClientScopeEntity::getRealmId)
+                    .field(SearchableFields.NAME, FileClientScopeEntity::getName)
+                    .field(SearchableFields.PROTOCOL, FileClientScopeEntity::getProtocol)
+                    .attributeField(SearchableFields.ATTRIBUTE, FileClientScopeEntity::getAttribute)
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.NAME)
+                                    .map(name -> BY_EXACT_NAME.get(new Key(realmId, name)))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> BY_ATTRIBUTE.candidates(realmId, criteria, SearchableFields.ATTRIBUTE)))
+                    .fallbackIndex(criteria -> realmId(criteria).map(BY_NAME::getAll))
+                    .build();
+
+    /** Key of the hash indexes, which are scoped to a realm. */
+    private record Key(String realmId, Object value) {}
 
     public static FileClientScopeEntity read(String clientId, String realmId) {
         Path expectedPath = createFilePath(clientId, realmId);
@@ -43,12 +79,23 @@ public class FileClientScopeStore {
         return EntityStore.getAll(FileClientScopeEntity.class);
     }
 
+    /** Returns the client scopes of a realm, sorted by name. */
+    public static List<FileClientScopeEntity> readSorted(String realmId) {
+        return BY_NAME.getAll(realmId);
+    }
+
+    /** Returns the client scopes matching the criteria, in no particular order. */
+    public static Stream<FileClientScopeEntity> read(ModelCriteria<ClientScopeModel> criteria) {
+        return QUERY.read(criteria);
+    }
+
     public static FileClientScopeEntity update(FileClientScopeEntity entity) {
         if (entity.getId() == null || entity.getRealmId() == null) {
             return null;
         }
         Path expectedPath = createFilePath(entity.getId(), entity.getRealmId());
         EntityStore.write(expectedPath, entity);
+        FileClientScopeResolutionCache.invalidateRealm(entity.getRealmId());
         return entity;
     }
 
@@ -56,6 +103,7 @@ public class FileClientScopeStore {
         if (clientId != null && realmId != null) {
             Path expectedPath = createFilePath(clientId, realmId);
             EntityStore.delete(expectedPath);
+            FileClientScopeResolutionCache.invalidateRealm(realmId);
         }
     }
 
@@ -70,4 +118,8 @@ public class FileClientScopeStore {
         return EntityIO.getPathForIdAndParentPath(
                 clientScopeId, EntityIO.getRootDirectory().resolve(realmId).resolve(OBJECT_DIRECTORY));
     }
+
+    private static Optional<String> realmId(ModelCriteria<ClientScopeModel> criteria) {
+        return criteria.getOperand(EQ, SearchableFields.REALM_ID).map(String.class::cast);
+    }
 }
@@ -25,4 +25,14 @@ public class SearchableFields {
     public static final SearchableModelField<ClientScopeModel> REALM_ID =
             new SearchableModelField<>("realmId", String.class);
     public static final SearchableModelField<ClientScopeModel> NAME = new SearchableModelField<>("name", String.class);
+    public static final SearchableModelField<ClientScopeModel> PROTOCOL =
+            new SearchableModelField<>("protocol", String.class);
+
+    /**
+     * Search for attribute value. The parameters is a pair {@code (attribute_name, value)} where
+     * {@code attribute_name} is always checked for equality, and the value is checked per the
+     * operator.
+     */
+    public static final SearchableModelField<ClientScopeModel> ATTRIBUTE =
+            new SearchableModelField<>("attribute", String[].class);
 }
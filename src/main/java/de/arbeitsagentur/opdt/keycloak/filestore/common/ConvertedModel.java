@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The model converted from a sub-entity, kept until the sub-entity changes. Sub-entities live as long
+ * as their parent entity and are shared by all sessions, so repeated reads return the same instance.
+ * Callers must not modify it.
+ *
+ * <p>Setters call {@link #invalidate()} after assigning. A conversion that overlaps an invalidation is
+ * returned but not kept, so a stale model can never stick.
+ */
+public final class ConvertedModel<M> {
+
+    private record Value<M>(int version, M model) {}
+
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile Value<M> value;
+
+    public M get(Supplier<M> converter) {
+        int current = version.get();
+        Value<M> cached = value;
+        if (cached != null && cached.version() == current) {
+            return cached.model();
+        }
+        M model = converter.get();
+        value = new Value<>(current, model);
+        return model;
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Time;
+
+/**
+ * Removes {@link ExpirableEntity expirable entities} at their expiration: stores register an entity
+ * under a key together with what removes it, and a background thread runs that once the expiration
+ * passed, on a {@link TimerWheel} with a tick of {@value #TICK_MILLIS} ms. Registering again under the
+ * same key replaces the previous registration, so stores can register on every change. Registrations
+ * share one lock, so stores with many short-lived entities register coarser deadlines, e.g. one per
+ * bucket of entities expiring within the same tick.
+ *
+ * <p>The thread runs while at least one provider factory {@link #start() started} the scheduler and
+ * has not {@link #stop() stopped} it yet; without it, {@link #runDue()} still removes what is due.
+ *
+ * <p>Reads still check {@link ExpirationUtils#isExpired} for the tick an entity may outlive its
+ * expiration.
+ */
+public final class ExpirationScheduler {
+
+    private static final Logger LOG = Logger.getLogger(ExpirationScheduler.class);
+
+    public static final long TICK_MILLIS = 1000L;
+
+    private record Task(Object key, Runnable onExpire) {}
+
+    private static final Object LOCK = new Object();
+    // guarded by LOCK
+    private static final TimerWheel<Task> WHEEL = new TimerWheel<>(tick(Time.currentTimeMillis()));
+    private static final Map<Object, TimerWheel.Timeout<Task>> TIMEOUTS = new HashMap<>();
+    private static ScheduledExecutorService ticker;
+    private static int users;
+
+    private ExpirationScheduler() {}
+
+    /** Starts the background thread for one more user, typically a provider factory in postInit. */
+    public static void start() {
+        synchronized (LOCK) {
+            if (users++ == 0) {
+                ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "filestore-expiration");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                ticker.scheduleWithFixedDelay(
+                        ExpirationScheduler::tickQuietly, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Stops the background thread once the last user that started it stopped it, in its close. */
+    public static void stop() {
+        ScheduledExecutorService stopped = null;
+        synchronized (LOCK) {
+            if (users > 0 && --users == 0) {
+                stopped = ticker;
+                ticker = null;
+            }
+        }
+        if (stopped != null) {
+            stopped.shutdownNow();
+        }
+    }
+
+    /** Whether the background thread runs. */
+    static boolean isRunning() {
+        synchronized (LOCK) {
+            return ticker != null;
+        }
+    }
+
+    /**
+     * Runs {@code onExpire} once the entity's expiration passed, unless the key is registered again
+     * or cancelled before. An entity without expiration cancels the key.
+     */
+    public static void schedule(Object key, ExpirableEntity entity, Runnable onExpire) {
+        Long expiration = entity.getExpiration();
+        if (expiration == null) {
+            cancel(key);
+        } else {
+            schedule(key, expiration, onExpire);
+        }
+    }
+
+    /**
+     * Runs {@code onExpire} once the expiration, in epoch milliseconds, passed, unless the key is
+     * registered again or cancelled before.
+     */
+    public static void schedule(Object key, long expiration, Runnable onExpire) {
+        synchronized (LOCK) {
+            TimerWheel.Timeout<Task> previous =
+                    TIMEOUTS.put(key, WHEEL.add(deadline(expiration), new Task(key, onExpire)));
+            if (previous != null) {
+                WHEEL.cancel(previous);
+            }
+        }
+    }
+
+    public static void cancel(Object key) {
+        synchronized (LOCK) {
+            TimerWheel.Timeout<Task> timeout = TIMEOUTS.remove(key);
+            if (timeout != null) {
+                WHEEL.cancel(timeout);
+            }
+        }
+    }
+
+    /**
+     * Runs the removals that are due now on the calling thread, for callers that must not wait for the
+     * next tick.
+     *
+     * @return the number of removals run
+     */
+    public static int runDue() {
+        List<Task> due;
+        synchronized (LOCK) {
+            due = WHEEL.advance(tick(Time.currentTimeMillis()));
+            due.forEach(task -> TIMEOUTS.remove(task.key()));
+        }
+        for (Task task : due) {
+            try {
+                task.onExpire().run();
+            } catch (RuntimeException e) {
+                LOG.warnf(e, "Removing expired entity %s failed", task.key());
+            }
+        }
+        return due.size();
+    }
+
+    /** Whether something is registered under the key. */
+    public static boolean isScheduled(Object key) {
+        synchronized (LOCK) {
+            return TIMEOUTS.containsKey(key);
+        }
+    }
+
+    /** Number of registered entities. */
+    public static int size() {
+        synchronized (LOCK) {
+            return WHEEL.size();
+        }
+    }
+
+    private static void tickQuietly() {
+        try {
+            runDue();
+        } catch (RuntimeException e) {
+            LOG.warn("Removing expired entities failed", e);
+        }
+    }
+
+    private static long tick(long millis) {
+        return Math.floorDiv(millis, TICK_MILLIS);
+    }
+
+    /** The first tick at which the expiration has passed. */
+    private static long deadline(long expiration) {
+        return Math.floorDiv(expiration + TICK_MILLIS - 1, TICK_MILLIS);
+    }
+}
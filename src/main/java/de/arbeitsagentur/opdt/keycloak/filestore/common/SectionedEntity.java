@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An entity whose larger properties, its sections, are persisted in files of their own next to the
+ * entity file, so that a change of one section rewrites only that section. A section is named after its
+ * property.
+ */
+public interface SectionedEntity {
+
+    /** Stands for the entity file itself, which holds all properties that are not sections. */
+    String MAIN = "";
+
+    /** The names of the properties persisted in files of their own. */
+    Collection<String> sectionNames();
+
+    /**
+     * The sections that are currently written. Sections left out are only read, for entities stored by
+     * older versions, and their files are deleted when they change.
+     */
+    default Collection<String> writtenSectionNames() {
+        return sectionNames();
+    }
+
+    /** Returns the sections changed since the last call, {@link #MAIN} included, and forgets them. */
+    Set<String> takeChangedSections();
+
+    /** Marks the sections as changed, so that the next write persists them. */
+    void markChanged(Collection<String> sections);
+}
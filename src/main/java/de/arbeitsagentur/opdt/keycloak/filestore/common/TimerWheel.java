@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel: {@value #LEVELS} wheels of {@value #SLOTS} slots, each slot of a wheel
+ * spanning a whole turn of the wheel below. A timeout goes into the coarsest wheel it is not due
+ * within; when time reaches its slot, it cascades down, and in the finest wheel it falls due. Adding
+ * and cancelling take constant time, and advancing takes amortised constant time per tick and timeout.
+ *
+ * <p>Time is counted in ticks. Timeouts beyond the span of all wheels wait in the last slot of the
+ * coarsest one and are placed again from there. Not thread-safe.
+ */
+final class TimerWheel<T> {
+
+    private static final int BITS = 6;
+    static final int SLOTS = 1 << BITS;
+    static final int LEVELS = 4;
+    private static final long MASK = SLOTS - 1;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    /** A scheduled task, linked into the slot it waits in. */
+    static final class Timeout<T> {
+        private final long deadline;
+        private final T task;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(long deadline, T task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        T task() {
+            return task;
+        }
+
+        long deadline() {
+            return deadline;
+        }
+
+        private boolean isLinked() {
+            return prev != null;
+        }
+    }
+
+    private final Timeout<T>[][] wheels;
+    // timeouts added for ticks that were already advanced past, e.g. after the clock was turned back
+    private final Timeout<T> overdue = head();
+    private long now;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long startTick) {
+        this.now = startTick;
+        this.wheels = new Timeout[LEVELS][SLOTS];
+        for (Timeout<T>[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[slot] = head();
+            }
+        }
+    }
+
+    private static <T> Timeout<T> head() {
+        Timeout<T> head = new Timeout<>(0, null);
+        head.prev = head;
+        head.next = head;
+        return head;
+    }
+
+    /** Schedules the task for the tick; ticks that already passed fall due on the next advance reaching them. */
+    Timeout<T> add(long deadline, T task) {
+        Timeout<T> timeout = new Timeout<>(deadline, task);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    void cancel(Timeout<T> timeout) {
+        if (timeout.isLinked()) {
+            unlink(timeout);
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Advances up to and including the tick and returns the tasks that fell due, in order. */
+    List<T> advance(long tick) {
+        List<T> due = new ArrayList<>();
+        for (Timeout<T> timeout = overdue.next; timeout != overdue; ) {
+            Timeout<T> next = timeout.next;
+            if (timeout.deadline <= tick) {
+                unlink(timeout);
+                size--;
+                due.add(timeout.task);
+            }
+            timeout = next;
+        }
+        if (size == 0) {
+            now = tick + 1;
+            return due;
+        }
+        while (now <= tick) {
+            cascade();
+            Timeout<T> head = wheels[0][(int) (now & MASK)];
+            for (Timeout<T> timeout = head.next; timeout != head; ) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                if (timeout.deadline <= now) {
+                    size--;
+                    due.add(timeout.task);
+                } else {
+                    place(timeout);
+                }
+                timeout = next;
+            }
+            now++;
+            if (size == 0) {
+                now = Math.max(now, tick + 1);
+            }
+        }
+        return due;
+    }
+
+    /** Moves the timeouts of the coarser slots that start at the current tick down, coarsest first. */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < LEVELS && (now & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level > 0; level--) {
+            Timeout<T> head = wheels[level][(int) ((now >>> (BITS * level)) & MASK)];
+            for (Timeout<T> timeout = head.next; timeout != head; ) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        if (timeout.deadline < now) {
+            link(overdue, timeout);
+            return;
+        }
+        long deadline = timeout.deadline;
+        long delta = deadline - now;
+        if (delta >= SPAN) {
+            deadline = now + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (level + 1 < LEVELS && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        link(wheels[level][(int) ((deadline >>> (BITS * level)) & MASK)], timeout);
+    }
+
+    private static <T> void link(Timeout<T> head, Timeout<T> timeout) {
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.OperationType;
+
+/**
+ * Binary form of an event in the {@link EventLog}. Strings are written as their UTF-8 length and bytes,
+ * with a length of {@code -1} for {@code null}, so neither the size of a representation nor the
+ * characters in it are limited.
+ */
+interface EventCodec<E> {
+
+    void write(DataOutputStream out, E event) throws IOException;
+
+    E read(ByteBuffer in);
+
+    EventCodec<FileAuthEventEntity> AUTH = new EventCodec<>() {
+        @Override
+        public void write(DataOutputStream out, FileAuthEventEntity event) throws IOException {
+            writeString(out, event.getId());
+            writeLong(out, event.getTimestamp());
+            writeLong(out, event.getExpiration());
+            writeString(out, event.getType() == null ? null : event.getType().name());
+            writeString(out, event.getRealmId());
+            writeString(out, event.getClientId());
+            writeString(out, event.getUserId());
+            writeString(out, event.getSessionId());
+            writeString(out, event.getIpAddress());
+            writeString(out, event.getError());
+            Map<String, String> details = event.getDetails();
+            out.writeInt(details == null ? -1 : details.size());
+            if (details != null) {
+                for (Map.Entry<String, String> detail : details.entrySet()) {
+                    writeString(out, detail.getKey());
+                    writeString(out, detail.getValue());
+                }
+            }
+        }
+
+        @Override
+        public FileAuthEventEntity read(ByteBuffer in) {
+            FileAuthEventEntity event = new FileAuthEventEntity();
+            event.setId(readString(in));
+            event.setTimestamp(readLong(in));
+            event.setExpiration(readLong(in));
+            String type = readString(in);
+            event.setType(type == null ? null : EventType.valueOf(type));
+            String realmId = readString(in);
+            String clientId = readString(in);
+            event.setUserId(readString(in));
+            event.setSessionId(readString(in));
+            event.setIpAddress(readString(in));
+            String error = readString(in);
+            Map<String, String> details = null;
+            int size = in.getInt();
+            if (size >= 0) {
+                details = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    details.put(readString(in), readString(in));
+                }
+            }
+            event.setLogged(realmId, clientId, error, details);
+            return event;
+        }
+    };
+
+    EventCodec<FileAdminEventEntity> ADMIN = new EventCodec<>() {
+        @Override
+        public void write(DataOutputStream out, FileAdminEventEntity event) throws IOException {
+            writeString(out, event.getId());
+            writeLong(out, event.getTimestamp());
+            writeLong(out, event.getExpiration());
+            writeString(out, event.getRealmId());
+            writeString(
+                    out,
+                    event.getOperationType() == null
+                            ? null
+                            : event.getOperationType().name());
+            writeString(out, event.getResourcePath());
+            writeString(out, event.getRepresentation());
+            writeString(out, event.getError());
+            writeString(out, event.getResourceType());
+            writeString(out, event.getAuthRealmId());
+            writeString(out, event.getAuthClientId());
+            writeString(out, event.getAuthUserId());
+            writeString(out, event.getAuthIpAddress());
+        }
+
+        @Override
+        public FileAdminEventEntity read(ByteBuffer in) {
+            FileAdminEventEntity event = new FileAdminEventEntity();
+            event.setId(readString(in));
+            event.setTimestamp(readLong(in));
+            event.setExpiration(readLong(in));
+            event.setRealmId(readString(in));
+            String operationType = readString(in);
+            event.setOperationType(operationType == null ? null : OperationType.valueOf(operationType));
+            event.setResourcePath(readString(in));
+            event.setRepresentation(readString(in));
+            event.setError(readString(in));
+            event.setResourceType(readString(in));
+            event.setAuthRealmId(readString(in));
+            event.setAuthClientId(readString(in));
+            event.setAuthUserId(readString(in));
+            event.setAuthIpAddress(readString(in));
+            return event;
+        }
+    };
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(ByteBuffer in) {
+        return in.get() == 0 ? null : in.getLong();
+    }
+}
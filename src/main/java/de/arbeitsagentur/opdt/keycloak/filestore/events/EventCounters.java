@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Rolling counters of the events stored per realm, by event type, client and error, in minute and
+ * hour buckets of the event time. They are updated as events are stored, so statistics cost a walk
+ * over the buckets instead of the events. The oldest buckets roll off once a realm has more than the
+ * configured number.
+ */
+public final class EventCounters {
+
+    /** What events are counted by. Events without a value are not counted for the dimension. */
+    public enum Dimension {
+        TYPE(event -> event.getType() == null ? null : event.getType().name()),
+        CLIENT(FileAuthEventEntity::getClientId),
+        ERROR(FileAuthEventEntity::getError);
+
+        private final Function<FileAuthEventEntity, String> valueFunc;
+
+        Dimension(Function<FileAuthEventEntity, String> valueFunc) {
+            this.valueFunc = valueFunc;
+        }
+    }
+
+    public enum Granularity {
+        MINUTE(TimeUnit.MINUTES.toMillis(1)),
+        HOUR(TimeUnit.HOURS.toMillis(1));
+
+        private final long millis;
+
+        Granularity(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        private long bucket(long timestamp) {
+            return Math.floorDiv(timestamp, millis) * millis;
+        }
+    }
+
+    /** The number of events with a value in the bucket starting at {@code bucketStart}. */
+    public record EventCount(long bucketStart, Dimension dimension, String value, long count) {}
+
+    static final int DEFAULT_MINUTE_BUCKETS = 1440;
+    static final int DEFAULT_HOUR_BUCKETS = 720;
+
+    private record Counter(Dimension dimension, String value) {}
+
+    private final Map<String, RealmCounters> realms = new ConcurrentHashMap<>();
+    private volatile int minuteBuckets = DEFAULT_MINUTE_BUCKETS;
+    private volatile int hourBuckets = DEFAULT_HOUR_BUCKETS;
+
+    void setBuckets(int minuteBuckets, int hourBuckets) {
+        this.minuteBuckets = Math.max(1, minuteBuckets);
+        this.hourBuckets = Math.max(1, hourBuckets);
+    }
+
+    void record(FileAuthEventEntity event) {
+        RealmCounters realm = realms.computeIfAbsent(realmId(event.getRealmId()), id -> new RealmCounters());
+        long timestamp = event.timestamp();
+        realm.record(realm.minutes, Granularity.MINUTE, timestamp, event, minuteBuckets);
+        realm.record(realm.hours, Granularity.HOUR, timestamp, event, hourBuckets);
+    }
+
+    /**
+     * Returns the counts of the realm's buckets that overlap {@code [fromTimestamp, toTimestamp)}: the
+     * bucket containing {@code fromTimestamp} up to the last one starting before {@code toTimestamp}.
+     * Oldest bucket first, and by value within a bucket.
+     */
+    List<EventCount> read(
+            String realmId, Dimension dimension, Granularity granularity, Long fromTimestamp, Long toTimestamp) {
+        RealmCounters realm = realms.get(realmId(realmId));
+        if (realm == null) {
+            return List.of();
+        }
+        ConcurrentSkipListMap<Long, Map<Counter, LongAdder>> buckets =
+                granularity == Granularity.MINUTE ? realm.minutes : realm.hours;
+        Map<Long, Map<Counter, LongAdder>> range = buckets.subMap(
+                fromTimestamp == null ? Long.MIN_VALUE : granularity.bucket(fromTimestamp),
+                true,
+                toTimestamp == null ? Long.MAX_VALUE : toTimestamp,
+                false);
+        List<EventCount> counts = new ArrayList<>();
+        range.forEach((start, counters) -> counters.entrySet().stream()
+                .filter(counter -> counter.getKey().dimension() == dimension)
+                .map(counter -> new EventCount(
+                        start,
+                        dimension,
+                        counter.getKey().value(),
+                        counter.getValue().sum()))
+                .sorted(Comparator.comparing(EventCount::value))
+                .forEach(counts::add));
+        return counts;
+    }
+
+    /** Drops the counters of the realm, optionally only the buckets that ended before the timestamp. */
+    void removeRealm(String realmId, Long olderThan) {
+        if (olderThan == null) {
+            realms.remove(realmId(realmId));
+            return;
+        }
+        RealmCounters realm = realms.get(realmId(realmId));
+        if (realm != null) {
+            realm.minutes.headMap(olderThan - Granularity.MINUTE.millis, true).clear();
+            realm.hours.headMap(olderThan - Granularity.HOUR.millis, true).clear();
+        }
+    }
+
+    void clear() {
+        realms.clear();
+    }
+
+    /** Sums the counts of all realms per value, over the buckets from the one containing the timestamp. */
+    Map<String, Long> total(Dimension dimension, Granularity granularity, long fromTimestamp) {
+        Map<String, Long> totals = new TreeMap<>();
+        realms.keySet().forEach(realmId -> read(realmId, dimension, granularity, fromTimestamp, null)
+                .forEach(count -> totals.merge(count.value(), count.count(), Long::sum)));
+        return totals;
+    }
+
+    private static String realmId(String realmId) {
+        return realmId == null ? "" : realmId;
+    }
+
+    private static final class RealmCounters {
+
+        private final ConcurrentSkipListMap<Long, Map<Counter, LongAdder>> minutes = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<Long, Map<Counter, LongAdder>> hours = new ConcurrentSkipListMap<>();
+
+        private void record(
+                ConcurrentSkipListMap<Long, Map<Counter, LongAdder>> buckets,
+                Granularity granularity,
+                long timestamp,
+                FileAuthEventEntity event,
+                int maxBuckets) {
+            long start = granularity.bucket(timestamp);
+            Long newest = buckets.isEmpty() ? null : buckets.lastKey();
+            long oldestKept = Math.max(start, newest == null ? start : newest) - (maxBuckets - 1) * granularity.millis;
+            if (start < oldestKept) {
+                return;
+            }
+            Map<Counter, LongAdder> counters = buckets.computeIfAbsent(start, s -> new ConcurrentHashMap<>());
+            for (Dimension dimension : Dimension.values()) {
+                String value = dimension.valueFunc.apply(event);
+                if (value != null) {
+                    counters.computeIfAbsent(new Counter(dimension, value), c -> new LongAdder())
+                            .increment();
+                }
+            }
+            buckets.headMap(oldestKept, false).clear();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the values of one event column: each distinct value is stored once and events keep its
+ * {@code int} code. Codes are never reused, so a full dictionary stops coding new values; events keep
+ * those values as they are.
+ */
+final class EventDictionary {
+
+    /** Code of {@code null}. */
+    static final int NULL = -1;
+    /** Code of a value the full dictionary did not take. */
+    static final int UNCODED = -2;
+
+    private final int capacity;
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size; // guarded by this
+
+    EventDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Returns the code of the value, adding it if the dictionary has room. */
+    int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (size == capacity) {
+                return UNCODED;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, Math.min(capacity, current.length * 2));
+            }
+            current[size] = value;
+            values = current;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    /** Returns the code of the value without adding it; {@link #UNCODED} if it has none. */
+    int lookup(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : UNCODED;
+    }
+
+    /** Returns the value of a code; {@code null} for {@link #NULL} and {@link #UNCODED}. */
+    String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    /**
+     * Returns what events with the value compare by: its code if it has one, otherwise the value
+     * itself, as events that carry it could not have coded it either.
+     */
+    Object key(String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : value;
+    }
+
+    int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmEntity;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Snapshot of the event expiration settings per realm, so storing an event does not load its realm.
+ * A snapshot is taken again after {@value #SNAPSHOT_MILLIS} ms, and dropped as soon as its realm is
+ * written or removed, so changed settings apply to the next event.
+ */
+final class EventExpirations {
+
+    static final long SNAPSHOT_MILLIS = 10_000L;
+    static final String ADMIN_EVENTS_EXPIRATION = "adminEventsExpiration";
+
+    /** The expirations of a realm in seconds, {@code 0} if its events do not expire. */
+    private record Snapshot(long events, long adminEvents, long takenAt) {}
+
+    private static final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    static {
+        EntityStore.addListener(new EntityStore.Listener() {
+            @Override
+            public void onWrite(Path path, AbstractEntity entity) {
+                invalidate(entity);
+            }
+
+            @Override
+            public void onDelete(Path path, AbstractEntity entity) {
+                invalidate(entity);
+            }
+        });
+    }
+
+    private EventExpirations() {}
+
+    /** Returns when an event of the realm created now expires, or {@code null}. */
+    static Long events(KeycloakSession session, String realmId) {
+        Snapshot snapshot = snapshot(session, realmId);
+        return snapshot == null ? null : expiration(snapshot.events());
+    }
+
+    /** Returns when an admin event of the realm created now expires, or {@code null}. */
+    static Long adminEvents(KeycloakSession session, String realmId) {
+        Snapshot snapshot = snapshot(session, realmId);
+        return snapshot == null ? null : expiration(snapshot.adminEvents());
+    }
+
+    static void invalidate(String realmId) {
+        snapshots.remove(realmId);
+    }
+
+    private static void invalidate(AbstractEntity entity) {
+        if (entity instanceof FileRealmEntity realm) {
+            // events carry the id the realm model reports, which is the name
+            if (realm.getId() != null) {
+                snapshots.remove(realm.getId());
+            }
+            if (realm.getName() != null) {
+                snapshots.remove(realm.getName());
+            }
+        }
+    }
+
+    static void invalidateAll() {
+        snapshots.clear();
+    }
+
+    private static Snapshot snapshot(KeycloakSession session, String realmId) {
+        if (realmId == null) {
+            return null;
+        }
+        long now = Time.currentTimeMillis();
+        Snapshot snapshot = snapshots.get(realmId);
+        if (snapshot != null && now - snapshot.takenAt() < SNAPSHOT_MILLIS) {
+            return snapshot;
+        }
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) {
+            snapshots.remove(realmId);
+            return null;
+        }
+        snapshot = new Snapshot(realm.getEventsExpiration(), realm.getAttribute(ADMIN_EVENTS_EXPIRATION, 0L), now);
+        snapshots.put(realmId, snapshot);
+        return snapshot;
+    }
+
+    private static Long expiration(long seconds) {
+        return seconds > 0 ? Time.currentTimeMillis() + seconds * 1000 : null;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.jboss.logging.Logger;
+
+/**
+ * Takes events off the request thread: {@link #submit(Object)} puts them into a bounded, lock-free
+ * queue, and a consumer thread stores them in batches. When the queue is full, the {@link Policy}
+ * decides between waiting, dropping and storing on the calling thread.
+ */
+final class EventIngestion<E> {
+
+    private static final Logger LOG = Logger.getLogger(EventIngestion.class);
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** What {@link #submit(Object)} does when the queue is full. */
+    enum Policy {
+        /** Waits for room, slowing the request down. */
+        BLOCK,
+        /** Drops the submitted event. */
+        DROP_NEWEST,
+        /** Drops the oldest queued event to make room. */
+        DROP_OLDEST,
+        /** Stores the event on the calling thread. */
+        CALLER_RUNS;
+
+        static Policy of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /** Counters of an ingestion, for monitoring. */
+    record Statistics(long queued, long applied, long batches, long dropped, long blocked, long callerRuns) {}
+
+    private final int capacity;
+    private final int batchSize;
+    private final Policy policy;
+    private final Consumer<List<E>> sink;
+
+    private final ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    EventIngestion(String name, int capacity, int batchSize, Policy policy, Consumer<List<E>> sink) {
+        this.capacity = capacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.policy = policy;
+        this.sink = sink;
+        this.consumer = new Thread(this::consume, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    void submit(E event) {
+        if (!running) {
+            sink.accept(List.of(event));
+            return;
+        }
+        while (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            switch (policy) {
+                case DROP_NEWEST -> {
+                    dropped.increment();
+                    return;
+                }
+                case DROP_OLDEST -> {
+                    if (queue.poll() != null) {
+                        size.decrementAndGet();
+                        dropped.increment();
+                    }
+                }
+                case CALLER_RUNS -> {
+                    callerRuns.increment();
+                    sink.accept(List.of(event));
+                    applied.increment();
+                    return;
+                }
+                case BLOCK -> {
+                    if (!running) {
+                        sink.accept(List.of(event));
+                        return;
+                    }
+                    blocked.increment();
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(BLOCK_NANOS);
+                }
+            }
+        }
+        queue.offer(event);
+        if (running) {
+            LockSupport.unpark(consumer);
+        } else {
+            // close() may have drained the queue before the event got in
+            drain();
+        }
+    }
+
+    /** Stops the consumer after it stored the queued events; later events are stored directly. */
+    void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+
+    Statistics getStatistics() {
+        return new Statistics(size.get(), applied.sum(), batches.sum(), dropped.sum(), blocked.sum(), callerRuns.sum());
+    }
+
+    private void consume() {
+        while (running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /** Stores the queued events in batches; returns how many. */
+    private int drain() {
+        int total = 0;
+        List<E> batch = new ArrayList<>(batchSize);
+        for (E event = queue.poll(); event != null; event = queue.poll()) {
+            size.decrementAndGet();
+            batch.add(event);
+            if (batch.size() == batchSize) {
+                total += apply(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        return batch.isEmpty() ? total : total + apply(batch);
+    }
+
+    private int apply(List<E> batch) {
+        try {
+            sink.accept(batch);
+            applied.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException e) {
+            dropped.add(batch.size());
+            LOG.error("Storing " + batch.size() + " events failed", e);
+        }
+        return batch.size();
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirableEntity;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.jboss.logging.Logger;
+
+/**
+ * Durable, append-only log of the events of one kind: {@code <directory>/<realm>/<start>.log}, one
+ * segment per realm and time slot of {@code segmentDuration}, named after the start of the slot in
+ * epoch milliseconds.
+ *
+ * <p>Events are queued without locking and appended by a background writer in batches, one write and
+ * one {@code fsync} per segment and batch. A record is its length, its timestamp and the event in the
+ * form of the {@link EventCodec}; a torn record at the end of a segment is cut off when the segment is
+ * opened again.
+ *
+ * <p>Next to every segment, {@code <start>.idx} holds a sparse time index: after every
+ * {@value #INDEX_INTERVAL_BYTES} bytes an entry of the highest timestamp so far and the offset it was
+ * reached at. Queries map the segments into memory and start reading at the last entry before their
+ * time range. They do not wait for the writer: events still queued are read from the queue, and a
+ * segment deleted by retention in the meantime reads as empty. Retention deletes whole segments; a
+ * segment rewritten by {@link #delete} is swapped together with its index, so a query never seeks
+ * with the index of another version of the segment.
+ */
+final class EventLog<E extends ExpirableEntity> {
+
+    private static final Logger LOG = Logger.getLogger(EventLog.class);
+
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int INDEX_ENTRY_BYTES = 2 * Long.BYTES;
+
+    private final Path directory;
+    private final EventCodec<E> codec;
+    private final Function<E, String> realmIdFunc;
+    private final Function<E, Long> timestampFunc;
+    private final Comparator<E> order;
+    private final long segmentMillis;
+
+    private final ConcurrentLinkedQueue<E> pending = new ConcurrentLinkedQueue<>();
+    // state of the segments appended to since start, guarded by this
+    private final Map<Path, SegmentState> segments = new HashMap<>();
+    // held by queries while they open a segment and seek in its index, and by rewrites while they swap both
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService writer;
+
+    /** Where appending to a segment continues. */
+    private static final class SegmentState {
+        private long size;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long sinceIndexEntry;
+    }
+
+    EventLog(
+            Path directory,
+            EventCodec<E> codec,
+            Function<E, String> realmIdFunc,
+            Function<E, Long> timestampFunc,
+            Comparator<E> order,
+            Duration segmentDuration,
+            Duration flushInterval) {
+        this.directory = directory;
+        this.codec = codec;
+        this.realmIdFunc = realmIdFunc;
+        this.timestampFunc = timestampFunc;
+        this.order = order;
+        this.segmentMillis = Math.max(1, segmentDuration.toMillis());
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filestore-event-log-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMillis = Math.max(1, flushInterval.toMillis());
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void append(E event) {
+        pending.offer(event);
+    }
+
+    void close() {
+        writer.shutdownNow();
+        flushQuietly();
+    }
+
+    /** Writes the queued events. */
+    synchronized void flush() throws IOException {
+        Map<Path, List<E>> batch = new HashMap<>();
+        for (E event = pending.poll(); event != null; event = pending.poll()) {
+            batch.computeIfAbsent(segmentPath(realmIdFunc.apply(event), timestamp(event)), path -> new ArrayList<>())
+                    .add(event);
+        }
+        for (Map.Entry<Path, List<E>> segment : batch.entrySet()) {
+            append(segment.getKey(), segment.getValue());
+        }
+    }
+
+    /**
+     * Returns the logged events of the realm (of all realms if {@code null}) within the time range that
+     * match the filter, in time order. Segments are read when the stream reaches them, and only the
+     * records in the time range are decoded.
+     */
+    Stream<E> read(String realmId, Long fromTimestamp, Long toTimestamp, boolean descending, Predicate<E> filter) {
+        Comparator<E> direction = descending ? order.reversed() : order;
+        List<Path> realmDirectories =
+                realmId == null ? list(directory, Files::isDirectory) : List.of(realmDirectory(realmId));
+        List<Iterator<E>> iterators = new ArrayList<>();
+        for (Path realm : realmDirectories) {
+            iterators.add(readRealm(realm, fromTimestamp, toTimestamp, descending, filter));
+        }
+        iterators.add(pending.stream()
+                .filter(event -> realmId == null || realmId.equals(realmIdFunc.apply(event)))
+                .filter(event -> inRange(timestamp(event), fromTimestamp, toTimestamp) && filter.test(event))
+                .sorted(direction)
+                .iterator());
+        Iterator<E> merged = EventTimeline.merge(iterators, direction);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, 0), false);
+    }
+
+    /** Deletes the logged events of the realm, optionally only those older than the timestamp. */
+    synchronized void delete(String realmId, Long olderThan) throws IOException {
+        flush();
+        Path realm = realmDirectory(realmId);
+        for (Path segment : list(realm, EventLog::isSegment)) {
+            long start = segmentStart(segment);
+            if (olderThan == null || start + segmentMillis <= olderThan) {
+                deleteSegment(segment);
+            } else if (start < olderThan) {
+                rewrite(segment, timestamp -> timestamp >= olderThan);
+            }
+        }
+        deleteIfEmpty(realm);
+    }
+
+    synchronized void deleteAll() throws IOException {
+        pending.clear();
+        for (Path realm : list(directory, Files::isDirectory)) {
+            delete(realm.getFileName().toString(), null);
+        }
+    }
+
+    /**
+     * Deletes the segments whose time slot ended before the timestamp.
+     *
+     * @return the number of deleted segments
+     */
+    synchronized int deleteSegmentsBefore(long timestamp) throws IOException {
+        int deleted = 0;
+        for (Path realm : list(directory, Files::isDirectory)) {
+            for (Path segment : list(realm, EventLog::isSegment)) {
+                if (segmentStart(segment) + segmentMillis <= timestamp) {
+                    deleteSegment(segment);
+                    deleted++;
+                }
+            }
+            deleteIfEmpty(realm);
+        }
+        return deleted;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Writing events to " + directory + " failed", e);
+        }
+    }
+
+    private void append(Path segment, List<E> events) throws IOException {
+        SegmentState state = segments.get(segment);
+        if (state == null) {
+            state = open(segment);
+            segments.put(segment, state);
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        ByteArrayOutputStream indexEntries = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexEntries);
+        for (E event : events) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            codec.write(new DataOutputStream(payload), event);
+            long timestamp = timestamp(event);
+            out.writeInt(payload.size());
+            out.writeLong(timestamp);
+            payload.writeTo(out);
+            state.size += RECORD_HEADER_BYTES + payload.size();
+            state.maxTimestamp = Math.max(state.maxTimestamp, timestamp);
+            state.sinceIndexEntry += RECORD_HEADER_BYTES + payload.size();
+            if (state.sinceIndexEntry >= INDEX_INTERVAL_BYTES) {
+                index.writeLong(state.maxTimestamp);
+                index.writeLong(state.size);
+                state.sinceIndexEntry = 0;
+            }
+        }
+        write(segment, records.toByteArray());
+        if (indexEntries.size() > 0) {
+            write(indexPath(segment), indexEntries.toByteArray());
+        }
+    }
+
+    private static void write(Path file, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /** Scans an existing segment, cuts off a torn last record and rebuilds its index. */
+    private SegmentState open(Path segment) throws IOException {
+        Files.createDirectories(segment.getParent());
+        if (!Files.exists(segment)) {
+            Files.deleteIfExists(indexPath(segment));
+            return new SegmentState();
+        }
+        return scan(segment, indexPath(segment));
+    }
+
+    /** Scans a segment, cuts off a torn last record and writes its index to the given file. */
+    private static SegmentState scan(Path segment, Path indexFile) throws IOException {
+        SegmentState state = new SegmentState();
+        ByteArrayOutputStream indexEntries = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexEntries);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (records.remaining() >= RECORD_HEADER_BYTES) {
+                int length = records.getInt();
+                long timestamp = records.getLong();
+                if (length < 0 || length > records.remaining()) {
+                    break;
+                }
+                records.position(records.position() + length);
+                state.size = records.position();
+                state.maxTimestamp = Math.max(state.maxTimestamp, timestamp);
+                state.sinceIndexEntry += RECORD_HEADER_BYTES + length;
+                if (state.sinceIndexEntry >= INDEX_INTERVAL_BYTES) {
+                    index.writeLong(state.maxTimestamp);
+                    index.writeLong(state.size);
+                    state.sinceIndexEntry = 0;
+                }
+            }
+            if (channel.size() > state.size) {
+                LOG.warnf("Cutting off %d bytes of a torn record in %s", channel.size() - state.size, segment);
+                channel.truncate(state.size);
+            }
+        }
+        Files.write(indexFile, indexEntries.toByteArray());
+        return state;
+    }
+
+    private Iterator<E> readRealm(
+            Path realm, Long fromTimestamp, Long toTimestamp, boolean descending, Predicate<E> filter) {
+        Comparator<Long> startOrder = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        Iterator<Path> segments = list(realm, EventLog::isSegment).stream()
+                .filter(segment -> overlaps(segmentStart(segment), fromTimestamp, toTimestamp))
+                .sorted(Comparator.comparing(EventLog::segmentStart, startOrder))
+                .iterator();
+        return new Iterator<>() {
+            private Iterator<E> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && segments.hasNext()) {
+                    current = readSegment(segments.next(), fromTimestamp, toTimestamp, descending, filter);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private boolean overlaps(long start, Long fromTimestamp, Long toTimestamp) {
+        return (fromTimestamp == null || start + segmentMillis > fromTimestamp)
+                && (toTimestamp == null || start <= toTimestamp);
+    }
+
+    private static boolean inRange(long timestamp, Long fromTimestamp, Long toTimestamp) {
+        return (fromTimestamp == null || timestamp >= fromTimestamp)
+                && (toTimestamp == null || timestamp <= toTimestamp);
+    }
+
+    /**
+     * Reads the record headers of the segment within the time range and returns an iterator that decodes
+     * the records in time order as it reaches them. Records of the same millisecond are decoded together
+     * to order them by the full event order.
+     */
+    private Iterator<E> readSegment(
+            Path segment, Long fromTimestamp, Long toTimestamp, boolean descending, Predicate<E> filter) {
+        MappedByteBuffer records;
+        swapLock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = fromTimestamp == null ? 0 : seek(indexPath(segment), fromTimestamp);
+            if (offset > size) {
+                // the index still points past a torn record that was cut off since
+                offset = 0;
+            }
+            records = channel.map(FileChannel.MapMode.READ_ONLY, offset, size - offset);
+        } catch (NoSuchFileException e) {
+            // deleted since the segment was listed
+            return Collections.emptyIterator();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        RecordPositions positions = new RecordPositions();
+        while (records.remaining() >= RECORD_HEADER_BYTES) {
+            int length = records.getInt();
+            long timestamp = records.getLong();
+            if (length < 0 || length > records.remaining()) {
+                break;
+            }
+            int payload = records.position();
+            records.position(payload + length);
+            if (inRange(timestamp, fromTimestamp, toTimestamp)) {
+                positions.add(timestamp, payload, length);
+            }
+        }
+        int[] sorted = positions.sortedByTimestamp();
+        Comparator<E> direction = descending ? order.reversed() : order;
+
+        return new Iterator<>() {
+            private int next;
+            private final List<E> run = new ArrayList<>();
+            private int runIndex;
+
+            @Override
+            public boolean hasNext() {
+                while (runIndex >= run.size() && next < sorted.length) {
+                    run.clear();
+                    runIndex = 0;
+                    long timestamp = positions.timestamps[recordAt(next)];
+                    while (next < sorted.length && positions.timestamps[recordAt(next)] == timestamp) {
+                        int record = recordAt(next++);
+                        E event = codec.read(records.slice(positions.payloads[record], positions.lengths[record]));
+                        if (filter.test(event)) {
+                            run.add(event);
+                        }
+                    }
+                    run.sort(direction);
+                }
+                return runIndex < run.size();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return run.get(runIndex++);
+            }
+
+            private int recordAt(int i) {
+                return sorted[descending ? sorted.length - 1 - i : i];
+            }
+        };
+    }
+
+    /** Timestamps and payload positions of the records of a segment, without decoding them. */
+    private static final class RecordPositions {
+        private long[] timestamps = new long[64];
+        private int[] payloads = new int[64];
+        private int[] lengths = new int[64];
+        private int size;
+        private boolean ordered = true;
+
+        void add(long timestamp, int payload, int length) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                payloads = Arrays.copyOf(payloads, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            ordered &= size == 0 || timestamps[size - 1] <= timestamp;
+            timestamps[size] = timestamp;
+            payloads[size] = payload;
+            lengths[size] = length;
+            size++;
+        }
+
+        /** Returns the record numbers by timestamp; records are usually appended in that order already. */
+        int[] sortedByTimestamp() {
+            int[] records = new int[size];
+            for (int i = 0; i < size; i++) {
+                records[i] = i;
+            }
+            if (!ordered) {
+                records = Arrays.stream(records)
+                        .boxed()
+                        .sorted(Comparator.comparingLong(record -> timestamps[record]))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+            }
+            return records;
+        }
+    }
+
+    /** Returns the offset of the last index entry before which no record reaches the timestamp. */
+    private static long seek(Path index, long fromTimestamp) throws IOException {
+        ByteBuffer entries;
+        try {
+            entries = ByteBuffer.wrap(Files.readAllBytes(index));
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        long offset = 0;
+        while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+            long maxTimestamp = entries.getLong();
+            long entryOffset = entries.getLong();
+            if (maxTimestamp >= fromTimestamp) {
+                break;
+            }
+            offset = entryOffset;
+        }
+        return offset;
+    }
+
+    /**
+     * Rewrites a segment with the records whose timestamp is accepted. The new segment and its index
+     * are written next to the old ones and then swapped in, index first, under the swap lock.
+     */
+    private void rewrite(Path segment, Predicate<Long> keep) throws IOException {
+        Path rewritten = segment.resolveSibling(segment.getFileName() + ".tmp");
+        Path rewrittenIndex =
+                indexPath(segment).resolveSibling(indexPath(segment).getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(
+                        rewritten,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (records.remaining() >= RECORD_HEADER_BYTES) {
+                int start = records.position();
+                int length = records.getInt();
+                long timestamp = records.getLong();
+                if (length < 0 || length > records.remaining()) {
+                    break;
+                }
+                records.position(records.position() + length);
+                if (keep.test(timestamp)) {
+                    ByteBuffer record = records.slice(start, RECORD_HEADER_BYTES + length);
+                    while (record.hasRemaining()) {
+                        target.write(record);
+                    }
+                }
+            }
+            target.force(false);
+        }
+        SegmentState state = scan(rewritten, rewrittenIndex);
+        swapLock.writeLock().lock();
+        try {
+            Files.move(
+                    rewrittenIndex,
+                    indexPath(segment),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(rewritten, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        segments.put(segment, state);
+    }
+
+    private void deleteSegment(Path segment) throws IOException {
+        segments.remove(segment);
+        Files.deleteIfExists(segment);
+        Files.deleteIfExists(indexPath(segment));
+    }
+
+    private static void deleteIfEmpty(Path realm) throws IOException {
+        if (Files.isDirectory(realm)) {
+            try (Stream<Path> files = Files.list(realm)) {
+                if (files.findAny().isEmpty()) {
+                    Files.delete(realm);
+                }
+            }
+        }
+    }
+
+    private Path segmentPath(String realmId, long timestamp) {
+        long start = Math.floorDiv(timestamp, segmentMillis) * segmentMillis;
+        return realmDirectory(realmId).resolve(start + SEGMENT_SUFFIX);
+    }
+
+    private Path realmDirectory(String realmId) {
+        Path realm = directory.resolve(Objects.requireNonNullElse(realmId, "")).normalize();
+        if (!directory.equals(realm.getParent())) {
+            throw new IllegalArgumentException("Invalid realm id: " + realmId);
+        }
+        return realm;
+    }
+
+    private long timestamp(E event) {
+        return Objects.requireNonNullElse(timestampFunc.apply(event), 0L);
+    }
+
+    private static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(SEGMENT_SUFFIX)
+                && name.substring(0, name.length() - SEGMENT_SUFFIX.length()).matches("-?\\d+");
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Path> list(Path directory, Predicate<Path> filter) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(filter).collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            // deleted since it was checked
+            return List.of();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import org.keycloak.Config;
+
+/**
+ * Caps on the events kept in memory, for all realms together and for each realm. Once a cap is
+ * exceeded, the oldest events are evicted. A cap of {@code 0} means unlimited.
+ */
+record EventRetention(long maxEvents, long maxEventsPerRealm, long maxBytes, long maxBytesPerRealm) {
+
+    static final EventRetention UNLIMITED = new EventRetention(0, 0, 0, 0);
+
+    static final String MAX_EVENTS = "maxEvents";
+    static final String MAX_EVENTS_PER_REALM = "maxEventsPerRealm";
+    static final String MAX_BYTES = "maxBytes";
+    static final String MAX_BYTES_PER_REALM = "maxBytesPerRealm";
+
+    static EventRetention fromConfig(Config.Scope config) {
+        return new EventRetention(
+                config.getLong(MAX_EVENTS, 0L),
+                config.getLong(MAX_EVENTS_PER_REALM, 0L),
+                config.getLong(MAX_BYTES, 0L),
+                config.getLong(MAX_BYTES_PER_REALM, 0L));
+    }
+
+    boolean isLimited() {
+        return maxEvents > 0 || maxEventsPerRealm > 0 || maxBytes > 0 || maxBytesPerRealm > 0;
+    }
+
+    boolean exceeds(long events, long bytes) {
+        return exceeds(events, bytes, maxEvents, maxBytes);
+    }
+
+    boolean exceedsPerRealm(long events, long bytes) {
+        return exceeds(events, bytes, maxEventsPerRealm, maxBytesPerRealm);
+    }
+
+    private static boolean exceeds(long events, long bytes, long maxEvents, long maxBytes) {
+        return (maxEvents > 0 && events > maxEvents) || (maxBytes > 0 && bytes > maxBytes);
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirableEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The events of one kind, kept per realm in time order, with hash indexes from the values of the
+ * fields queries filter by to the events carrying them, again in time order.
+ *
+ * <p>A query walks the events of its realm, or the smallest matching index bucket, in the requested
+ * order and can stop as soon as it has its page; nothing is copied or sorted. All structures are
+ * concurrent, so events are added while queries run. Readers see a weakly consistent view, which is
+ * what the event store gave before as well.
+ *
+ * <p>Memory is bounded by an {@link EventRetention}: when an event pushes its realm or the timeline
+ * over a cap, the oldest events are evicted. Events that expire are kept in buckets by the second
+ * they expire in, and each bucket, not each event, is registered with the {@link ExpirationScheduler},
+ * which drops the bucket once its second passed. Adding an event takes no lock beyond the maps.
+ *
+ * <p>With an {@link EventLog}, every event is also written to disk. Memory then holds the newest events
+ * of each realm, and queries continue in the log with the events older than those.
+ */
+final class EventTimeline<E extends ExpirableEntity, M> {
+
+    private static final Comparator<Key> ORDER = Comparator.comparingLong(Key::timestamp)
+            .thenComparing(Key::id, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /** Position of an event: its time, then its id to keep events of the same millisecond apart. */
+    private record Key(long timestamp, String id) {}
+
+    private record IndexKey(SearchableModelField<?> field, Object value) {}
+
+    /** Counters of a timeline, for monitoring. */
+    record Statistics(long events, long bytes, long evicted, long expired) {}
+
+    /** Width of the expiry buckets, one tick of the scheduler. */
+    static final long EXPIRY_BUCKET_MILLIS = ExpirationScheduler.TICK_MILLIS;
+
+    /** The events expiring within one bucket; registered with the scheduler by the first event. */
+    private static final class ExpiryBucket<E> {
+        private final Set<E> events = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    /** Registration of a bucket with the scheduler. */
+    private record ExpiryKey(EventTimeline<?, ?> timeline, long end) {}
+
+    private final Function<E, String> realmIdFunc;
+    private final Function<E, Long> timestampFunc;
+    private final ToLongFunction<E> sizeFunc;
+    private final Map<SearchableModelField<M>, Function<E, ?>> fields;
+
+    private final Map<String, E> byId = new ConcurrentHashMap<>();
+    private final Map<String, RealmEvents<E>> realms = new ConcurrentHashMap<>();
+    // end of the bucket (exclusive) -> the events expiring within it
+    private final ConcurrentSkipListMap<Long, ExpiryBucket<E>> expiring = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final Object evictionLock = new Object();
+    private volatile EventRetention retention = EventRetention.UNLIMITED;
+    private volatile EventLog<E> log;
+
+    private EventTimeline(
+            Function<E, String> realmIdFunc,
+            Function<E, Long> timestampFunc,
+            ToLongFunction<E> sizeFunc,
+            Map<SearchableModelField<M>, Function<E, ?>> fields) {
+        this.realmIdFunc = realmIdFunc;
+        this.timestampFunc = timestampFunc;
+        this.sizeFunc = sizeFunc;
+        this.fields = fields;
+    }
+
+    static <E extends ExpirableEntity, M> Builder<E, M> builder(
+            Function<E, String> realmIdFunc, Function<E, Long> timestampFunc) {
+        return new Builder<>(realmIdFunc, timestampFunc);
+    }
+
+    boolean exists(String id) {
+        return id != null && byId.containsKey(id);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void setRetention(EventRetention retention) {
+        this.retention = retention;
+        evictIfFull(null);
+    }
+
+    /** Persists the events added from now on to the log, or stops persisting if {@code null}. */
+    void setLog(EventLog<E> log) {
+        EventLog<E> previous = this.log;
+        this.log = log;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /** The order of the timeline: by time, then by id. */
+    Comparator<E> order() {
+        return Comparator.comparing(this::key, ORDER);
+    }
+
+    Statistics getStatistics() {
+        return new Statistics(byId.size(), bytes.get(), evicted.sum(), expired.sum());
+    }
+
+    List<E> readAll() {
+        return new ArrayList<>(byId.values());
+    }
+
+    void add(E event) {
+        E replaced = byId.put(event.getId(), event);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        Key key = key(event);
+        long size = sizeFunc.applyAsLong(event);
+        RealmEvents<E> realm = realms.computeIfAbsent(realmId(event), id -> new RealmEvents<>());
+        realm.all.put(key, event);
+        realm.bytes.addAndGet(size);
+        bytes.addAndGet(size);
+        fields.forEach((field, valueFunc) -> {
+            Object value = valueFunc.apply(event);
+            if (value != null) {
+                realm.indexed.compute(new IndexKey(field, value), (k, bucket) -> {
+                    Bucket<E> updated = bucket == null ? new Bucket<>() : bucket;
+                    updated.put(key, event);
+                    return updated;
+                });
+            }
+        });
+        Long expiration = event.getExpiration();
+        if (expiration != null) {
+            addExpiring(event, expiration);
+        }
+        EventLog<E> current = log;
+        if (current != null) {
+            current.append(event);
+        }
+        evictIfFull(realm);
+    }
+
+    private void addExpiring(E event, long expiration) {
+        long end = expiryBucket(expiration);
+        ExpiryBucket<E> bucket = expiring.computeIfAbsent(end, e -> new ExpiryBucket<>());
+        bucket.events.add(event);
+        if (bucket.scheduled.compareAndSet(false, true)) {
+            ExpirationScheduler.schedule(new ExpiryKey(this, end), end, () -> removeExpired(end));
+        }
+        if (expiring.get(end) != bucket) {
+            // the bucket was dropped in the meantime, so the event is due as well
+            expire(event);
+        }
+    }
+
+    void remove(E event) {
+        if (byId.remove(event.getId(), event)) {
+            unindex(event);
+        }
+    }
+
+    void clear() {
+        expiring.keySet().forEach(end -> ExpirationScheduler.cancel(new ExpiryKey(this, end)));
+        expiring.clear();
+        byId.clear();
+        realms.clear();
+        bytes.set(0);
+        EventLog<E> current = log;
+        if (current != null) {
+            try {
+                current.deleteAll();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Removes the events of all buckets that ended before the timestamp. Events of the current bucket
+     * that already expired stay until it ends; queries filter them anyway.
+     */
+    void removeExpired(long now) {
+        for (Map.Entry<Long, ExpiryBucket<E>> bucket = expiring.firstEntry();
+                bucket != null && bucket.getKey() <= now;
+                bucket = expiring.firstEntry()) {
+            expiring.remove(bucket.getKey(), bucket.getValue());
+            bucket.getValue().events.forEach(this::expire);
+        }
+    }
+
+    private void expire(E event) {
+        if (byId.remove(event.getId(), event)) {
+            unindex(event);
+            expired.increment();
+        }
+    }
+
+    /** Removes the events of the realm, optionally only those older than the timestamp. */
+    void removeRealm(String realmId, Long olderThan) {
+        EventLog<E> current = log;
+        if (current != null) {
+            try {
+                current.delete(realmId, olderThan);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        RealmEvents<E> realm = realms.get(realmId);
+        if (realm == null) {
+            return;
+        }
+        NavigableMap<Key, E> events =
+                olderThan == null ? realm.all.events : realm.all.events.headMap(new Key(olderThan, null), false);
+        new ArrayList<>(events.values()).forEach(this::remove);
+    }
+
+    /**
+     * Deletes the log segments whose time slot ended before the timestamp.
+     *
+     * @return the number of deleted segments
+     */
+    int removeLoggedBefore(long timestamp) {
+        EventLog<E> current = log;
+        if (current == null) {
+            return 0;
+        }
+        try {
+            return current.deleteSegmentsBefore(timestamp);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the events of the realm (of all realms if {@code null}) within the time range, in time
+     * order. Only the equality constraints of indexed fields narrow the events down; the caller checks
+     * all constraints on the result.
+     *
+     * @param constraints the accepted values per field; an empty collection matches nothing
+     */
+    Stream<E> read(
+            String realmId,
+            Map<SearchableModelField<M>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending) {
+        Collection<RealmEvents<E>> scope = realmId == null
+                ? realms.values()
+                : Stream.ofNullable(realms.get(realmId)).toList();
+        List<Iterator<E>> iterators = new ArrayList<>();
+        for (RealmEvents<E> realm : scope) {
+            for (Bucket<E> bucket : realm.plan(constraints)) {
+                NavigableMap<Key, E> range = range(bucket.events, fromTimestamp, toTimestamp);
+                iterators.add(
+                        (descending ? range.descendingMap() : range).values().iterator());
+            }
+        }
+        Comparator<E> order = descending ? order().reversed() : order();
+        Iterator<E> merged = merge(iterators, order);
+        Stream<E> recent = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        EventLog<E> current = log;
+        if (current == null) {
+            return recent;
+        }
+        Stream<E> logged = readLogged(current, realmId, constraints, fromTimestamp, toTimestamp, descending);
+        if (realmId != null) {
+            return descending ? Stream.concat(recent, logged) : Stream.concat(logged, recent);
+        }
+        Iterator<E> all = merge(List.of(recent.iterator(), logged.iterator()), order);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(all, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Reads the logged events that are older than the oldest event in memory of their realm, as taken
+     * when the query starts. The log is only read once the stream gets there.
+     */
+    private Stream<E> readLogged(
+            EventLog<E> log,
+            String realmId,
+            Map<SearchableModelField<M>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending) {
+        Map<String, Key> oldest = new HashMap<>();
+        realms.forEach((id, realm) -> {
+            Map.Entry<Key, E> first = realm.all.events.firstEntry();
+            if (first != null) {
+                oldest.put(id, first.getKey());
+            }
+        });
+        Long to = toTimestamp;
+        if (realmId != null && oldest.containsKey(realmId)) {
+            long horizon = oldest.get(realmId).timestamp();
+            to = to == null ? horizon : Math.min(to, horizon);
+        }
+        Long logTo = to;
+        Predicate<E> filter = event -> {
+            Key first = oldest.get(realmId(event));
+            return (first == null || ORDER.compare(key(event), first) < 0) && matches(event, constraints);
+        };
+        return Stream.of(log).flatMap(l -> l.read(realmId, fromTimestamp, logTo, descending, filter));
+    }
+
+    private boolean matches(E event, Map<SearchableModelField<M>, Collection<?>> constraints) {
+        for (Map.Entry<SearchableModelField<M>, Collection<?>> constraint : constraints.entrySet()) {
+            Function<E, ?> valueFunc = fields.get(constraint.getKey());
+            if (valueFunc != null && !constraint.getValue().contains(valueFunc.apply(event))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the oldest events of the realm (of every realm if {@code null}) while it is over its caps,
+     * then the oldest events of any realm while the timeline is over the global caps.
+     */
+    private void evictIfFull(RealmEvents<E> realm) {
+        EventRetention caps = this.retention;
+        if (!caps.isLimited()) {
+            return;
+        }
+        synchronized (evictionLock) {
+            for (RealmEvents<E> full : realm == null ? realms.values() : List.of(realm)) {
+                while (caps.exceedsPerRealm(full.all.size(), full.bytes.get()) && evictOldest(full)) {
+                    evicted.increment();
+                }
+            }
+            while (caps.exceeds(byId.size(), bytes.get()) && evictOldest(oldestRealm())) {
+                evicted.increment();
+            }
+        }
+    }
+
+    private boolean evictOldest(RealmEvents<E> realm) {
+        Map.Entry<Key, E> oldest = realm == null ? null : realm.all.events.firstEntry();
+        if (oldest == null) {
+            return false;
+        }
+        remove(oldest.getValue());
+        return true;
+    }
+
+    private RealmEvents<E> oldestRealm() {
+        RealmEvents<E> oldest = null;
+        Key oldestKey = null;
+        for (RealmEvents<E> realm : realms.values()) {
+            Map.Entry<Key, E> first = realm.all.events.firstEntry();
+            if (first != null && (oldestKey == null || ORDER.compare(first.getKey(), oldestKey) < 0)) {
+                oldest = realm;
+                oldestKey = first.getKey();
+            }
+        }
+        return oldest;
+    }
+
+    private void unindex(E event) {
+        RealmEvents<E> realm = realms.get(realmId(event));
+        if (realm == null) {
+            return;
+        }
+        Key key = key(event);
+        long size = sizeFunc.applyAsLong(event);
+        if (realm.all.remove(key)) {
+            realm.bytes.addAndGet(-size);
+            bytes.addAndGet(-size);
+        }
+        Long expiration = event.getExpiration();
+        if (expiration != null) {
+            ExpiryBucket<E> bucket = expiring.get(expiryBucket(expiration));
+            if (bucket != null) {
+                bucket.events.remove(event);
+            }
+        }
+        fields.forEach((field, valueFunc) -> {
+            Object value = valueFunc.apply(event);
+            if (value != null) {
+                realm.indexed.computeIfPresent(new IndexKey(field, value), (k, bucket) -> {
+                    bucket.remove(key);
+                    return bucket.size() == 0 ? null : bucket;
+                });
+            }
+        });
+    }
+
+    private static long expiryBucket(long expiration) {
+        return (Math.floorDiv(expiration, EXPIRY_BUCKET_MILLIS) + 1) * EXPIRY_BUCKET_MILLIS;
+    }
+
+    private Key key(E event) {
+        Long timestamp = timestampFunc.apply(event);
+        return new Key(timestamp == null ? 0L : timestamp, event.getId());
+    }
+
+    private String realmId(E event) {
+        return Objects.requireNonNullElse(realmIdFunc.apply(event), "");
+    }
+
+    private static <E> NavigableMap<Key, E> range(NavigableMap<Key, E> events, Long from, Long to) {
+        NavigableMap<Key, E> range = events;
+        if (from != null) {
+            range = range.tailMap(new Key(from, null), true);
+        }
+        if (to != null && to < Long.MAX_VALUE) {
+            range = range.headMap(new Key(to + 1, null), false);
+        }
+        return range;
+    }
+
+    /** Merges iterators that are each in the given order into one iterator in that order. */
+    static <E> Iterator<E> merge(List<Iterator<E>> iterators, Comparator<E> order) {
+        if (iterators.size() == 1) {
+            return iterators.get(0);
+        }
+        record Head<E>(E event, Iterator<E> rest) {}
+        PriorityQueue<Head<E>> heads =
+                new PriorityQueue<>(Math.max(1, iterators.size()), (a, b) -> order.compare(a.event(), b.event()));
+        iterators.stream().filter(Iterator::hasNext).forEach(it -> heads.add(new Head<>(it.next(), it)));
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                Head<E> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.rest().hasNext()) {
+                    heads.add(new Head<>(head.rest().next(), head.rest()));
+                }
+                return head.event();
+            }
+        };
+    }
+
+    /** Events in time order; the size is tracked since skip lists count in linear time. */
+    private static final class Bucket<E> {
+
+        private final ConcurrentSkipListMap<Key, E> events = new ConcurrentSkipListMap<>(ORDER);
+        private final AtomicInteger size = new AtomicInteger();
+
+        private void put(Key key, E event) {
+            if (events.put(key, event) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        private boolean remove(Key key) {
+            if (events.remove(key) != null) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private int size() {
+            return size.get();
+        }
+    }
+
+    private static final class RealmEvents<E> {
+
+        private final Bucket<E> all = new Bucket<>();
+        private final AtomicLong bytes = new AtomicLong();
+        private final Map<IndexKey, Bucket<E>> indexed = new ConcurrentHashMap<>();
+
+        /** Returns the buckets of the constrained field with the fewest events, or all events. */
+        private <M> List<Bucket<E>> plan(Map<SearchableModelField<M>, Collection<?>> constraints) {
+            List<Bucket<E>> best = List.of(all);
+            int bestSize = all.size();
+            for (Map.Entry<SearchableModelField<M>, Collection<?>> constraint : constraints.entrySet()) {
+                List<Bucket<E>> buckets = constraint.getValue().stream()
+                        .distinct()
+                        .map(value -> indexed.get(new IndexKey(constraint.getKey(), value)))
+                        .filter(Objects::nonNull)
+                        .toList();
+                int size = buckets.stream().mapToInt(Bucket::size).sum();
+                if (size < bestSize) {
+                    best = buckets;
+                    bestSize = size;
+                }
+            }
+            return best;
+        }
+    }
+
+    static final class Builder<E extends ExpirableEntity, M> {
+
+        private final Function<E, String> realmIdFunc;
+        private final Function<E, Long> timestampFunc;
+        private ToLongFunction<E> sizeFunc = event -> 0L;
+        private final Map<SearchableModelField<M>, Function<E, ?>> fields = new LinkedHashMap<>();
+
+        private Builder(Function<E, String> realmIdFunc, Function<E, Long> timestampFunc) {
+            this.realmIdFunc = realmIdFunc;
+            this.timestampFunc = timestampFunc;
+        }
+
+        /** Indexes the events by the value of a field; events without a value are not indexed. */
+        Builder<E, M> index(SearchableModelField<M> field, Function<E, ?> valueFunc) {
+            fields.put(field, valueFunc);
+            return this;
+        }
+
+        /** Estimates the heap an event takes, for the byte caps of the {@link EventRetention}. */
+        Builder<E, M> size(ToLongFunction<E> sizeFunc) {
+            this.sizeFunc = sizeFunc;
+            return this;
+        }
+
+        EventTimeline<E, M> build() {
+            return new EventTimeline<>(realmIdFunc, timestampFunc, sizeFunc, Map.copyOf(fields));
+        }
+    }
+}
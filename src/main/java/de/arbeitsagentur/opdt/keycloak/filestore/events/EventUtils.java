@@ -25,6 +25,12 @@ import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AuthDetails;
 
 public class EventUtils {
+
+    // rough heap sizes for estimateSize; strings are counted with one byte per character
+    private static final long ENTITY_SIZE = 96;
+    private static final long STRING_SIZE = 40;
+    private static final long ARRAY_SIZE = 16;
+
     public static Event entityToModel(FileAuthEventEntity eventEntity) {
         Event event = new Event();
         event.setId(eventEntity.getId());
@@ -91,6 +97,42 @@ public class EventUtils {
         return eventEntity;
     }
 
+    /** Estimates the heap an event takes in the in-memory store. */
+    static long estimateSize(FileAuthEventEntity eventEntity) {
+        // realm, client and error are dictionary codes within the entity
+        long size = ENTITY_SIZE
+                + sizeOf(eventEntity.getId())
+                + sizeOf(eventEntity.getUserId())
+                + sizeOf(eventEntity.getSessionId())
+                + sizeOf(eventEntity.getIpAddress())
+                + ARRAY_SIZE
+                + eventEntity.detailsSize();
+        for (String uncoded : eventEntity.uncoded()) {
+            size += sizeOf(uncoded);
+        }
+        return size;
+    }
+
+    /** Estimates the heap an admin event takes in the in-memory store. */
+    static long estimateSize(FileAdminEventEntity adminEventEntity) {
+        return ENTITY_SIZE
+                + sizeOf(adminEventEntity.getId())
+                + sizeOf(adminEventEntity.getRealmId())
+                + sizeOf(adminEventEntity.getResourcePath())
+                + STRING_SIZE
+                + adminEventEntity.representationSize()
+                + sizeOf(adminEventEntity.getError())
+                + sizeOf(adminEventEntity.getResourceType())
+                + sizeOf(adminEventEntity.getAuthRealmId())
+                + sizeOf(adminEventEntity.getAuthClientId())
+                + sizeOf(adminEventEntity.getAuthUserId())
+                + sizeOf(adminEventEntity.getAuthIpAddress());
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : STRING_SIZE + value.length();
+    }
+
     private static void setAuthDetails(FileAdminEventEntity adminEventEntity, AuthDetails authDetails) {
         if (authDetails == null) return;
         adminEventEntity.setAuthRealmId(authDetails.getRealmId());
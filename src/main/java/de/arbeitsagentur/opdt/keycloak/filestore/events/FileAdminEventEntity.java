@@ -29,7 +29,9 @@ public class FileAdminEventEntity implements ExpirableEntity {
     private String realmId;
     private OperationType operationType;
     private String resourcePath;
+    // small representations as they are, large ones deflated in a heap byte array
     private String representation;
+    private CompressedText compressedRepresentation;
     private String error;
     private String resourceType;
     private String authRealmId;
@@ -93,12 +95,27 @@ public class FileAdminEventEntity implements ExpirableEntity {
         this.resourcePath = resourcePath;
     }
 
+    /** Returns the representation, decompressing it if it is large. */
     public String getRepresentation() {
-        return representation;
+        return compressedRepresentation != null ? compressedRepresentation.text() : representation;
     }
 
     public void setRepresentation(String representation) {
-        this.representation = representation;
+        if (representation != null && representation.length() >= CompressedText.MIN_LENGTH) {
+            this.representation = null;
+            this.compressedRepresentation = CompressedText.of(representation);
+        } else {
+            this.representation = representation;
+            this.compressedRepresentation = null;
+        }
+    }
+
+    /** Bytes the representation takes in memory. */
+    long representationSize() {
+        if (compressedRepresentation != null) {
+            return compressedRepresentation.size();
+        }
+        return representation == null ? 0 : representation.length();
     }
 
     public String getError() {
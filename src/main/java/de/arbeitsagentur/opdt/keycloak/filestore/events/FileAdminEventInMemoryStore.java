@@ -14,37 +14,141 @@
  *  limitations under the License.
  *
  */
-
 package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
-import java.util.ArrayList;
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.jboss.logging.Logger;
+import org.keycloak.events.admin.AdminEvent;
 
 public class FileAdminEventInMemoryStore {
 
-    private FileAdminEventInMemoryStore() {}
+    private static final Logger LOG = Logger.getLogger(FileAdminEventInMemoryStore.class);
 
-    private static final Map<String, FileAdminEventEntity> cache = new ConcurrentHashMap<>();
+    private static final EventTimeline<FileAdminEventEntity, AdminEvent> cache =
+            EventTimeline.<FileAdminEventEntity, AdminEvent>builder(
+                            FileAdminEventEntity::getRealmId, FileAdminEventEntity::getTimestamp)
+                    .index(AdminSearchableFields.AUTH_USER_ID, FileAdminEventEntity::getAuthUserId)
+                    .index(AdminSearchableFields.AUTH_CLIENT_ID, FileAdminEventEntity::getAuthClientId)
+                    .index(AdminSearchableFields.AUTH_IP_ADDRESS, FileAdminEventEntity::getAuthIpAddress)
+                    .index(AdminSearchableFields.OPERATION_TYPE, FileAdminEventEntity::getOperationType)
+                    .size(EventUtils::estimateSize)
+                    .build();
+
+    private static volatile EventIngestion<FileAdminEventEntity> ingestion;
+
+    private FileAdminEventInMemoryStore() {}
 
     public static boolean exists(String eventId) {
-        return eventId != null && cache.containsKey(eventId);
+        return cache.exists(eventId);
     }
 
     public static List<FileAdminEventEntity> readAll() {
-        return new ArrayList<>(cache.values());
+        return cache.readAll();
+    }
+
+    /** Returns the admin events of the realm in time order, narrowed down by the indexed constraints. */
+    public static Stream<FileAdminEventEntity> read(
+            String realmId,
+            Map<SearchableModelField<AdminEvent>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending) {
+        return cache.read(realmId, constraints, fromTimestamp, toTimestamp, descending);
     }
 
     public static void create(FileAdminEventEntity entity) {
-        cache.put(entity.getId(), entity);
+        cache.add(entity);
+    }
+
+    /** Stores the event through the ingestion queue if there is one, otherwise right away. */
+    public static void submit(FileAdminEventEntity entity) {
+        EventIngestion<FileAdminEventEntity> current = ingestion;
+        if (current == null) {
+            create(entity);
+        } else {
+            current.submit(entity);
+        }
+    }
+
+    /** Stores a batch from the ingestion queue, skipping events that were stored meanwhile. */
+    private static void createAll(List<FileAdminEventEntity> entities) {
+        for (FileAdminEventEntity entity : entities) {
+            if (cache.exists(entity.getId())) {
+                LOG.debugf("Skipping duplicate event %s", entity.getId());
+            } else {
+                cache.add(entity);
+            }
+        }
     }
 
     public static void delete(FileAdminEventEntity entity) {
-        cache.remove(entity.getId());
+        cache.remove(entity);
+    }
+
+    public static void deleteByRealmId(String realmId, Long olderThan) {
+        cache.removeRealm(realmId, olderThan);
     }
 
     public static void clearCache() {
         cache.clear();
     }
+
+    static void setRetention(EventRetention retention) {
+        cache.setRetention(retention);
+    }
+
+    /** Also persists the events to segments below the directory, or stops persisting if {@code null}. */
+    static void setLog(Path directory, Duration segmentDuration, Duration flushInterval) {
+        cache.setLog(
+                directory == null
+                        ? null
+                        : new EventLog<>(
+                                directory,
+                                EventCodec.ADMIN,
+                                FileAdminEventEntity::getRealmId,
+                                FileAdminEventEntity::getTimestamp,
+                                cache.order(),
+                                segmentDuration,
+                                flushInterval));
+    }
+
+    /** Deletes the log segments whose time slot ended before the timestamp. */
+    static int deleteLoggedBefore(long timestamp) {
+        return cache.removeLoggedBefore(timestamp);
+    }
+
+    /**
+     * Takes events through a queue of the capacity, or stores them right away if {@code 0}; see {@link
+     * EventIngestion}.
+     */
+    static void setIngestion(int capacity, int batchSize, EventIngestion.Policy policy) {
+        EventIngestion<FileAdminEventEntity> previous = ingestion;
+        ingestion = capacity > 0
+                ? new EventIngestion<>(
+                        "filestore-admin-events-ingestion",
+                        capacity,
+                        batchSize,
+                        policy,
+                        FileAdminEventInMemoryStore::createAll)
+                : null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /** Counters of the ingestion queue, or {@code null} without one. */
+    static EventIngestion.Statistics getIngestionStatistics() {
+        EventIngestion<FileAdminEventEntity> current = ingestion;
+        return current == null ? null : current.getStatistics();
+    }
+
+    static EventTimeline.Statistics getStatistics() {
+        return cache.getStatistics();
+    }
 }
@@ -19,12 +19,18 @@ package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
 import static org.keycloak.utils.StreamsUtil.paginatedStream;
 
-import de.arbeitsagentur.opdt.keycloak.filestore.SearchPatterns;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.keycloak.common.util.Time;
 import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.OperationType;
@@ -145,34 +151,47 @@ public abstract class FileAdminEventQuery implements AdminEventQuery {
 
     @Override
     public Stream<AdminEvent> getResultStream() {
-        Comparator<AdminEvent> ENTITY_COMPARATOR = Comparator.comparing(
-                AdminEvent::getTime, "DESC".equals(this.order) ? Comparator.reverseOrder() : Comparator.naturalOrder());
-        Stream<AdminEvent> adminEvents = read().filter(
-                        ev -> this.realmId == null || this.realmId.equals(ev.getRealmId()))
-                .filter(ev -> this.authRealmId == null
-                        || (ev.getAuthDetails() != null
-                                && this.authRealmId.equals(ev.getAuthDetails().getRealmId())))
-                .filter(ev -> this.authClientId == null
-                        || (ev.getAuthDetails() != null
-                                && this.authClientId.equals(ev.getAuthDetails().getClientId())))
-                .filter(ev -> this.authUserId == null
-                        || (ev.getAuthDetails() != null
-                                && this.authUserId.equals(ev.getAuthDetails().getUserId())))
-                .filter(ev -> this.authIpAddress == null
-                        || (ev.getAuthDetails() != null
-                                && this.authIpAddress.equals(ev.getAuthDetails().getIpAddress())))
+        Map<SearchableModelField<AdminEvent>, Collection<?>> constraints = new HashMap<>();
+        if (this.authClientId != null)
+            constraints.put(AdminSearchableFields.AUTH_CLIENT_ID, List.of(this.authClientId));
+        if (this.authUserId != null) constraints.put(AdminSearchableFields.AUTH_USER_ID, List.of(this.authUserId));
+        if (this.authIpAddress != null)
+            constraints.put(AdminSearchableFields.AUTH_IP_ADDRESS, List.of(this.authIpAddress));
+        if (this.operationTypes != null) constraints.put(AdminSearchableFields.OPERATION_TYPE, this.operationTypes);
+
+        LikePattern resourcePathPattern =
+                this.resourcePath == null ? null : LikePattern.compile(this.resourcePath.replace('*', '%'));
+        Set<String> resourceTypeNames = this.resourceTypes == null
+                ? null
+                : this.resourceTypes.stream().map(ResourceType::name).collect(Collectors.toSet());
+        // the events come in the requested order, so the page is taken without sorting, and only the
+        // events of the page are turned into models, which is when representations are decompressed
+        Stream<FileAdminEventEntity> adminEvents = read(
+                        constraints, this.fromTimestamp, this.toTimestamp, "DESC".equals(this.order))
+                .filter(ev -> this.realmId == null || this.realmId.equals(ev.getRealmId()))
+                .filter(ev -> this.authRealmId == null || this.authRealmId.equals(ev.getAuthRealmId()))
+                .filter(ev -> this.authClientId == null || this.authClientId.equals(ev.getAuthClientId()))
+                .filter(ev -> this.authUserId == null || this.authUserId.equals(ev.getAuthUserId()))
+                .filter(ev -> this.authIpAddress == null || this.authIpAddress.equals(ev.getAuthIpAddress()))
                 .filter(ev -> this.operationTypes == null
                         || ev.getOperationType() != null && this.operationTypes.contains(ev.getOperationType()))
-                .filter(ev -> this.resourceTypes == null
-                        || ev.getResourceType() != null && this.resourceTypes.contains(ev.getResourceType()))
-                .filter(ev -> this.resourcePath == null
-                        || (ev.getResourceType() != null
-                                && SearchPatterns.like(ev.getResourcePath(), this.resourcePath.replace('*', '%'))))
-                .filter(ev -> this.fromTimestamp == null || ev.getTime() >= this.fromTimestamp)
-                .filter(ev -> this.toTimestamp == null || ev.getTime() <= this.toTimestamp)
-                .sorted(ENTITY_COMPARATOR);
-        return paginatedStream(adminEvents, firstResult, maxResults);
-    }
-
-    protected abstract Stream<AdminEvent> read();
+                .filter(ev -> resourceTypeNames == null
+                        || ev.getResourceType() != null && resourceTypeNames.contains(ev.getResourceType()))
+                .filter(ev -> resourcePathPattern == null
+                        || (ev.getResourcePath() != null && resourcePathPattern.matches(ev.getResourcePath())))
+                .filter(ev -> this.fromTimestamp == null || time(ev) >= this.fromTimestamp)
+                .filter(ev -> this.toTimestamp == null || time(ev) <= this.toTimestamp);
+        return paginatedStream(adminEvents, firstResult, maxResults).map(EventUtils::entityToModel);
+    }
+
+    private static long time(FileAdminEventEntity event) {
+        return event.getTimestamp() != null ? event.getTimestamp() : Time.currentTimeMillis();
+    }
+
+    /** Returns the admin events of the realm in time order, narrowed down by the indexed constraints. */
+    protected abstract Stream<FileAdminEventEntity> read(
+            Map<SearchableModelField<AdminEvent>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending);
 }
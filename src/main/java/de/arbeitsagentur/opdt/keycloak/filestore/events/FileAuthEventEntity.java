@@ -18,23 +18,50 @@
 package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
 import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirableEntity;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 import org.keycloak.events.EventType;
 
+/**
+ * An event in the in-memory store, laid out compactly since there are millions of them: the realm,
+ * client and error are {@code int} codes of per-column {@link EventDictionary dictionaries}, times are
+ * primitives and the details are packed into one byte array. The getters decode on demand; queries
+ * compare the {@code *Key()} values instead, which are the codes. IP addresses are kept as they are,
+ * as there are too many distinct ones for a dictionary that never forgets a value.
+ */
 public class FileAuthEventEntity implements ExpirableEntity {
 
+    private static final int DICTIONARY_CAPACITY = 1 << 16;
+    static final EventDictionary REALMS = new EventDictionary(DICTIONARY_CAPACITY);
+    static final EventDictionary CLIENTS = new EventDictionary(DICTIONARY_CAPACITY);
+    static final EventDictionary ERRORS = new EventDictionary(DICTIONARY_CAPACITY);
+    static final EventDictionary DETAIL_KEYS = new EventDictionary(DICTIONARY_CAPACITY);
+
+    // indexes into uncoded
+    private static final int REALM = 0;
+    private static final int CLIENT = 1;
+    private static final int ERROR = 2;
+
+    private static final long NO_EXPIRATION = Long.MIN_VALUE;
+    private static final String[] NO_VALUES = new String[0];
+
     private String id;
-    private Long expiration;
+    private long expiration = NO_EXPIRATION;
     private boolean updated;
-    private Long timestamp;
+    private long timestamp;
     private EventType type;
-    private String realmId;
-    private String clientId;
+    private int realm = EventDictionary.NULL;
+    private int client = EventDictionary.NULL;
+    private int error = EventDictionary.NULL;
     private String userId;
     private String sessionId;
     private String ipAddress;
-    private String error;
-    private Map<String, String> details;
+    // values the dictionaries had no room for, by column; null while all are coded
+    private String[] uncoded;
+    private byte[] details;
 
     public String getId() {
         return id;
@@ -45,11 +72,11 @@ public class FileAuthEventEntity implements ExpirableEntity {
     }
 
     public Long getExpiration() {
-        return expiration;
+        return expiration == NO_EXPIRATION ? null : expiration;
     }
 
     public void setExpiration(Long expiration) {
-        this.expiration = expiration;
+        this.expiration = expiration == null ? NO_EXPIRATION : expiration;
     }
 
     public boolean isUpdated() {
@@ -65,7 +92,7 @@ public class FileAuthEventEntity implements ExpirableEntity {
     }
 
     public void setTimestamp(Long timestamp) {
-        this.timestamp = timestamp;
+        this.timestamp = timestamp == null ? 0L : timestamp;
     }
 
     public EventType getType() {
@@ -77,19 +104,19 @@ public class FileAuthEventEntity implements ExpirableEntity {
     }
 
     public String getRealmId() {
-        return realmId;
+        return decode(REALMS, realm, REALM);
     }
 
     public void setRealmId(String realmId) {
-        this.realmId = realmId;
+        this.realm = encode(REALMS, realmId, REALM);
     }
 
     public String getClientId() {
-        return clientId;
+        return decode(CLIENTS, client, CLIENT);
     }
 
     public void setClientId(String clientId) {
-        this.clientId = clientId;
+        this.client = encode(CLIENTS, clientId, CLIENT);
     }
 
     public String getUserId() {
@@ -117,18 +144,155 @@ public class FileAuthEventEntity implements ExpirableEntity {
     }
 
     public String getError() {
-        return error;
+        return decode(ERRORS, error, ERROR);
     }
 
     public void setError(String error) {
-        this.error = error;
+        this.error = encode(ERRORS, error, ERROR);
     }
 
+    /** Returns a copy of the details, unpacked. */
     public Map<String, String> getDetails() {
-        return details;
+        return details == null ? null : unpack(details);
     }
 
     public void setDetails(Map<String, String> details) {
-        this.details = details;
+        this.details = details == null ? null : pack(details, true);
+    }
+
+    /**
+     * Sets the coded columns of an event read back from the log. Values the dictionaries do not know
+     * are kept uncoded instead of being added, so reading old events does not fill the dictionaries.
+     */
+    void setLogged(String realmId, String clientId, String error, Map<String, String> details) {
+        this.realm = code(REALMS, realmId, REALM, false);
+        this.client = code(CLIENTS, clientId, CLIENT, false);
+        this.error = code(ERRORS, error, ERROR, false);
+        this.details = details == null ? null : pack(details, false);
+    }
+
+    /** What events of the realm compare by, see {@link EventDictionary#key(String)}. */
+    Object realmKey() {
+        return key(REALMS, realm, REALM);
+    }
+
+    Object clientKey() {
+        return key(CLIENTS, client, CLIENT);
+    }
+
+    long timestamp() {
+        return timestamp;
+    }
+
+    /** Size of the packed details in bytes. */
+    int detailsSize() {
+        return details == null ? 0 : details.length;
+    }
+
+    /** The values the dictionaries had no room for, by column; do not modify. */
+    String[] uncoded() {
+        return uncoded == null ? NO_VALUES : uncoded;
+    }
+
+    private Object key(EventDictionary dictionary, int code, int column) {
+        if (code == EventDictionary.NULL) {
+            return null;
+        }
+        // an uncoded value of a logged event may have been coded since
+        return code == EventDictionary.UNCODED ? dictionary.key(uncoded[column]) : (Object) code;
+    }
+
+    private int encode(EventDictionary dictionary, String value, int column) {
+        return code(dictionary, value, column, true);
+    }
+
+    private int code(EventDictionary dictionary, String value, int column, boolean add) {
+        int code = add ? dictionary.encode(value) : dictionary.lookup(value);
+        if (code == EventDictionary.UNCODED) {
+            if (uncoded == null) {
+                uncoded = new String[ERROR + 1];
+            }
+            uncoded[column] = value;
+        } else if (uncoded != null) {
+            uncoded[column] = null;
+        }
+        return code;
+    }
+
+    private String decode(EventDictionary dictionary, int code, int column) {
+        return code == EventDictionary.UNCODED ? uncoded[column] : dictionary.decode(code);
+    }
+
+    /**
+     * Packs details as a count followed by pairs of key and value, with variable-length integers: the
+     * key as its dictionary code plus one, or {@code 0} and the key itself; strings as their UTF-8
+     * length plus one ({@code 0} for {@code null}) and bytes. Keys are only added to the dictionary
+     * if {@code add} is set.
+     */
+    private static byte[] pack(Map<String, String> details, boolean add) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * details.size() + 1);
+        writeVarInt(out, details.size());
+        for (Map.Entry<String, String> detail : details.entrySet()) {
+            int key = add ? DETAIL_KEYS.encode(detail.getKey()) : DETAIL_KEYS.lookup(detail.getKey());
+            if (key >= 0) {
+                writeVarInt(out, key + 1);
+            } else {
+                writeVarInt(out, 0);
+                writeString(out, detail.getKey());
+            }
+            writeString(out, detail.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> unpack(byte[] packed) {
+        ByteBuffer in = ByteBuffer.wrap(packed);
+        int size = readVarInt(in);
+        Map<String, String> details = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            int key = readVarInt(in);
+            String name = key == 0 ? readString(in) : DETAIL_KEYS.decode(key - 1);
+            details.put(name, readString(in));
+        }
+        return details;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
     }
 }
@@ -14,31 +14,173 @@
  *  limitations under the License.
  *
  */
-
 package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.jboss.logging.Logger;
+import org.keycloak.events.Event;
 
 public class FileAuthEventInMemoryStore {
 
-    private static final Map<String, FileAuthEventEntity> cache = new ConcurrentHashMap<>();
+    private static final Logger LOG = Logger.getLogger(FileAuthEventInMemoryStore.class);
+
+    private static final EventTimeline<FileAuthEventEntity, Event> cache =
+            EventTimeline.<FileAuthEventEntity, Event>builder(
+                            FileAuthEventEntity::getRealmId, FileAuthEventEntity::getTimestamp)
+                    .index(SearchableFields.USER_ID, FileAuthEventEntity::getUserId)
+                    .index(SearchableFields.CLIENT_ID, FileAuthEventEntity::clientKey)
+                    .index(SearchableFields.EVENT_TYPE, FileAuthEventEntity::getType)
+                    .index(SearchableFields.IP_ADDRESS, FileAuthEventEntity::getIpAddress)
+                    .size(EventUtils::estimateSize)
+                    .build();
+
+    private static final EventCounters counters = new EventCounters();
+
+    private static volatile EventIngestion<FileAuthEventEntity> ingestion;
 
     public static boolean exists(String eventId) {
-        return cache.containsKey(eventId);
+        return cache.exists(eventId);
     }
 
     public static List<FileAuthEventEntity> readAll() {
-        return cache.values().stream().filter(Objects::nonNull).toList();
+        return cache.readAll();
+    }
+
+    /**
+     * Returns the events of the realm in time order, narrowed down by the indexed constraints. Clients
+     * are indexed by their dictionary codes, see {@link FileAuthEventEntity}.
+     */
+    public static Stream<FileAuthEventEntity> read(
+            String realmId,
+            Map<SearchableModelField<Event>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending) {
+        Map<SearchableModelField<Event>, Collection<?>> keys = new HashMap<>(constraints);
+        keys.computeIfPresent(SearchableFields.CLIENT_ID, (field, values) -> keys(FileAuthEventEntity.CLIENTS, values));
+        return cache.read(realmId, keys, fromTimestamp, toTimestamp, descending);
+    }
+
+    private static Collection<?> keys(EventDictionary dictionary, Collection<?> values) {
+        return values.stream().map(value -> dictionary.key((String) value)).toList();
     }
 
     public static void create(FileAuthEventEntity entity) {
-        cache.put(entity.getId(), entity);
+        cache.add(entity);
+        counters.record(entity);
+    }
+
+    /** Stores the event through the ingestion queue if there is one, otherwise right away. */
+    public static void submit(FileAuthEventEntity entity) {
+        EventIngestion<FileAuthEventEntity> current = ingestion;
+        if (current == null) {
+            create(entity);
+        } else {
+            current.submit(entity);
+        }
+    }
+
+    /** Stores a batch from the ingestion queue, skipping events that were stored meanwhile. */
+    private static void createAll(List<FileAuthEventEntity> entities) {
+        for (FileAuthEventEntity entity : entities) {
+            if (cache.exists(entity.getId())) {
+                LOG.debugf("Skipping duplicate event %s", entity.getId());
+            } else {
+                create(entity);
+            }
+        }
     }
 
     public static void delete(FileAuthEventEntity entity) {
-        cache.remove(entity.getId());
+        cache.remove(entity);
+    }
+
+    public static void deleteByRealmId(String realmId, Long olderThan) {
+        cache.removeRealm(realmId, olderThan);
+        counters.removeRealm(realmId, olderThan);
+    }
+
+    public static void clearCache() {
+        cache.clear();
+        counters.clear();
+    }
+
+    static void setRetention(EventRetention retention) {
+        cache.setRetention(retention);
+    }
+
+    /** Also persists the events to segments below the directory, or stops persisting if {@code null}. */
+    static void setLog(Path directory, Duration segmentDuration, Duration flushInterval) {
+        cache.setLog(
+                directory == null
+                        ? null
+                        : new EventLog<>(
+                                directory,
+                                EventCodec.AUTH,
+                                FileAuthEventEntity::getRealmId,
+                                FileAuthEventEntity::getTimestamp,
+                                cache.order(),
+                                segmentDuration,
+                                flushInterval));
+    }
+
+    /** Deletes the log segments whose time slot ended before the timestamp. */
+    static int deleteLoggedBefore(long timestamp) {
+        return cache.removeLoggedBefore(timestamp);
+    }
+
+    /**
+     * Takes events through a queue of the capacity, or stores them right away if {@code 0}; see {@link
+     * EventIngestion}.
+     */
+    static void setIngestion(int capacity, int batchSize, EventIngestion.Policy policy) {
+        EventIngestion<FileAuthEventEntity> previous = ingestion;
+        ingestion = capacity > 0
+                ? new EventIngestion<>(
+                        "filestore-events-ingestion",
+                        capacity,
+                        batchSize,
+                        policy,
+                        FileAuthEventInMemoryStore::createAll)
+                : null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /** Counters of the ingestion queue, or {@code null} without one. */
+    static EventIngestion.Statistics getIngestionStatistics() {
+        EventIngestion<FileAuthEventEntity> current = ingestion;
+        return current == null ? null : current.getStatistics();
+    }
+
+    /** Returns the counts of the realm's events, see {@link EventCounters#read}. */
+    public static List<EventCounters.EventCount> readCounts(
+            String realmId,
+            EventCounters.Dimension dimension,
+            EventCounters.Granularity granularity,
+            Long fromTimestamp,
+            Long toTimestamp) {
+        return counters.read(realmId, dimension, granularity, fromTimestamp, toTimestamp);
+    }
+
+    static Map<String, Long> totalCounts(
+            EventCounters.Dimension dimension, EventCounters.Granularity granularity, long fromTimestamp) {
+        return counters.total(dimension, granularity, fromTimestamp);
+    }
+
+    static void setCounterBuckets(int minuteBuckets, int hourBuckets) {
+        counters.setBuckets(minuteBuckets, hourBuckets);
+    }
+
+    static EventTimeline.Statistics getStatistics() {
+        return cache.getStatistics();
     }
 }
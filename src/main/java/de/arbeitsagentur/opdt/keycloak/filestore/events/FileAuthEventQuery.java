@@ -19,10 +19,13 @@ package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
 import static org.keycloak.utils.StreamsUtil.paginatedStream;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
@@ -121,17 +124,34 @@ public abstract class FileAuthEventQuery implements EventQuery {
 
     @Override
     public Stream<Event> getResultStream() {
-        Comparator<Event> ENTITY_COMPARATOR = Comparator.comparing(
-                Event::getTime, "DESC".equals(this.order) ? Comparator.reverseOrder() : Comparator.naturalOrder());
-        Stream<Event> adminEvents = read().filter(ev -> this.realmId == null || this.realmId.equals(ev.getRealmId()))
-                .filter(ev -> this.clientId == null || this.clientId.equals(ev.getClientId()))
+        Map<SearchableModelField<Event>, Collection<?>> constraints = new HashMap<>();
+        if (this.clientId != null) constraints.put(SearchableFields.CLIENT_ID, List.of(this.clientId));
+        if (this.userId != null) constraints.put(SearchableFields.USER_ID, List.of(this.userId));
+        if (this.ipAddress != null) constraints.put(SearchableFields.IP_ADDRESS, List.of(this.ipAddress));
+        if (this.eventTypes != null) constraints.put(SearchableFields.EVENT_TYPE, this.eventTypes);
+
+        // compare dictionary codes instead of strings; see FileAuthEventEntity
+        Object realmKey = FileAuthEventEntity.REALMS.key(this.realmId);
+        Object clientKey = FileAuthEventEntity.CLIENTS.key(this.clientId);
+
+        // the events come in the requested order, so the page is taken without sorting, and only the
+        // events of the page are turned into models
+        Stream<FileAuthEventEntity> events = read(
+                        constraints, this.fromTimestamp, this.toTimestamp, "DESC".equals(this.order))
+                .filter(ev -> realmKey == null || realmKey.equals(ev.realmKey()))
+                .filter(ev -> clientKey == null || clientKey.equals(ev.clientKey()))
                 .filter(ev -> this.userId == null || this.userId.equals(ev.getUserId()))
                 .filter(ev -> this.ipAddress == null || this.ipAddress.equals(ev.getIpAddress()))
-                .filter(ev -> this.fromTimestamp == null || ev.getTime() >= this.fromTimestamp)
-                .filter(ev -> this.toTimestamp == null || ev.getTime() <= this.toTimestamp)
-                .sorted(ENTITY_COMPARATOR);
-        return paginatedStream(adminEvents, firstResult, maxResults);
+                .filter(ev -> this.eventTypes == null || this.eventTypes.contains(ev.getType()))
+                .filter(ev -> this.fromTimestamp == null || ev.timestamp() >= this.fromTimestamp)
+                .filter(ev -> this.toTimestamp == null || ev.timestamp() <= this.toTimestamp);
+        return paginatedStream(events, firstResult, maxResults).map(EventUtils::entityToModel);
     }
 
-    protected abstract Stream<Event> read();
+    /** Returns the events of the realm in time order, narrowed down by the indexed constraints. */
+    protected abstract Stream<FileAuthEventEntity> read(
+            Map<SearchableModelField<Event>, Collection<?>> constraints,
+            Long fromTimestamp,
+            Long toTimestamp,
+            boolean descending);
 }
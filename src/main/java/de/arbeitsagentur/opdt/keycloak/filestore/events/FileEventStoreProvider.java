@@ -20,11 +20,13 @@ package de.arbeitsagentur.opdt.keycloak.filestore.events;
 import static de.arbeitsagentur.opdt.keycloak.filestore.events.EventUtils.modelToEntity;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.SearchableModelField;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirableEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationUtils;
+import java.util.Collection;
+import java.util.Map;
 import java.util.stream.Stream;
 import org.jboss.logging.Logger;
-import org.keycloak.common.util.Time;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
@@ -49,18 +51,13 @@ public class FileEventStoreProvider implements EventStoreProvider {
         LOG.tracef("onEvent(%s)%s", event, getShortStackTrace());
         String id = event.getId();
         String realmId = event.getRealmId();
-        if (FileAdminEventInMemoryStore.exists(id)) {
+        if (FileAuthEventInMemoryStore.exists(id)) {
             throw new ModelDuplicateException("Event already exists: " + id);
         }
 
         FileAuthEventEntity entity = modelToEntity(event);
-        if (realmId != null) {
-            RealmModel realm = session.realms().getRealm(realmId);
-            if (realm != null && realm.getEventsExpiration() > 0) {
-                entity.setExpiration(Time.currentTimeMillis() + (realm.getEventsExpiration() * 1000));
-            }
-        }
-        FileAuthEventInMemoryStore.create(entity);
+        entity.setExpiration(EventExpirations.events(session, realmId));
+        FileAuthEventInMemoryStore.submit(entity);
     }
 
     @Override
@@ -77,11 +74,13 @@ public class FileEventStoreProvider implements EventStoreProvider {
             }
 
             @Override
-            protected Stream<Event> read() {
-                return FileAuthEventInMemoryStore.readAll().stream()
-                        .filter(ev -> realmId.equals(ev.getRealmId()))
-                        .filter(this::filterExpired)
-                        .map(EventUtils::entityToModel);
+            protected Stream<FileAuthEventEntity> read(
+                    Map<SearchableModelField<Event>, Collection<?>> constraints,
+                    Long fromTimestamp,
+                    Long toTimestamp,
+                    boolean descending) {
+                return FileAuthEventInMemoryStore.read(realmId, constraints, fromTimestamp, toTimestamp, descending)
+                        .filter(this::filterExpired);
             }
         };
     }
@@ -89,31 +88,43 @@ public class FileEventStoreProvider implements EventStoreProvider {
     @Override
     public void clear() {
         LOG.tracef("clear()%s", getShortStackTrace());
-        FileAuthEventInMemoryStore.readAll().stream().forEach(FileAuthEventInMemoryStore::delete);
+        FileAuthEventInMemoryStore.clearCache();
     }
 
     @Override
     public void clear(RealmModel realm) {
         LOG.tracef("clear(%s)%s", realm, getShortStackTrace());
-        FileAuthEventInMemoryStore.readAll().stream()
-                .filter(ev -> realm.getId().equals(ev.getRealmId()))
-                .forEach(FileAuthEventInMemoryStore::delete);
+        FileAuthEventInMemoryStore.deleteByRealmId(realm.getId(), null);
     }
 
     @Override
     public void clear(RealmModel realm, long olderThan) {
         LOG.tracef("clear(%s, %d)%s", realm, olderThan, getShortStackTrace());
-        FileAuthEventInMemoryStore.readAll().stream()
-                .filter(ev -> realm.getId().equals(ev.getRealmId()))
-                .filter(ev -> ev.getTimestamp() < olderThan)
-                .forEach(FileAuthEventInMemoryStore::delete);
+        FileAuthEventInMemoryStore.deleteByRealmId(realm.getId(), olderThan);
     }
 
     @Override
     public void clearExpiredEvents() {
         LOG.tracef("clearExpiredEvents()%s", getShortStackTrace());
-        LOG.warnf(
-                "Clearing expired entities should not be triggered manually. It is responsibility of the store to clear these.");
+        FileEventStoreProviderFactory.removeExpiredEvents();
+    }
+
+    /**
+     * Returns the number of events of the realm per value of the dimension, in the buckets of the
+     * granularity that overlap {@code [fromTimestamp, toTimestamp)}, so the bucket containing {@code
+     * fromTimestamp} is included; either bound may be {@code null}. The counts come from {@link EventCounters} and cost no scan over the events.
+     */
+    public Stream<EventCounters.EventCount> getEventCounts(
+            RealmModel realm,
+            EventCounters.Dimension dimension,
+            EventCounters.Granularity granularity,
+            Long fromTimestamp,
+            Long toTimestamp) {
+        LOG.tracef(
+                "getEventCounts(%s, %s, %s, %d, %d)%s",
+                realm, dimension, granularity, fromTimestamp, toTimestamp, getShortStackTrace());
+        return FileAuthEventInMemoryStore.readCounts(realm.getId(), dimension, granularity, fromTimestamp, toTimestamp)
+                .stream();
     }
 
     /** ADMIN EVENTS */
@@ -126,16 +137,8 @@ public class FileEventStoreProvider implements EventStoreProvider {
             throw new ModelDuplicateException("Event already exists: " + id);
         }
         FileAdminEventEntity entity = modelToEntity(event, includeRepresentation);
-        if (realmId != null) {
-            RealmModel realm = session.realms().getRealm(realmId);
-            if (realm != null) {
-                Long expiration = realm.getAttribute("adminEventsExpiration", 0L);
-                if (expiration > 0) {
-                    entity.setExpiration(Time.currentTimeMillis() + (expiration * 1000));
-                }
-            }
-        }
-        FileAdminEventInMemoryStore.create(entity);
+        entity.setExpiration(EventExpirations.adminEvents(session, realmId));
+        FileAdminEventInMemoryStore.submit(entity);
     }
 
     @Override
@@ -150,11 +153,13 @@ public class FileEventStoreProvider implements EventStoreProvider {
             }
 
             @Override
-            protected Stream<AdminEvent> read() {
-                return FileAdminEventInMemoryStore.readAll().stream()
-                        .filter(ev -> realmId.equals(ev.getRealmId()))
-                        .filter(this::filterExpired)
-                        .map(EventUtils::entityToModel);
+            protected Stream<FileAdminEventEntity> read(
+                    Map<SearchableModelField<AdminEvent>, Collection<?>> constraints,
+                    Long fromTimestamp,
+                    Long toTimestamp,
+                    boolean descending) {
+                return FileAdminEventInMemoryStore.read(realmId, constraints, fromTimestamp, toTimestamp, descending)
+                        .filter(this::filterExpired);
             }
         };
     }
@@ -162,24 +167,19 @@ public class FileEventStoreProvider implements EventStoreProvider {
     @Override
     public void clearAdmin() {
         LOG.tracef("clearAdmin()%s", getShortStackTrace());
-        FileAdminEventInMemoryStore.readAll().stream().forEach(FileAdminEventInMemoryStore::delete);
+        FileAdminEventInMemoryStore.clearCache();
     }
 
     @Override
     public void clearAdmin(RealmModel realm) {
         LOG.tracef("clearAdmin(%s)%s", realm, getShortStackTrace());
-        FileAdminEventInMemoryStore.readAll().stream()
-                .filter(ev -> realm.getId().equals(ev.getRealmId()))
-                .forEach(FileAdminEventInMemoryStore::delete);
+        FileAdminEventInMemoryStore.deleteByRealmId(realm.getId(), null);
     }
 
     @Override
     public void clearAdmin(RealmModel realm, long olderThan) {
         LOG.tracef("clearAdmin(%s, %d)%s", realm, olderThan, getShortStackTrace());
-        FileAdminEventInMemoryStore.readAll().stream()
-                .filter(ev -> realm.getId().equals(ev.getRealmId()))
-                .filter(ev -> ev.getTimestamp() < olderThan)
-                .forEach(FileAdminEventInMemoryStore::delete);
+        FileAdminEventInMemoryStore.deleteByRealmId(realm.getId(), olderThan);
     }
 
     @Override
@@ -19,7 +19,18 @@ package de.arbeitsagentur.opdt.keycloak.filestore.events;
 
 import com.google.auto.service.AutoService;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.jboss.logging.Logger;
 import org.keycloak.Config;
+import org.keycloak.common.util.Time;
 import org.keycloak.component.AmphibianProviderFactory;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
@@ -27,21 +38,115 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.provider.InvalidationHandler;
+import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.provider.ProviderConfigurationBuilder;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
 @AutoService(EventStoreProviderFactory.class)
 public class FileEventStoreProviderFactory
-        implements AmphibianProviderFactory<EventStoreProvider>, EventStoreProviderFactory, InvalidationHandler {
+        implements AmphibianProviderFactory<EventStoreProvider>,
+                EventStoreProviderFactory,
+                InvalidationHandler,
+                ServerInfoAwareProviderFactory {
 
     public static final String PROVIDER_ID = AbstractFileProviderFactory.PROVIDER_ID;
 
+    private static final Logger LOG = Logger.getLogger(FileEventStoreProviderFactory.class);
+    private static final String SWEEP_INTERVAL = "sweepInterval";
+    private static final int DEFAULT_SWEEP_INTERVAL_SECONDS = 60;
+    private static final String LOG_DIRECTORY = "logDirectory";
+    private static final String LOG_SEGMENT_DURATION = "logSegmentDuration";
+    private static final String LOG_RETENTION = "logRetention";
+    private static final String LOG_FLUSH_INTERVAL = "logFlushInterval";
+    private static final long DEFAULT_LOG_SEGMENT_DURATION_SECONDS = 3600;
+    private static final long DEFAULT_LOG_FLUSH_INTERVAL_MILLIS = 200;
+    private static final String INGESTION_QUEUE_SIZE = "ingestionQueueSize";
+    private static final String INGESTION_BATCH_SIZE = "ingestionBatchSize";
+    private static final String INGESTION_POLICY = "ingestionPolicy";
+    private static final int DEFAULT_INGESTION_BATCH_SIZE = 256;
+    private static final String DEFAULT_INGESTION_POLICY = "caller-runs";
+    private static final String STATISTICS_MINUTE_BUCKETS = "statisticsMinuteBuckets";
+    private static final String STATISTICS_HOUR_BUCKETS = "statisticsHourBuckets";
+
+    private static volatile long logRetentionSeconds;
+
+    private int sweepIntervalSeconds = DEFAULT_SWEEP_INTERVAL_SECONDS;
+    private boolean logging;
+    private boolean ingesting;
+    private ScheduledExecutorService sweeper;
+
     protected final String uniqueKey =
             getClass().getName() + AbstractFileProviderFactory.uniqueCounter.incrementAndGet();
 
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        EventRetention retention = EventRetention.fromConfig(config);
+        FileAuthEventInMemoryStore.setRetention(retention);
+        FileAdminEventInMemoryStore.setRetention(retention);
+        sweepIntervalSeconds = config.getInt(SWEEP_INTERVAL, DEFAULT_SWEEP_INTERVAL_SECONDS);
+        String logDirectory = config.get(LOG_DIRECTORY);
+        if (logDirectory != null && !logDirectory.isBlank()) {
+            Path directory = Path.of(logDirectory);
+            Duration segmentDuration =
+                    Duration.ofSeconds(config.getLong(LOG_SEGMENT_DURATION, DEFAULT_LOG_SEGMENT_DURATION_SECONDS));
+            Duration flushInterval =
+                    Duration.ofMillis(config.getLong(LOG_FLUSH_INTERVAL, DEFAULT_LOG_FLUSH_INTERVAL_MILLIS));
+            FileAuthEventInMemoryStore.setLog(directory.resolve("events"), segmentDuration, flushInterval);
+            FileAdminEventInMemoryStore.setLog(directory.resolve("admin-events"), segmentDuration, flushInterval);
+            logRetentionSeconds = config.getLong(LOG_RETENTION, 0L);
+            logging = true;
+            LOG.infof("Persisting events to %s", directory.toAbsolutePath());
+        }
+        FileAuthEventInMemoryStore.setCounterBuckets(
+                config.getInt(STATISTICS_MINUTE_BUCKETS, EventCounters.DEFAULT_MINUTE_BUCKETS),
+                config.getInt(STATISTICS_HOUR_BUCKETS, EventCounters.DEFAULT_HOUR_BUCKETS));
+        int queueSize = config.getInt(INGESTION_QUEUE_SIZE, 0);
+        if (queueSize > 0) {
+            int batchSize = config.getInt(INGESTION_BATCH_SIZE, DEFAULT_INGESTION_BATCH_SIZE);
+            EventIngestion.Policy policy =
+                    EventIngestion.Policy.of(config.get(INGESTION_POLICY, DEFAULT_INGESTION_POLICY));
+            FileAuthEventInMemoryStore.setIngestion(queueSize, batchSize, policy);
+            FileAdminEventInMemoryStore.setIngestion(queueSize, batchSize, policy);
+            ingesting = true;
+        }
+    }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {}
+    public void postInit(KeycloakSessionFactory factory) {
+        ExpirationScheduler.start();
+        if (sweepIntervalSeconds > 0 && logRetentionSeconds > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "filestore-event-log-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(
+                    FileEventStoreProviderFactory::removeExpiredEvents,
+                    sweepIntervalSeconds,
+                    sweepIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Runs the removals of expired entities that are due, which the {@link ExpirationScheduler} does
+     * every second anyway, and deletes the event log segments past retention.
+     */
+    static void removeExpiredEvents() {
+        try {
+            long now = Time.currentTimeMillis();
+            int expired = ExpirationScheduler.runDue();
+            LOG.debugf("Removed %d expired entities", expired);
+            if (logRetentionSeconds > 0) {
+                long before = now - TimeUnit.SECONDS.toMillis(logRetentionSeconds);
+                int segments = FileAuthEventInMemoryStore.deleteLoggedBefore(before)
+                        + FileAdminEventInMemoryStore.deleteLoggedBefore(before);
+                LOG.debugf("Removed %d event log segments past retention", segments);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Removing expired events failed", e);
+        }
+    }
 
     @Override
     public EventStoreProvider create(KeycloakSession session) {
@@ -53,6 +158,7 @@ public class FileEventStoreProviderFactory
     @Override
     public void invalidate(KeycloakSession session, InvalidableObjectType type, Object... params) {
         if (type == AbstractFileProviderFactory.MapProviderObjectType.REALM_BEFORE_REMOVE) {
+            EventExpirations.invalidate(((RealmModel) params[0]).getId());
             getInstance(session).clear((RealmModel) params[0]);
             getInstance(session).clearAdmin((RealmModel) params[0]);
         }
@@ -69,9 +175,159 @@ public class FileEventStoreProviderFactory
 
     @Override
     public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        if (ingesting) {
+            FileAuthEventInMemoryStore.setIngestion(0, 0, null);
+            FileAdminEventInMemoryStore.setIngestion(0, 0, null);
+            ingesting = false;
+        }
+        EventExpirations.invalidateAll();
+        ExpirationScheduler.stop();
+        if (logging) {
+            FileAuthEventInMemoryStore.setLog(null, null, null);
+            FileAdminEventInMemoryStore.setLog(null, null, null);
+            logRetentionSeconds = 0;
+            logging = false;
+        }
         AmphibianProviderFactory.super.close();
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        putStatistics(info, "events", FileAuthEventInMemoryStore.getStatistics());
+        putStatistics(info, "adminEvents", FileAdminEventInMemoryStore.getStatistics());
+        long lastHour = Time.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        info.put(
+                "events.lastHour",
+                String.valueOf(sum(FileAuthEventInMemoryStore.totalCounts(
+                        EventCounters.Dimension.TYPE, EventCounters.Granularity.MINUTE, lastHour))));
+        info.put(
+                "events.lastHour.errors",
+                String.valueOf(sum(FileAuthEventInMemoryStore.totalCounts(
+                        EventCounters.Dimension.ERROR, EventCounters.Granularity.MINUTE, lastHour))));
+        putStatistics(info, "events.ingestion", FileAuthEventInMemoryStore.getIngestionStatistics());
+        putStatistics(info, "adminEvents.ingestion", FileAdminEventInMemoryStore.getIngestionStatistics());
+        return info;
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static void putStatistics(Map<String, String> info, String prefix, EventIngestion.Statistics statistics) {
+        if (statistics == null) {
+            return;
+        }
+        info.put(prefix + ".queued", String.valueOf(statistics.queued()));
+        info.put(prefix + ".applied", String.valueOf(statistics.applied()));
+        info.put(prefix + ".batches", String.valueOf(statistics.batches()));
+        info.put(prefix + ".dropped", String.valueOf(statistics.dropped()));
+        info.put(prefix + ".blocked", String.valueOf(statistics.blocked()));
+        info.put(prefix + ".callerRuns", String.valueOf(statistics.callerRuns()));
+    }
+
+    private static void putStatistics(Map<String, String> info, String prefix, EventTimeline.Statistics statistics) {
+        info.put(prefix + ".count", String.valueOf(statistics.events()));
+        info.put(prefix + ".bytes", String.valueOf(statistics.bytes()));
+        info.put(prefix + ".evicted", String.valueOf(statistics.evicted()));
+        info.put(prefix + ".expired", String.valueOf(statistics.expired()));
+    }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigMetadata() {
+        return ProviderConfigurationBuilder.create()
+                .property()
+                .name(EventRetention.MAX_EVENTS)
+                .type("long")
+                .helpText("Maximum number of events of each kind kept in memory, 0 for unlimited.")
+                .defaultValue(0L)
+                .add()
+                .property()
+                .name(EventRetention.MAX_EVENTS_PER_REALM)
+                .type("long")
+                .helpText("Maximum number of events of each kind kept in memory per realm, 0 for unlimited.")
+                .defaultValue(0L)
+                .add()
+                .property()
+                .name(EventRetention.MAX_BYTES)
+                .type("long")
+                .helpText("Estimated maximum heap taken by events of each kind, 0 for unlimited.")
+                .defaultValue(0L)
+                .add()
+                .property()
+                .name(EventRetention.MAX_BYTES_PER_REALM)
+                .type("long")
+                .helpText("Estimated maximum heap taken by events of each kind per realm, 0 for unlimited.")
+                .defaultValue(0L)
+                .add()
+                .property()
+                .name(SWEEP_INTERVAL)
+                .type("int")
+                .helpText("Seconds between removals of event log segments past logRetention, 0 to disable.")
+                .defaultValue(DEFAULT_SWEEP_INTERVAL_SECONDS)
+                .add()
+                .property()
+                .name(LOG_DIRECTORY)
+                .type("string")
+                .helpText("Directory to persist events to in segment files; events are kept in memory only if unset.")
+                .add()
+                .property()
+                .name(LOG_SEGMENT_DURATION)
+                .type("long")
+                .helpText("Seconds of events per segment file.")
+                .defaultValue(DEFAULT_LOG_SEGMENT_DURATION_SECONDS)
+                .add()
+                .property()
+                .name(LOG_RETENTION)
+                .type("long")
+                .helpText("Seconds after which segment files are deleted, 0 to keep them.")
+                .defaultValue(0L)
+                .add()
+                .property()
+                .name(LOG_FLUSH_INTERVAL)
+                .type("long")
+                .helpText("Milliseconds between writes of the queued events to the segment files.")
+                .defaultValue(DEFAULT_LOG_FLUSH_INTERVAL_MILLIS)
+                .add()
+                .property()
+                .name(STATISTICS_MINUTE_BUCKETS)
+                .type("int")
+                .helpText("Number of minute buckets of event counts kept per realm.")
+                .defaultValue(EventCounters.DEFAULT_MINUTE_BUCKETS)
+                .add()
+                .property()
+                .name(STATISTICS_HOUR_BUCKETS)
+                .type("int")
+                .helpText("Number of hour buckets of event counts kept per realm.")
+                .defaultValue(EventCounters.DEFAULT_HOUR_BUCKETS)
+                .add()
+                .property()
+                .name(INGESTION_QUEUE_SIZE)
+                .type("int")
+                .helpText("Capacity of the queue events are stored from in the background, 0 to store them on the"
+                        + " request thread.")
+                .defaultValue(0)
+                .add()
+                .property()
+                .name(INGESTION_BATCH_SIZE)
+                .type("int")
+                .helpText("Maximum number of queued events stored at once.")
+                .defaultValue(DEFAULT_INGESTION_BATCH_SIZE)
+                .add()
+                .property()
+                .name(INGESTION_POLICY)
+                .type("list")
+                .helpText("What to do with an event when the queue is full.")
+                .options("block", "drop-newest", "drop-oldest", "caller-runs")
+                .defaultValue(DEFAULT_INGESTION_POLICY)
+                .add()
+                .build();
+    }
+
     @Override
     public String getId() {
         return PROVIDER_ID;
@@ -17,7 +17,9 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.group;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCache;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -25,6 +27,9 @@ import org.keycloak.models.*;
 import org.keycloak.models.utils.RoleUtils;
 
 public abstract class FileGroupAdapter extends AbstractGroupModel<FileGroupEntity> {
+
+    private static final ModelCache.Slot<Map<String, List<String>>> ATTRIBUTES = ModelCache.slot("attributes");
+
     public FileGroupAdapter(KeycloakSession session, RealmModel realm, FileGroupEntity entity) {
         super(session, realm, entity);
     }
@@ -83,8 +88,15 @@ public abstract class FileGroupAdapter extends AbstractGroupModel<FileGroupEntit
 
     @Override
     public Map<String, List<String>> getAttributes() {
-        Map<String, List<String>> attrs = entity.getMultiValuedAttributes();
-        return attrs == null ? Collections.emptyMap() : attrs;
+        return ModelCache.get(entity, ATTRIBUTES, () -> {
+            // a copy, the cached map is shared by all sessions and must not follow the entity
+            Map<String, List<String>> attrs = new HashMap<>();
+            Map<String, List<String>> stored = entity.getMultiValuedAttributes();
+            if (stored != null) {
+                stored.forEach((name, values) -> attrs.put(name, List.copyOf(values)));
+            }
+            return Collections.unmodifiableMap(attrs);
+        });
     }
 
     @Override
@@ -17,10 +17,15 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.group;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.NOT_EXISTS;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 import static org.keycloak.utils.StreamsUtil.paginatedStream;
 
-import de.arbeitsagentur.opdt.keycloak.filestore.SearchPatterns;
+import de.arbeitsagentur.opdt.keycloak.filestore.AdapterIdentityMap;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory;
 import java.util.Comparator;
 import java.util.Map;
@@ -35,18 +40,25 @@ public class FileGroupProvider implements GroupProvider {
 
     private static final Logger LOG = Logger.getLogger(FileGroupProvider.class);
     private final KeycloakSession session;
+    private final AdapterIdentityMap adapters;
 
     public FileGroupProvider(KeycloakSession session) {
         this.session = session;
+        this.adapters = AdapterIdentityMap.of(session);
     }
 
     private Function<FileGroupEntity, GroupModel> entityToAdapterFunc(RealmModel realm) {
-        return origEntity -> new FileGroupAdapter(session, realm, origEntity) {
-            @Override
-            public Stream<GroupModel> getSubGroupsStream() {
-                return getGroupsByParentId(realm, this.getId());
-            }
-        };
+        return origEntity -> adapters.get(
+                GroupModel.class,
+                realm,
+                origEntity,
+                origEntity.getId(),
+                () -> new FileGroupAdapter(session, realm, origEntity) {
+                    @Override
+                    public Stream<GroupModel> getSubGroupsStream() {
+                        return getGroupsByParentId(realm, this.getId());
+                    }
+                });
     }
 
     @Override
@@ -70,25 +82,17 @@ public class FileGroupProvider implements GroupProvider {
         }
 
         LOG.tracef("getGroupByName(%s, %s)%s", realm, name, getShortStackTrace());
-        Stream<FileGroupEntity> groupStream = FileGroupStore.readAll().stream()
-                .filter(group -> group.getRealmId().equals(realm.getId()))
-                .filter(group -> group.getName().equals(name));
-
-        if (parent != null) {
-            groupStream = groupStream.filter(group -> parent.getId().equals(group.getParentId()));
-        } else {
-            groupStream = groupStream.filter(group -> group.getParentId() == null);
-        }
-        String groupId = groupStream.findFirst().map(FileGroupEntity::getId).orElse(null);
+        String groupId = FileGroupStore.read(
+                        withParent(criteria(realm), parent).compare(SearchableFields.NAME, EQ, name))
+                .findFirst()
+                .map(FileGroupEntity::getId)
+                .orElse(null);
         return groupId == null ? null : session.groups().getGroupById(realm, groupId);
     }
 
     @Override
     public Stream<GroupModel> getGroupsStream(RealmModel realm) {
-        return FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(GroupModel::getName));
+        return FileGroupStore.readSorted(realm.getId(), null, null).stream().map(entityToAdapterFunc(realm));
     }
 
     @Override
@@ -99,7 +103,8 @@ public class FileGroupProvider implements GroupProvider {
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(GroupModel::getName));
         if (search != null) {
-            groups = groups.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), "%" + search + "%"));
+            LikePattern pattern = LikePattern.compileInsensitive("%" + search + "%");
+            groups = groups.filter(entity -> pattern.matches(entity.getName()));
         }
         return paginatedStream(groups, first, max);
     }
@@ -107,14 +112,7 @@ public class FileGroupProvider implements GroupProvider {
     @Override
     public Long getGroupsCount(RealmModel realm, Boolean onlyTopGroups) {
         LOG.tracef("getGroupsCount(%s, %s)%s", realm, onlyTopGroups, getShortStackTrace());
-        Stream<GroupModel> groups = FileGroupStore.readAll().stream()
-                .filter(group -> group.getRealmId().equals(realm.getId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(GroupModel::getName));
-        if (Boolean.TRUE.equals(onlyTopGroups)) {
-            groups = groups.filter(group -> group.getParentId() == null);
-        }
-        return groups.count();
+        return (long) FileGroupStore.count(realm.getId(), Boolean.TRUE.equals(onlyTopGroups));
     }
 
     @Override
@@ -126,9 +124,8 @@ public class FileGroupProvider implements GroupProvider {
     public Stream<GroupModel> getGroupsByRoleStream(
             RealmModel realm, RoleModel role, Integer firstResult, Integer maxResults) {
         LOG.tracef("getGroupsByRole(%s, %s, %d, %d)%s", realm, role, firstResult, maxResults, getShortStackTrace());
-        Stream<GroupModel> groups = FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getGrantedRoles().contains(role.getId()))
+        Stream<GroupModel> groups = FileGroupStore.read(
+                        criteria(realm).compare(SearchableFields.ASSIGNED_ROLE, EQ, role.getId()))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(GroupModel::getName));
         return paginatedStream(groups, firstResult, maxResults);
@@ -143,12 +140,8 @@ public class FileGroupProvider implements GroupProvider {
     @Override
     public Stream<GroupModel> getTopLevelGroupsStream(RealmModel realm, Integer firstResult, Integer maxResults) {
         LOG.tracef("getTopLevelGroupsStream(%s, %s, %s)%s", realm, firstResult, maxResults, getShortStackTrace());
-        Stream<GroupModel> groups = FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getParentId() == null)
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(GroupModel::getName));
-        return paginatedStream(groups, firstResult, maxResults);
+        return FileGroupStore.readTopLevelSorted(realm.getId(), firstResult, maxResults).stream()
+                .map(entityToAdapterFunc(realm));
     }
 
     @Override
@@ -157,17 +150,9 @@ public class FileGroupProvider implements GroupProvider {
         LOG.tracef(
                 "getTopLevelGroupsStream(%s, %s, %b, %s, %s)%s",
                 realm, search, exact, firstResult, maxResults, getShortStackTrace());
-        Stream<GroupModel> groups = FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getParentId() == null) // only parent nodes
-                .map(entityToAdapterFunc(realm));
-
-        if (exact != null && exact.equals(Boolean.TRUE)) {
-            groups = groups.filter(group -> search.equals(group.getName()));
-        } else {
-            groups = groups.filter(group -> SearchPatterns.insensitiveLike(group.getName(), "%" + search + "%"));
-        }
-        groups = groups.sorted(Comparator.comparing(GroupModel::getName));
+        Stream<GroupModel> groups = FileGroupStore.read(searchCriteria(realm, search, exact))
+                .map(entityToAdapterFunc(realm))
+                .sorted(Comparator.comparing(GroupModel::getName));
         return paginatedStream(groups, firstResult, maxResults);
     }
 
@@ -177,18 +162,9 @@ public class FileGroupProvider implements GroupProvider {
         LOG.tracef(
                 "searchForGroupByNameStream(%s, %s, %s, %b, %d, %d)%s",
                 realm, session, search, exact, firstResult, maxResults, getShortStackTrace());
-        Stream<GroupModel> groups = FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getParentId() == null) // only parent nodes
-                .map(entityToAdapterFunc(realm));
-
-        if (Boolean.TRUE.equals(exact)) {
-            groups = groups.filter(group -> search.equals(group.getName()));
-        } else {
-            groups = groups.filter(group -> SearchPatterns.insensitiveLike(group.getName(), "%" + search + "%"));
-        }
-
-        groups = groups.sorted(Comparator.comparing(GroupModel::getName));
+        Stream<GroupModel> groups = FileGroupStore.read(searchCriteria(realm, search, exact))
+                .map(entityToAdapterFunc(realm))
+                .sorted(Comparator.comparing(GroupModel::getName));
         return paginatedStream(groups, firstResult, maxResults)
                 .map(GroupModel::getId)
                 // todo: this mapping makes no sense at all because we are filtering by group models that
@@ -208,13 +184,14 @@ public class FileGroupProvider implements GroupProvider {
     @Override
     public Stream<GroupModel> searchGroupsByAttributes(
             RealmModel realm, Map<String, String> attributes, Integer firstResult, Integer maxResults) {
-        Stream<FileGroupEntity> groups =
-                FileGroupStore.readAll().stream().filter(group -> realm.getId().equals(group.getRealmId()));
+        ModelCriteria<GroupModel> criteria = criteria(realm);
         for (Map.Entry<String, String> entry : attributes.entrySet()) {
-            groups = groups.filter(group -> group.getAttribute(entry.getKey()).contains(entry.getValue()));
+            criteria = criteria.compare(SearchableFields.ATTRIBUTE, EQ, entry.getKey(), entry.getValue());
         }
 
-        var stream = groups.map(entityToAdapterFunc(realm)).sorted(Comparator.comparing(GroupModel::getName));
+        var stream = FileGroupStore.read(criteria)
+                .map(entityToAdapterFunc(realm))
+                .sorted(Comparator.comparing(GroupModel::getName));
         return paginatedStream(stream, firstResult, maxResults);
     }
 
@@ -226,13 +203,8 @@ public class FileGroupProvider implements GroupProvider {
     @Override
     public GroupModel createGroup(RealmModel realm, String id, GroupModel.Type type, String name, GroupModel toParent) {
         LOG.tracef("createGroup(%s, %s, %s, %s, %s)%s", realm, id, type, name, toParent, getShortStackTrace());
-        FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> name.equals(group.getName()))
+        FileGroupStore.read(withParent(criteria(realm), toParent).compare(SearchableFields.NAME, EQ, name))
                 .filter(group -> group.getType().equals(type))
-                .filter(group -> toParent == null
-                        ? group.getParentId() == null
-                        : toParent.getId().equals(group.getParentId()))
                 .findAny()
                 .ifPresent(group -> {
                     throw new ModelDuplicateException("Group with name '"
@@ -266,6 +238,7 @@ public class FileGroupProvider implements GroupProvider {
 
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.GROUP_BEFORE_REMOVE, realm, group);
         FileGroupStore.deleteById(group.getId(), realm.getId());
+        adapters.clear();
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.GROUP_AFTER_REMOVE, realm, group);
         return true;
     }
@@ -278,12 +251,7 @@ public class FileGroupProvider implements GroupProvider {
             return;
         }
 
-        FileGroupStore.readAll().stream()
-                .filter(groupEntity -> realm.getId().equals(groupEntity.getRealmId()))
-                .filter(groupEntity -> group.getName().equals(groupEntity.getName()))
-                .filter(groupEntity -> toParent == null
-                        ? groupEntity.getParentId() == null
-                        : toParent.getId().equals(groupEntity.getParentId()))
+        FileGroupStore.read(withParent(criteria(realm), toParent).compare(SearchableFields.NAME, EQ, group.getName()))
                 .findAny()
                 .ifPresent(groupEntity -> {
                     throw new ModelDuplicateException("Group with name '"
@@ -332,10 +300,7 @@ public class FileGroupProvider implements GroupProvider {
     @Override
     public void addTopLevelGroup(RealmModel realm, GroupModel subGroup) {
         LOG.tracef("addTopLevelGroup(%s, %s)%s", realm, subGroup, getShortStackTrace());
-        FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getParentId() == null)
-                .filter(group -> subGroup.getName().equals(group.getName()))
+        FileGroupStore.read(withParent(criteria(realm), null).compare(SearchableFields.NAME, EQ, subGroup.getName()))
                 .findAny()
                 .ifPresent(group -> {
                     throw new ModelDuplicateException(
@@ -346,17 +311,15 @@ public class FileGroupProvider implements GroupProvider {
 
     public void preRemove(RealmModel realm, RoleModel role) {
         LOG.tracef("preRemove(%s, %s)%s", realm, role, getShortStackTrace());
-        FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> group.getGrantedRoles().contains(role.getId()))
+        FileGroupStore.read(criteria(realm).compare(SearchableFields.ASSIGNED_ROLE, EQ, role.getId())).toList().stream()
                 .map(groupEntity -> session.groups().getGroupById(realm, groupEntity.getId()))
                 .forEach(groupModel -> groupModel.deleteRoleMapping(role));
     }
 
     public void preRemove(RealmModel realm) {
         LOG.tracef("preRemove(%s)%s", realm, getShortStackTrace());
-        FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
+        FileGroupStore.read(criteria(realm))
+                .toList()
                 .forEach(groupModel -> FileGroupStore.deleteById(groupModel.getId(), realm.getId()));
     }
 
@@ -367,10 +330,26 @@ public class FileGroupProvider implements GroupProvider {
 
     private Stream<GroupModel> getGroupsByParentId(RealmModel realm, String parentId) {
         LOG.tracef("getGroupsByParentId(%s)%s", parentId, getShortStackTrace());
-        return FileGroupStore.readAll().stream()
-                .filter(group -> realm.getId().equals(group.getRealmId()))
-                .filter(group -> parentId.equals(group.getParentId()))
+        return FileGroupStore.read(criteria(realm).compare(SearchableFields.PARENT_ID, EQ, parentId))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(GroupModel::getName));
     }
+
+    private static ModelCriteria<GroupModel> criteria(RealmModel realm) {
+        return ModelCriteria.<GroupModel>criteria().compare(SearchableFields.REALM_ID, EQ, realm.getId());
+    }
+
+    private static ModelCriteria<GroupModel> withParent(ModelCriteria<GroupModel> criteria, GroupModel parent) {
+        return parent == null
+                ? criteria.compare(SearchableFields.PARENT_ID, NOT_EXISTS)
+                : criteria.compare(SearchableFields.PARENT_ID, EQ, parent.getId());
+    }
+
+    /** Top level groups whose name equals the search or, if not exact, contains it ignoring case. */
+    private static ModelCriteria<GroupModel> searchCriteria(RealmModel realm, String search, Boolean exact) {
+        ModelCriteria<GroupModel> criteria = withParent(criteria(realm), null);
+        return Boolean.TRUE.equals(exact)
+                ? criteria.compare(SearchableFields.NAME, EQ, search)
+                : criteria.compare(SearchableFields.NAME, ILIKE, "%" + search + "%");
+    }
 }
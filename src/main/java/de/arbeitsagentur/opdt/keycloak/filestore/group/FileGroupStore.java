@@ -17,14 +17,82 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.group;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.LIKE;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.AttributeIndex;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityQueryEngine;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.TrigramIndex;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.keycloak.models.GroupModel;
 
 public class FileGroupStore {
     private static final String OBJECT_DIRECTORY = "groups";
+    private static final SortedEntityIndex<FileGroupEntity> BY_NAME =
+            SortedEntityIndex.create(FileGroupEntity.class, FileGroupEntity::getRealmId, FileGroupEntity::getName);
+    private static final SortedEntityIndex<FileGroupEntity> TOP_LEVEL_BY_NAME = SortedEntityIndex.create(
+            FileGroupEntity.class,
+            group -> group.getParentId() == null ? group.getRealmId() : null,
+            FileGroupEntity::getName);
+    private static final TrigramIndex<FileGroupEntity> NAME_TRIGRAMS = TrigramIndex.create(
+            FileGroupEntity.class, FileGroupEntity::getRealmId, group -> Collections.singletonList(group.getName()));
+    private static final KeyedEntityIndex<FileGroupEntity> BY_EXACT_NAME = KeyedEntityIndex.create(
+            FileGroupEntity.class, group -> List.of(new Key(group.getRealmId(), group.getName())));
+    private static final KeyedEntityIndex<FileGroupEntity> BY_PARENT = KeyedEntityIndex.create(
+            FileGroupEntity.class, group -> List.of(new Key(group.getRealmId(), group.getParentId())));
+    private static final KeyedEntityIndex<FileGroupEntity> BY_GRANTED_ROLE =
+            KeyedEntityIndex.create(FileGroupEntity.class, group -> group.getGrantedRoles().stream()
+                    .map(roleId -> new Key(group.getRealmId(), roleId))
+                    .toList());
+
+    private static final AttributeIndex<FileGroupEntity> BY_ATTRIBUTE =
+            AttributeIndex.create(FileGroupEntity.class, FileGroupEntity::getRealmId, FileGroupEntity::getAttributes);
+
+    private static final EntityQueryEngine<FileGroupEntity, GroupModel> QUERY =
+            EntityQueryEngine.<FileGroupEntity, GroupModel>builder(FileGroupEntity.class)
+                    .field(SearchableFields.ID, FileGroupEntity::getId)
+                    .field(SearchableFields.REALM_ID, FileGroupEntity::getRealmId)
+                    .field(SearchableFields.PARENT_ID, FileGroupEntity::getParentId)
+                    .field(SearchableFields.NAME, FileGroupEntity::getName)
+                    .multiValuedField(SearchableFields.ASSIGNED_ROLE, FileGroupEntity::getGrantedRoles)
+                    .attributeField(SearchableFields.ATTRIBUTE, FileGroupEntity::getAttribute)
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.NAME)
+                                    .map(name -> BY_EXACT_NAME.get(new Key(realmId, name)))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.PARENT_ID)
+                                    .map(parentId -> BY_PARENT.get(new Key(realmId, parentId)))))
+                    .index(criteria -> realmId(criteria)
+                            .filter(realmId -> criteria.requiresNoValue(SearchableFields.PARENT_ID))
+                            .map(TOP_LEVEL_BY_NAME::getAll))
+                    .index(criteria -> realmId(criteria).flatMap(realmId -> criteria.getOperand(
+                                    ILIKE, SearchableFields.NAME)
+                            .or(() -> criteria.getOperand(LIKE, SearchableFields.NAME))
+                            .flatMap(pattern -> NAME_TRIGRAMS.candidates(
+                                    realmId,
+                                    LikePattern.compile(pattern.toString()).getLongestLiteral()))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.ASSIGNED_ROLE)
+                                    .map(roleId -> BY_GRANTED_ROLE.get(new Key(realmId, roleId)))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> BY_ATTRIBUTE.candidates(realmId, criteria, SearchableFields.ATTRIBUTE)))
+                    .fallbackIndex(criteria -> realmId(criteria).map(BY_NAME::getAll))
+                    .build();
+
+    /** Key of the hash indexes, which are scoped to a realm. */
+    private record Key(String realmId, Object value) {}
 
     public static FileGroupEntity read(String clientId, String realmId) {
         Path expectedPath = createFilePath(clientId, realmId);
@@ -42,6 +110,25 @@ public class FileGroupStore {
         return EntityStore.getAll(FileGroupEntity.class);
     }
 
+    /** Returns a page of the groups of a realm, sorted by name. */
+    public static List<FileGroupEntity> readSorted(String realmId, Integer first, Integer max) {
+        return BY_NAME.page(realmId, first, max);
+    }
+
+    /** Returns a page of the top level groups of a realm, sorted by name. */
+    public static List<FileGroupEntity> readTopLevelSorted(String realmId, Integer first, Integer max) {
+        return TOP_LEVEL_BY_NAME.page(realmId, first, max);
+    }
+
+    /** Returns the groups matching the criteria, in no particular order. */
+    public static Stream<FileGroupEntity> read(ModelCriteria<GroupModel> criteria) {
+        return QUERY.read(criteria);
+    }
+
+    public static int count(String realmId, boolean onlyTopLevel) {
+        return onlyTopLevel ? TOP_LEVEL_BY_NAME.size(realmId) : BY_NAME.size(realmId);
+    }
+
     public static FileGroupEntity update(FileGroupEntity entity) {
         if (entity.getId() == null || entity.getRealmId() == null) {
             return null;
@@ -69,4 +156,8 @@ public class FileGroupStore {
         return EntityIO.getPathForIdAndParentPath(
                 groupId, EntityIO.getRootDirectory().resolve(realmId).resolve(OBJECT_DIRECTORY));
     }
+
+    private static Optional<String> realmId(ModelCriteria<GroupModel> criteria) {
+        return criteria.getOperand(EQ, SearchableFields.REALM_ID).map(String.class::cast);
+    }
 }
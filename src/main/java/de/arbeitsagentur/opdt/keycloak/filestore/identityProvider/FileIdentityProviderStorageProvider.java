@@ -1,9 +1,11 @@
 package de.arbeitsagentur.opdt.keycloak.filestore.identityProvider;
 
-import java.util.Arrays;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmAdapter;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.keycloak.models.*;
 import org.keycloak.utils.StringUtil;
@@ -40,11 +42,7 @@ public class FileIdentityProviderStorageProvider implements IdentityProviderStor
 
     @Override
     public IdentityProviderModel getById(String internalId) {
-        return getRealm()
-                .getIdentityProvidersStream()
-                .filter(idp -> idp.getInternalId().equals(internalId))
-                .findFirst()
-                .orElse(null);
+        return getFileRealm().getIdentityProviderById(internalId);
     }
 
     @Override
@@ -58,87 +56,94 @@ public class FileIdentityProviderStorageProvider implements IdentityProviderStor
         int first = firstResult == null || firstResult < 0 ? 0 : firstResult;
         int resultCount = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
 
-        return getRealm()
-                .getIdentityProvidersStream()
-                .filter(idp -> {
-                    if (options == null || options.isEmpty()) {
-                        return true;
-                    }
+        return candidates(options).filter(filter(options)).skip(first).limit(resultCount);
+    }
 
-                    if (options.containsKey(IdentityProviderModel.ORGANIZATION_ID)) {
-                        String organizationId = options.get(IdentityProviderModel.ORGANIZATION_ID);
-                        if (!Objects.equals(idp.getOrganizationId(), organizationId)) {
-                            return false;
-                        }
-                    }
+    /**
+     * Narrows the identity providers down by the options answered by an index: the login page asks for
+     * the enabled providers that are neither link only nor hidden on login.
+     */
+    private Stream<IdentityProviderModel> candidates(Map<String, String> options) {
+        FileRealmAdapter realm = getFileRealm();
+        if (options == null) {
+            return realm.getIdentityProvidersSortedStream();
+        }
+        if (options.containsKey(IdentityProviderModel.ALIAS)) {
+            return Stream.ofNullable(realm.getIdentityProviderByAlias(options.get(IdentityProviderModel.ALIAS)));
+        }
+        if (isOption(options, IdentityProviderModel.ENABLED, true)
+                && isOption(options, IdentityProviderModel.LINK_ONLY, false)
+                && isOption(options, IdentityProviderModel.HIDE_ON_LOGIN, false)) {
+            return realm.getLoginIdentityProvidersStream();
+        }
+        return realm.getIdentityProvidersSortedStream();
+    }
 
-                    if (options.containsKey(IdentityProviderModel.ORGANIZATION_ID_NOT_NULL)) {
-                        if (idp.getOrganizationId() == null) {
-                            return false;
-                        }
-                    }
+    private static boolean isOption(Map<String, String> options, String option, boolean value) {
+        return options.containsKey(option) && Boolean.parseBoolean(options.get(option)) == value;
+    }
 
-                    if (options.containsKey(IdentityProviderModel.ENABLED)) {
-                        boolean enabled = Boolean.parseBoolean(options.get(IdentityProviderModel.ENABLED));
-                        if (idp.isEnabled() != enabled) {
-                            return false;
-                        }
-                    }
+    /** Compiles the options once into a predicate, instead of evaluating them for every provider. */
+    private static Predicate<IdentityProviderModel> filter(Map<String, String> options) {
+        Predicate<IdentityProviderModel> filter = idp -> true;
+        if (options == null || options.isEmpty()) {
+            return filter;
+        }
 
-                    if (options.containsKey(IdentityProviderModel.HIDE_ON_LOGIN)) {
-                        boolean hideOnLogin = Boolean.parseBoolean(options.get(IdentityProviderModel.HIDE_ON_LOGIN));
-                        if (idp.isHideOnLogin() != hideOnLogin) {
-                            return false;
-                        }
-                    }
+        if (options.containsKey(IdentityProviderModel.ORGANIZATION_ID)) {
+            String organizationId = options.get(IdentityProviderModel.ORGANIZATION_ID);
+            filter = filter.and(idp -> Objects.equals(idp.getOrganizationId(), organizationId));
+        }
 
-                    if (options.containsKey(IdentityProviderModel.LINK_ONLY)) {
-                        boolean linkOnly = Boolean.parseBoolean(options.get(IdentityProviderModel.LINK_ONLY));
-                        if (idp.isLinkOnly() != linkOnly) {
-                            return false;
-                        }
-                    }
+        if (options.containsKey(IdentityProviderModel.ORGANIZATION_ID_NOT_NULL)) {
+            filter = filter.and(idp -> idp.getOrganizationId() != null);
+        }
 
-                    if (options.containsKey(IdentityProviderModel.ALIAS)) {
-                        String alias = options.get(IdentityProviderModel.ALIAS);
-                        if (!idp.getAlias().equals(alias)) {
-                            return false;
-                        }
-                    }
+        if (options.containsKey(IdentityProviderModel.ENABLED)) {
+            boolean enabled = Boolean.parseBoolean(options.get(IdentityProviderModel.ENABLED));
+            filter = filter.and(idp -> idp.isEnabled() == enabled);
+        }
 
-                    if (options.containsKey(IdentityProviderModel.ALIAS_NOT_IN)) {
-                        String aliasNotIn = options.get(IdentityProviderModel.ALIAS_NOT_IN);
-                        if (Arrays.stream(aliasNotIn.split(","))
-                                .anyMatch(alias -> idp.getAlias().equals(alias))) {
-                            return false;
-                        }
-                    }
+        if (options.containsKey(IdentityProviderModel.HIDE_ON_LOGIN)) {
+            boolean hideOnLogin = Boolean.parseBoolean(options.get(IdentityProviderModel.HIDE_ON_LOGIN));
+            filter = filter.and(idp -> idp.isHideOnLogin() == hideOnLogin);
+        }
 
-                    if (options.containsKey(IdentityProviderModel.SEARCH)) {
-                        String search = options.get(IdentityProviderModel.SEARCH);
-                        if (!StringUtil.isNullOrEmpty(search) && !idp.getAlias().contains(search)) {
-                            return false;
-                        }
-                    }
+        if (options.containsKey(IdentityProviderModel.LINK_ONLY)) {
+            boolean linkOnly = Boolean.parseBoolean(options.get(IdentityProviderModel.LINK_ONLY));
+            filter = filter.and(idp -> idp.isLinkOnly() == linkOnly);
+        }
 
-                    return true;
-                })
-                .sorted(Comparator.comparing(IdentityProviderModel::getAlias))
-                .skip(first)
-                .limit(resultCount);
+        if (options.containsKey(IdentityProviderModel.ALIAS)) {
+            String alias = options.get(IdentityProviderModel.ALIAS);
+            filter = filter.and(idp -> idp.getAlias().equals(alias));
+        }
+
+        if (options.containsKey(IdentityProviderModel.ALIAS_NOT_IN)) {
+            Set<String> aliasNotIn =
+                    Set.of(options.get(IdentityProviderModel.ALIAS_NOT_IN).split(","));
+            filter = filter.and(idp -> !aliasNotIn.contains(idp.getAlias()));
+        }
+
+        if (options.containsKey(IdentityProviderModel.SEARCH)) {
+            String search = options.get(IdentityProviderModel.SEARCH);
+            if (!StringUtil.isNullOrEmpty(search)) {
+                filter = filter.and(idp -> idp.getAlias().contains(search));
+            }
+        }
+
+        return filter;
     }
 
     @Override
     public Stream<String> getByFlow(String flowId, String search, Integer firstResult, Integer maxResults) {
         int first = firstResult == null || firstResult < 0 ? 0 : firstResult;
         int resultCount = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
+        String aliasSearch = search == null ? null : search.replace("*", "");
 
-        return getRealm()
-                .getIdentityProvidersStream()
-                .filter(idp -> search == null || idp.getAlias().contains(search.replace("*", "")))
-                .filter(idp -> Objects.equals(idp.getFirstBrokerLoginFlowId(), flowId)
-                        || Objects.equals(idp.getPostBrokerLoginFlowId(), flowId))
-                .sorted(Comparator.comparing(IdentityProviderModel::getAlias))
+        return getFileRealm()
+                .getIdentityProvidersByFlowStream(flowId)
+                .filter(idp -> aliasSearch == null || idp.getAlias().contains(aliasSearch))
                 .skip(first)
                 .limit(resultCount)
                 .map(IdentityProviderModel::getAlias);
@@ -202,10 +207,7 @@ public class FileIdentityProviderStorageProvider implements IdentityProviderStor
 
     @Override
     public Stream<IdentityProviderMapperModel> getMappersByAliasStream(String identityProviderAlias) {
-        return getRealm()
-                .getIdentityProviderMappersStream()
-                .filter(mapper -> mapper.getIdentityProviderAlias().equals(identityProviderAlias))
-                .sorted(Comparator.comparing(IdentityProviderMapperModel::getName));
+        return getFileRealm().getIdentityProviderMappersByAliasStream(identityProviderAlias);
     }
 
     @Override
@@ -218,4 +220,11 @@ public class FileIdentityProviderStorageProvider implements IdentityProviderStor
         }
         return realm;
     }
+
+    private FileRealmAdapter getFileRealm() {
+        if (getRealm() instanceof FileRealmAdapter realm) {
+            return realm;
+        }
+        throw new IllegalStateException("Session not bound to a file realm");
+    }
 }
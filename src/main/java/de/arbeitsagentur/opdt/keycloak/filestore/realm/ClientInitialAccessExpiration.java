@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.realm;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registers the client initial accesses of every realm with the {@link ExpirationScheduler} when they
+ * changed, so they are removed at their expiration instead of by scanning all realms. Writes of a realm
+ * that leave its client initial accesses alone are skipped by their {@linkplain
+ * FileRealmEntity#clientInitialAccessesVersion() version}. Listener callbacks run under the store's
+ * write lock, which guards the registrations.
+ */
+final class ClientInitialAccessExpiration implements EntityStore.Listener {
+
+    record Key(String realmId, String clientInitialAccessId) {}
+
+    /** What was registered for a realm, as of the version of its client initial accesses. */
+    private record Registration(FileRealmEntity realm, int version, Set<String> ids) {}
+
+    private final Map<String, Registration> registered = new HashMap<>();
+
+    static void register() {
+        EntityStore.addListener(new ClientInitialAccessExpiration());
+    }
+
+    private ClientInitialAccessExpiration() {}
+
+    @Override
+    public void onWrite(Path path, AbstractEntity entity) {
+        if (!(entity instanceof FileRealmEntity realm) || realm.getId() == null) {
+            return;
+        }
+        String realmId = realm.getId();
+        int version = realm.clientInitialAccessesVersion();
+        Registration registration = registered.get(realmId);
+        if (registration != null && registration.realm() == realm && registration.version() == version) {
+            return;
+        }
+        List<FileClientInitialAccessEntity> accesses = realm.getClientInitialAccesses();
+        Set<String> previous = registration == null ? Set.of() : registration.ids();
+        Set<String> current = new HashSet<>();
+        if (accesses != null) {
+            for (FileClientInitialAccessEntity access : accesses) {
+                if (access.getExpiration() != null) {
+                    current.add(access.getId());
+                    ExpirationScheduler.schedule(
+                            new Key(realmId, access.getId()), access, () -> remove(realmId, access.getId()));
+                }
+            }
+        }
+        previous.stream()
+                .filter(id -> !current.contains(id))
+                .forEach(id -> ExpirationScheduler.cancel(new Key(realmId, id)));
+        registered.put(realmId, new Registration(realm, version, current));
+    }
+
+    @Override
+    public void onDelete(Path path, AbstractEntity entity) {
+        if (entity instanceof FileRealmEntity realm && realm.getId() != null) {
+            Registration registration = registered.remove(realm.getId());
+            if (registration != null) {
+                registration.ids().forEach(id -> ExpirationScheduler.cancel(new Key(realm.getId(), id)));
+            }
+        }
+    }
+
+    private static void remove(String realmId, String clientInitialAccessId) {
+        FileRealmEntity realm = FileRealmStore.read(realmId);
+        if (realm != null && realm.getClientInitialAccess(clientInitialAccessId).isPresent()) {
+            realm.removeClientInitialAccess(clientInitialAccessId);
+        }
+    }
+}
@@ -85,4 +85,14 @@ public class FileAuthenticatorConfigEntity implements AbstractEntity, UpdatableE
     public void setUpdated(boolean updated) {
         isUpdated = updated;
     }
+
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+    }
 }
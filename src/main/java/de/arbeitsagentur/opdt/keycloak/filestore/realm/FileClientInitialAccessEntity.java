@@ -17,14 +17,14 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
-import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirableEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.TimeAdapter;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.ClientInitialAccessModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
-public class FileClientInitialAccessEntity implements AbstractEntity, UpdatableEntity {
+public class FileClientInitialAccessEntity implements ExpirableEntity, UpdatableEntity {
 
     private String id;
     private Long expiration;
@@ -76,10 +76,12 @@ public class FileClientInitialAccessEntity implements AbstractEntity, UpdatableE
         this.id = id;
     }
 
+    @Override
     public Long getExpiration() {
         return this.expiration;
     }
 
+    @Override
     public void setExpiration(Long expiration) {
         this.expiration = expiration;
     }
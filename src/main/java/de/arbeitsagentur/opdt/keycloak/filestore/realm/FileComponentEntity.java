@@ -18,6 +18,7 @@
 package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ConvertedModel;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +31,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     private String id;
     private boolean isUpdated = false;
+    private final transient ConvertedModel<ComponentModel> converted = new ConvertedModel<>();
     private String name;
     private String providerId;
     private String providerType;
@@ -63,6 +65,11 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
         return model;
     }
 
+    /** The converted model, shared until this entity changes. Must not be modified. */
+    ComponentModel asModel() {
+        return converted.get(() -> toModel(this));
+    }
+
     @Override
     public String getId() {
         return this.id;
@@ -71,6 +78,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
     @Override
     public void setId(String id) {
         this.id = id;
+        this.converted.invalidate();
     }
 
     public boolean isUpdated() {
@@ -83,6 +91,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     public void setName(String name) {
         this.name = name;
+        this.converted.invalidate();
     }
 
     public String getProviderId() {
@@ -91,6 +100,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     public void setProviderId(String providerId) {
         this.providerId = providerId;
+        this.converted.invalidate();
     }
 
     public String getProviderType() {
@@ -99,6 +109,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     public void setProviderType(String providerType) {
         this.providerType = providerType;
+        this.converted.invalidate();
     }
 
     public String getSubType() {
@@ -107,6 +118,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     public void setSubType(String subType) {
         this.subType = subType;
+        this.converted.invalidate();
     }
 
     public String getParentId() {
@@ -115,6 +127,7 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
 
     public void setParentId(String parentId) {
         this.parentId = parentId;
+        this.converted.invalidate();
     }
 
     private Map<String, List<String>> convertToMultivaluedConfig() {
@@ -134,14 +147,28 @@ public class FileComponentEntity implements AbstractEntity, UpdatableEntity {
             newConfig.put(key, singleVal);
         }
         this.config = newConfig;
+        this.converted.invalidate();
     }
 
     public void setUpdated(boolean updated) {
         isUpdated = updated;
     }
 
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+        this.converted.invalidate();
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+        this.converted.invalidate();
+    }
+
     public void setConfig(Map<String, Object> config) {
         this.config = config;
+        this.converted.invalidate();
     }
 
     public Map<String, Object> getConfig() {
@@ -28,6 +28,7 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEntity {
 
     private String id;
+    private String realmId;
     private boolean isUpdated = false;
     private String alias;
     private String displayName;
@@ -41,6 +42,7 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
     private Boolean linkOnly = false;
     private Boolean addReadTokenRoleOnCreate = false;
     private Boolean authenticateByDefault = false;
+    private Boolean hideOnLogin = false;
     private Map<String, String> config;
 
     static FileIdentityProviderEntity fromModel(IdentityProviderModel model) {
@@ -59,6 +61,7 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         entity.setLinkOnly(model.isLinkOnly());
         entity.setAddReadTokenRoleOnCreate(model.isAddReadTokenRoleOnCreate());
         entity.setAuthenticateByDefault(model.isAuthenticateByDefault());
+        entity.setHideOnLogin(model.isHideOnLogin());
         entity.setConfig(model.getConfig());
         entity.setOrganizationId(model.getOrganizationId());
         return entity;
@@ -86,6 +89,8 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         model.setAddReadTokenRoleOnCreate(addReadTokenRoleOnCreate == null ? false : addReadTokenRoleOnCreate);
         Boolean authenticateByDefault = entity.isAuthenticateByDefault();
         model.setAuthenticateByDefault(authenticateByDefault == null ? false : authenticateByDefault);
+        Boolean hideOnLogin = entity.isHideOnLogin();
+        model.setHideOnLogin(hideOnLogin == null ? false : hideOnLogin);
         Map<String, String> config = entity.getConfig();
         model.setConfig(config == null ? new HashMap<>() : new HashMap<>(config));
         model.setOrganizationId(entity.getOrganizationId());
@@ -102,6 +107,14 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         this.id = id;
     }
 
+    public String getRealmId() {
+        return this.realmId;
+    }
+
+    public void setRealmId(String realmId) {
+        this.realmId = realmId;
+    }
+
     public boolean isUpdated() {
         return this.isUpdated;
     }
@@ -194,6 +207,14 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         this.authenticateByDefault = authenticateByDefault;
     }
 
+    public Boolean isHideOnLogin() {
+        return this.hideOnLogin;
+    }
+
+    public void setHideOnLogin(Boolean hideOnLogin) {
+        this.hideOnLogin = hideOnLogin;
+    }
+
     public Map<String, String> getConfig() {
         return this.config;
     }
@@ -206,6 +227,16 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         isUpdated = updated;
     }
 
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+    }
+
     public Boolean getEnabled() {
         return enabled;
     }
@@ -230,6 +261,10 @@ public class FileIdentityProviderEntity implements AbstractEntity, UpdatableEnti
         return authenticateByDefault;
     }
 
+    public Boolean getHideOnLogin() {
+        return hideOnLogin;
+    }
+
     public String getOrganizationId() {
         return organizationId;
     }
@@ -27,6 +27,7 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 public class FileIdentityProviderMapperEntity implements AbstractEntity, UpdatableEntity {
 
     private String id;
+    private String realmId;
     private boolean isUpdated = false;
     private String name;
     private String identityProviderAlias;
@@ -67,6 +68,14 @@ public class FileIdentityProviderMapperEntity implements AbstractEntity, Updatab
         this.id = id;
     }
 
+    public String getRealmId() {
+        return this.realmId;
+    }
+
+    public void setRealmId(String realmId) {
+        this.realmId = realmId;
+    }
+
     public boolean isUpdated() {
         return this.isUpdated;
     }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.realm;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Identity providers and their mappers, one file each: {@code <realm>/identity-providers/<id>.yaml} and
+ * {@code <realm>/identity-providers/mappers/<id>.yaml}. Older versions kept both in the realm file; they
+ * are moved here on first use, see {@link #migrate(FileRealmEntity)}.
+ */
+public final class FileIdentityProviderStore {
+
+    public static final String OBJECT_DIRECTORY = "identity-providers";
+    public static final String MAPPERS_DIRECTORY = "mappers";
+
+    private static final SortedEntityIndex<FileIdentityProviderEntity> BY_ALIAS = SortedEntityIndex.create(
+            FileIdentityProviderEntity.class,
+            FileIdentityProviderEntity::getRealmId,
+            FileIdentityProviderEntity::getAlias);
+    private static final SortedEntityIndex<FileIdentityProviderEntity> LOGIN = SortedEntityIndex.create(
+            FileIdentityProviderEntity.class,
+            idp -> isShownOnLogin(idp) ? idp.getRealmId() : null,
+            FileIdentityProviderEntity::getAlias);
+    private static final KeyedEntityIndex<FileIdentityProviderEntity> BY_EXACT_ALIAS = KeyedEntityIndex.create(
+            FileIdentityProviderEntity.class, idp -> List.of(new Key(idp.getRealmId(), idp.getAlias())));
+    private static final KeyedEntityIndex<FileIdentityProviderEntity> BY_FLOW =
+            KeyedEntityIndex.create(FileIdentityProviderEntity.class, idp -> Stream.of(
+                            idp.getFirstBrokerLoginFlowId(), idp.getPostBrokerLoginFlowId())
+                    .filter(flowId -> flowId != null)
+                    .map(flowId -> new Key(idp.getRealmId(), flowId))
+                    .toList());
+
+    private static final SortedEntityIndex<FileIdentityProviderMapperEntity> MAPPERS_BY_NAME = SortedEntityIndex.create(
+            FileIdentityProviderMapperEntity.class,
+            FileIdentityProviderMapperEntity::getRealmId,
+            FileIdentityProviderMapperEntity::getName);
+    private static final SortedEntityIndex<FileIdentityProviderMapperEntity> MAPPERS_BY_ALIAS =
+            SortedEntityIndex.create(
+                    FileIdentityProviderMapperEntity.class,
+                    mapper -> mapper.getIdentityProviderAlias() == null
+                            ? null
+                            : new Key(mapper.getRealmId(), mapper.getIdentityProviderAlias()),
+                    FileIdentityProviderMapperEntity::getName);
+    private static final KeyedEntityIndex<FileIdentityProviderMapperEntity> MAPPERS_BY_ALIAS_AND_NAME =
+            KeyedEntityIndex.create(
+                    FileIdentityProviderMapperEntity.class,
+                    mapper -> List.of(
+                            new MapperKey(mapper.getRealmId(), mapper.getIdentityProviderAlias(), mapper.getName())));
+
+    /** Key of the hash indexes, which are scoped to a realm. */
+    private record Key(String realmId, Object value) {}
+
+    private record MapperKey(String realmId, String identityProviderAlias, String name) {}
+
+    private FileIdentityProviderStore() {}
+
+    public static FileIdentityProviderEntity read(String id, String realmId) {
+        if (id == null || realmId == null) {
+            return null;
+        }
+        Path path = createFilePath(id, realmId);
+        return path == null ? null : EntityStore.get(path);
+    }
+
+    public static Optional<FileIdentityProviderEntity> readByAlias(String realmId, String alias) {
+        return BY_EXACT_ALIAS.get(new Key(realmId, alias)).stream().findFirst();
+    }
+
+    /** Returns the identity providers of a realm, sorted by alias. */
+    public static List<FileIdentityProviderEntity> readAll(String realmId) {
+        return BY_ALIAS.getAll(realmId);
+    }
+
+    /** Returns the enabled identity providers that are neither link only nor hidden on login, sorted by alias. */
+    public static List<FileIdentityProviderEntity> readLogin(String realmId) {
+        return LOGIN.getAll(realmId);
+    }
+
+    /** Returns the identity providers using the flow as first or post broker login flow, sorted by alias. */
+    public static List<FileIdentityProviderEntity> readByFlow(String realmId, String flowId) {
+        return BY_FLOW.get(new Key(realmId, flowId)).stream()
+                .sorted(Comparator.comparing(
+                        FileIdentityProviderEntity::getAlias, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    public static int count(String realmId) {
+        return BY_ALIAS.size(realmId);
+    }
+
+    public static FileIdentityProviderEntity update(FileIdentityProviderEntity entity) {
+        if (entity.getId() == null || entity.getRealmId() == null) {
+            return null;
+        }
+        EntityStore.write(createFilePath(entity.getId(), entity.getRealmId()), entity);
+        return entity;
+    }
+
+    public static void deleteById(String id, String realmId) {
+        if (read(id, realmId) != null) {
+            EntityStore.delete(createFilePath(id, realmId));
+        }
+    }
+
+    public static FileIdentityProviderMapperEntity readMapper(String id, String realmId) {
+        if (id == null || realmId == null) {
+            return null;
+        }
+        Path path = createMapperFilePath(id, realmId);
+        return path == null ? null : EntityStore.get(path);
+    }
+
+    public static Optional<FileIdentityProviderMapperEntity> readMapperByName(
+            String realmId, String identityProviderAlias, String name) {
+        return MAPPERS_BY_ALIAS_AND_NAME.get(new MapperKey(realmId, identityProviderAlias, name)).stream()
+                .findFirst();
+    }
+
+    /** Returns the identity provider mappers of a realm, sorted by name. */
+    public static List<FileIdentityProviderMapperEntity> readAllMappers(String realmId) {
+        return MAPPERS_BY_NAME.getAll(realmId);
+    }
+
+    /** Returns the mappers of an identity provider, sorted by name. */
+    public static List<FileIdentityProviderMapperEntity> readMappersByAlias(
+            String realmId, String identityProviderAlias) {
+        return MAPPERS_BY_ALIAS.getAll(new Key(realmId, identityProviderAlias));
+    }
+
+    public static FileIdentityProviderMapperEntity updateMapper(FileIdentityProviderMapperEntity entity) {
+        if (entity.getId() == null || entity.getRealmId() == null) {
+            return null;
+        }
+        EntityStore.write(createMapperFilePath(entity.getId(), entity.getRealmId()), entity);
+        return entity;
+    }
+
+    public static void deleteMapperById(String id, String realmId) {
+        if (readMapper(id, realmId) != null) {
+            EntityStore.delete(createMapperFilePath(id, realmId));
+        }
+    }
+
+    public static void deleteByRealmId(String realmId) {
+        readAllMappers(realmId).forEach(mapper -> deleteMapperById(mapper.getId(), realmId));
+        readAll(realmId).forEach(idp -> deleteById(idp.getId(), realmId));
+    }
+
+    /**
+     * Moves the identity providers and mappers that older versions kept in the realm file to files of
+     * their own. Does nothing, without any I/O, once the realm has been migrated.
+     */
+    static void migrate(FileRealmEntity realm) {
+        if (isEmpty(realm.getIdentityProviders()) && isEmpty(realm.getIdentityProviderMappers())) {
+            return;
+        }
+        synchronized (realm) {
+            List<FileIdentityProviderEntity> identityProviders = realm.getIdentityProviders();
+            List<FileIdentityProviderMapperEntity> mappers = realm.getIdentityProviderMappers();
+            if (isEmpty(identityProviders) && isEmpty(mappers)) {
+                return;
+            }
+            for (FileIdentityProviderEntity idp :
+                    Optional.ofNullable(identityProviders).orElseGet(List::of)) {
+                if (read(idp.getId(), realm.getId()) == null) {
+                    idp.setRealmId(realm.getId());
+                    update(idp);
+                }
+            }
+            for (FileIdentityProviderMapperEntity mapper :
+                    Optional.ofNullable(mappers).orElseGet(List::of)) {
+                if (readMapper(mapper.getId(), realm.getId()) == null) {
+                    mapper.setRealmId(realm.getId());
+                    updateMapper(mapper);
+                }
+            }
+            realm.setIdentityProviders(new ArrayList<>());
+            realm.setIdentityProviderMappers(new ArrayList<>());
+        }
+    }
+
+    private static boolean isShownOnLogin(FileIdentityProviderEntity idp) {
+        return Boolean.TRUE.equals(idp.isEnabled())
+                && !Boolean.TRUE.equals(idp.isLinkOnly())
+                && !Boolean.TRUE.equals(idp.isHideOnLogin());
+    }
+
+    private static boolean isEmpty(List<?> entities) {
+        return entities == null || entities.isEmpty();
+    }
+
+    private static Path createFilePath(String id, String realmId) {
+        return EntityIO.getPathForIdAndParentPath(id, getDirectory(realmId));
+    }
+
+    private static Path createMapperFilePath(String id, String realmId) {
+        return EntityIO.getPathForIdAndParentPath(id, getDirectory(realmId).resolve(MAPPERS_DIRECTORY));
+    }
+
+    private static Path getDirectory(String realmId) {
+        return EntityIO.getRootDirectory().resolve(realmId).resolve(OBJECT_DIRECTORY);
+    }
+}
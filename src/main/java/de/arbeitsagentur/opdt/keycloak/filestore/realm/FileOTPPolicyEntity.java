@@ -125,4 +125,14 @@ public class FileOTPPolicyEntity implements UpdatableEntity {
     public void setUpdated(boolean updated) {
         isUpdated = updated;
     }
+
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+    }
 }
@@ -19,6 +19,9 @@ package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
 import static java.util.Objects.nonNull;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCache;
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeProvider;
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeResolutionCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.TimeAdapter;
 import java.util.*;
 import java.util.function.Consumer;
@@ -53,9 +56,11 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     private static final String MAX_TEMPORARY_LOCKOUTS = "maxTemporaryLockouts";
     private static final String BRUTE_FORCE_STRATEGY = "bruteForceStrategy";
+    private static final ModelCache.Slot<PasswordPolicy> PASSWORD_POLICY = ModelCache.slot("passwordPolicy");
     public static final String ADMIN_PERMISSIONS_CLIENT_ID = "adminPermissionsClientId";
 
-    private PasswordPolicy passwordPolicy;
+    // the factories identity provider models are created by, looked up once per session
+    private final Map<String, IdentityProviderFactory> identityProviderFactories = new HashMap<>();
 
     public FileRealmAdapter(KeycloakSession session, FileRealmEntity entity) {
         super(session, entity);
@@ -522,8 +527,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<RequiredCredentialModel> getRequiredCredentialsStream() {
-        Set<FileRequiredCredentialEntity> rCEs = new HashSet<>(entity.getRequiredCredentials());
-        return rCEs == null ? Stream.empty() : rCEs.stream().map(FileRequiredCredentialEntity::toModel);
+        return entity.getRequiredCredentialsSnapshot().stream().map(FileRequiredCredentialEntity::toModel);
     }
 
     @Override
@@ -541,13 +545,14 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public void updateRequiredCredentials(Set<String> credentials) {
-        Set<FileRequiredCredentialEntity> requiredCredentialEntities = new HashSet<>(entity.getRequiredCredentials());
+        List<FileRequiredCredentialEntity> requiredCredentialEntities = entity.getRequiredCredentialsSnapshot();
         Consumer<FileRequiredCredentialEntity> updateCredentialFnc = e -> {
             Optional<FileRequiredCredentialEntity> existingEntity = requiredCredentialEntities.stream()
                     .filter(existing -> Objects.equals(e.getType(), existing.getType()))
                     .findFirst();
             if (existingEntity.isPresent()) {
                 updateRequiredCredential(existingEntity.get(), e);
+                entity.updateSubEntities(FileRealmEntity.MAIN);
             } else {
                 entity.addRequiredCredential(e);
             }
@@ -572,22 +577,30 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public PasswordPolicy getPasswordPolicy() {
-        if (passwordPolicy == null) {
-            passwordPolicy = PasswordPolicy.parse(session, entity.getPasswordPolicy());
-        }
-        return passwordPolicy;
+        return ModelCache.get(entity, PASSWORD_POLICY, () -> PasswordPolicy.parse(session, entity.getPasswordPolicy()));
     }
 
     @Override
     public void setPasswordPolicy(PasswordPolicy policy) {
-        this.passwordPolicy = policy;
         entity.setPasswordPolicy(policy.toString());
     }
 
     @Override
     public OTPPolicy getOTPPolicy() {
         FileOTPPolicyEntity policy = entity.getOtpPolicy();
-        return policy == null ? OTPPolicy.DEFAULT_POLICY : FileOTPPolicyEntity.toModel(policy);
+        if (policy == null) {
+            // a copy, the default policy is shared by the whole JVM
+            OTPPolicy defaults = OTPPolicy.DEFAULT_POLICY;
+            return new OTPPolicy(
+                    defaults.getType(),
+                    defaults.getAlgorithm(),
+                    defaults.getInitialCounter(),
+                    defaults.getDigits(),
+                    defaults.getLookAheadWindow(),
+                    defaults.getPeriod(),
+                    defaults.isCodeReusable());
+        }
+        return FileOTPPolicyEntity.toModel(policy);
     }
 
     @Override
@@ -762,20 +775,14 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<AuthenticationFlowModel> getAuthenticationFlowsStream() {
-        Set<FileAuthenticationFlowEntity> afs = new HashSet<>(entity.getAuthenticationFlows());
-        return afs == null ? Stream.empty() : afs.stream().map(FileAuthenticationFlowEntity::toModel);
+        return entity.getAuthenticationFlowsSnapshot().stream().map(FileAuthenticationFlowEntity::toModel);
     }
 
     @Override
     public AuthenticationFlowModel getFlowByAlias(String alias) {
-        Set<FileAuthenticationFlowEntity> afs = new HashSet<>(entity.getAuthenticationFlows());
-        return afs == null
-                ? null
-                : afs.stream()
-                        .filter(flow -> Objects.equals(flow.getAlias(), alias))
-                        .findFirst()
-                        .map(FileAuthenticationFlowEntity::toModel)
-                        .orElse(null);
+        return entity.getAuthenticationFlowByAlias(alias)
+                .map(FileAuthenticationFlowEntity::toModel)
+                .orElse(null);
     }
 
     @Override
@@ -809,18 +816,13 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
             existing.setProviderId(model.getProviderId());
             existing.setBuiltIn(model.isBuiltIn());
             existing.setTopLevel(model.isTopLevel());
+            entity.updateSubEntities(FileRealmEntity.AUTHENTICATION_FLOWS);
         });
     }
 
     @Override
     public Stream<AuthenticationExecutionModel> getAuthenticationExecutionsStream(String flowId) {
-        Set<FileAuthenticationExecutionEntity> aee = new HashSet<>(entity.getAuthenticationExecutions());
-        return aee == null
-                ? Stream.empty()
-                : aee.stream()
-                        .filter(execution -> Objects.equals(flowId, execution.getParentFlowId()))
-                        .map(FileAuthenticationExecutionEntity::toModel)
-                        .sorted(AuthenticationExecutionModel.ExecutionComparator.SINGLETON);
+        return entity.getAuthenticationExecutionModels(flowId).stream();
     }
 
     @Override
@@ -833,14 +835,9 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public AuthenticationExecutionModel getAuthenticationExecutionByFlowId(String flowId) {
-        Set<FileAuthenticationExecutionEntity> aee = new HashSet<>(entity.getAuthenticationExecutions());
-        return aee == null
-                ? null
-                : aee.stream()
-                        .filter(execution -> Objects.equals(flowId, execution.getFlowId()))
-                        .findAny()
-                        .map(FileAuthenticationExecutionEntity::toModel)
-                        .orElse(null);
+        return entity.getAuthenticationExecutionByFlowId(flowId)
+                .map(FileAuthenticationExecutionEntity::toModel)
+                .orElse(null);
     }
 
     @Override
@@ -863,6 +860,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
             existing.setRequirement(model.getRequirement());
             existing.setAutheticatorFlow(model.isAuthenticatorFlow());
             existing.setPriority(model.getPriority());
+            entity.updateSubEntities(FileRealmEntity.AUTHENTICATION_EXECUTIONS);
         });
     }
 
@@ -873,8 +871,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<AuthenticatorConfigModel> getAuthenticatorConfigsStream() {
-        Set<FileAuthenticatorConfigEntity> acs = new HashSet<>(entity.getAuthenticatorConfigs());
-        return acs == null ? Stream.empty() : acs.stream().map(FileAuthenticatorConfigEntity::toModel);
+        return entity.getAuthenticatorConfigsSnapshot().stream().map(FileAuthenticatorConfigEntity::toModel);
     }
 
     @Override
@@ -893,6 +890,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
         entity.getAuthenticatorConfig(model.getId()).ifPresent(oldAC -> {
             oldAC.setAlias(model.getAlias());
             oldAC.setConfig(model.getConfig());
+            entity.updateSubEntities(FileRealmEntity.AUTHENTICATOR_CONFIGS);
         });
     }
 
@@ -911,14 +909,9 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public AuthenticatorConfigModel getAuthenticatorConfigByAlias(String alias) {
-        Set<FileAuthenticatorConfigEntity> acs = new HashSet<>(entity.getAuthenticatorConfigs());
-        return acs == null
-                ? null
-                : acs.stream()
-                        .filter(config -> Objects.equals(config.getAlias(), alias))
-                        .findFirst()
-                        .map(FileAuthenticatorConfigEntity::toModel)
-                        .orElse(null);
+        return entity.getAuthenticatorConfigByAlias(alias)
+                .map(FileAuthenticatorConfigEntity::toModel)
+                .orElse(null);
     }
 
     @Override
@@ -931,14 +924,9 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public RequiredActionConfigModel getRequiredActionConfigByAlias(String alias) {
-        Set<FileRequiredActionConfigEntity> acs = new HashSet<>(entity.getRequiredActionConfigs());
-        return acs == null
-                ? null
-                : acs.stream()
-                        .filter(config -> Objects.equals(config.getAlias(), alias))
-                        .findFirst()
-                        .map(FileRequiredActionConfigEntity::toModel)
-                        .orElse(null);
+        return entity.getRequiredActionConfigByAlias(alias)
+                .map(FileRequiredActionConfigEntity::toModel)
+                .orElse(null);
     }
 
     @Override
@@ -952,23 +940,18 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
             oldAC.setAlias(model.getAlias());
             oldAC.setProviderId(model.getProviderId());
             oldAC.setConfig(model.getConfig());
+            entity.updateSubEntities(FileRealmEntity.REQUIRED_ACTION_CONFIGS);
         });
     }
 
     @Override
     public Stream<RequiredActionConfigModel> getRequiredActionConfigsStream() {
-        Set<FileRequiredActionConfigEntity> acs = new HashSet<>(entity.getRequiredActionConfigs());
-        return acs == null ? Stream.empty() : acs.stream().map(FileRequiredActionConfigEntity::toModel);
+        return entity.getRequiredActionConfigsSnapshot().stream().map(FileRequiredActionConfigEntity::toModel);
     }
 
     @Override
     public Stream<RequiredActionProviderModel> getRequiredActionProvidersStream() {
-        Set<FileRequiredActionProviderEntity> raps = new HashSet<>(entity.getRequiredActionProviders());
-        return raps == null
-                ? Stream.empty()
-                : raps.stream()
-                        .map(FileRequiredActionProviderEntity::toModel)
-                        .sorted(RequiredActionProviderModel.RequiredActionComparator.SINGLETON);
+        return entity.getRequiredActionProviderModels().stream();
     }
 
     @Override
@@ -994,6 +977,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
             oldRAP.setEnabled(model.isEnabled());
             oldRAP.setDefaultAction(model.isDefaultAction());
             oldRAP.setConfig(model.getConfig());
+            entity.updateSubEntities(FileRealmEntity.REQUIRED_ACTION_PROVIDERS);
         });
     }
 
@@ -1012,51 +996,73 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public RequiredActionProviderModel getRequiredActionProviderByAlias(String alias) {
-        Set<FileRequiredActionProviderEntity> raps = new HashSet<>(entity.getRequiredActionProviders());
-        return raps == null
-                ? null
-                : raps.stream()
-                        .filter(actionProvider -> Objects.equals(actionProvider.getAlias(), alias))
-                        .findFirst()
-                        .map(FileRequiredActionProviderEntity::toModel)
-                        .orElse(null);
+        return entity.getRequiredActionProviderByAlias(alias)
+                .map(FileRequiredActionProviderEntity::toModel)
+                .orElse(null);
     }
 
     @Override
     public Stream<IdentityProviderModel> getIdentityProvidersStream() {
-        Set<FileIdentityProviderEntity> ips = new HashSet<>(entity.getIdentityProviders());
-        return ips == null
-                ? Stream.empty()
-                : ips.stream()
-                        .map(e -> FileIdentityProviderEntity.toModel(
-                                e, () -> this.getModelFromProviderFactory(e.getProviderId())));
+        return FileIdentityProviderStore.readAll(identityProviderRealmId()).stream()
+                .map(this::toIdentityProviderModel);
     }
 
     @Override
     public IdentityProviderModel getIdentityProviderByAlias(String alias) {
-        Set<FileIdentityProviderEntity> ips = new HashSet<>(entity.getIdentityProviders());
-        return ips == null
-                ? null
-                : ips.stream()
-                        .filter(identityProvider -> Objects.equals(identityProvider.getAlias(), alias))
-                        .findFirst()
-                        .map(e -> FileIdentityProviderEntity.toModel(
-                                e, () -> this.getModelFromProviderFactory(e.getProviderId())))
-                        .orElse(null);
+        return FileIdentityProviderStore.readByAlias(identityProviderRealmId(), alias)
+                .map(e -> FileIdentityProviderEntity.toModel(
+                        e, () -> this.getModelFromProviderFactory(e.getProviderId())))
+                .orElse(null);
+    }
+
+    public IdentityProviderModel getIdentityProviderById(String internalId) {
+        return Optional.ofNullable(FileIdentityProviderStore.read(internalId, identityProviderRealmId()))
+                .map(e -> FileIdentityProviderEntity.toModel(
+                        e, () -> this.getModelFromProviderFactory(e.getProviderId())))
+                .orElse(null);
+    }
+
+    /** Returns the identity providers sorted by alias. */
+    public Stream<IdentityProviderModel> getIdentityProvidersSortedStream() {
+        return FileIdentityProviderStore.readAll(identityProviderRealmId()).stream()
+                .map(this::toIdentityProviderModel);
+    }
+
+    /** Returns the identity providers shown on the login page, sorted by alias. */
+    public Stream<IdentityProviderModel> getLoginIdentityProvidersStream() {
+        return FileIdentityProviderStore.readLogin(identityProviderRealmId()).stream()
+                .map(this::toIdentityProviderModel);
+    }
+
+    /** Returns the identity providers using the flow as first or post broker login flow, sorted by alias. */
+    public Stream<IdentityProviderModel> getIdentityProvidersByFlowStream(String flowId) {
+        return FileIdentityProviderStore.readByFlow(identityProviderRealmId(), flowId).stream()
+                .map(this::toIdentityProviderModel);
+    }
+
+    /** The id of this realm, once its identity providers have been moved out of the realm file. */
+    private String identityProviderRealmId() {
+        FileIdentityProviderStore.migrate(entity);
+        return entity.getId();
+    }
+
+    private IdentityProviderModel toIdentityProviderModel(FileIdentityProviderEntity e) {
+        return FileIdentityProviderEntity.toModel(e, () -> this.getModelFromProviderFactory(e.getProviderId()));
     }
 
     // This is a violation of layering requirements, this should NOT be in store code.
     // However, there is no easy way around this given the current number of IdentityProviderModel
     // implementations
     private IdentityProviderModel getModelFromProviderFactory(String providerId) {
-        Optional<IdentityProviderFactory> factory = Stream.concat(
+        IdentityProviderFactory factory = identityProviderFactories.computeIfAbsent(providerId, id -> Stream.concat(
                         session.getKeycloakSessionFactory().getProviderFactoriesStream(IdentityProvider.class),
                         session.getKeycloakSessionFactory().getProviderFactoriesStream(SocialIdentityProvider.class))
-                .filter(providerFactory -> Objects.equals(providerFactory.getId(), providerId))
+                .filter(providerFactory -> Objects.equals(providerFactory.getId(), id))
                 .map(IdentityProviderFactory.class::cast)
-                .findFirst();
-        if (factory.isPresent()) {
-            return factory.get().createConfig();
+                .findFirst()
+                .orElse(null));
+        if (factory != null) {
+            return factory.createConfig();
         } else {
             LOG.warn("Couldn't find a suitable identity provider factory for " + providerId);
             return new IdentityProviderModel();
@@ -1068,7 +1074,9 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
         if (getIdentityProviderByAlias(model.getAlias()) != null) {
             throw new ModelDuplicateException("An Identity Provider with given alias already exists.");
         }
-        entity.addIdentityProvider(FileIdentityProviderEntity.fromModel(model));
+        FileIdentityProviderEntity identityProvider = FileIdentityProviderEntity.fromModel(model);
+        identityProvider.setRealmId(identityProviderRealmId());
+        FileIdentityProviderStore.update(identityProvider);
     }
 
     @Override
@@ -1079,7 +1087,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
             return;
         }
 
-        entity.removeIdentityProvider(model.getInternalId());
+        FileIdentityProviderStore.deleteById(model.getInternalId(), identityProviderRealmId());
         session.getKeycloakSessionFactory().publish(new IdentityProviderRemovedEvent() {
 
             @Override
@@ -1101,109 +1109,96 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public void updateIdentityProvider(IdentityProviderModel identityProvider) {
-        Set<FileIdentityProviderEntity> ips = new HashSet<>(entity.getIdentityProviders());
-        if (ips != null) {
-            ips.stream()
-                    .filter(ip -> Objects.equals(ip.getId(), identityProvider.getInternalId()))
-                    .findFirst()
-                    .ifPresent(oldPS -> {
-                        oldPS.setAlias(identityProvider.getAlias());
-                        oldPS.setDisplayName(identityProvider.getDisplayName());
-                        oldPS.setProviderId(identityProvider.getProviderId());
-                        oldPS.setFirstBrokerLoginFlowId(identityProvider.getFirstBrokerLoginFlowId());
-                        oldPS.setPostBrokerLoginFlowId(identityProvider.getPostBrokerLoginFlowId());
-                        oldPS.setEnabled(identityProvider.isEnabled());
-                        oldPS.setTrustEmail(identityProvider.isTrustEmail());
-                        oldPS.setStoreToken(identityProvider.isStoreToken());
-                        oldPS.setLinkOnly(identityProvider.isLinkOnly());
-                        oldPS.setAddReadTokenRoleOnCreate(identityProvider.isAddReadTokenRoleOnCreate());
-                        oldPS.setAuthenticateByDefault(identityProvider.isAuthenticateByDefault());
-                        oldPS.setConfig(
-                                identityProvider.getConfig() == null
-                                        ? null
-                                        : new HashMap<>(identityProvider.getConfig()));
-                    });
-            session.getKeycloakSessionFactory().publish(new IdentityProviderUpdatedEvent() {
-
-                @Override
-                public RealmModel getRealm() {
-                    return FileRealmAdapter.this;
-                }
-
-                @Override
-                public IdentityProviderModel getUpdatedIdentityProvider() {
-                    return identityProvider;
-                }
-
-                @Override
-                public KeycloakSession getKeycloakSession() {
-                    return session;
-                }
-            });
-        }
+        Optional.ofNullable(FileIdentityProviderStore.read(identityProvider.getInternalId(), identityProviderRealmId()))
+                .ifPresent(oldPS -> {
+                    oldPS.setAlias(identityProvider.getAlias());
+                    oldPS.setDisplayName(identityProvider.getDisplayName());
+                    oldPS.setProviderId(identityProvider.getProviderId());
+                    oldPS.setFirstBrokerLoginFlowId(identityProvider.getFirstBrokerLoginFlowId());
+                    oldPS.setPostBrokerLoginFlowId(identityProvider.getPostBrokerLoginFlowId());
+                    oldPS.setEnabled(identityProvider.isEnabled());
+                    oldPS.setTrustEmail(identityProvider.isTrustEmail());
+                    oldPS.setStoreToken(identityProvider.isStoreToken());
+                    oldPS.setLinkOnly(identityProvider.isLinkOnly());
+                    oldPS.setAddReadTokenRoleOnCreate(identityProvider.isAddReadTokenRoleOnCreate());
+                    oldPS.setAuthenticateByDefault(identityProvider.isAuthenticateByDefault());
+                    oldPS.setHideOnLogin(identityProvider.isHideOnLogin());
+                    oldPS.setConfig(
+                            identityProvider.getConfig() == null ? null : new HashMap<>(identityProvider.getConfig()));
+                    FileIdentityProviderStore.update(oldPS);
+                });
+        session.getKeycloakSessionFactory().publish(new IdentityProviderUpdatedEvent() {
+
+            @Override
+            public RealmModel getRealm() {
+                return FileRealmAdapter.this;
+            }
+
+            @Override
+            public IdentityProviderModel getUpdatedIdentityProvider() {
+                return identityProvider;
+            }
+
+            @Override
+            public KeycloakSession getKeycloakSession() {
+                return session;
+            }
+        });
     }
 
     @Override
     public Stream<IdentityProviderMapperModel> getIdentityProviderMappersStream() {
-        Set<FileIdentityProviderMapperEntity> ipms = new HashSet<>(entity.getIdentityProviderMappers());
-        return ipms == null ? Stream.empty() : ipms.stream().map(FileIdentityProviderMapperEntity::toModel);
+        return FileIdentityProviderStore.readAllMappers(identityProviderRealmId()).stream()
+                .map(FileIdentityProviderMapperEntity::toModel);
     }
 
     @Override
     public Stream<IdentityProviderMapperModel> getIdentityProviderMappersByAliasStream(String brokerAlias) {
-        Set<FileIdentityProviderMapperEntity> ipms = new HashSet<>(entity.getIdentityProviderMappers());
-        return ipms == null
-                ? Stream.empty()
-                : ipms.stream()
-                        .filter(mapper -> Objects.equals(mapper.getIdentityProviderAlias(), brokerAlias))
-                        .map(FileIdentityProviderMapperEntity::toModel);
+        return FileIdentityProviderStore.readMappersByAlias(identityProviderRealmId(), brokerAlias).stream()
+                .map(FileIdentityProviderMapperEntity::toModel);
     }
 
     @Override
     public IdentityProviderMapperModel addIdentityProviderMapper(IdentityProviderMapperModel model) {
         FileIdentityProviderMapperEntity identityProviderMapper = FileIdentityProviderMapperEntity.fromModel(model);
-        if (entity.getIdentityProviderMapper(model.getId()).isPresent()) {
+        if (FileIdentityProviderStore.readMapper(model.getId(), identityProviderRealmId()) != null) {
             throw new ModelDuplicateException("An IdentityProviderMapper with given id already exists");
         }
-        entity.addIdentityProviderMapper(identityProviderMapper);
+        identityProviderMapper.setRealmId(identityProviderRealmId());
+        FileIdentityProviderStore.updateMapper(identityProviderMapper);
         return FileIdentityProviderMapperEntity.toModel(identityProviderMapper);
     }
 
     @Override
     public void removeIdentityProviderMapper(IdentityProviderMapperModel model) {
-        entity.removeIdentityProviderMapper(model.getId());
+        FileIdentityProviderStore.deleteMapperById(model.getId(), identityProviderRealmId());
     }
 
     @Override
     public void updateIdentityProviderMapper(IdentityProviderMapperModel model) {
-        entity.getIdentityProviderMapper(model.getId()).ifPresent(oldIPM -> {
-            oldIPM.setName(model.getName());
-            oldIPM.setIdentityProviderAlias(model.getIdentityProviderAlias());
-            oldIPM.setIdentityProviderMapper(model.getIdentityProviderMapper());
-            oldIPM.setConfig(model.getConfig());
-        });
+        Optional.ofNullable(FileIdentityProviderStore.readMapper(model.getId(), identityProviderRealmId()))
+                .ifPresent(oldIPM -> {
+                    oldIPM.setName(model.getName());
+                    oldIPM.setIdentityProviderAlias(model.getIdentityProviderAlias());
+                    oldIPM.setIdentityProviderMapper(model.getIdentityProviderMapper());
+                    oldIPM.setConfig(model.getConfig());
+                    FileIdentityProviderStore.updateMapper(oldIPM);
+                });
     }
 
     @Override
     public IdentityProviderMapperModel getIdentityProviderMapperById(String id) {
         if (id == null) return null;
-        return entity.getIdentityProviderMapper(id)
+        return Optional.ofNullable(FileIdentityProviderStore.readMapper(id, identityProviderRealmId()))
                 .map(FileIdentityProviderMapperEntity::toModel)
                 .orElse(null);
     }
 
     @Override
     public IdentityProviderMapperModel getIdentityProviderMapperByName(String brokerAlias, String name) {
-        Set<FileIdentityProviderMapperEntity> ipms = new HashSet<>(entity.getIdentityProviderMappers());
-        return ipms == null
-                ? null
-                : ipms.stream()
-                        .filter(identityProviderMapper ->
-                                Objects.equals(identityProviderMapper.getIdentityProviderAlias(), brokerAlias)
-                                        && Objects.equals(identityProviderMapper.getName(), name))
-                        .findFirst()
-                        .map(FileIdentityProviderMapperEntity::toModel)
-                        .orElse(null);
+        return FileIdentityProviderStore.readMapperByName(identityProviderRealmId(), brokerAlias, name)
+                .map(FileIdentityProviderMapperEntity::toModel)
+                .orElse(null);
     }
 
     @Override
@@ -1247,6 +1242,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
         entity.getComponent(component.getId()).ifPresent(existing -> {
             ComponentModel oldModel = FileComponentEntity.toModel(existing);
             updateComponent(existing, component);
+            entity.updateSubEntities(FileRealmEntity.COMPONENTS);
             ComponentUtil.notifyUpdated(session, this, oldModel, component);
         });
     }
@@ -1271,9 +1267,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public void removeComponents(String parentId) {
-        Set<FileComponentEntity> components = new HashSet<>(entity.getComponents());
-        if (components == null || components.isEmpty()) return;
-        components.stream()
+        entity.getComponentsSnapshot().stream()
                 .filter(c -> Objects.equals(parentId, c.getParentId()))
                 .map(FileComponentEntity::toModel)
                 .collect(Collectors.toSet()) // This is necessary to read out all the components before removing them
@@ -1286,29 +1280,17 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<ComponentModel> getComponentsStream() {
-        Set<FileComponentEntity> components = new HashSet<>(entity.getComponents());
-        return components == null ? Stream.empty() : components.stream().map(FileComponentEntity::toModel);
+        return entity.getComponentsSnapshot().stream().map(FileComponentEntity::toModel);
     }
 
     @Override
     public Stream<ComponentModel> getComponentsStream(String parentId) {
-        Set<FileComponentEntity> components = new HashSet<>(entity.getComponents());
-        return components == null
-                ? Stream.empty()
-                : components.stream()
-                        .filter(c -> Objects.equals(parentId, c.getParentId()))
-                        .map(FileComponentEntity::toModel);
+        return entity.getComponentModels(parentId).stream();
     }
 
     @Override
     public Stream<ComponentModel> getComponentsStream(String parentId, String providerType) {
-        Set<FileComponentEntity> components = new HashSet<>(entity.getComponents());
-        return components == null
-                ? Stream.empty()
-                : components.stream()
-                        .filter(c -> Objects.equals(parentId, c.getParentId()))
-                        .filter(c -> Objects.equals(providerType, c.getProviderType()))
-                        .map(FileComponentEntity::toModel);
+        return entity.getComponentModels(parentId, providerType).stream();
     }
 
     @Override
@@ -1476,8 +1458,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public boolean isIdentityFederationEnabled() {
-        Set<FileIdentityProviderEntity> ips = new HashSet<>(entity.getIdentityProviders());
-        return ips != null && ips.stream().findAny().isPresent();
+        return FileIdentityProviderStore.count(identityProviderRealmId()) > 0;
     }
 
     @Override
@@ -1601,40 +1582,36 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<ClientScopeModel> getDefaultClientScopesStream(boolean defaultScope) {
-        Set<String> csIds = defaultScope
-                ? new HashSet<>(entity.getDefaultClientScopeIds())
-                : new HashSet<>(entity.getOptionalClientScopeIds());
-        return csIds == null ? Stream.empty() : csIds.stream().map(this::getClientScopeById);
+        // keyed by the entity id, which unlike the name stays the same when the realm is renamed
+        return FileClientScopeResolutionCache.getRealmDefaultClientScopes(
+                        entity.getId(),
+                        defaultScope,
+                        () -> defaultScope
+                                ? entity.getDefaultClientScopeIds().stream()
+                                : entity.getOptionalClientScopeIds().stream())
+                .stream()
+                .map(clientScope -> FileClientScopeProvider.toAdapter(session, this, clientScope));
     }
 
     @Override
     public void createOrUpdateRealmLocalizationTexts(String locale, Map<String, String> localizationTexts) {
-        Map<String, Map<String, String>> realmLocalizationTexts = entity.getLocalizationTexts();
-        if (realmLocalizationTexts != null && realmLocalizationTexts.containsKey(locale)) {
-            Map<String, String> currentTexts = new HashMap<>(realmLocalizationTexts.get(locale));
-            currentTexts.putAll(localizationTexts);
-            entity.setLocalizationText(locale, currentTexts);
-        } else {
-            entity.setLocalizationText(locale, localizationTexts);
-        }
+        FileRealmLocalizationStore.write(entity.getId(), locale, localizationTexts);
     }
 
     @Override
     public boolean removeRealmLocalizationTexts(String locale) {
         if (locale == null) return false;
-        return entity.removeLocalizationText(locale);
+        return FileRealmLocalizationStore.remove(entity.getId(), locale);
     }
 
     @Override
     public Map<String, Map<String, String>> getRealmLocalizationTexts() {
-        Map<String, Map<String, String>> localizationTexts = entity.getLocalizationTexts();
-        return localizationTexts == null ? Collections.emptyMap() : localizationTexts;
+        return FileRealmLocalizationStore.readAll(entity.getId());
     }
 
     @Override
     public Map<String, String> getRealmLocalizationTextsByLocale(String locale) {
-        Map<String, String> lT = entity.getLocalizationText(locale);
-        return lT == null ? Collections.emptyMap() : lT;
+        return FileRealmLocalizationStore.read(entity.getId(), locale);
     }
 
     @Override
@@ -1810,8 +1787,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
     @Override
     public WebAuthnPolicy getWebAuthnPolicy() {
         FileWebAuthnPolicyEntity policy = entity.getWebAuthnPolicy();
-        if (policy == null) policy = FileWebAuthnPolicyEntity.defaultWebAuthnPolicy();
-        return FileWebAuthnPolicyEntity.toModel(policy);
+        return policy == null ? FileWebAuthnPolicyEntity.defaultModel() : FileWebAuthnPolicyEntity.toModel(policy);
     }
 
     @Override
@@ -1822,8 +1798,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
     @Override
     public WebAuthnPolicy getWebAuthnPolicyPasswordless() {
         FileWebAuthnPolicyEntity policy = entity.getWebAuthnPolicyPasswordless();
-        if (policy == null) policy = FileWebAuthnPolicyEntity.defaultWebAuthnPolicy();
-        return FileWebAuthnPolicyEntity.toModel(policy);
+        return policy == null ? FileWebAuthnPolicyEntity.defaultModel() : FileWebAuthnPolicyEntity.toModel(policy);
     }
 
     @Override
@@ -1864,8 +1839,7 @@ public class FileRealmAdapter extends AbstractRealmModel<FileRealmEntity> implem
 
     @Override
     public Stream<ClientInitialAccessModel> getClientInitialAccesses() {
-        Set<FileClientInitialAccessEntity> cias = new HashSet<>(entity.getClientInitialAccesses());
-        return cias == null ? Stream.empty() : cias.stream().map(FileClientInitialAccessEntity::toModel);
+        return entity.getClientInitialAccessesSnapshot().stream().map(FileClientInitialAccessEntity::toModel);
     }
 
     @Override
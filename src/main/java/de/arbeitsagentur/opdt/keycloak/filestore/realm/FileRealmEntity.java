@@ -17,10 +17,16 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.clientscope.FileClientScopeResolutionCache;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.SectionedEntity;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
 import java.util.*;
-import org.keycloak.common.util.Time;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.RequiredActionProviderModel;
 
 /**
  * Reminders for myself while developing: - We are completely trashing entity interfaces, because
@@ -28,7 +34,34 @@ import org.keycloak.common.util.Time;
  * specifying the type for collections but not for single interface objects see:
  * https://bitbucket.org/snakeyaml/snakeyaml/wiki/Documentation chapter: Type safe Collections)
  */
-public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
+public class FileRealmEntity implements AbstractEntity, UpdatableEntity, SectionedEntity {
+
+    static final String COMPONENTS = "components";
+    static final String AUTHENTICATION_FLOWS = "authenticationFlows";
+    static final String AUTHENTICATION_EXECUTIONS = "authenticationExecutions";
+    static final String AUTHENTICATOR_CONFIGS = "authenticatorConfigs";
+    static final String REQUIRED_ACTION_CONFIGS = "requiredActionConfigs";
+    static final String REQUIRED_ACTION_PROVIDERS = "requiredActionProviders";
+    static final String IDENTITY_PROVIDERS = "identityProviders";
+    static final String IDENTITY_PROVIDER_MAPPERS = "identityProviderMappers";
+    static final String CLIENT_INITIAL_ACCESSES = "clientInitialAccesses";
+
+    // the sub entity lists that are persisted in files of their own, see SectionedEntity
+    private static final List<String> SECTIONS = List.of(
+            COMPONENTS,
+            AUTHENTICATION_FLOWS,
+            AUTHENTICATION_EXECUTIONS,
+            AUTHENTICATOR_CONFIGS,
+            REQUIRED_ACTION_CONFIGS,
+            REQUIRED_ACTION_PROVIDERS,
+            IDENTITY_PROVIDERS,
+            IDENTITY_PROVIDER_MAPPERS,
+            CLIENT_INITIAL_ACCESSES);
+    // identity providers and mappers are kept in files of their own, see FileIdentityProviderStore; their
+    // sections are only read, and written while they still hold entities to migrate
+    private static final List<String> WRITTEN_SECTIONS = SECTIONS.stream()
+            .filter(section -> !IDENTITY_PROVIDERS.equals(section) && !IDENTITY_PROVIDER_MAPPERS.equals(section))
+            .toList();
 
     private String id;
     private Map<String, Object> attributes = new HashMap<>();
@@ -96,6 +129,7 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
     private List<String> eventsListeners = new ArrayList<>();
     private List<String> enabledEventTypes = new ArrayList<>();
     private List<String> supportedLocales = new ArrayList<>();
+    // texts of realms stored before they moved to their own files, see FileRealmLocalizationStore
     private Map<String, Map<String, String>> localizationTexts = new HashMap<>();
     private Map<String, String> browserSecurityHeaders = new HashMap<>();
     private Map<String, String> smtpConfig = new HashMap<>();
@@ -115,6 +149,12 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
     private Boolean adminPermissionsEnabled;
     private Boolean verifiableCredentialsEnabled;
 
+    private final transient AtomicInteger subEntitiesVersion = new AtomicInteger();
+    private final transient AtomicInteger clientInitialAccessesVersion = new AtomicInteger();
+    // a new realm has not been written at all
+    private final transient Set<String> changedSections = allSections();
+    private transient volatile FileRealmLookup lookup;
+
     public FileRealmEntity() {}
 
     @Override
@@ -755,11 +795,13 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void addDefaultClientScopeId(String scopeId) {
         this.defaultClientScopeIds.add(scopeId);
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
         FileRealmStore.update(this);
     }
 
     public Boolean removeDefaultClientScopeId(String scopeId) {
         Boolean hasRemoved = this.defaultClientScopeIds.remove(scopeId);
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
         FileRealmStore.update(this);
         return hasRemoved;
     }
@@ -770,10 +812,13 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void addOptionalClientScopeId(String scopeId) {
         this.optionalClientScopeIds.add(scopeId);
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
     }
 
     public Boolean removeOptionalClientScopeId(String scopeId) {
-        return this.optionalClientScopeIds.remove(scopeId);
+        Boolean hasRemoved = this.optionalClientScopeIds.remove(scopeId);
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
+        return hasRemoved;
     }
 
     public List<String> getDefaultGroupIds() {
@@ -820,15 +865,6 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
         return this.localizationTexts;
     }
 
-    public Map<String, String> getLocalizationText(String locale) {
-        return this.localizationTexts.get(locale);
-    }
-
-    public void setLocalizationText(String locale, Map<String, String> texts) {
-        this.localizationTexts.put(locale, texts);
-        FileRealmStore.update(this);
-    }
-
     public Boolean removeLocalizationText(String locale) {
         Boolean hasRemoved = this.localizationTexts.remove(locale) != null;
         FileRealmStore.update(this);
@@ -862,8 +898,14 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
         return this.requiredCredentials;
     }
 
+    /** Returns an unmodifiable snapshot of the required credentials. */
+    public List<FileRequiredCredentialEntity> getRequiredCredentialsSnapshot() {
+        return lookup().requiredCredentials.getAll();
+    }
+
     public void addRequiredCredential(FileRequiredCredentialEntity requiredCredential) {
         this.requiredCredentials.add(requiredCredential);
+        this.subEntitiesVersion.incrementAndGet();
         FileRealmStore.update(this);
     }
 
@@ -872,17 +914,35 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
     }
 
     public Optional<FileComponentEntity> getComponent(String id) {
-        return this.components.stream().filter(c -> c.getId().equals(id)).findFirst();
+        return lookup().components.getById(id);
+    }
+
+    /**
+     * Returns the components of the parent as models. The models are converted once per change of
+     * the components and copied on every call, so callers may modify them.
+     */
+    public List<ComponentModel> getComponentModels(String parentId) {
+        return lookup().getComponentModelsByParent(parentId);
+    }
+
+    /** Like {@link #getComponentModels(String)}, restricted to one provider type. */
+    public List<ComponentModel> getComponentModels(String parentId, String providerType) {
+        return lookup().getComponentModelsByParentAndType(parentId, providerType);
+    }
+
+    /** Returns an unmodifiable snapshot of the components, which stays valid while they change. */
+    public List<FileComponentEntity> getComponentsSnapshot() {
+        return lookup().components.getAll();
     }
 
     public void addComponent(FileComponentEntity component) {
         this.components.add(component);
-        FileRealmStore.update(this);
+        updateSubEntities(COMPONENTS);
     }
 
     public Boolean removeComponent(String componentId) {
-        Boolean hasRemoved = this.components.remove(componentId);
-        FileRealmStore.update(this);
+        Boolean hasRemoved = this.components.removeIf(c -> Objects.equals(c.getId(), componentId));
+        updateSubEntities(COMPONENTS);
         return hasRemoved;
     }
 
@@ -891,14 +951,21 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
     }
 
     public Optional<FileAuthenticationFlowEntity> getAuthenticationFlow(String flowId) {
-        return this.authenticationFlows.stream()
-                .filter(f -> f.getId().equals(flowId))
-                .findFirst();
+        return lookup().authenticationFlows.getById(flowId);
+    }
+
+    public Optional<FileAuthenticationFlowEntity> getAuthenticationFlowByAlias(String alias) {
+        return lookup().authenticationFlows.getByKey(alias);
+    }
+
+    /** Returns an unmodifiable snapshot of the authentication flows. */
+    public List<FileAuthenticationFlowEntity> getAuthenticationFlowsSnapshot() {
+        return lookup().authenticationFlows.getAll();
     }
 
     public void addAuthenticationFlow(FileAuthenticationFlowEntity authenticationFlow) {
         this.authenticationFlows.add(authenticationFlow);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_FLOWS);
     }
 
     public Boolean removeAuthenticationFlow(String flowId) {
@@ -907,7 +974,7 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(f -> this.authenticationFlows.remove(f))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_FLOWS);
         return hasRemoved;
     }
 
@@ -917,18 +984,33 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void setAuthenticationExecutions(List<FileAuthenticationExecutionEntity> authenticationExecutions) {
         this.authenticationExecutions = authenticationExecutions;
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_EXECUTIONS);
     }
 
     public Optional<FileAuthenticationExecutionEntity> getAuthenticationExecution(String id) {
-        return this.authenticationExecutions.stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst();
+        return lookup().authenticationExecutions.getById(id);
+    }
+
+    public Optional<FileAuthenticationExecutionEntity> getAuthenticationExecutionByFlowId(String flowId) {
+        return lookup().authenticationExecutions.getByKey(flowId);
+    }
+
+    /**
+     * Returns the executions of the flow as models, sorted by priority. The order is cached until the
+     * executions change; the models are fresh copies on every call.
+     */
+    public List<AuthenticationExecutionModel> getAuthenticationExecutionModels(String parentFlowId) {
+        return lookup().getExecutionModelsByParentFlow(parentFlowId);
+    }
+
+    /** Returns an unmodifiable snapshot of the authentication executions. */
+    public List<FileAuthenticationExecutionEntity> getAuthenticationExecutionsSnapshot() {
+        return lookup().authenticationExecutions.getAll();
     }
 
     public void addAuthenticationExecution(FileAuthenticationExecutionEntity authenticationExecution) {
         this.authenticationExecutions.add(authenticationExecution);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_EXECUTIONS);
     }
 
     public Boolean removeAuthenticationExecution(String executionId) {
@@ -937,7 +1019,7 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(e -> this.authenticationExecutions.remove(e))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_EXECUTIONS);
         return hasRemoved;
     }
 
@@ -951,19 +1033,33 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void addAuthenticatorConfig(FileAuthenticatorConfigEntity authenticatorConfig) {
         this.authenticatorConfigs.add(authenticatorConfig);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATOR_CONFIGS);
     }
 
     public Optional<FileAuthenticatorConfigEntity> getAuthenticatorConfig(String authenticatorConfigId) {
-        return this.authenticatorConfigs.stream()
-                .filter(c -> c.getId().equals(authenticatorConfigId))
-                .findFirst();
+        return lookup().authenticatorConfigs.getById(authenticatorConfigId);
+    }
+
+    public Optional<FileAuthenticatorConfigEntity> getAuthenticatorConfigByAlias(String alias) {
+        return lookup().authenticatorConfigs.getByKey(alias);
+    }
+
+    /** Returns an unmodifiable snapshot of the authenticator configs. */
+    public List<FileAuthenticatorConfigEntity> getAuthenticatorConfigsSnapshot() {
+        return lookup().authenticatorConfigs.getAll();
     }
 
     public Optional<FileRequiredActionConfigEntity> getRequiredActionConfig(String id) {
-        return this.requiredActionConfigs.stream()
-                .filter(c -> c.getId().equals(id))
-                .findFirst();
+        return lookup().requiredActionConfigs.getById(id);
+    }
+
+    public Optional<FileRequiredActionConfigEntity> getRequiredActionConfigByAlias(String alias) {
+        return lookup().requiredActionConfigs.getByKey(alias);
+    }
+
+    /** Returns an unmodifiable snapshot of the required action configs. */
+    public List<FileRequiredActionConfigEntity> getRequiredActionConfigsSnapshot() {
+        return lookup().requiredActionConfigs.getAll();
     }
 
     public Boolean removeAuthenticatorConfig(String authenticatorConfigId) {
@@ -972,7 +1068,7 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(c -> this.authenticatorConfigs.remove(c))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATOR_CONFIGS);
         return hasRemoved;
     }
 
@@ -982,7 +1078,7 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(c -> this.requiredActionConfigs.remove(c))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(REQUIRED_ACTION_CONFIGS);
         return hasRemoved;
     }
 
@@ -992,13 +1088,28 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void addRequiredActionProvider(FileRequiredActionProviderEntity requiredActionProvider) {
         this.requiredActionProviders.add(requiredActionProvider);
-        FileRealmStore.update(this);
+        updateSubEntities(REQUIRED_ACTION_PROVIDERS);
     }
 
     public Optional<FileRequiredActionProviderEntity> getRequiredActionProvider(String requiredActionProviderId) {
-        return this.requiredActionProviders.stream()
-                .filter(p -> p.getId().equals(requiredActionProviderId))
-                .findFirst();
+        return lookup().requiredActionProviders.getById(requiredActionProviderId);
+    }
+
+    public Optional<FileRequiredActionProviderEntity> getRequiredActionProviderByAlias(String alias) {
+        return lookup().requiredActionProviders.getByKey(alias);
+    }
+
+    /**
+     * Returns the required action providers as models, sorted by priority. The order is cached until
+     * the providers change; the models are fresh copies on every call.
+     */
+    public List<RequiredActionProviderModel> getRequiredActionProviderModels() {
+        return lookup().getRequiredActionProviderModels();
+    }
+
+    /** Returns an unmodifiable snapshot of the required action providers. */
+    public List<FileRequiredActionProviderEntity> getRequiredActionProvidersSnapshot() {
+        return lookup().requiredActionProviders.getAll();
     }
 
     public Boolean removeRequiredActionProvider(String requiredActionProviderId) {
@@ -1007,67 +1118,39 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(p -> this.requiredActionProviders.remove(p))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(REQUIRED_ACTION_PROVIDERS);
         return hasRemoved;
     }
 
+    /**
+     * Identity providers of realms written by older versions. They have files of their own now, see
+     * {@link FileIdentityProviderStore}, and this list is emptied on first use.
+     */
     public List<FileIdentityProviderEntity> getIdentityProviders() {
         return this.identityProviders;
     }
 
-    public void addIdentityProvider(FileIdentityProviderEntity identityProvider) {
-        this.identityProviders.add(identityProvider);
-        FileRealmStore.update(this);
-    }
-
-    public Boolean removeIdentityProvider(String identityProviderId) {
-        Boolean hasRemoved = this.identityProviders.stream()
-                .filter(i -> i.getId().equals(identityProviderId))
-                .findFirst()
-                .map(i -> this.identityProviders.remove(i))
-                .orElse(false);
-        FileRealmStore.update(this);
-        return hasRemoved;
-    }
-
+    /** Identity provider mappers of realms written by older versions, see {@link #getIdentityProviders()}. */
     public List<FileIdentityProviderMapperEntity> getIdentityProviderMappers() {
         return this.identityProviderMappers;
     }
 
-    public void addIdentityProviderMapper(FileIdentityProviderMapperEntity identityProviderMapper) {
-        this.identityProviderMappers.add(identityProviderMapper);
-        FileRealmStore.update(this);
-    }
-
-    public Boolean removeIdentityProviderMapper(String identityProviderMapperId) {
-        Boolean hasRemoved = this.identityProviderMappers.stream()
-                .filter(m -> m.getId().equals(identityProviderMapperId))
-                .findFirst()
-                .map(m -> this.identityProviderMappers.remove(m))
-                .orElse(false);
-        FileRealmStore.update(this);
-        return hasRemoved;
-    }
-
-    public Optional<FileIdentityProviderMapperEntity> getIdentityProviderMapper(String identityProviderMapperId) {
-        return this.identityProviderMappers.stream()
-                .filter(m -> m.getId().equals(identityProviderMapperId))
-                .findFirst();
-    }
-
     public List<FileClientInitialAccessEntity> getClientInitialAccesses() {
         return this.clientInitialAccesses;
     }
 
     public void addClientInitialAccess(FileClientInitialAccessEntity clientInitialAccess) {
         this.clientInitialAccesses.add(clientInitialAccess);
-        FileRealmStore.update(this);
+        updateSubEntities(CLIENT_INITIAL_ACCESSES);
     }
 
     public Optional<FileClientInitialAccessEntity> getClientInitialAccess(String clientInitialAccessId) {
-        return this.clientInitialAccesses.stream()
-                .filter(c -> c.getId().equals(clientInitialAccessId))
-                .findFirst();
+        return lookup().clientInitialAccesses.getById(clientInitialAccessId);
+    }
+
+    /** Returns an unmodifiable snapshot of the client initial accesses. */
+    public List<FileClientInitialAccessEntity> getClientInitialAccessesSnapshot() {
+        return lookup().clientInitialAccesses.getAll();
     }
 
     public Boolean removeClientInitialAccess(String clientInitialAccessId) {
@@ -1076,13 +1159,87 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
                 .findFirst()
                 .map(c -> this.clientInitialAccesses.remove(c))
                 .orElse(false);
-        FileRealmStore.update(this);
+        updateSubEntities(CLIENT_INITIAL_ACCESSES);
         return hasRemoved;
     }
 
-    public void removeExpiredClientInitialAccesses() {
-        this.clientInitialAccesses.removeIf(e -> Time.currentTimeMillis() > e.getExpiration());
-        FileRealmStore.update(this);
+    /**
+     * Persists the realm after one of its sub entities was changed in place, e.g. a flow got a new
+     * alias. This also drops the lookup maps, which are keyed by those values.
+     *
+     * @param section the section holding the sub entity, {@link SectionedEntity#MAIN} for sub entities
+     *     stored in the realm file itself
+     */
+    public void updateSubEntities(String section) {
+        this.subEntitiesVersion.incrementAndGet();
+        if (CLIENT_INITIAL_ACCESSES.equals(section)) {
+            this.clientInitialAccessesVersion.incrementAndGet();
+        }
+        this.changedSections.add(section);
+        FileRealmStore.updateSections(this);
+    }
+
+    /** Counts the changes of the client initial accesses, see {@link ClientInitialAccessExpiration}. */
+    int clientInitialAccessesVersion() {
+        return this.clientInitialAccessesVersion.get();
+    }
+
+    @Override
+    public Collection<String> sectionNames() {
+        return SECTIONS;
+    }
+
+    @Override
+    public Collection<String> writtenSectionNames() {
+        boolean identityProvidersLeft = this.identityProviders != null && !this.identityProviders.isEmpty();
+        boolean mappersLeft = this.identityProviderMappers != null && !this.identityProviderMappers.isEmpty();
+        if (!identityProvidersLeft && !mappersLeft) {
+            return WRITTEN_SECTIONS;
+        }
+        if (identityProvidersLeft && mappersLeft) {
+            return SECTIONS;
+        }
+        List<String> written = new ArrayList<>(WRITTEN_SECTIONS);
+        written.add(identityProvidersLeft ? IDENTITY_PROVIDERS : IDENTITY_PROVIDER_MAPPERS);
+        return written;
+    }
+
+    @Override
+    public Set<String> takeChangedSections() {
+        Set<String> taken = new HashSet<>();
+        for (String section : this.changedSections) {
+            if (this.changedSections.remove(section)) {
+                taken.add(section);
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    public void markChanged(Collection<String> sections) {
+        this.changedSections.addAll(sections);
+    }
+
+    /**
+     * The lookup maps are rebuilt from the lists whenever the version was bumped since they were
+     * built. Reading the version before building keeps a snapshot built concurrently to a change from
+     * being taken for current.
+     */
+    private static Set<String> allSections() {
+        Set<String> sections = ConcurrentHashMap.newKeySet();
+        sections.add(MAIN);
+        sections.addAll(SECTIONS);
+        return sections;
+    }
+
+    private FileRealmLookup lookup() {
+        int version = this.subEntitiesVersion.get();
+        FileRealmLookup current = this.lookup;
+        if (current == null || current.getVersion() != version) {
+            current = new FileRealmLookup(version, this);
+            this.lookup = current;
+        }
+        return current;
     }
 
     public boolean hasClientInitialAccess() {
@@ -1165,11 +1322,13 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void setDefaultClientScopeIds(List<String> defaultClientScopeIds) {
         this.defaultClientScopeIds = defaultClientScopeIds;
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
         FileRealmStore.update(this);
     }
 
     public void setOptionalClientScopeIds(List<String> optionalClientScopeIds) {
         this.optionalClientScopeIds = optionalClientScopeIds;
+        FileClientScopeResolutionCache.invalidateRealmDefaults(id);
         FileRealmStore.update(this);
     }
 
@@ -1185,42 +1344,43 @@ public class FileRealmEntity implements AbstractEntity, UpdatableEntity {
 
     public void setRequiredCredentials(List<FileRequiredCredentialEntity> requiredCredentials) {
         this.requiredCredentials = requiredCredentials;
+        this.subEntitiesVersion.incrementAndGet();
         FileRealmStore.update(this);
     }
 
     public void setComponents(List<FileComponentEntity> components) {
         this.components = components;
-        FileRealmStore.update(this);
+        updateSubEntities(COMPONENTS);
     }
 
     public void setAuthenticationFlows(List<FileAuthenticationFlowEntity> authenticationFlows) {
         this.authenticationFlows = authenticationFlows;
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATION_FLOWS);
     }
 
     public void setAuthenticatorConfigs(ArrayList<FileAuthenticatorConfigEntity> authenticatorConfigs) {
         this.authenticatorConfigs = authenticatorConfigs;
-        FileRealmStore.update(this);
+        updateSubEntities(AUTHENTICATOR_CONFIGS);
     }
 
     public void setRequiredActionProviders(ArrayList<FileRequiredActionProviderEntity> requiredActionProviders) {
         this.requiredActionProviders = requiredActionProviders;
-        FileRealmStore.update(this);
+        updateSubEntities(REQUIRED_ACTION_PROVIDERS);
     }
 
     public void setIdentityProviders(ArrayList<FileIdentityProviderEntity> identityProviders) {
         this.identityProviders = identityProviders;
-        FileRealmStore.update(this);
+        updateSubEntities(IDENTITY_PROVIDERS);
     }
 
     public void setIdentityProviderMappers(ArrayList<FileIdentityProviderMapperEntity> identityProviderMappers) {
         this.identityProviderMappers = identityProviderMappers;
-        FileRealmStore.update(this);
+        updateSubEntities(IDENTITY_PROVIDER_MAPPERS);
     }
 
     public void setClientInitialAccesses(ArrayList<FileClientInitialAccessEntity> clientInitialAccesses) {
         this.clientInitialAccesses = clientInitialAccesses;
-        FileRealmStore.update(this);
+        updateSubEntities(CLIENT_INITIAL_ACCESSES);
     }
 
     public boolean isHasClientInitialAccess() {
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.realm;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Localization texts of realms, stored per locale in {@code <realm>/localizations/<locale>.yaml}.
+ *
+ * <p>A locale is read on first use and then served as an unmodifiable map until it changes. A change
+ * rewrites the file of its locale only. Realms stored before this layout keep their texts in the realm
+ * file; these are still read, and a locale moves to its own file on its first change.
+ *
+ * <p>Files are read and written outside of the map's atomic operations, which must not block. Changes
+ * hold the write lock while they update the files and the map, loads hold the read lock, so a load
+ * cannot put back texts that a concurrent change replaced.
+ */
+final class FileRealmLocalizationStore {
+
+    private static final String LOCALIZATIONS = "localizations";
+
+    // texts by locale file, an empty map if the locale has no texts
+    private static final Map<Path, Map<String, String>> TEXTS = new ConcurrentHashMap<>();
+    private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+
+    private FileRealmLocalizationStore() {}
+
+    static Map<String, String> read(String realmId, String locale) {
+        Path path = createFilePath(realmId, locale);
+        if (path == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> texts = TEXTS.get(path);
+        if (texts != null) {
+            return texts;
+        }
+        LOCK.readLock().lock();
+        try {
+            Map<String, String> loaded = load(realmId, locale, path);
+            texts = TEXTS.putIfAbsent(path, loaded);
+            return texts == null ? loaded : texts;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    static Map<String, Map<String, String>> readAll(String realmId) {
+        Map<String, Map<String, String>> all = new HashMap<>();
+        for (String locale : locales(realmId)) {
+            all.put(locale, read(realmId, locale));
+        }
+        return Collections.unmodifiableMap(all);
+    }
+
+    /** Adds the texts to the locale, replacing texts with the same keys. */
+    static void write(String realmId, String locale, Map<String, String> texts) {
+        Path path = createFilePath(realmId, locale);
+        if (path == null) {
+            return;
+        }
+        LOCK.writeLock().lock();
+        try {
+            Map<String, String> updated = new HashMap<>(current(realmId, locale, path));
+            updated.putAll(texts);
+            TEXTS.put(path, store(realmId, locale, path, updated));
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    static boolean removeText(String realmId, String locale, String key) {
+        Path path = createFilePath(realmId, locale);
+        if (path == null) {
+            return false;
+        }
+        LOCK.writeLock().lock();
+        try {
+            Map<String, String> texts = current(realmId, locale, path);
+            if (!texts.containsKey(key)) {
+                return false;
+            }
+            Map<String, String> updated = new HashMap<>(texts);
+            updated.remove(key);
+            TEXTS.put(path, store(realmId, locale, path, updated));
+            return true;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    static boolean remove(String realmId, String locale) {
+        Path path = createFilePath(realmId, locale);
+        if (path == null) {
+            return false;
+        }
+        LOCK.writeLock().lock();
+        try {
+            boolean removed = deleteFile(path) | removeFromRealmFile(realmId, locale);
+            TEXTS.remove(path);
+            return removed;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** Deletes the files of all locales of the realm, texts in the realm file go with the realm. */
+    static void removeAll(String realmId) {
+        Path directory = createDirectoryPath(realmId);
+        LOCK.writeLock().lock();
+        try {
+            for (Path path : localeFiles(directory)) {
+                deleteFile(path);
+            }
+            // also locales that were read but never written
+            TEXTS.keySet().removeIf(path -> path.startsWith(directory));
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** The texts of the locale as cached, or loaded; the caller holds the write lock. */
+    private static Map<String, String> current(String realmId, String locale, Path path) {
+        Map<String, String> texts = TEXTS.get(path);
+        return texts != null ? texts : load(realmId, locale, path);
+    }
+
+    private static Map<String, String> load(String realmId, String locale, Path path) {
+        if (Files.exists(path)) {
+            return Collections.unmodifiableMap(EntityIO.parseTextsFile(path));
+        }
+        Map<String, String> texts = readFromRealmFile(realmId).get(locale);
+        return texts == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(texts));
+    }
+
+    private static Map<String, String> store(String realmId, String locale, Path path, Map<String, String> texts) {
+        try {
+            EntityIO.writeTextsToFile(texts, path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        removeFromRealmFile(realmId, locale);
+        return Collections.unmodifiableMap(texts);
+    }
+
+    private static Set<String> locales(String realmId) {
+        Set<String> locales = new LinkedHashSet<>();
+        for (Path path : localeFiles(createDirectoryPath(realmId))) {
+            String fileName = path.getFileName().toString();
+            locales.add(fileName.substring(0, fileName.length() - EntityIO.FILE_SUFFIX.length()));
+        }
+        locales.addAll(readFromRealmFile(realmId).keySet());
+        return locales;
+    }
+
+    private static List<Path> localeFiles(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(EntityIO::canParseFile).toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, Map<String, String>> readFromRealmFile(String realmId) {
+        FileRealmEntity realm = FileRealmStore.read(realmId);
+        Map<String, Map<String, String>> texts = realm == null ? null : realm.getLocalizationTexts();
+        return texts == null ? Collections.emptyMap() : texts;
+    }
+
+    private static boolean removeFromRealmFile(String realmId, String locale) {
+        FileRealmEntity realm = FileRealmStore.read(realmId);
+        if (realm == null
+                || realm.getLocalizationTexts() == null
+                || !realm.getLocalizationTexts().containsKey(locale)) {
+            return false;
+        }
+        return realm.removeLocalizationText(locale);
+    }
+
+    private static boolean deleteFile(Path path) {
+        try {
+            if (!Files.deleteIfExists(path)) {
+                return false;
+            }
+            EntityIO.deleteParentDirectoryIfEmpty(path);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Path createDirectoryPath(String realmId) {
+        return EntityIO.getRootDirectory().resolve(realmId).resolve(LOCALIZATIONS);
+    }
+
+    private static Path createFilePath(String realmId, String locale) {
+        if (realmId == null || locale == null) {
+            return null;
+        }
+        return EntityIO.getPathForIdAndParentPath(EntityIO.escapeId(locale), createDirectoryPath(realmId));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.realm;
+
+import java.util.*;
+import java.util.function.Function;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.RequiredActionProviderModel;
+
+/**
+ * Immutable id and alias keyed maps over the sub entities of a {@link FileRealmEntity}. The realm
+ * keeps its sub entities in plain lists, which is what ends up in the YAML file; this snapshot is
+ * built lazily from those lists and dropped whenever they change.
+ *
+ * <p>The ordering the authentication processor asks for on every login (the executions of a flow
+ * sorted by priority, the required actions sorted by priority and the components of a parent and
+ * provider type) is compiled once per snapshot, on first use. The models handed out are fresh on every
+ * call, so callers may modify them.
+ */
+final class FileRealmLookup {
+
+    private record ComponentKey(String parentId, String providerType) {}
+
+    private final int version;
+
+    private volatile Map<String, List<FileAuthenticationExecutionEntity>> executionsByParentFlow;
+    private volatile List<FileRequiredActionProviderEntity> sortedRequiredActionProviders;
+    private volatile ComponentModels componentModels;
+
+    final Entities<FileComponentEntity> components;
+    final Entities<FileAuthenticationFlowEntity> authenticationFlows;
+    final Entities<FileAuthenticationExecutionEntity> authenticationExecutions;
+    final Entities<FileAuthenticatorConfigEntity> authenticatorConfigs;
+    final Entities<FileRequiredActionConfigEntity> requiredActionConfigs;
+    final Entities<FileRequiredActionProviderEntity> requiredActionProviders;
+    final Entities<FileClientInitialAccessEntity> clientInitialAccesses;
+    final Entities<FileRequiredCredentialEntity> requiredCredentials;
+
+    FileRealmLookup(int version, FileRealmEntity realm) {
+        this.version = version;
+        this.components = new Entities<>(realm.getComponents(), FileComponentEntity::getId, null);
+        this.authenticationFlows = new Entities<>(
+                realm.getAuthenticationFlows(),
+                FileAuthenticationFlowEntity::getId,
+                FileAuthenticationFlowEntity::getAlias);
+        this.authenticationExecutions = new Entities<>(
+                realm.getAuthenticationExecutions(),
+                FileAuthenticationExecutionEntity::getId,
+                FileAuthenticationExecutionEntity::getFlowId);
+        this.authenticatorConfigs = new Entities<>(
+                realm.getAuthenticatorConfigs(),
+                FileAuthenticatorConfigEntity::getId,
+                FileAuthenticatorConfigEntity::getAlias);
+        this.requiredActionConfigs = new Entities<>(
+                realm.getRequiredActionConfigs(),
+                FileRequiredActionConfigEntity::getId,
+                FileRequiredActionConfigEntity::getAlias);
+        this.requiredActionProviders = new Entities<>(
+                realm.getRequiredActionProviders(),
+                FileRequiredActionProviderEntity::getId,
+                FileRequiredActionProviderEntity::getAlias);
+        this.clientInitialAccesses =
+                new Entities<>(realm.getClientInitialAccesses(), FileClientInitialAccessEntity::getId, null);
+        this.requiredCredentials =
+                new Entities<>(realm.getRequiredCredentials(), FileRequiredCredentialEntity::getType, null);
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /** Returns the executions of the flow, sorted by priority, as models owned by the caller. */
+    List<AuthenticationExecutionModel> getExecutionModelsByParentFlow(String parentFlowId) {
+        Map<String, List<FileAuthenticationExecutionEntity>> compiled = this.executionsByParentFlow;
+        if (compiled == null) {
+            Comparator<FileAuthenticationExecutionEntity> byPriority = Comparator.comparing(
+                    FileAuthenticationExecutionEntity::toModel,
+                    AuthenticationExecutionModel.ExecutionComparator.SINGLETON);
+            compiled = new HashMap<>();
+            for (FileAuthenticationExecutionEntity execution : authenticationExecutions.getAll()) {
+                compiled.computeIfAbsent(execution.getParentFlowId(), parent -> new ArrayList<>())
+                        .add(execution);
+            }
+            compiled.replaceAll((parent, executions) -> {
+                executions.sort(byPriority);
+                return Collections.unmodifiableList(executions);
+            });
+            this.executionsByParentFlow = compiled;
+        }
+        return compiled.getOrDefault(parentFlowId, List.of()).stream()
+                .map(FileAuthenticationExecutionEntity::toModel)
+                .toList();
+    }
+
+    /** Returns the required action providers, sorted by priority, as models owned by the caller. */
+    List<RequiredActionProviderModel> getRequiredActionProviderModels() {
+        List<FileRequiredActionProviderEntity> compiled = this.sortedRequiredActionProviders;
+        if (compiled == null) {
+            compiled = requiredActionProviders.getAll().stream()
+                    .sorted(Comparator.comparing(
+                            FileRequiredActionProviderEntity::toModel,
+                            RequiredActionProviderModel.RequiredActionComparator.SINGLETON))
+                    .toList();
+            this.sortedRequiredActionProviders = compiled;
+        }
+        return compiled.stream().map(FileRequiredActionProviderEntity::toModel).toList();
+    }
+
+    /** Returns the components of the parent as copies of the cached models, owned by the caller. */
+    List<ComponentModel> getComponentModelsByParent(String parentId) {
+        return copyOf(componentModels().byParent.getOrDefault(parentId, List.of()));
+    }
+
+    List<ComponentModel> getComponentModelsByParentAndType(String parentId, String providerType) {
+        return copyOf(
+                componentModels().byParentAndType.getOrDefault(new ComponentKey(parentId, providerType), List.of()));
+    }
+
+    private static List<ComponentModel> copyOf(List<ComponentModel> models) {
+        return models.stream().map(ComponentModel::new).toList();
+    }
+
+    private ComponentModels componentModels() {
+        ComponentModels compiled = this.componentModels;
+        if (compiled == null) {
+            compiled = new ComponentModels(components.getAll());
+            this.componentModels = compiled;
+        }
+        return compiled;
+    }
+
+    /** The components as models, each converted once and shared by both maps. Never handed out. */
+    private static final class ComponentModels {
+
+        private final Map<String, List<ComponentModel>> byParent = new HashMap<>();
+        private final Map<ComponentKey, List<ComponentModel>> byParentAndType = new HashMap<>();
+
+        private ComponentModels(List<FileComponentEntity> components) {
+            for (FileComponentEntity component : components) {
+                ComponentModel model = component.asModel();
+                byParent.computeIfAbsent(model.getParentId(), parent -> new ArrayList<>())
+                        .add(model);
+                byParentAndType
+                        .computeIfAbsent(
+                                new ComponentKey(model.getParentId(), model.getProviderType()),
+                                key -> new ArrayList<>())
+                        .add(model);
+            }
+            byParent.replaceAll((parent, models) -> Collections.unmodifiableList(models));
+            byParentAndType.replaceAll((key, models) -> Collections.unmodifiableList(models));
+        }
+    }
+
+    /** The entities of one list, in list order, with the first entity winning on duplicate keys. */
+    static final class Entities<T> {
+
+        private final List<T> all;
+        private final Map<String, T> byId;
+        private final Map<Object, T> byKey;
+
+        private Entities(Collection<T> entities, Function<T, String> idFunc, Function<T, ?> keyFunc) {
+            List<T> all = entities == null ? List.of() : List.copyOf(entities);
+            Map<String, T> byId = new HashMap<>(all.size() * 2);
+            Map<Object, T> byKey = keyFunc == null ? Collections.emptyMap() : new HashMap<>(all.size() * 2);
+            for (T entity : all) {
+                byId.putIfAbsent(idFunc.apply(entity), entity);
+                if (keyFunc != null) {
+                    byKey.putIfAbsent(keyFunc.apply(entity), entity);
+                }
+            }
+            this.all = all;
+            this.byId = byId;
+            this.byKey = byKey;
+        }
+
+        List<T> getAll() {
+            return all;
+        }
+
+        Optional<T> getById(String id) {
+            return Optional.ofNullable(byId.get(id));
+        }
+
+        Optional<T> getByKey(Object key) {
+            return Optional.ofNullable(byKey.get(key));
+        }
+    }
+}
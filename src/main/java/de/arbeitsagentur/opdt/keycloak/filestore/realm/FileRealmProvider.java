@@ -17,13 +17,16 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.AdapterIdentityMap;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Stream;
 import org.jboss.logging.Logger;
 import org.keycloak.models.KeycloakSession;
@@ -35,13 +38,16 @@ public class FileRealmProvider implements RealmProvider {
 
     private static final Logger LOG = Logger.getLogger(FileRealmProvider.class);
     private final KeycloakSession session;
+    private final AdapterIdentityMap adapters;
 
     public FileRealmProvider(KeycloakSession session) {
         this.session = session;
+        this.adapters = AdapterIdentityMap.of(session);
     }
 
     private RealmModel entityToAdapter(FileRealmEntity entity) {
-        return new FileRealmAdapter(session, entity);
+        return adapters.get(
+                RealmModel.class, null, entity, entity.getId(), () -> new FileRealmAdapter(session, entity));
     }
 
     @Override
@@ -80,11 +86,9 @@ public class FileRealmProvider implements RealmProvider {
 
         LOG.tracef("getRealmByName(%s)%s", name, getShortStackTrace());
 
-        Optional<FileRealmEntity> entity = FileRealmStore.readAll().stream()
-                .filter(e -> name.equals(e.getName()))
-                .findFirst();
-
-        String realmId = entity.filter(e -> name.equals(e.getName()))
+        String realmId = FileRealmStore.read(
+                        ModelCriteria.<RealmModel>criteria().compare(SearchableFields.NAME, EQ, name))
+                .findFirst()
                 .map(FileRealmEntity::getId)
                 .orElse(null);
         return realmId == null ? null : session.realms().getRealm(realmId);
@@ -92,17 +96,14 @@ public class FileRealmProvider implements RealmProvider {
 
     @Override
     public Stream<RealmModel> getRealmsStream() {
-        return FileRealmStore.readAll().stream()
-                .map(this::entityToAdapter)
-                .sorted(Comparator.comparing(RealmModel::getName));
+        return FileRealmStore.readSorted().stream().map(this::entityToAdapter);
     }
 
     @Override
     public Stream<RealmModel> getRealmsWithProviderTypeStream(Class<?> type) {
-        return FileRealmStore.readAll().stream()
+        return FileRealmStore.read(ModelCriteria.<RealmModel>criteria()
+                        .compare(SearchableFields.COMPONENT_PROVIDER_TYPE, EQ, type.getName()))
                 .map(this::entityToAdapter)
-                .filter(realm -> realm.getComponentsStream()
-                        .anyMatch(component -> type.getName().equals(component.getProviderType())))
                 .sorted(Comparator.comparing(RealmModel::getName));
     }
 
@@ -112,16 +113,18 @@ public class FileRealmProvider implements RealmProvider {
         RealmModel realm = getRealm(id);
         if (realm == null) return false;
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.REALM_BEFORE_REMOVE, realm);
+        FileRealmLocalizationStore.removeAll(realm.getId());
+        FileIdentityProviderStore.deleteByRealmId(realm.getId());
         FileRealmStore.deleteById(realm.getId());
+        adapters.clear();
         session.invalidate(AbstractFileProviderFactory.MapProviderObjectType.REALM_AFTER_REMOVE, realm);
         return true;
     }
 
     @Override
     public void removeExpiredClientInitialAccess() {
-        FileRealmStore.readAll().stream()
-                .filter(e -> !e.getClientInitialAccesses().isEmpty())
-                .forEach(FileRealmEntity::removeExpiredClientInitialAccesses);
+        // the accesses are registered with the scheduler, which removes them at their expiration
+        ExpirationScheduler.runDue();
     }
 
     @Override
@@ -164,11 +167,7 @@ public class FileRealmProvider implements RealmProvider {
             return false;
         }
 
-        Map<String, String> texts = new HashMap<>(realm.getRealmLocalizationTextsByLocale(locale));
-        texts.remove(key);
-        realm.removeRealmLocalizationTexts(locale);
-        realm.createOrUpdateRealmLocalizationTexts(locale, texts);
-        return true;
+        return FileRealmLocalizationStore.removeText(realm.getId(), locale, key);
     }
 
     @Override
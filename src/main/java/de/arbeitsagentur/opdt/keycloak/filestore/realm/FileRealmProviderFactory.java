@@ -18,7 +18,9 @@ package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
 import com.google.auto.service.AutoService;
 import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProviderFactory;
 import org.keycloak.provider.InvalidationHandler;
@@ -42,6 +44,17 @@ public class FileRealmProviderFactory
         return "Realm provider";
     }
 
+    /** Client initial accesses are removed at their expiration by the scheduler. */
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        ExpirationScheduler.start();
+    }
+
+    @Override
+    public void close() {
+        ExpirationScheduler.stop();
+    }
+
     @Override
     public void invalidate(KeycloakSession session, InvalidableObjectType type, Object... params) {
         if (type == MapProviderObjectType.REALM_AFTER_REMOVE) {
@@ -17,14 +17,49 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityQueryEngine;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.SectionedEntity;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
+import org.keycloak.models.RealmModel;
 
 public class FileRealmStore {
 
+    private static final String ALL_REALMS = "realms";
+    private static final SortedEntityIndex<FileRealmEntity> BY_NAME =
+            SortedEntityIndex.create(FileRealmEntity.class, realm -> ALL_REALMS, FileRealmEntity::getName);
+    private static final KeyedEntityIndex<FileRealmEntity> BY_EXACT_NAME =
+            KeyedEntityIndex.create(FileRealmEntity.class, realm -> Collections.singletonList(realm.getName()));
+    private static final KeyedEntityIndex<FileRealmEntity> BY_COMPONENT_PROVIDER_TYPE =
+            KeyedEntityIndex.create(FileRealmEntity.class, FileRealmStore::componentProviderTypes);
+
+    private static final EntityQueryEngine<FileRealmEntity, RealmModel> QUERY =
+            EntityQueryEngine.<FileRealmEntity, RealmModel>builder(FileRealmEntity.class)
+                    .field(SearchableFields.ID, FileRealmEntity::getId)
+                    .field(SearchableFields.NAME, FileRealmEntity::getName)
+                    .field(SearchableFields.CLIENT_INITIAL_ACCESS, realm -> !isEmpty(realm.getClientInitialAccesses()))
+                    .multiValuedField(SearchableFields.COMPONENT_PROVIDER_TYPE, FileRealmStore::componentProviderTypes)
+                    .index(criteria ->
+                            criteria.getOperand(EQ, SearchableFields.NAME).map(BY_EXACT_NAME::get))
+                    .index(criteria -> criteria.getOperand(EQ, SearchableFields.COMPONENT_PROVIDER_TYPE)
+                            .map(BY_COMPONENT_PROVIDER_TYPE::get))
+                    .build();
+
+    static {
+        ClientInitialAccessExpiration.register();
+    }
+
     public static FileRealmEntity read(String realmId) {
         Path expectedPath = createFilePath(realmId);
         return EntityStore.get(expectedPath);
@@ -41,7 +76,23 @@ public class FileRealmStore {
         return EntityStore.getAll(FileRealmEntity.class);
     }
 
+    /** Returns all realms, sorted by name. */
+    public static List<FileRealmEntity> readSorted() {
+        return BY_NAME.getAll(ALL_REALMS);
+    }
+
+    /** Returns the realms matching the criteria, in no particular order. */
+    public static Stream<FileRealmEntity> read(ModelCriteria<RealmModel> criteria) {
+        return QUERY.read(criteria);
+    }
+
     public static FileRealmEntity update(FileRealmEntity entity) {
+        entity.markChanged(List.of(SectionedEntity.MAIN));
+        return updateSections(entity);
+    }
+
+    /** Persists only the sections of the realm that were marked as changed, see {@link SectionedEntity}. */
+    static FileRealmEntity updateSections(FileRealmEntity entity) {
         if (entity.getId() == null) {
             return null;
         }
@@ -60,4 +111,17 @@ public class FileRealmStore {
     private static Path createFilePath(String realmId) {
         return EntityIO.getPathForIdAndParentPath(realmId, EntityIO.getRootDirectory());
     }
+
+    private static List<String> componentProviderTypes(FileRealmEntity realm) {
+        return isEmpty(realm.getComponents())
+                ? List.of()
+                : realm.getComponents().stream()
+                        .map(FileComponentEntity::getProviderType)
+                        .distinct()
+                        .toList();
+    }
+
+    private static boolean isEmpty(Collection<?> collection) {
+        return collection == null || collection.isEmpty();
+    }
 }
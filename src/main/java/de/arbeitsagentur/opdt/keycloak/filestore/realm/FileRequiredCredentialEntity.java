@@ -90,6 +90,16 @@ public class FileRequiredCredentialEntity implements UpdatableEntity {
         isUpdated = updated;
     }
 
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+    }
+
     public Boolean getSecret() {
         return secret;
     }
@@ -26,6 +26,8 @@ import org.keycloak.models.WebAuthnPolicy;
 
 public class FileWebAuthnPolicyEntity implements UpdatableEntity {
 
+    private static final FileWebAuthnPolicyEntity DEFAULT_POLICY = defaultWebAuthnPolicy();
+
     private boolean isUpdated = false;
     private String rpEntityName;
     private List<String> signatureAlgorithms;
@@ -60,7 +62,8 @@ public class FileWebAuthnPolicyEntity implements UpdatableEntity {
         if (entity == null) return null;
         WebAuthnPolicy model = new WebAuthnPolicy();
         model.setRpEntityName(entity.getRpEntityName());
-        model.setSignatureAlgorithm(entity.getSignatureAlgorithms());
+        List<String> signatureAlgorithms = entity.getSignatureAlgorithms();
+        model.setSignatureAlgorithm(signatureAlgorithms == null ? null : new LinkedList<>(signatureAlgorithms));
         model.setRpId(entity.getRpId());
         model.setAttestationConveyancePreference(entity.getAttestationConveyancePreference());
         model.setAuthenticatorAttachment(entity.getAuthenticatorAttachment());
@@ -76,6 +79,11 @@ public class FileWebAuthnPolicyEntity implements UpdatableEntity {
         return model;
     }
 
+    /** A new model of {@link #defaultWebAuthnPolicy()}, for realms without a WebAuthn policy of their own. */
+    static WebAuthnPolicy defaultModel() {
+        return toModel(DEFAULT_POLICY);
+    }
+
     static FileWebAuthnPolicyEntity defaultWebAuthnPolicy() {
         FileWebAuthnPolicyEntity entity = new FileWebAuthnPolicyEntity();
         entity.setRpEntityName(Constants.DEFAULT_WEBAUTHN_POLICY_RP_ENTITY_NAME);
@@ -188,6 +196,16 @@ public class FileWebAuthnPolicyEntity implements UpdatableEntity {
         isUpdated = updated;
     }
 
+    @Override
+    public void clearUpdatedFlag() {
+        isUpdated = false;
+    }
+
+    @Override
+    public void markUpdatedFlag() {
+        isUpdated = true;
+    }
+
     public Boolean getAvoidSameAuthenticatorRegister() {
         return avoidSameAuthenticatorRegister;
     }
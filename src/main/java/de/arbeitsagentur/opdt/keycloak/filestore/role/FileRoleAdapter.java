@@ -18,6 +18,7 @@ package de.arbeitsagentur.opdt.keycloak.filestore.role;
 
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCache;
 import java.util.*;
 import java.util.stream.Stream;
 import org.jboss.logging.Logger;
@@ -30,6 +31,7 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 public class FileRoleAdapter extends AbstractRoleModel<FileRoleEntity> implements RoleModel {
 
     private static final Logger LOG = Logger.getLogger(FileRoleAdapter.class);
+    private static final ModelCache.Slot<Map<String, List<String>>> ATTRIBUTES = ModelCache.slot("attributes");
 
     public FileRoleAdapter(KeycloakSession session, RealmModel realm, FileRoleEntity entity) {
         super(session, realm, entity);
@@ -132,8 +134,15 @@ public class FileRoleAdapter extends AbstractRoleModel<FileRoleEntity> implement
 
     @Override
     public Map<String, List<String>> getAttributes() {
-        Map<String, List<String>> attributes = entity.getMultiValuedAttributes();
-        return attributes == null ? Collections.emptyMap() : attributes;
+        return ModelCache.get(entity, ATTRIBUTES, () -> {
+            // a copy, the cached map is shared by all sessions and must not follow the entity
+            Map<String, List<String>> attributes = new HashMap<>();
+            Map<String, List<String>> stored = entity.getMultiValuedAttributes();
+            if (stored != null) {
+                stored.forEach((name, values) -> attributes.put(name, List.copyOf(values)));
+            }
+            return Collections.unmodifiableMap(attributes);
+        });
     }
 
     @Override
@@ -17,12 +17,18 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.role;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EXISTS;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.NOT_EXISTS;
 import static de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory.MapProviderObjectType.ROLE_AFTER_REMOVE;
 import static de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractFileProviderFactory.MapProviderObjectType.ROLE_BEFORE_REMOVE;
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 import static org.keycloak.utils.StreamsUtil.paginatedStream;
 
-import de.arbeitsagentur.opdt.keycloak.filestore.SearchPatterns;
+import de.arbeitsagentur.opdt.keycloak.filestore.AdapterIdentityMap;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
@@ -35,15 +41,22 @@ public class FileRoleProvider implements RoleProvider {
 
     private static final Logger LOG = Logger.getLogger(FileRoleProvider.class);
     private final KeycloakSession session;
+    private final AdapterIdentityMap adapters;
 
     public FileRoleProvider(KeycloakSession session) {
         this.session = session;
+        this.adapters = AdapterIdentityMap.of(session);
     }
 
     private Function<FileRoleEntity, RoleModel> entityToAdapterFunc(RealmModel realm) {
         // Clone entity before returning back, to avoid giving away a reference to the live object to
         // the caller
-        return origEntity -> new FileRoleAdapter(session, realm, origEntity);
+        return origEntity -> adapters.get(
+                RoleModel.class,
+                realm,
+                origEntity,
+                origEntity.getId(),
+                () -> new FileRoleAdapter(session, realm, origEntity));
     }
 
     @Override
@@ -78,12 +91,8 @@ public class FileRoleProvider implements RoleProvider {
 
     @Override
     public Stream<RoleModel> getRealmRolesStream(RealmModel realm, Integer first, Integer max) {
-        Stream<RoleModel> rolesStream = FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(e -> e.getClientId() == null)
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(RoleModel::getName));
-        return paginatedStream(rolesStream, first, max);
+        return FileRoleStore.readSorted(realm.getId(), null, first, max).stream()
+                .map(entityToAdapterFunc(realm));
     }
 
     @Override
@@ -95,7 +104,8 @@ public class FileRoleProvider implements RoleProvider {
                 .map(id -> FileRoleStore.read(id, realm.getId()))
                 .map(entityToAdapterFunc(realm));
         if (search != null) {
-            return roleStream.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), "%" + search + "%"));
+            LikePattern pattern = LikePattern.compileInsensitive("%" + search + "%");
+            return roleStream.filter(entity -> pattern.matches(entity.getName()));
         }
         return roleStream;
     }
@@ -138,12 +148,8 @@ public class FileRoleProvider implements RoleProvider {
     public Stream<RoleModel> getClientRolesStream(ClientModel client, Integer first, Integer max) {
         final RealmModel realm = client.getRealm();
 
-        Stream<RoleModel> rolesStream = FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(entity -> client.getId().equals(entity.getClientId()))
-                .map(entityToAdapterFunc(realm))
-                .sorted(Comparator.comparing(RoleModel::getName));
-        return paginatedStream(rolesStream, first, max);
+        return FileRoleStore.readSorted(realm.getId(), client.getId(), first, max).stream()
+                .map(entityToAdapterFunc(realm));
     }
 
     @Override
@@ -160,6 +166,7 @@ public class FileRoleProvider implements RoleProvider {
 
         session.invalidate(ROLE_BEFORE_REMOVE, realm, role);
         FileRoleStore.deleteById(role.getId(), realm.getId());
+        adapters.clear();
         session.invalidate(ROLE_AFTER_REMOVE, realm, role);
         return true;
     }
@@ -181,10 +188,9 @@ public class FileRoleProvider implements RoleProvider {
         }
 
         LOG.tracef("getRealmRole(%s, %s)%s", realm, name, getShortStackTrace());
-        return FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(role -> role.getName().equals(name))
-                .filter(role -> role.getClientId() == null)
+        return FileRoleStore.read(criteria(realm)
+                        .compare(SearchableFields.CLIENT_ID, NOT_EXISTS)
+                        .compare(SearchableFields.NAME, EQ, name))
                 .map(entityToAdapterFunc(realm))
                 .findFirst()
                 .orElse(null);
@@ -198,10 +204,9 @@ public class FileRoleProvider implements RoleProvider {
 
         LOG.tracef("getClientRole(%s, %s)%s", client, name, getShortStackTrace());
         final RealmModel realm = client.getRealm();
-        return FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(role -> client.getId().equals(role.getClientId()))
-                .filter(role -> name.equals(role.getName()))
+        return FileRoleStore.read(criteria(realm)
+                        .compare(SearchableFields.CLIENT_ID, EQ, client.getId())
+                        .compare(SearchableFields.NAME, EQ, name))
                 .map(entityToAdapterFunc(realm))
                 .findFirst()
                 .orElse(null);
@@ -229,18 +234,10 @@ public class FileRoleProvider implements RoleProvider {
             return Stream.empty();
         }
 
-        Stream<RoleModel> roleStream = FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(role -> role.getClientId() == null)
+        Stream<RoleModel> roleStream = FileRoleStore.read(
+                        searchCriteria(realm, search).compare(SearchableFields.CLIENT_ID, NOT_EXISTS))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(RoleModel::getName));
-
-        String searchPattern = "%" + search + "%";
-
-        if (!search.isBlank()) {
-            roleStream = roleStream.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), searchPattern)
-                    || SearchPatterns.insensitiveLike(entity.getDescription(), searchPattern));
-        }
         return paginatedStream(roleStream, first, max);
     }
 
@@ -251,19 +248,10 @@ public class FileRoleProvider implements RoleProvider {
         }
 
         final RealmModel realm = client.getRealm();
-        Stream<RoleModel> roleStream = FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(role -> role.getClientId() != null)
-                .filter(role -> client.getId().equals(role.getClientId()))
+        Stream<RoleModel> roleStream = FileRoleStore.read(
+                        searchCriteria(realm, search).compare(SearchableFields.CLIENT_ID, EQ, client.getId()))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(RoleModel::getName));
-
-        String searchPattern = "%" + search + "%";
-
-        if (!search.isBlank()) {
-            roleStream = roleStream.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), searchPattern)
-                    || SearchPatterns.insensitiveLike(entity.getDescription(), searchPattern));
-        }
         return paginatedStream(roleStream, first, max);
     }
 
@@ -280,11 +268,10 @@ public class FileRoleProvider implements RoleProvider {
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(RoleModel::getName));
 
-        String searchPattern = "%" + search + "%";
-
         if (!search.isBlank()) {
-            roleStream = roleStream.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), searchPattern)
-                    || SearchPatterns.insensitiveLike(entity.getDescription(), searchPattern));
+            LikePattern pattern = LikePattern.compileInsensitive("%" + search + "%");
+            roleStream = roleStream.filter(
+                    entity -> pattern.matches(entity.getName()) || pattern.matches(entity.getDescription()));
         }
         return paginatedStream(roleStream, first, max);
     }
@@ -297,36 +284,43 @@ public class FileRoleProvider implements RoleProvider {
         }
 
         List<String> excludedIdsList = excludedIds.toList();
-        Stream<RoleModel> roleStream = FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(role -> role.getClientId() != null)
+        Stream<RoleModel> roleStream = FileRoleStore.read(
+                        searchCriteria(realm, search).compare(SearchableFields.CLIENT_ID, EXISTS))
                 .filter(role -> !excludedIdsList.contains(role.getId()))
                 .map(entityToAdapterFunc(realm))
                 .sorted(Comparator.comparing(RoleModel::getName));
-
-        String searchPattern = "%" + search + "%";
-
-        if (!search.isBlank()) {
-            roleStream = roleStream.filter(entity -> SearchPatterns.insensitiveLike(entity.getName(), searchPattern)
-                    || SearchPatterns.insensitiveLike(entity.getDescription(), searchPattern));
-        }
         return paginatedStream(roleStream, first, max);
     }
 
     public void preRemove(RealmModel realm) {
         LOG.tracef("preRemove(%s)%s", realm, getShortStackTrace());
-        FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
+        FileRoleStore.read(criteria(realm))
+                .toList()
                 .forEach(entity -> FileRoleStore.deleteById(entity.getId(), realm.getId()));
     }
 
     public void preRemove(RealmModel realm, RoleModel role) {
-        FileRoleStore.readAll().stream()
-                .filter(e -> realm.getId().equals(e.getRealmId()))
-                .filter(e -> e.getCompositeRoles().contains(role.getId()))
+        FileRoleStore.read(criteria(realm).compare(SearchableFields.COMPOSITE_ROLE, EQ, role.getId()))
+                .toList()
                 .forEach(e -> e.removeCompositeRole(role.getId()));
     }
 
+    private static ModelCriteria<RoleModel> criteria(RealmModel realm) {
+        return ModelCriteria.<RoleModel>criteria().compare(SearchableFields.REALM_ID, EQ, realm.getId());
+    }
+
+    /** Roles whose name or description contains the search ignoring case, or all roles for a blank search. */
+    private static ModelCriteria<RoleModel> searchCriteria(RealmModel realm, String search) {
+        if (search.isBlank()) {
+            return criteria(realm);
+        }
+        String pattern = "%" + search + "%";
+        return criteria(realm)
+                .or(
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.NAME, ILIKE, pattern),
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.DESCRIPTION, ILIKE, pattern));
+    }
+
     @Override
     public void close() {
         // nothing to close
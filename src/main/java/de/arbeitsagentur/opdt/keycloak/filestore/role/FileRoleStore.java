@@ -17,14 +17,79 @@
 
 package de.arbeitsagentur.opdt.keycloak.filestore.role;
 
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.LIKE;
+
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityIO;
+import de.arbeitsagentur.opdt.keycloak.filestore.EntityQueryEngine;
 import de.arbeitsagentur.opdt.keycloak.filestore.EntityStore;
+import de.arbeitsagentur.opdt.keycloak.filestore.KeyedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.LikePattern;
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria;
+import de.arbeitsagentur.opdt.keycloak.filestore.SortedEntityIndex;
+import de.arbeitsagentur.opdt.keycloak.filestore.TrigramIndex;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.keycloak.models.RoleModel;
 
 public class FileRoleStore {
     private static final String OBJECT_DIRECTORY = "roles";
+    private static final SortedEntityIndex<FileRoleEntity> BY_NAME = SortedEntityIndex.create(
+            FileRoleEntity.class,
+            role -> new Container(role.getRealmId(), role.getClientId()),
+            FileRoleEntity::getName);
+    private static final TrigramIndex<FileRoleEntity> NAME_TRIGRAMS = TrigramIndex.create(
+            FileRoleEntity.class,
+            FileRoleEntity::getRealmId,
+            role -> Arrays.asList(role.getName(), role.getDescription()));
+    private static final KeyedEntityIndex<FileRoleEntity> BY_REALM =
+            KeyedEntityIndex.create(FileRoleEntity.class, role -> Arrays.asList(role.getRealmId()));
+    private static final KeyedEntityIndex<FileRoleEntity> BY_EXACT_NAME =
+            KeyedEntityIndex.create(FileRoleEntity.class, role -> List.of(new Key(role.getRealmId(), role.getName())));
+    private static final KeyedEntityIndex<FileRoleEntity> BY_COMPOSITE =
+            KeyedEntityIndex.create(FileRoleEntity.class, role -> role.getCompositeRoles().stream()
+                    .map(roleId -> new Key(role.getRealmId(), roleId))
+                    .toList());
+
+    private static final EntityQueryEngine<FileRoleEntity, RoleModel> QUERY =
+            EntityQueryEngine.<FileRoleEntity, RoleModel>builder(FileRoleEntity.class)
+                    .field(SearchableFields.ID, FileRoleEntity::getId)
+                    .field(SearchableFields.REALM_ID, FileRoleEntity::getRealmId)
+                    .field(SearchableFields.CLIENT_ID, FileRoleEntity::getClientId)
+                    .field(SearchableFields.NAME, FileRoleEntity::getName)
+                    .field(SearchableFields.DESCRIPTION, FileRoleEntity::getDescription)
+                    .multiValuedField(SearchableFields.COMPOSITE_ROLE, FileRoleEntity::getCompositeRoles)
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.NAME)
+                                    .map(name -> BY_EXACT_NAME.get(new Key(realmId, name)))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.CLIENT_ID)
+                                    .map(clientId -> BY_NAME.getAll(new Container(realmId, (String) clientId)))))
+                    .index(criteria -> realmId(criteria)
+                            .filter(realmId -> criteria.requiresNoValue(SearchableFields.CLIENT_ID))
+                            .map(realmId -> BY_NAME.getAll(new Container(realmId, null))))
+                    .index(criteria -> realmId(criteria).flatMap(realmId -> criteria.getOperand(
+                                    ILIKE, SearchableFields.NAME, SearchableFields.DESCRIPTION)
+                            .or(() -> criteria.getOperand(LIKE, SearchableFields.NAME, SearchableFields.DESCRIPTION))
+                            .flatMap(pattern -> NAME_TRIGRAMS.candidates(
+                                    realmId,
+                                    LikePattern.compile(pattern.toString()).getLongestLiteral()))))
+                    .index(criteria -> realmId(criteria)
+                            .flatMap(realmId -> criteria.getOperand(EQ, SearchableFields.COMPOSITE_ROLE)
+                                    .map(roleId -> BY_COMPOSITE.get(new Key(realmId, roleId)))))
+                    .fallbackIndex(criteria -> realmId(criteria).map(BY_REALM::get))
+                    .build();
+
+    /** The realm roles of a realm have no clientId, the client roles have the id of their client. */
+    private record Container(String realmId, String clientId) {}
+
+    /** Key of the hash indexes, which are scoped to a realm. */
+    private record Key(String realmId, Object value) {}
 
     public static FileRoleEntity read(String clientId, String realmId) {
         Path expectedPath = createFilePath(clientId, realmId);
@@ -42,6 +107,16 @@ public class FileRoleStore {
         return EntityStore.getAll(FileRoleEntity.class);
     }
 
+    /** Returns a page of the roles of a realm ({@code clientId == null}) or client, sorted by name. */
+    public static List<FileRoleEntity> readSorted(String realmId, String clientId, Integer first, Integer max) {
+        return BY_NAME.page(new Container(realmId, clientId), first, max);
+    }
+
+    /** Returns the roles matching the criteria, in no particular order. */
+    public static Stream<FileRoleEntity> read(ModelCriteria<RoleModel> criteria) {
+        return QUERY.read(criteria);
+    }
+
     public static FileRoleEntity update(FileRoleEntity entity) {
         if (entity.getId() == null || entity.getRealmId() == null) {
             return null;
@@ -78,4 +153,8 @@ public class FileRoleStore {
                     roleId, EntityIO.getRootDirectory().resolve(realmId).resolve(OBJECT_DIRECTORY));
         }
     }
+
+    private static Optional<String> realmId(ModelCriteria<RoleModel> criteria) {
+        return criteria.getOperand(EQ, SearchableFields.REALM_ID).map(String.class::cast);
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.SectionedEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileComponentEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmEntity;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntityIOTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenParseFile_givenSectionFile_thenSectionIsReadFromIt() throws IOException {
+        // Arrange
+        Path realmFile = directory.resolve("forest.yaml");
+        Files.writeString(realmFile, "name: forest\ncomponents:\n  - id: stale\n");
+        Path componentsFile = EntityIO.getSectionPath(realmFile, "components");
+        Files.createDirectories(componentsFile.getParent());
+        Files.writeString(componentsFile, "components:\n  - id: tree\n    name: oak\n");
+        // Act
+        FileRealmEntity actual = EntityIO.parseFile(realmFile, FileRealmEntity.class);
+        // Assert
+        assertThat(actual.getComponents())
+                .extracting(FileComponentEntity::getId)
+                .containsExactly("tree");
+        assertThat(actual.takeChangedSections())
+                .contains(SectionedEntity.MAIN, "authenticationFlows")
+                .doesNotContain("components");
+    }
+
+    @Test
+    void whenParseFile_givenSingleFileLayout_thenSectionsAreReadFromEntityFile() throws IOException {
+        // Arrange
+        Path realmFile = directory.resolve("forest.yaml");
+        Files.writeString(realmFile, "name: forest\ncomponents:\n  - id: tree\n    name: oak\n");
+        // Act
+        FileRealmEntity actual = EntityIO.parseFile(realmFile, FileRealmEntity.class);
+        // Assert
+        assertThat(actual.getName()).isEqualTo("forest");
+        assertThat(actual.getComponents())
+                .extracting(FileComponentEntity::getId)
+                .containsExactly("tree");
+        assertThat(actual.takeChangedSections())
+                .containsAll(actual.writtenSectionNames())
+                .doesNotContain("identityProviders", "identityProviderMappers");
+    }
+
+    @Test
+    void whenWriteToFile_givenEmptyIdentityProviderSection_thenItsFileIsDeleted() throws IOException {
+        // Arrange
+        Path realmFile = directory.resolve("forest.yaml");
+        Files.writeString(realmFile, "name: forest\n");
+        Path identityProvidersFile = EntityIO.getSectionPath(realmFile, "identityProviders");
+        Files.createDirectories(identityProvidersFile.getParent());
+        Files.writeString(identityProvidersFile, "identityProviders: []\n");
+        FileRealmEntity realm = EntityIO.parseFile(realmFile, FileRealmEntity.class);
+        // Act
+        EntityIO.writeToFile(realm, realmFile);
+        // Assert
+        assertThat(identityProvidersFile).doesNotExist();
+        assertThat(EntityIO.getSectionPath(realmFile, "components")).exists();
+    }
+}
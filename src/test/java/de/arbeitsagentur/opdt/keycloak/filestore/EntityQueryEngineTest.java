@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.common.AbstractEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.UpdatableEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.role.SearchableFields;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RoleModel;
+
+class EntityQueryEngineTest {
+
+    @Test
+    void whenRead_givenNarrowerIndexApplies_thenFallbackIndexIsNotAsked() {
+        // Arrange
+        Role role = role("admin");
+        AtomicInteger fallbackCalls = new AtomicInteger();
+        EntityQueryEngine<Role, RoleModel> engine = EntityQueryEngine.<Role, RoleModel>builder(Role.class)
+                .field(SearchableFields.NAME, Role::name)
+                .index(criteria ->
+                        criteria.getOperand(EQ, SearchableFields.NAME).map(name -> List.of(role)))
+                .fallbackIndex(criteria -> {
+                    fallbackCalls.incrementAndGet();
+                    return Optional.of(List.of(role, role("user")));
+                })
+                .build();
+        // Act
+        List<Role> result = engine.read(ModelCriteria.<RoleModel>criteria().compare(SearchableFields.NAME, EQ, "admin"))
+                .toList();
+        // Assert
+        assertThat(result).containsExactly(role);
+        assertThat(fallbackCalls).hasValue(0);
+    }
+
+    @Test
+    void whenRead_givenNoNarrowerIndexApplies_thenFallbackIndexIsUsed() {
+        // Arrange
+        Role admin = role("admin");
+        Role user = role("user");
+        EntityQueryEngine<Role, RoleModel> engine = EntityQueryEngine.<Role, RoleModel>builder(Role.class)
+                .field(SearchableFields.NAME, Role::name)
+                .field(SearchableFields.DESCRIPTION, Role::description)
+                .index(criteria ->
+                        criteria.getOperand(EQ, SearchableFields.NAME).map(name -> List.of(admin)))
+                .fallbackIndex(criteria -> Optional.of(List.of(admin, user)))
+                .build();
+        // Act
+        List<Role> result = engine.read(
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.DESCRIPTION, EQ, "user"))
+                .toList();
+        // Assert
+        assertThat(result).containsExactly(user);
+    }
+
+    private static Role role(String name) {
+        return new Role(name, name);
+    }
+
+    /** Stands in for an entity, without the store behind the setters of the real ones. */
+    private static final class Role extends UpdatableEntity.Impl implements AbstractEntity {
+        private final String name;
+        private final String description;
+
+        private Role(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        String name() {
+            return name;
+        }
+
+        String description() {
+            return description;
+        }
+
+        @Override
+        public String getId() {
+            return name;
+        }
+
+        @Override
+        public void setId(String id) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
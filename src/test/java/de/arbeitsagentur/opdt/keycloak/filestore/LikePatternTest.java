@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class LikePatternTest extends KeycloakModelTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "%, anything, true",
+        "%%, '', true",
+        "'', '', true",
+        "'', a, false",
+        "abc, abc, true",
+        "abc, abcd, false",
+        "abc%, abcd, true",
+        "abc%, xabc, false",
+        "%abc, xabc, true",
+        "%abc, abcx, false",
+        "%b%, abc, true",
+        "%b%, ac, false",
+        "a%c, abc, true",
+        "a%c, ac, true",
+        "a%c, a, false",
+        "ab%bc, abc, false",
+        "ab%bc, abbc, true",
+        "%a%b%c%, xaxbxcx, true",
+        "%a%b%c%, xcxbxax, false",
+        "a%b%c, abcbc, true",
+        "a%b%c, acb, false"
+    })
+    void whenMatches_givenCaseSensitivePattern_thenMatchLikeSql(String expression, String value, boolean expected) {
+        assertThat(LikePattern.compile(expression).matches(value)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "PATTERN, pattern, true",
+        "pat%, PATTERN-xyz, true",
+        "%ERN, abc-pattern, true",
+        "%Tter%, abc-pattern-xyz, true",
+        "a%P%z, abc-pattern-xyz, true",
+        "a%P%z, abc-pattern-xy, false"
+    })
+    void whenMatches_givenInsensitivePattern_thenIgnoreCase(String expression, String value, boolean expected) {
+        assertThat(LikePattern.compileInsensitive(expression).matches(value)).isEqualTo(expected);
+    }
+
+    @Test
+    void whenMatches_givenNull_thenReturnFalse() {
+        assertThat(LikePattern.compile("%").matches(null)).isFalse();
+    }
+
+    @Test
+    void whenGetLongestLiteral_givenSegments_thenReturnLongest() {
+        assertThat(LikePattern.compile("%ab%cdef%g").getLongestLiteral()).isEqualTo("cdef");
+        assertThat(LikePattern.compile("%").getLongestLiteral()).isEmpty();
+    }
+}
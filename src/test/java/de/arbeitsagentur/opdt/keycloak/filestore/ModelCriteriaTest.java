@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore;
+
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.EQ;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.ILIKE;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.IN;
+import static de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Operator.NOT_EXISTS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.ModelCriteria.Compare;
+import de.arbeitsagentur.opdt.keycloak.filestore.role.SearchableFields;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RoleModel;
+
+class ModelCriteriaTest {
+
+    @Test
+    void whenGetOperand_givenComparison_thenReturnOperand() {
+        // Arrange
+        ModelCriteria<RoleModel> criteria = ModelCriteria.<RoleModel>criteria()
+                .compare(SearchableFields.REALM_ID, EQ, "realm")
+                .compare(SearchableFields.NAME, EQ, "name");
+        // Act & Assert
+        assertThat(criteria.getOperand(EQ, SearchableFields.NAME)).contains("name");
+        assertThat(criteria.getOperand(ILIKE, SearchableFields.NAME)).isEmpty();
+        assertThat(criteria.getOperand(EQ, SearchableFields.CLIENT_ID)).isEmpty();
+    }
+
+    @Test
+    void whenGetOperand_givenDisjunctionWithSameOperand_thenReturnOperand() {
+        // Arrange
+        ModelCriteria<RoleModel> criteria = ModelCriteria.<RoleModel>criteria()
+                .or(
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.NAME, ILIKE, "%x%"),
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.DESCRIPTION, ILIKE, "%x%"));
+        // Act & Assert
+        assertThat(criteria.getOperand(ILIKE, SearchableFields.NAME, SearchableFields.DESCRIPTION))
+                .contains("%x%");
+        assertThat(criteria.getOperand(ILIKE, SearchableFields.NAME)).isEmpty();
+    }
+
+    @Test
+    void whenGetOperand_givenDisjunctionWithDifferentOperands_thenReturnEmpty() {
+        // Arrange
+        ModelCriteria<RoleModel> criteria = ModelCriteria.<RoleModel>criteria()
+                .or(
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.NAME, EQ, "a"),
+                        ModelCriteria.<RoleModel>criteria().compare(SearchableFields.NAME, EQ, "b"));
+        // Act & Assert
+        assertThat(criteria.getOperand(EQ, SearchableFields.NAME)).isEmpty();
+    }
+
+    @Test
+    void whenCompare_givenInWithCollection_thenUseElementsAsOperands() {
+        // Act
+        ModelCriteria<RoleModel> criteria =
+                ModelCriteria.<RoleModel>criteria().compare(SearchableFields.ID, IN, List.of("a", "b"));
+        // Assert
+        assertThat(criteria.getCriteria()).singleElement().isInstanceOfSatisfying(Compare.class, compare -> assertThat(
+                        compare.operands())
+                .containsExactly("a", "b"));
+    }
+
+    @Test
+    void whenRequiresNoValue_givenNotExists_thenReturnTrue() {
+        // Arrange
+        ModelCriteria<RoleModel> criteria =
+                ModelCriteria.<RoleModel>criteria().compare(SearchableFields.CLIENT_ID, NOT_EXISTS);
+        // Act & Assert
+        assertThat(criteria.requiresNoValue(SearchableFields.CLIENT_ID)).isTrue();
+        assertThat(criteria.requiresNoValue(SearchableFields.NAME)).isFalse();
+    }
+
+    @Test
+    void whenCompare_givenExistingCriteria_thenKeepOriginalUnchanged() {
+        // Arrange
+        ModelCriteria<RoleModel> base = ModelCriteria.criteria();
+        // Act
+        ModelCriteria<RoleModel> extended = base.compare(SearchableFields.NAME, EQ, "name");
+        // Assert
+        assertThat(base.getCriteria()).isEmpty();
+        assertThat(extended.getCriteria()).hasSize(1);
+    }
+}
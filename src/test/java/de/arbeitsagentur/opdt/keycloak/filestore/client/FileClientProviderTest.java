@@ -335,6 +335,22 @@ class FileClientProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenSearchClientsByClientIdStream_givenRenamedClient_thenMatchNewClientIdIgnoringCase() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
+            // Arrange
+            clients.addClient(realm, "other");
+            ClientModel client = clients.addClient(realm, "before");
+            client.setClientId("After-Rename");
+            // Act
+            Stream<ClientModel> actualOld = clients.searchClientsByClientIdStream(realm, "before", null, null);
+            Stream<ClientModel> actualNew = clients.searchClientsByClientIdStream(realm, "r-ren", null, null);
+            // Assert
+            assertThat(actualOld).isEmpty();
+            assertThat(actualNew).hasSize(1).map(ClientModel::getClientId).containsExactly("After-Rename");
+        });
+    }
+
     @Test
     void whenSearchClientsByClientIdStream_givenResultLimits_thenReturnStream() {
         withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
@@ -410,6 +426,40 @@ class FileClientProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenSearchClientsByAttributes_givenChangedAttributes_thenReturnCurrentMatches() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
+            // Arrange
+            clients.addClient(realm, "Vilnius").setAttribute("match", "val");
+            clients.addClient(realm, "Zagreb").setAttribute("match", "old");
+            clients.getClientByClientId(realm, "Vilnius").removeAttribute("match");
+            clients.getClientByClientId(realm, "Zagreb").setAttribute("match", "val");
+            // Act
+            Stream<ClientModel> actual = clients.searchClientsByAttributes(realm, Map.of("match", "val"), null, null);
+            // Assert
+            assertThat(actual).hasSize(1).map(ClientModel::getClientId).containsExactly("Zagreb");
+        });
+    }
+
+    @Test
+    void whenGetRedirectUrisAndAttributes_givenChangeThroughOtherAdapter_thenReturnCurrentValues() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
+            // Arrange
+            ClientModel reader = clients.addClient(realm, "Riga");
+            reader.addRedirectUri("https://old.example");
+            reader.setAttribute("key", "old");
+            assertThat(reader.getRedirectUris()).containsExactly("https://old.example");
+            assertThat(reader.getAttributes()).containsEntry("key", "old");
+            // Act
+            ClientModel writer = clients.getClientByClientId(realm, "Riga");
+            writer.setRedirectUris(Set.of("https://new.example"));
+            writer.setAttribute("key", "new");
+            // Assert
+            assertThat(reader.getRedirectUris()).containsExactly("https://new.example");
+            assertThat(reader.getAttributes()).containsEntry("key", "new");
+        });
+    }
+
     @Test
     void whenSearchClientsByAttributes_givenMultipleSearchAttrs_thenReturnStream() {
         withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
@@ -473,6 +523,38 @@ class FileClientProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenGetClientScopes_givenRenamedClientScope_thenReturnNewName() {
+        withRealm(REALM_ID, (session, realm) -> {
+            // Arrange
+            var c = session.clients().addClient(realm, "Lima");
+            var cs = session.clientScopes().addClientScope(realm, "old-town");
+            cs.setProtocol("openid-connect");
+            c.addClientScope(cs, true);
+            assertThat(session.clients().getClientScopes(realm, c, true)).containsOnlyKeys("old-town");
+            // Act
+            cs.setName("new-town");
+            // Assert
+            assertThat(session.clients().getClientScopes(realm, c, true)).containsOnlyKeys("new-town");
+        });
+    }
+
+    @Test
+    void whenGetClientScopes_givenChangedClientProtocol_thenReturnMatchingScopesOnly() {
+        withRealm(REALM_ID, (session, realm) -> {
+            // Arrange
+            var c = session.clients().addClient(realm, "Quito");
+            var cs = session.clientScopes().addClientScope(realm, "highlands");
+            cs.setProtocol("openid-connect");
+            c.addClientScope(cs, false);
+            assertThat(session.clients().getClientScopes(realm, c, false)).containsOnlyKeys("highlands");
+            // Act
+            c.setProtocol("saml");
+            // Assert
+            assertThat(session.clients().getClientScopes(realm, c, false)).isEmpty();
+        });
+    }
+
     @Test
     void whenGetAllRedirectUrisOfEnabledClients_givenNoUris_thenReturnEmptyMap() {
         withRealmAndProvider(REALM_ID, KeycloakSession::clients, (clients, realm) -> {
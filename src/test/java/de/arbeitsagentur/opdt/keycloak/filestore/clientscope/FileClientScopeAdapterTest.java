@@ -24,6 +24,7 @@ import de.arbeitsagentur.opdt.keycloak.filestore.KeycloakModelTest;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ProtocolMapperModel;
 
 class FileClientScopeAdapterTest extends KeycloakModelTest {
 
@@ -118,4 +119,87 @@ class FileClientScopeAdapterTest extends KeycloakModelTest {
             assertThat(actual).hasSize(2).contains(Map.entry("height", "tall"), Map.entry("color", "yellow-brown"));
         });
     }
+
+    @Test
+    void whenAddProtocolMapper_thenGetByIdAndName() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clients, realm) -> {
+            var sut = clients.addClientScope(realm, "zebra");
+            var mapper = new ProtocolMapperModel();
+            mapper.setName("stripes");
+            mapper.setProtocolMapper("oidc-hardcoded-claim-mapper");
+            mapper.setConfig(Map.of("claim.value", "black-white"));
+            // Act
+            var added = sut.addProtocolMapper(mapper);
+            // Assert
+            assertThat(sut.getProtocolMapperById(added.getId())).isNotNull();
+            assertThat(sut.getProtocolMapperByName("openid-connect", "stripes"))
+                    .extracting(ProtocolMapperModel::getConfig)
+                    .isEqualTo(Map.of("claim.value", "black-white"));
+            assertThat(sut.getProtocolMapperByName("saml", "stripes")).isNull();
+        });
+    }
+
+    @Test
+    void whenUpdateProtocolMapper_givenIndexForOtherProtocol_thenMapperIsUpdated() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clients, realm) -> {
+            // Arrange
+            var sut = clients.addClientScope(realm, "zebra");
+            var mapper = new ProtocolMapperModel();
+            mapper.setName("stripes");
+            mapper.setProtocolMapper("oidc-hardcoded-claim-mapper");
+            mapper.setConfig(Map.of("claim.value", "black-white"));
+            var added = sut.addProtocolMapper(mapper);
+            assertThat(sut.getProtocolMapperByName("saml", "stripes")).isNull();
+            var updated = new ProtocolMapperModel();
+            updated.setId(added.getId());
+            updated.setName("stripes");
+            updated.setProtocolMapper("oidc-hardcoded-claim-mapper");
+            updated.setConfig(Map.of("claim.value", "white-black"));
+            // Act
+            sut.updateProtocolMapper(updated);
+            // Assert
+            assertThat(sut.getProtocolMapperById(added.getId()))
+                    .extracting(ProtocolMapperModel::getConfig)
+                    .isEqualTo(Map.of("claim.value", "white-black"));
+            assertThat(sut.getProtocolMappersStream()).hasSize(1);
+        });
+    }
+
+    @Test
+    void whenUpdateProtocolMapper_givenEditedConfigOfReturnedMapper_thenEditIsStoredOnlyByUpdate() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clients, realm) -> {
+            // Arrange
+            var sut = clients.addClientScope(realm, "zebra");
+            var mapper = new ProtocolMapperModel();
+            mapper.setName("stripes");
+            mapper.setProtocolMapper("oidc-hardcoded-claim-mapper");
+            mapper.setConfig(Map.of("claim.value", "black-white"));
+            var added = sut.addProtocolMapper(mapper);
+            var returned = sut.getProtocolMappersStream().findFirst().orElseThrow();
+            // Act
+            returned.getConfig().put("claim.value", "white-black");
+            var beforeUpdate = sut.getProtocolMapperById(added.getId());
+            sut.updateProtocolMapper(returned);
+            // Assert
+            assertThat(beforeUpdate.getConfig()).containsEntry("claim.value", "black-white");
+            assertThat(sut.getProtocolMapperById(added.getId()).getConfig())
+                    .containsEntry("claim.value", "white-black");
+        });
+    }
+
+    @Test
+    void whenRemoveProtocolMapper_thenNotFound() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clients, realm) -> {
+            var sut = clients.addClientScope(realm, "zebra");
+            var mapper = new ProtocolMapperModel();
+            mapper.setName("stripes");
+            var added = sut.addProtocolMapper(mapper);
+            assertThat(sut.getProtocolMappersStream()).hasSize(1);
+            // Act
+            sut.removeProtocolMapper(added);
+            // Assert
+            assertThat(sut.getProtocolMappersStream()).isEmpty();
+            assertThat(sut.getProtocolMapperById(added.getId())).isNull();
+        });
+    }
 }
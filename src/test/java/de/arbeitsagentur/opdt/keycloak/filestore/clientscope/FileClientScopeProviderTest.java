@@ -68,6 +68,24 @@ class FileClientScopeProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenGetDefaultClientScopesStream_givenDefaultScope_thenReturnAdapterOfIdentityMap() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clientScopes, realm) -> {
+            // Arrange
+            ClientScopeModel added = clientScopes.addClientScope(realm, "Atacama");
+            realm.addDefaultClientScope(added, true);
+            ClientScopeModel byId = clientScopes.getClientScopeById(realm, "Atacama");
+            // Act
+            ClientScopeModel actual =
+                    realm.getDefaultClientScopesStream(true).findFirst().orElseThrow();
+            // Assert
+            assertThat(actual).isSameAs(byId);
+            assertThat(clientScopes.getClientScopesStream(realm))
+                    .singleElement()
+                    .isSameAs(byId);
+        });
+    }
+
     @Test
     void whenGetClientScopesStream_givenNoScopes_thenReturnEmptyStream() {
         withRealmAndProvider(REALM_ID, KeycloakSession::clientScopes, (clientScopes, realm) -> {
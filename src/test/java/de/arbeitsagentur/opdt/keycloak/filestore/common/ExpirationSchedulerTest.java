@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+
+class ExpirationSchedulerTest {
+
+    private record Key(String name) {}
+
+    @Test
+    void whenRunDue_givenPassedExpiration_thenRemovalRunsOnce() {
+        // Arrange
+        Key key = new Key("passed");
+        AtomicInteger runs = new AtomicInteger();
+        ExpirationScheduler.schedule(key, Time.currentTimeMillis() - 1000, runs::incrementAndGet);
+        // Act
+        ExpirationScheduler.runDue();
+        ExpirationScheduler.runDue();
+        // Assert
+        assertThat(runs).hasValue(1);
+        assertThat(ExpirationScheduler.isScheduled(key)).isFalse();
+    }
+
+    @Test
+    void whenSchedule_givenSameKeyAgain_thenOnlyTheLatestRegistrationRuns() {
+        // Arrange
+        Key key = new Key("rescheduled");
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger latest = new AtomicInteger();
+        ExpirationScheduler.schedule(key, Time.currentTimeMillis() + 60_000, first::incrementAndGet);
+        // Act
+        ExpirationScheduler.schedule(key, Time.currentTimeMillis() - 1000, latest::incrementAndGet);
+        ExpirationScheduler.runDue();
+        // Assert
+        assertThat(first).hasValue(0);
+        assertThat(latest).hasValue(1);
+    }
+
+    @Test
+    void whenCancel_givenRegistration_thenRemovalDoesNotRun() {
+        // Arrange
+        Key key = new Key("cancelled");
+        AtomicInteger runs = new AtomicInteger();
+        ExpirationScheduler.schedule(key, Time.currentTimeMillis() - 1000, runs::incrementAndGet);
+        // Act
+        ExpirationScheduler.cancel(key);
+        ExpirationScheduler.runDue();
+        // Assert
+        assertThat(runs).hasValue(0);
+        assertThat(ExpirationScheduler.isScheduled(key)).isFalse();
+    }
+
+    @Test
+    void whenStop_givenStartedTwice_thenThreadRunsUntilTheLastStop() {
+        // Arrange
+        boolean runningBefore = ExpirationScheduler.isRunning();
+        ExpirationScheduler.start();
+        ExpirationScheduler.start();
+        // Act
+        ExpirationScheduler.stop();
+        boolean runningAfterFirstStop = ExpirationScheduler.isRunning();
+        ExpirationScheduler.stop();
+        // Assert
+        assertThat(runningAfterFirstStop).isTrue();
+        assertThat(ExpirationScheduler.isRunning()).isEqualTo(runningBefore);
+    }
+}
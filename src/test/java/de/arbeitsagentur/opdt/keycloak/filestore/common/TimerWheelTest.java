@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+    @Test
+    void whenAdvance_givenTimeoutsOnDifferentLevels_thenEachFallsDueAtItsTick() {
+        // Arrange
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.add(3, "level0");
+        wheel.add(100, "level1");
+        wheel.add(5000, "level2");
+        // Act & Assert
+        assertThat(wheel.advance(2)).isEmpty();
+        assertThat(wheel.advance(3)).containsExactly("level0");
+        assertThat(wheel.advance(99)).isEmpty();
+        assertThat(wheel.advance(100)).containsExactly("level1");
+        assertThat(wheel.advance(4999)).isEmpty();
+        assertThat(wheel.advance(5000)).containsExactly("level2");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void whenAdvance_givenCancelledTimeout_thenItDoesNotFallDue() {
+        // Arrange
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        TimerWheel.Timeout<String> cancelled = wheel.add(10, "cancelled");
+        wheel.add(10, "kept");
+        // Act
+        wheel.cancel(cancelled);
+        // Assert
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(10)).containsExactly("kept");
+    }
+
+    @Test
+    void whenAdvance_givenTimeoutAddedForPassedTick_thenItFallsDueOnNextAdvance() {
+        // Arrange
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.advance(50);
+        // Act
+        wheel.add(20, "overdue");
+        // Assert
+        assertThat(wheel.advance(50)).containsExactly("overdue");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void whenAdvance_givenClockTurnedBack_thenTimeoutFallsDueAtItsTickNotBefore() {
+        // Arrange
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.add(200, "pending");
+        wheel.advance(100);
+        // Act
+        wheel.add(60, "turnedBack");
+        // Assert
+        assertThat(wheel.advance(50)).isEmpty();
+        assertThat(wheel.advance(60)).containsExactly("turnedBack");
+        assertThat(wheel.advance(200)).containsExactly("pending");
+    }
+}
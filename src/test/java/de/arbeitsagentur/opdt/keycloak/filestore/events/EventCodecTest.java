@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.EventType;
+
+class EventCodecTest {
+
+    @Test
+    void whenReadAuthEvent_givenValuesNotInDictionaries_thenEventIsDecodedWithoutAddingThem() throws IOException {
+        // Arrange
+        FileAuthEventEntity written = new FileAuthEventEntity();
+        written.setId("e1");
+        written.setTimestamp(1000L);
+        written.setType(EventType.LOGIN);
+        written.setUserId("anna");
+        written.setIpAddress("10.0.0.1");
+        String realmId = "codec-realm-" + System.nanoTime();
+        String clientId = "codec-client-" + System.nanoTime();
+        String detailKey = "codec-detail-" + System.nanoTime();
+        ByteArrayOutputStream logged = new ByteArrayOutputStream();
+        EventCodec.AUTH.write(new DataOutputStream(logged), withColumns(written, realmId, clientId, detailKey));
+        // Act
+        FileAuthEventEntity read = EventCodec.AUTH.read(ByteBuffer.wrap(logged.toByteArray()));
+        // Assert
+        assertThat(read.getRealmId()).isEqualTo(realmId);
+        assertThat(read.getClientId()).isEqualTo(clientId);
+        assertThat(read.getIpAddress()).isEqualTo("10.0.0.1");
+        assertThat(read.getDetails()).containsEntry(detailKey, "value");
+        assertThat(FileAuthEventEntity.REALMS.lookup(realmId)).isEqualTo(EventDictionary.UNCODED);
+        assertThat(FileAuthEventEntity.CLIENTS.lookup(clientId)).isEqualTo(EventDictionary.UNCODED);
+        assertThat(FileAuthEventEntity.DETAIL_KEYS.lookup(detailKey)).isEqualTo(EventDictionary.UNCODED);
+    }
+
+    @Test
+    void whenCompareKeys_givenLoggedValueCodedAfterReading_thenKeyIsTheCode() throws IOException {
+        // Arrange
+        String clientId = "codec-client-" + System.nanoTime();
+        FileAuthEventEntity written = new FileAuthEventEntity();
+        written.setId("e2");
+        written.setTimestamp(1000L);
+        ByteArrayOutputStream logged = new ByteArrayOutputStream();
+        EventCodec.AUTH.write(new DataOutputStream(logged), withColumns(written, null, clientId, null));
+        FileAuthEventEntity read = EventCodec.AUTH.read(ByteBuffer.wrap(logged.toByteArray()));
+        // Act
+        FileAuthEventEntity stored = new FileAuthEventEntity();
+        stored.setClientId(clientId);
+        // Assert
+        assertThat(read.clientKey()).isEqualTo(stored.clientKey()).isEqualTo(FileAuthEventEntity.CLIENTS.key(clientId));
+    }
+
+    /** Sets the coded columns without adding their values to the dictionaries, as if read from the log. */
+    private static FileAuthEventEntity withColumns(
+            FileAuthEventEntity event, String realmId, String clientId, String detailKey) {
+        event.setLogged(realmId, clientId, null, detailKey == null ? null : Map.of(detailKey, "value"));
+        return event;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class EventIngestionTest {
+
+    @Test
+    void whenSubmit_givenFullQueueAndDropNewest_thenEventIsDroppedAndCounted() throws InterruptedException {
+        // Arrange
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> stored = new CopyOnWriteArrayList<>();
+        EventIngestion<String> ingestion =
+                new EventIngestion<>("test-ingestion", 2, 10, EventIngestion.Policy.DROP_NEWEST, batch -> {
+                    consuming.countDown();
+                    awaitQuietly(release);
+                    stored.addAll(batch);
+                });
+        ingestion.submit("e1");
+        assertThat(consuming.await(5, TimeUnit.SECONDS)).isTrue();
+        // Act
+        ingestion.submit("e2");
+        ingestion.submit("e3");
+        ingestion.submit("e4");
+        release.countDown();
+        ingestion.close();
+        // Assert
+        assertThat(stored).containsExactly("e1", "e2", "e3");
+        assertThat(ingestion.getStatistics().dropped()).isEqualTo(1);
+        assertThat(ingestion.getStatistics().applied()).isEqualTo(3);
+        assertThat(ingestion.getStatistics().queued()).isZero();
+    }
+
+    @Test
+    void whenSubmit_givenFullQueueAndCallerRuns_thenEventIsStoredOnCallingThread() throws InterruptedException {
+        // Arrange
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        EventIngestion<String> ingestion =
+                new EventIngestion<>("test-ingestion", 1, 10, EventIngestion.Policy.CALLER_RUNS, batch -> {
+                    if (batch.contains("e1")) {
+                        consuming.countDown();
+                        awaitQuietly(release);
+                    }
+                    batch.forEach(event ->
+                            threads.add(event + "@" + Thread.currentThread().getName()));
+                });
+        ingestion.submit("e1");
+        assertThat(consuming.await(5, TimeUnit.SECONDS)).isTrue();
+        // Act
+        ingestion.submit("e2");
+        ingestion.submit("e3");
+        release.countDown();
+        ingestion.close();
+        // Assert
+        assertThat(threads).contains("e3@" + Thread.currentThread().getName()).hasSize(3);
+        assertThat(ingestion.getStatistics().callerRuns()).isEqualTo(1);
+    }
+
+    @Test
+    void whenSubmit_givenDropOldest_thenOldestQueuedEventIsDropped() throws InterruptedException {
+        // Arrange
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> stored = new CopyOnWriteArrayList<>();
+        EventIngestion<String> ingestion =
+                new EventIngestion<>("test-ingestion", 2, 10, EventIngestion.Policy.DROP_OLDEST, batch -> {
+                    consuming.countDown();
+                    awaitQuietly(release);
+                    stored.addAll(batch);
+                });
+        ingestion.submit("e1");
+        assertThat(consuming.await(5, TimeUnit.SECONDS)).isTrue();
+        // Act
+        ingestion.submit("e2");
+        ingestion.submit("e3");
+        ingestion.submit("e4");
+        release.countDown();
+        ingestion.close();
+        // Assert
+        assertThat(stored).containsExactly("e1", "e3", "e4");
+        assertThat(ingestion.getStatistics().dropped()).isEqualTo(1);
+    }
+
+    @Test
+    void whenSubmit_givenConcurrentClose_thenNoEventIsLost() throws InterruptedException {
+        // Arrange
+        List<String> stored = new CopyOnWriteArrayList<>();
+        EventIngestion<String> ingestion =
+                new EventIngestion<>("test-ingestion", 10_000, 10, EventIngestion.Policy.DROP_NEWEST, stored::addAll);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 5_000; i++) {
+                ingestion.submit("e" + i);
+                if (i == 100) {
+                    started.countDown();
+                }
+            }
+        });
+        submitter.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        // Act
+        ingestion.close();
+        submitter.join(TimeUnit.SECONDS.toMillis(10));
+        // Assert
+        assertThat(stored).hasSize(5_000);
+        assertThat(ingestion.getStatistics().queued()).isZero();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.KeycloakModelTest;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.common.util.Time;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ModelDuplicateException;
+
+class FileEventStoreProviderTest extends KeycloakModelTest {
+
+    private static final String REALM_ID = "harbour";
+
+    @Override
+    protected void createEnvironment(KeycloakSession s) {
+        s.realms().createRealm(REALM_ID);
+    }
+
+    @Override
+    protected void cleanEnvironment(KeycloakSession s) {
+        s.realms().removeRealm(REALM_ID);
+    }
+
+    @Test
+    void whenQueryEvents_givenTypeFilter_thenOnlyEventsOfTheTypeAreReturnedNewestFirst() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e2", 2000L, EventType.LOGOUT, "anna"));
+            events.onEvent(event("e3", 3000L, EventType.LOGIN, "ben"));
+            events.onEvent(event("e4", 4000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e5", 5000L, EventType.LOGOUT, "ben"));
+            // Act
+            var actual = events.createQuery()
+                    .realm(REALM_ID)
+                    .type(EventType.LOGIN)
+                    .maxResults(2)
+                    .getResultStream()
+                    .map(Event::getId);
+            // Assert
+            assertThat(actual).containsExactly("e4", "e3");
+        });
+    }
+
+    @Test
+    void whenQueryEvents_givenUserAndTimeRangeInAscendingOrder_thenPageOfMatchingEventsIsReturned() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e2", 2000L, EventType.LOGOUT, "anna"));
+            events.onEvent(event("e3", 3000L, EventType.LOGIN, "ben"));
+            events.onEvent(event("e4", 4000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e5", 5000L, EventType.LOGOUT, "anna"));
+            // Act
+            var actual = events.createQuery()
+                    .realm(REALM_ID)
+                    .user("anna")
+                    .fromDate(2000L)
+                    .toDate(5000L)
+                    .orderByAscTime()
+                    .firstResult(1)
+                    .maxResults(2)
+                    .getResultStream()
+                    .map(Event::getId);
+            // Assert
+            assertThat(actual).containsExactly("e4", "e5");
+        });
+    }
+
+    @Test
+    void whenQueryEvents_givenClientAndIpAddress_thenPageIsReturnedWithDetails() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            for (int i = 1; i <= 5; i++) {
+                Event event = event("e" + i, i * 1000L, EventType.LOGIN, "anna");
+                event.setClientId(i % 2 == 0 ? "portal" : "admin-cli");
+                event.setIpAddress("10.0.0." + (i % 3));
+                event.setError(i == 5 ? "invalid_user_credentials" : null);
+                event.setDetails(Map.of("auth_method", "openid-connect", "redirect_uri", "https://portal/" + i));
+                events.onEvent(event);
+            }
+            // Act
+            var actual = events.createQuery()
+                    .realm(REALM_ID)
+                    .client("admin-cli")
+                    .ipAddress("10.0.0.2")
+                    .firstResult(0)
+                    .maxResults(1)
+                    .getResultStream()
+                    .toList();
+            var unknownClient =
+                    events.createQuery().realm(REALM_ID).client("unknown").getResultStream();
+            // Assert
+            assertThat(actual).singleElement().satisfies(event -> {
+                assertThat(event.getId()).isEqualTo("e5");
+                assertThat(event.getClientId()).isEqualTo("admin-cli");
+                assertThat(event.getError()).isEqualTo("invalid_user_credentials");
+                assertThat(event.getDetails())
+                        .containsExactlyInAnyOrderEntriesOf(
+                                Map.of("auth_method", "openid-connect", "redirect_uri", "https://portal/5"));
+            });
+            assertThat(unknownClient).isEmpty();
+        });
+    }
+
+    @Test
+    void whenQueryAdminEvents_givenAuthUserAndOperation_thenMatchingEventsAreReturnedNewestFirst() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            events.onEvent(adminEvent("a1", 1000L, OperationType.CREATE, "anna"), false);
+            events.onEvent(adminEvent("a2", 2000L, OperationType.DELETE, "anna"), false);
+            events.onEvent(adminEvent("a3", 3000L, OperationType.CREATE, "ben"), false);
+            events.onEvent(adminEvent("a4", 4000L, OperationType.CREATE, "anna"), false);
+            // Act
+            var actual = events.createAdminQuery()
+                    .realm(REALM_ID)
+                    .authUser("anna")
+                    .operation(OperationType.CREATE)
+                    .getResultStream()
+                    .map(AdminEvent::getId);
+            // Assert
+            assertThat(actual).containsExactly("a4", "a1");
+        });
+    }
+
+    @Test
+    void whenQueryAdminEvents_givenLargeRepresentation_thenItIsStoredCompressedAndReturnedIntact() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            String representation = "{\"users\":[" + "{\"username\":\"änne\",\"enabled\":true},".repeat(500) + "]}";
+            AdminEvent imported = adminEvent("a1", 1000L, OperationType.CREATE, "anna");
+            imported.setRepresentation(representation);
+            // Act
+            events.onEvent(imported, true);
+            events.onEvent(adminEvent("a2", 2000L, OperationType.CREATE, "anna"), true);
+            // Assert
+            assertThat(FileAdminEventInMemoryStore.readAll())
+                    .filteredOn(event -> event.getId().equals("a1"))
+                    .singleElement()
+                    .satisfies(
+                            event -> assertThat(event.representationSize()).isLessThan(representation.length() / 10));
+            assertThat(events.createAdminQuery()
+                            .realm(REALM_ID)
+                            .orderByAscTime()
+                            .maxResults(1)
+                            .getResultStream()
+                            .map(AdminEvent::getRepresentation))
+                    .containsExactly(representation);
+        });
+    }
+
+    @Test
+    void whenClearEvents_givenOlderThan_thenOnlyNewerEventsRemain() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e2", 2000L, EventType.LOGIN, "anna"));
+            events.onEvent(event("e3", 3000L, EventType.LOGIN, "anna"));
+            // Act
+            events.clear(realm, 2000L);
+            // Assert
+            assertThat(events.createQuery().realm(REALM_ID).getResultStream().map(Event::getId))
+                    .containsExactly("e3", "e2");
+        });
+    }
+
+    @Test
+    void whenOnEvent_givenRealmCapReached_thenOldestEventsAreEvicted() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAuthEventInMemoryStore.setRetention(new EventRetention(0, 2, 0, 0));
+            long evictedBefore = FileAuthEventInMemoryStore.getStatistics().evicted();
+            try {
+                // Act
+                events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e2", 2000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e3", 3000L, EventType.LOGIN, "anna"));
+                // Assert
+                assertThat(events.createQuery()
+                                .realm(REALM_ID)
+                                .getResultStream()
+                                .map(Event::getId))
+                        .containsExactly("e3", "e2");
+                assertThat(FileAuthEventInMemoryStore.getStatistics().evicted()).isEqualTo(evictedBefore + 1);
+            } finally {
+                FileAuthEventInMemoryStore.setRetention(EventRetention.UNLIMITED);
+            }
+        });
+    }
+
+    @Test
+    void whenClearExpiredEvents_givenExpiredEvent_thenEventIsRemoved() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            realm.setEventsExpiration(60);
+            events.onEvent(event("e1", Time.currentTimeMillis(), EventType.LOGIN, "anna"));
+            assertThat(FileAuthEventInMemoryStore.exists("e1")).isTrue();
+            Time.setOffset(3600);
+            try {
+                // Act
+                events.clearExpiredEvents();
+                // Assert
+                assertThat(FileAuthEventInMemoryStore.exists("e1")).isFalse();
+            } finally {
+                Time.setOffset(0);
+            }
+        });
+    }
+
+    @Test
+    void whenOnEvent_givenExpirationChangedRightBefore_thenNewExpirationApplies() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            realm.setEventsExpiration(0);
+            events.onEvent(event("e1", Time.currentTimeMillis(), EventType.LOGIN, "anna"));
+            // Act
+            realm.setEventsExpiration(60);
+            events.onEvent(event("e2", Time.currentTimeMillis(), EventType.LOGIN, "anna"));
+            // Assert
+            assertThat(FileAuthEventInMemoryStore.readAll())
+                    .filteredOn(event -> event.getId().equals("e2"))
+                    .singleElement()
+                    .satisfies(event -> assertThat(event.getExpiration()).isNotNull());
+        });
+    }
+
+    @Test
+    void whenQueryEvents_givenLogAndRestart_thenEventsAreReadFromSegments(@TempDir Path directory) {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAuthEventInMemoryStore.setLog(directory, Duration.ofSeconds(1), Duration.ofMinutes(1));
+            try {
+                events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e2", 2000L, EventType.LOGOUT, "anna"));
+                events.onEvent(event("e3", 3000L, EventType.LOGIN, "ben"));
+                events.onEvent(event("e4", 4500L, EventType.LOGIN, "anna"));
+                FileAuthEventInMemoryStore.setLog(null, null, null);
+                FileAuthEventInMemoryStore.clearCache();
+                FileAuthEventInMemoryStore.setLog(directory, Duration.ofSeconds(1), Duration.ofMinutes(1));
+                events.onEvent(event("e5", 5000L, EventType.LOGIN, "anna"));
+                // Act
+                var newestFirst = events.createQuery()
+                        .realm(REALM_ID)
+                        .type(EventType.LOGIN)
+                        .getResultStream()
+                        .map(Event::getId);
+                var oldestFirst = events.createQuery()
+                        .realm(REALM_ID)
+                        .user("anna")
+                        .fromDate(2000L)
+                        .orderByAscTime()
+                        .getResultStream()
+                        .map(Event::getId);
+                // Assert
+                assertThat(newestFirst).containsExactly("e5", "e4", "e3", "e1");
+                assertThat(oldestFirst).containsExactly("e2", "e4", "e5");
+                assertThat(directory.resolve(REALM_ID).resolve("4000" + EventLog.SEGMENT_SUFFIX))
+                        .exists();
+            } finally {
+                FileAuthEventInMemoryStore.clearCache();
+                FileAuthEventInMemoryStore.setLog(null, null, null);
+            }
+        });
+    }
+
+    @Test
+    void whenQueryEvents_givenEvictedEventsNotYetFlushed_thenEventsAreReadInTimeOrder(@TempDir Path directory) {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAuthEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+            FileAuthEventInMemoryStore.setRetention(new EventRetention(0, 1, 0, 0));
+            try {
+                events.onEvent(event("e3", 3000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e2", 2000L, EventType.LOGIN, "anna"));
+                events.onEvent(event("e4", 4000L, EventType.LOGIN, "anna"));
+                // Act
+                var queued = events.createQuery()
+                        .realm(REALM_ID)
+                        .orderByAscTime()
+                        .getResultStream()
+                        .map(Event::getId)
+                        .toList();
+                FileAuthEventInMemoryStore.setLog(null, null, null);
+                FileAuthEventInMemoryStore.clearCache();
+                FileAuthEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+                var logged = events.createQuery()
+                        .realm(REALM_ID)
+                        .getResultStream()
+                        .map(Event::getId)
+                        .toList();
+                // Assert
+                assertThat(queued).containsExactly("e1", "e2", "e3", "e4");
+                assertThat(logged).containsExactly("e4", "e3", "e2", "e1");
+            } finally {
+                FileAuthEventInMemoryStore.setRetention(EventRetention.UNLIMITED);
+                FileAuthEventInMemoryStore.clearCache();
+                FileAuthEventInMemoryStore.setLog(null, null, null);
+            }
+        });
+    }
+
+    @Test
+    void whenClearAdminEvents_givenOlderThanAndLog_thenOnlyNewerEventsRemainOnDisk(@TempDir Path directory) {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAdminEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+            FileAdminEventInMemoryStore.setRetention(new EventRetention(0, 1, 0, 0));
+            try {
+                AdminEvent created = adminEvent("a1", 1000L, OperationType.CREATE, "anna");
+                created.setRepresentation("{\"username\":\"änne\"}");
+                events.onEvent(created, true);
+                events.onEvent(adminEvent("a2", 2000L, OperationType.UPDATE, "anna"), false);
+                events.onEvent(adminEvent("a3", 3000L, OperationType.DELETE, "anna"), false);
+                // Act
+                events.clearAdmin(realm, 2000L);
+                // Assert
+                assertThat(events.createAdminQuery()
+                                .realm(REALM_ID)
+                                .getResultStream()
+                                .map(AdminEvent::getId))
+                        .containsExactly("a3", "a2");
+                events.clearAdmin(realm, 5000L);
+                assertThat(events.createAdminQuery().realm(REALM_ID).getResultStream())
+                        .isEmpty();
+            } finally {
+                FileAdminEventInMemoryStore.setRetention(EventRetention.UNLIMITED);
+                FileAdminEventInMemoryStore.clearCache();
+                FileAdminEventInMemoryStore.setLog(null, null, null);
+            }
+        });
+    }
+
+    @Test
+    void whenQueryEvents_givenFromDateAfterSegmentRewrite_thenIndexOfRewrittenSegmentIsUsed(@TempDir Path directory) {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAuthEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+            FileAuthEventInMemoryStore.setRetention(new EventRetention(0, 1, 0, 0));
+            try {
+                for (int i = 0; i < 3000; i++) {
+                    events.onEvent(event("e" + i, 1000L + i, EventType.LOGIN, "user-" + i));
+                }
+                // Act
+                events.clear(realm, 2000L);
+                var fromDate = events.createQuery()
+                        .realm(REALM_ID)
+                        .fromDate(3500L)
+                        .orderByAscTime()
+                        .getResultStream()
+                        .map(Event::getId)
+                        .toList();
+                // Assert
+                assertThat(fromDate).hasSize(500).startsWith("e2500").endsWith("e2999");
+                assertThat(directory.resolve(REALM_ID))
+                        .isDirectoryContaining("glob:**/0" + EventLog.INDEX_SUFFIX)
+                        .isDirectoryNotContaining("glob:**.tmp");
+                assertThat(directory.resolve(REALM_ID).resolve("0" + EventLog.INDEX_SUFFIX))
+                        .isNotEmptyFile();
+            } finally {
+                FileAuthEventInMemoryStore.setRetention(EventRetention.UNLIMITED);
+                FileAuthEventInMemoryStore.clearCache();
+                FileAuthEventInMemoryStore.setLog(null, null, null);
+            }
+        });
+    }
+
+    @Test
+    void whenReadLog_givenRepresentation_thenEventIsDecodedCompletely(@TempDir Path directory) {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            FileAdminEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+            try {
+                AdminEvent created = adminEvent("a1", 1000L, OperationType.CREATE, "anna");
+                created.setResourcePath("users/1");
+                created.setRepresentation("{\"username\":\"änne\"}");
+                events.onEvent(created, true);
+                FileAdminEventInMemoryStore.setLog(null, null, null);
+                FileAdminEventInMemoryStore.clearCache();
+                FileAdminEventInMemoryStore.setLog(directory, Duration.ofSeconds(10), Duration.ofMinutes(1));
+                // Act
+                var actual = events.createAdminQuery()
+                        .realm(REALM_ID)
+                        .getResultStream()
+                        .toList();
+                // Assert
+                assertThat(actual).singleElement().satisfies(event -> {
+                    assertThat(event.getResourcePath()).isEqualTo("users/1");
+                    assertThat(event.getRepresentation()).isEqualTo("{\"username\":\"änne\"}");
+                    assertThat(event.getAuthDetails().getUserId()).isEqualTo("anna");
+                    assertThat(event.getOperationType()).isEqualTo(OperationType.CREATE);
+                });
+            } finally {
+                FileAdminEventInMemoryStore.clearCache();
+                FileAdminEventInMemoryStore.setLog(null, null, null);
+            }
+        });
+    }
+
+    @Test
+    void whenGetEventCounts_givenEventsInSeveralMinutes_thenCountsPerBucketAreReturned() {
+        withRealmAndProvider(
+                REALM_ID, s -> (FileEventStoreProvider) s.getProvider(EventStoreProvider.class), (events, realm) -> {
+                    // Arrange
+                    long hour = 3_600_000L;
+                    events.onEvent(event("e1", hour + 1_000L, EventType.LOGIN, "anna"));
+                    events.onEvent(event("e2", hour + 2_000L, EventType.LOGIN_ERROR, "anna"));
+                    events.onEvent(event("e3", hour + 61_000L, EventType.LOGIN, "ben"));
+                    Event failed = event("e4", 2 * hour + 5_000L, EventType.LOGIN_ERROR, "ben");
+                    failed.setClientId("portal");
+                    failed.setError("invalid_user_credentials");
+                    events.onEvent(failed);
+                    // Act
+                    var perMinute = events.getEventCounts(
+                                    realm,
+                                    EventCounters.Dimension.TYPE,
+                                    EventCounters.Granularity.MINUTE,
+                                    hour,
+                                    hour + 120_000L)
+                            .toList();
+                    var errorsPerHour = events.getEventCounts(
+                                    realm, EventCounters.Dimension.ERROR, EventCounters.Granularity.HOUR, null, null)
+                            .toList();
+                    // Assert
+                    assertThat(perMinute)
+                            .extracting(
+                                    count -> count.bucketStart() - hour,
+                                    EventCounters.EventCount::value,
+                                    EventCounters.EventCount::count)
+                            .containsExactly(
+                                    tuple(0L, "LOGIN", 1L), tuple(0L, "LOGIN_ERROR", 1L), tuple(60_000L, "LOGIN", 1L));
+                    assertThat(errorsPerHour)
+                            .containsExactly(new EventCounters.EventCount(
+                                    2 * hour, EventCounters.Dimension.ERROR, "invalid_user_credentials", 1L));
+                });
+    }
+
+    @Test
+    void whenGetEventCounts_givenFromWithinBucket_thenThatBucketIsIncluded() {
+        withRealmAndProvider(
+                REALM_ID, s -> (FileEventStoreProvider) s.getProvider(EventStoreProvider.class), (events, realm) -> {
+                    // Arrange
+                    long hour = 3_600_000L;
+                    events.onEvent(event("e1", hour + 1_000L, EventType.LOGIN, "anna"));
+                    events.onEvent(event("e2", hour + 61_000L, EventType.LOGIN, "ben"));
+                    // Act
+                    var perMinute = events.getEventCounts(
+                                    realm,
+                                    EventCounters.Dimension.TYPE,
+                                    EventCounters.Granularity.MINUTE,
+                                    hour + 30_000L,
+                                    hour + 60_000L)
+                            .toList();
+                    // Assert
+                    assertThat(perMinute)
+                            .extracting(count -> count.bucketStart() - hour, EventCounters.EventCount::count)
+                            .containsExactly(tuple(0L, 1L));
+                });
+    }
+
+    @Test
+    void whenOnEvent_givenExistingId_thenDuplicateIsRejected() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            events.onEvent(event("e1", 1000L, EventType.LOGIN, "anna"));
+            // Act & Assert
+            assertThatThrownBy(() -> events.onEvent(event("e1", 2000L, EventType.LOGIN, "anna")))
+                    .isInstanceOf(ModelDuplicateException.class);
+        });
+    }
+
+    @Test
+    void whenOnEvent_givenIngestionQueue_thenEventsAreStoredInTheBackground() {
+        withRealmAndProvider(REALM_ID, s -> s.getProvider(EventStoreProvider.class), (events, realm) -> {
+            // Arrange
+            realm.setEventsExpiration(60);
+            FileAuthEventInMemoryStore.setIngestion(100, 10, EventIngestion.Policy.BLOCK);
+            try {
+                // Act
+                for (int i = 1; i <= 25; i++) {
+                    events.onEvent(event("e" + i, i * 1000L, EventType.LOGIN, "anna"));
+                }
+                FileAuthEventInMemoryStore.setIngestion(0, 0, null);
+                // Assert
+                assertThat(events.createQuery().realm(REALM_ID).getResultStream())
+                        .hasSize(25)
+                        .allSatisfy(event -> assertThat(FileAuthEventInMemoryStore.exists(event.getId()))
+                                .isTrue());
+                assertThat(FileAuthEventInMemoryStore.readAll())
+                        .allSatisfy(event -> assertThat(event.getExpiration()).isNotNull());
+            } finally {
+                FileAuthEventInMemoryStore.setIngestion(0, 0, null);
+            }
+        });
+    }
+
+    private static Event event(String id, long time, EventType type, String userId) {
+        Event event = new Event();
+        event.setId(id);
+        event.setTime(time);
+        event.setType(type);
+        event.setRealmId(REALM_ID);
+        event.setUserId(userId);
+        return event;
+    }
+
+    private static AdminEvent adminEvent(String id, long time, OperationType operation, String authUserId) {
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setRealmId(REALM_ID);
+        authDetails.setUserId(authUserId);
+        AdminEvent event = new AdminEvent();
+        event.setId(id);
+        event.setTime(time);
+        event.setRealmId(REALM_ID);
+        event.setOperationType(operation);
+        event.setAuthDetails(authDetails);
+        return event;
+    }
+}
@@ -300,6 +300,21 @@ class FileGroupProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenGetTopLevelGroupsStream_givenRenamedGroup_thenReturnNewOrder() {
+        withRealm(REALM_ID, (session, realm) -> {
+            // Arrange
+            var colorado = session.groups().createGroup(realm, "Colorado");
+            session.groups().createGroup(realm, "Nile");
+            session.groups().createGroup(realm, "Tigris");
+            // Act
+            colorado.setName("Zambezi");
+            var actual = session.groups().getTopLevelGroupsStream(realm, 1, 2);
+            // Assert
+            assertThat(actual).map(GroupModel::getName).containsExactly("Tigris", "Zambezi");
+        });
+    }
+
     @Test
     void whenGetTopLevelGroupsStream_givenSearchPattern_thenReturnStream() {
         withRealm(REALM_ID, (session, realm) -> {
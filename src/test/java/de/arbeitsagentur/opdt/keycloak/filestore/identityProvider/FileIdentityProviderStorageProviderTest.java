@@ -20,6 +20,11 @@ package de.arbeitsagentur.opdt.keycloak.filestore.identityProvider;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import de.arbeitsagentur.opdt.keycloak.filestore.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileIdentityProviderEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileIdentityProviderMapperEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmEntity;
+import de.arbeitsagentur.opdt.keycloak.filestore.realm.FileRealmStore;
+import java.nio.file.Path;
 import java.util.Map;
 import org.assertj.core.api.recursive.comparison.RecursiveComparisonConfiguration;
 import org.junit.jupiter.api.Test;
@@ -200,6 +205,118 @@ class FileIdentityProviderStorageProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenGetForLogin_givenHiddenLinkOnlyAndDisabledIdps_thenReturnsOnlyVisibleIdpsUntilUpdate() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::identityProviders, (idps, realm) -> {
+            IdentityProviderModel visible = new IdentityProviderModel();
+            visible.setAlias("visibleIdp");
+            visible.setEnabled(true);
+            visible.setProviderId("bundid");
+            idps.create(visible);
+
+            IdentityProviderModel hidden = new IdentityProviderModel();
+            hidden.setAlias("hiddenIdp");
+            hidden.setEnabled(true);
+            hidden.setHideOnLogin(true);
+            hidden.setProviderId("bundid");
+            idps.create(hidden);
+
+            IdentityProviderModel linkOnly = new IdentityProviderModel();
+            linkOnly.setAlias("linkOnlyIdp");
+            linkOnly.setEnabled(true);
+            linkOnly.setLinkOnly(true);
+            linkOnly.setProviderId("bundid");
+            idps.create(linkOnly);
+
+            IdentityProviderModel disabled = new IdentityProviderModel();
+            disabled.setAlias("disabledIdp");
+            disabled.setEnabled(false);
+            disabled.setProviderId("bundid");
+            idps.create(disabled);
+
+            assertThat(idps.getForLogin(IdentityProviderStorageProvider.FetchMode.REALM_ONLY, null)
+                            .map(IdentityProviderModel::getAlias))
+                    .containsExactly("visibleIdp");
+
+            IdentityProviderModel shown = idps.getByAlias("hiddenIdp");
+            shown.setHideOnLogin(false);
+            idps.update(shown);
+
+            assertThat(idps.getForLogin(IdentityProviderStorageProvider.FetchMode.REALM_ONLY, null)
+                            .map(IdentityProviderModel::getAlias))
+                    .containsExactly("hiddenIdp", "visibleIdp");
+        });
+    }
+
+    @Test
+    void whenGetById_givenExistingIdp_thenIdpIsReturned() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::identityProviders, (idps, realm) -> {
+            IdentityProviderModel model = new IdentityProviderModel();
+            model.setAlias("meinIdp");
+            model.setEnabled(true);
+            model.setProviderId("bundid");
+            idps.create(model);
+            String internalId = idps.getByAlias("meinIdp").getInternalId();
+
+            assertThat(idps.getById(internalId).getAlias()).isEqualTo("meinIdp");
+            assertThat(idps.getById("unknown")).isNull();
+        });
+    }
+
+    @Test
+    void whenCreateIdentityProvider_givenMapper_thenBothAreStoredInFilesOfTheirOwn() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::identityProviders, (idps, realm) -> {
+            Path directory = Path.of(TEST_FILESTORE_DIR, REALM_ID, "identity-providers");
+            IdentityProviderModel model = new IdentityProviderModel();
+            model.setAlias("meinIdp");
+            model.setProviderId("bundid");
+            IdentityProviderModel created = idps.create(model);
+            IdentityProviderMapperModel mapper = new IdentityProviderMapperModel();
+            mapper.setId("blubb");
+            mapper.setName("meinMapper");
+            mapper.setIdentityProviderAlias("meinIdp");
+            mapper.setIdentityProviderMapper("mapperId");
+            idps.createMapper(mapper);
+
+            assertThat(directory.resolve(created.getInternalId() + ".yaml")).exists();
+            assertThat(directory.resolve("mappers").resolve("blubb.yaml")).exists();
+            assertThat(FileRealmStore.read(REALM_ID).getIdentityProviders()).isEmpty();
+
+            idps.removeMapper(mapper);
+            idps.remove("meinIdp");
+
+            assertThat(directory.resolve(created.getInternalId() + ".yaml")).doesNotExist();
+            assertThat(directory.resolve("mappers").resolve("blubb.yaml")).doesNotExist();
+            assertThat(idps.getByAlias("meinIdp")).isNull();
+        });
+    }
+
+    @Test
+    void whenGetByAlias_givenIdpInRealmFile_thenIdpMovesToOwnFile() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::identityProviders, (idps, realm) -> {
+            FileRealmEntity realmEntity = FileRealmStore.read(REALM_ID);
+            FileIdentityProviderEntity legacy = new FileIdentityProviderEntity();
+            legacy.setId("legacy-idp");
+            legacy.setAlias("altesIdp");
+            legacy.setProviderId("bundid");
+            realmEntity.getIdentityProviders().add(legacy);
+            FileIdentityProviderMapperEntity legacyMapper = new FileIdentityProviderMapperEntity();
+            legacyMapper.setId("legacy-mapper");
+            legacyMapper.setName("alterMapper");
+            legacyMapper.setIdentityProviderAlias("altesIdp");
+            realmEntity.getIdentityProviderMappers().add(legacyMapper);
+
+            assertThat(idps.getByAlias("altesIdp").getInternalId()).isEqualTo("legacy-idp");
+            assertThat(idps.getMapperByName("altesIdp", "alterMapper").getId()).isEqualTo("legacy-mapper");
+            assertThat(Path.of(TEST_FILESTORE_DIR, REALM_ID, "identity-providers", "legacy-idp.yaml"))
+                    .exists();
+            assertThat(realmEntity.getIdentityProviders()).isEmpty();
+            assertThat(realmEntity.getIdentityProviderMappers()).isEmpty();
+            assertThat(Path.of(TEST_FILESTORE_DIR, REALM_ID, "sections", "identityProviders.yaml"))
+                    .doesNotExist();
+        });
+    }
+
     @Test
     void whenGetByFlow_flowIdExists_thenReturnsMatchingIdps() {
         withRealmAndProvider(REALM_ID, KeycloakSession::identityProviders, (idps, realm) -> {
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024. IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package de.arbeitsagentur.opdt.keycloak.filestore.realm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.arbeitsagentur.opdt.keycloak.filestore.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.filestore.common.ExpirationScheduler;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.ClientInitialAccessModel;
+import org.keycloak.models.KeycloakSession;
+
+class ClientInitialAccessExpirationTest extends KeycloakModelTest {
+
+    private static final String REALM_ID = "expiration";
+
+    @Override
+    protected void createEnvironment(KeycloakSession s) {
+        s.realms().createRealm(REALM_ID);
+    }
+
+    @Override
+    protected void cleanEnvironment(KeycloakSession s) {
+        s.realms().removeRealm(REALM_ID);
+    }
+
+    @Test
+    void whenExpirationPasses_givenClientInitialAccess_thenItIsRemoved() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            ClientInitialAccessModel access = realm.createClientInitialAccessModel(10, 1);
+            var key = new ClientInitialAccessExpiration.Key(realm.getId(), access.getId());
+            assertThat(ExpirationScheduler.isScheduled(key)).isTrue();
+            // Act
+            Time.setOffset(20);
+            ExpirationScheduler.runDue();
+            // Assert
+            assertThat(realm.getClientInitialAccessModel(access.getId())).isNull();
+            assertThat(ExpirationScheduler.isScheduled(key)).isFalse();
+        });
+    }
+
+    @Test
+    void whenRemoveClientInitialAccess_givenRegistration_thenItIsCancelled() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            ClientInitialAccessModel access = realm.createClientInitialAccessModel(60, 1);
+            var key = new ClientInitialAccessExpiration.Key(realm.getId(), access.getId());
+            // Act
+            realm.removeClientInitialAccessModel(access.getId());
+            // Assert
+            assertThat(ExpirationScheduler.isScheduled(key)).isFalse();
+        });
+    }
+
+    @Test
+    void whenRealmIsWritten_givenUnchangedClientInitialAccesses_thenTheyAreNotRegisteredAgain() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            ClientInitialAccessModel access = realm.createClientInitialAccessModel(60, 1);
+            var key = new ClientInitialAccessExpiration.Key(realm.getId(), access.getId());
+            ExpirationScheduler.cancel(key);
+            // Act
+            realm.setDisplayName("unrelated change");
+            boolean afterUnrelatedWrite = ExpirationScheduler.isScheduled(key);
+            realm.createClientInitialAccessModel(60, 1);
+            // Assert
+            assertThat(afterUnrelatedWrite).isFalse();
+            assertThat(ExpirationScheduler.isScheduled(key)).isTrue();
+        });
+    }
+}
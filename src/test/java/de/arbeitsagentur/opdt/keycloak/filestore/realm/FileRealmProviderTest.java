@@ -19,16 +19,34 @@ package de.arbeitsagentur.opdt.keycloak.filestore.realm;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.MapAssert.assertThatMap;
 
 import de.arbeitsagentur.opdt.keycloak.filestore.KeycloakModelTest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.AuthenticationFlowModel;
+import org.keycloak.models.AuthenticatorConfigModel;
+import org.keycloak.models.ClientScopeModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ModelDuplicateException;
+import org.keycloak.models.OTPPolicy;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RequiredActionProviderModel;
+import org.keycloak.models.RequiredCredentialModel;
+import org.keycloak.representations.idm.CredentialRepresentation;
 
 class FileRealmProviderTest extends KeycloakModelTest {
 
@@ -124,6 +142,24 @@ class FileRealmProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenAddDefaultClientScope_givenRenamedRealm_thenScopeIsServed() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            ClientScopeModel scope = realm.addClientScope("renamed-realm-scope");
+            realm.setName("renamed-" + REALM_ID);
+            assertThat(realm.getDefaultClientScopesStream(false)).isEmpty();
+            // Act
+            realm.addDefaultClientScope(scope, false);
+            // Assert
+            assertThat(realm.getDefaultClientScopesStream(false))
+                    .extracting(ClientScopeModel::getName)
+                    .containsExactly("renamed-realm-scope");
+            // Teardown
+            realm.setName(REALM_ID);
+        });
+    }
+
     @Test
     void whenRemoveExpiredClientInitialAccess_givenMultipleClients_thenExpiredClientsAreRemoved() {
         withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
@@ -140,6 +176,273 @@ class FileRealmProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenGetAuthenticatorConfigByAlias_givenRenamedConfig_thenFindByNewAliasOnly() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            AuthenticatorConfigModel config = new AuthenticatorConfigModel();
+            config.setAlias("old-alias");
+            config.setConfig(Map.of());
+            config = realm.addAuthenticatorConfig(config);
+            assertThat(realm.getAuthenticatorConfigByAlias("old-alias")).isNotNull();
+            // Act
+            config.setAlias("new-alias");
+            realm.updateAuthenticatorConfig(config);
+            // Assert
+            assertThat(realm.getAuthenticatorConfigByAlias("old-alias")).isNull();
+            assertThat(realm.getAuthenticatorConfigByAlias("new-alias"))
+                    .extracting(AuthenticatorConfigModel::getId)
+                    .isEqualTo(config.getId());
+        });
+    }
+
+    @Test
+    void whenGetAuthenticationExecutionsStream_givenUpdatedPriority_thenReturnReorderedExecutions() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            AuthenticationFlowModel flow = new AuthenticationFlowModel();
+            flow.setAlias("flow");
+            flow.setTopLevel(true);
+            flow = realm.addAuthenticationFlow(flow);
+            AuthenticationExecutionModel first = execution(flow.getId(), "first", 20);
+            AuthenticationExecutionModel second = execution(flow.getId(), "second", 10);
+            first = realm.addAuthenticatorExecution(first);
+            realm.addAuthenticatorExecution(second);
+            assertThat(realm.getAuthenticationExecutionsStream(flow.getId()))
+                    .extracting(AuthenticationExecutionModel::getAuthenticator)
+                    .containsExactly("second", "first");
+            // Act
+            first.setPriority(5);
+            realm.updateAuthenticatorExecution(first);
+            // Assert
+            assertThat(realm.getAuthenticationExecutionsStream(flow.getId()))
+                    .extracting(AuthenticationExecutionModel::getAuthenticator)
+                    .containsExactly("first", "second");
+            assertThat(realm.getFlowByAlias("flow"))
+                    .extracting(AuthenticationFlowModel::getId)
+                    .isEqualTo(flow.getId());
+        });
+    }
+
+    @Test
+    void whenGetRequiredActionProvidersStream_givenPriorityOfReturnedModelChanged_thenOrderChangesOnlyByUpdate() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            realm.addRequiredActionProvider(requiredAction("first", 10));
+            realm.addRequiredActionProvider(requiredAction("second", 20));
+            RequiredActionProviderModel second = realm.getRequiredActionProvidersStream()
+                    .filter(model -> "second".equals(model.getAlias()))
+                    .findFirst()
+                    .orElseThrow();
+            // Act
+            second.setPriority(5);
+            List<String> beforeUpdate = realm.getRequiredActionProvidersStream()
+                    .map(RequiredActionProviderModel::getAlias)
+                    .toList();
+            realm.updateRequiredActionProvider(second);
+            // Assert
+            assertThat(beforeUpdate).containsExactly("first", "second");
+            assertThat(realm.getRequiredActionProvidersStream())
+                    .extracting(RequiredActionProviderModel::getAlias)
+                    .containsExactly("second", "first");
+        });
+    }
+
+    private static RequiredActionProviderModel requiredAction(String alias, int priority) {
+        RequiredActionProviderModel model = new RequiredActionProviderModel();
+        model.setAlias(alias);
+        model.setName(alias);
+        model.setProviderId(alias);
+        model.setEnabled(true);
+        model.setPriority(priority);
+        return model;
+    }
+
+    private static AuthenticationExecutionModel execution(String parentFlowId, String authenticator, int priority) {
+        AuthenticationExecutionModel execution = new AuthenticationExecutionModel();
+        execution.setParentFlow(parentFlowId);
+        execution.setAuthenticator(authenticator);
+        execution.setRequirement(AuthenticationExecutionModel.Requirement.REQUIRED);
+        execution.setPriority(priority);
+        return execution;
+    }
+
+    @Test
+    void whenGetRealmsWithProviderTypeStream_givenAddedAndRemovedComponent_thenFollowComponents() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            System.setProperty("component.provider.exists.disabled", "true");
+            try {
+                ComponentModel component = new ComponentModel();
+                component.setName("component");
+                component.setProviderType(Map.class.getName());
+                component.setProviderId("unknown");
+                // Act
+                component = realm.importComponentModel(component);
+                // Assert
+                assertThat(realms.getRealmsWithProviderTypeStream(Map.class))
+                        .extracting(RealmModel::getId)
+                        .containsExactly(realm.getId());
+                assertThat(realm.getComponentsStream(realm.getId(), Map.class.getName()))
+                        .extracting(ComponentModel::getId)
+                        .containsExactly(component.getId());
+                // Act
+                realm.removeComponents(realm.getId());
+                // Assert
+                assertThat(realms.getRealmsWithProviderTypeStream(Map.class)).isEmpty();
+                assertThat(realm.getComponentsStream(realm.getId(), Map.class.getName()))
+                        .isEmpty();
+            } finally {
+                System.clearProperty("component.provider.exists.disabled");
+            }
+        });
+    }
+
+    @Test
+    void whenAddComponent_givenSplitLayout_thenOnlyComponentsSectionIsWritten() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            System.setProperty("component.provider.exists.disabled", "true");
+            try {
+                Path realmFile = Path.of(TEST_FILESTORE_DIR, REALM_ID + ".yaml");
+                Path sections = Path.of(TEST_FILESTORE_DIR, REALM_ID, "sections");
+                String realmFileBefore = Files.readString(realmFile);
+                String flowsBefore = Files.readString(sections.resolve("authenticationFlows.yaml"));
+                ComponentModel component = new ComponentModel();
+                component.setName("lake-component");
+                component.setProviderType("unknown");
+                component.setProviderId("unknown");
+                // Act
+                realm.importComponentModel(component);
+                // Assert
+                assertThat(Files.readString(sections.resolve("components.yaml")))
+                        .contains("lake-component");
+                assertThat(Files.readString(sections.resolve("authenticationFlows.yaml")))
+                        .isEqualTo(flowsBefore);
+                assertThat(Files.readString(realmFile))
+                        .isEqualTo(realmFileBefore)
+                        .doesNotContain("lake-component");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                System.clearProperty("component.provider.exists.disabled");
+            }
+        });
+    }
+
+    @Test
+    void whenRemoveComponent_givenExistingComponent_thenComponentIsGone() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            System.setProperty("component.provider.exists.disabled", "true");
+            try {
+                ComponentModel component = new ComponentModel();
+                component.setName("component");
+                component.setProviderType("unknown");
+                component.setProviderId("unknown");
+                component = realm.importComponentModel(component);
+                assertThat(realm.getComponent(component.getId())).isNotNull();
+                // Act
+                realm.removeComponents(realm.getId());
+                // Assert
+                assertThat(realm.getComponent(component.getId())).isNull();
+                assertThat(realm.getComponentsStream(realm.getId())).isEmpty();
+            } finally {
+                System.clearProperty("component.provider.exists.disabled");
+            }
+        });
+    }
+
+    @Test
+    void whenGetComponentsStream_givenConfigOfReturnedModelModified_thenNextReadIsUnchanged() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            System.setProperty("component.provider.exists.disabled", "true");
+            try {
+                ComponentModel component = new ComponentModel();
+                component.setName("component");
+                component.setProviderType("unknown");
+                component.setProviderId("unknown");
+                component.setParentId(realm.getId());
+                component.getConfig().putSingle("key", "value");
+                realm.importComponentModel(component);
+                ComponentModel returned = realm.getComponentsStream(realm.getId(), "unknown")
+                        .findFirst()
+                        .orElseThrow();
+                // Act
+                returned.getConfig().get("key").add("other");
+                returned.getConfig().putSingle("added", "value");
+                // Assert
+                assertThat(realm.getComponentsStream(realm.getId()))
+                        .singleElement()
+                        .extracting(ComponentModel::getConfig)
+                        .isEqualTo(Map.of("key", List.of("value")));
+            } finally {
+                System.clearProperty("component.provider.exists.disabled");
+            }
+        });
+    }
+
+    @Test
+    void whenGetOTPPolicy_givenReturnedPolicyModified_thenStoredPolicyIsUnchangedUntilPolicyIsSet() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            OTPPolicy policy = new OTPPolicy("totp", "HmacSHA256", 0, 8, 1, 30, true);
+            realm.setOTPPolicy(policy);
+            OTPPolicy first = realm.getOTPPolicy();
+            // Act
+            first.setAlgorithm("HmacSHA1");
+            OTPPolicy second = realm.getOTPPolicy();
+            realm.setOTPPolicy(new OTPPolicy("totp", "HmacSHA512", 0, 6, 1, 30, true));
+            OTPPolicy third = realm.getOTPPolicy();
+            // Assert
+            assertThat(second).isNotSameAs(first);
+            assertThat(second.getAlgorithm()).isEqualTo("HmacSHA256");
+            assertThat(third.getAlgorithm()).isEqualTo("HmacSHA512");
+            assertThat(third.getDigits()).isEqualTo(6);
+        });
+    }
+
+    @Test
+    void whenGetAuthenticatorConfigsStream_givenReturnedConfigModified_thenOtherReadsAreUnchanged() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            AuthenticatorConfigModel config = new AuthenticatorConfigModel();
+            config.setAlias("otp-config");
+            config.setConfig(new HashMap<>(Map.of("length", "6")));
+            realm.addAuthenticatorConfig(config);
+            AuthenticatorConfigModel streamed =
+                    realm.getAuthenticatorConfigsStream().findFirst().orElseThrow();
+            // Act
+            streamed.getConfig().remove("length");
+            // Assert
+            assertThat(realm.getAuthenticatorConfigsStream()
+                            .findFirst()
+                            .orElseThrow()
+                            .getConfig())
+                    .containsEntry("length", "6");
+        });
+    }
+
+    @Test
+    void whenUpdateRequiredCredentials_givenExistingCredential_thenReturnUpdatedModels() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            realm.addRequiredCredential(CredentialRepresentation.PASSWORD);
+            // Act
+            realm.updateRequiredCredentials(
+                    Set.of(CredentialRepresentation.PASSWORD, RequiredCredentialModel.TOTP.getType()));
+            // Assert
+            assertThat(realm.getRequiredCredentialsStream().map(RequiredCredentialModel::getType))
+                    .containsExactlyInAnyOrder(
+                            CredentialRepresentation.PASSWORD, RequiredCredentialModel.TOTP.getType());
+            assertThat(realm.getRequiredCredentialsStream())
+                    .usingRecursiveFieldByFieldElementComparator()
+                    .containsExactlyElementsOf(
+                            realm.getRequiredCredentialsStream().toList());
+        });
+    }
+
     @Test
     void whenSaveLocalizationText_givenNull_thenNoLocalizationIsSet() {
         withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
@@ -268,6 +571,39 @@ class FileRealmProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenSaveLocalizationText_givenValue_thenOnlyLocaleFileIsWritten() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            Path localizations = Path.of(TEST_FILESTORE_DIR, REALM_ID, "localizations");
+            // Act
+            realms.saveLocalizationText(realm, "de-de", "TABLE", "Tisch");
+            // Assert
+            assertThat(localizations.resolve("de-de.yaml")).exists();
+            assertThat(FileRealmStore.read(REALM_ID).getLocalizationTexts()).isEmpty();
+            assertThatExceptionOfType(UnsupportedOperationException.class)
+                    .isThrownBy(() ->
+                            realm.getRealmLocalizationTextsByLocale("de-de").put("CHAIR", "Stuhl"));
+        });
+    }
+
+    @Test
+    void whenSaveLocalizationText_givenTextsInRealmFile_thenLocaleMovesToOwnFile() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
+            // Arrange
+            Map<String, Map<String, String>> legacy = new HashMap<>();
+            legacy.put("de-de", new HashMap<>(Map.of("TABLE", "Tisch")));
+            FileRealmStore.read(REALM_ID).setLocalizationTexts(legacy);
+            assertThat(realm.getRealmLocalizationTexts()).containsOnlyKeys("de-de");
+            // Act
+            realms.saveLocalizationText(realm, "de-de", "CHAIR", "Stuhl");
+            // Assert
+            assertThat(realm.getRealmLocalizationTextsByLocale("de-de"))
+                    .containsOnly(entry("TABLE", "Tisch"), entry("CHAIR", "Stuhl"));
+            assertThat(FileRealmStore.read(REALM_ID).getLocalizationTexts()).isEmpty();
+        });
+    }
+
     @Test
     void whenGetLocalizationText_givenNull_thenReturnNull() {
         withRealmAndProvider(REALM_ID, KeycloakSession::realms, (realms, realm) -> {
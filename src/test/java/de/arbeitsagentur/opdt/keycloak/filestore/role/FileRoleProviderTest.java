@@ -65,6 +65,37 @@ class FileRoleProviderTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    void whenSetAttribute_givenAttributesReadBefore_thenEarlierMapIsUnchangedAndNextReadSeesValue() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::roles, (roles, realm) -> {
+            // Arrange
+            RoleModel role = roles.addRealmRole(realm, "garden");
+            role.setSingleAttribute("colour", "green");
+            var before = roles.getRealmRole(realm, "garden").getAttributes();
+            // Act
+            role.setSingleAttribute("size", "large");
+            // Assert
+            assertThat(before).containsOnlyKeys("colour");
+            assertThat(roles.getRealmRole(realm, "garden").getAttributes()).containsOnlyKeys("colour", "size");
+        });
+    }
+
+    @Test
+    void whenGetRoleById_givenSameSession_thenReturnSameAdapterUntilRoleIsRecreated() {
+        withRealmAndProvider(REALM_ID, KeycloakSession::roles, (roles, realm) -> {
+            // Arrange
+            RoleModel role = roles.addRealmRole(realm, "garden");
+            // Act
+            RoleModel first = roles.getRoleById(realm, role.getId());
+            RoleModel second = roles.getRealmRole(realm, "garden");
+            roles.removeRole(second);
+            RoleModel recreated = roles.addRealmRole(realm, "garden");
+            // Assert
+            assertThat(second).isSameAs(first);
+            assertThat(roles.getRoleById(realm, recreated.getId())).isNotSameAs(first);
+        });
+    }
+
     @Test
     void whenAddRealmRole_givenExistingName_thenThrowException() {
         withRealmAndProvider(REALM_ID, KeycloakSession::roles, (roles, realm) -> {